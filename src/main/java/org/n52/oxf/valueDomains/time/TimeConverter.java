@@ -223,6 +223,18 @@ public class TimeConverter {
         return startTimeAsISO8601;
 	}
 	
+	/**
+	 * @return the date as 'yyyy-MM-dd HH:mm:ss' literal, the format of
+	 * the time literals in the SQL where clauses
+	 */
+	public static String createSqlTimeLiteral(Date date) {
+		GregorianCalendar calendar = new GregorianCalendar();
+		calendar.setTime(date);
+		return toISO8601(false, calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+				calendar.get(Calendar.DAY_OF_MONTH), calendar.get(Calendar.HOUR_OF_DAY),
+				calendar.get(Calendar.MINUTE), calendar.get(Calendar.SECOND));
+	}
+	
 	public static String createISO8601TimeString(Date startValue, String timezoneOffset) {
 		return createISO8601TimeString(startValue) + timezoneOffset;
 	}
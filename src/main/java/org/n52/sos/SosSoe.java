@@ -21,9 +21,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.concurrent.Callable;
 
 import org.joda.time.LocalTime;
 import org.n52.om.observation.MultiValueObservation;
@@ -39,16 +41,20 @@ import org.n52.sos.cache.CacheException;
 import org.n52.sos.cache.CacheNotYetAvailableException;
 import org.n52.sos.cache.AbstractCacheScheduler;
 import org.n52.sos.cache.ObservationOfferingCache;
+import org.n52.sos.cache.RebuildPacer;
 import org.n52.sos.dataTypes.ObservationOffering;
 import org.n52.sos.dataTypes.Procedure;
 import org.n52.sos.dataTypes.ServiceDescription;
 import org.n52.sos.db.AccessGDB;
 import org.n52.sos.db.impl.AccessGDBImpl;
+import org.n52.sos.db.impl.QueryConcurrencyLimiter;
 import org.n52.sos.encoder.JSONEncoder;
 import org.n52.sos.encoder.JSONObservationEncoder;
 import org.n52.sos.handler.OGCOperationRequestHandler;
+import org.n52.sos.handler.ObservationResponseCache;
 import org.n52.sos.handler.OperationRequestHandler;
 import org.n52.util.ExceptionSupporter;
+import org.n52.util.SingleFlight;
 import org.n52.util.VersionInfo;
 import org.n52.util.logging.Logger;
 
@@ -111,11 +117,33 @@ implements IServerObjectExtension, IObjectConstruct, ISosTransactionalSoap, IRES
     
 	private List<OperationRequestHandler> operationHandlers;
 
+	/**
+	 * identical requests arriving while one of them is processed share
+	 * its response
+	 */
+	private static final SingleFlight<CoalescedResponse> inFlightRequests = new SingleFlight<>();
+
 	private AbstractCacheScheduler cacheScheduler;
 
 	private boolean updateCacheOnStartup;
 
 	private LocalTime cacheUpdateTime;
+
+	private String cacheRebuildMode = AccessGDBImpl.PER_NETWORK_REBUILD_MODE;
+
+	private int cacheBuildParallelism = 1;
+
+	private int observationQueryParallelism = 1;
+
+	private int cacheIncrementalUpdateMinutes = 0;
+
+	private int maximumConcurrentQueries = QueryConcurrencyLimiter.DEFAULT_MAXIMUM_CONCURRENT_QUERIES;
+
+	private int queryQueueTimeoutSeconds = (int) (QueryConcurrencyLimiter.DEFAULT_QUEUE_TIMEOUT_MS / 1000);
+
+	private int responseCacheSizeMB = ObservationResponseCache.DEFAULT_MAXIMUM_SIZE_MB;
+
+	private int responseCacheTimeToLiveSeconds = (int) (ObservationResponseCache.DEFAULT_TIME_TO_LIVE_MS / 1000);
     
     /**
      * constructs a new server object extension
@@ -159,6 +187,10 @@ implements IServerObjectExtension, IObjectConstruct, ISosTransactionalSoap, IRES
 
         this.cacheScheduler.shutdown();
         
+        if (this.geoDB != null) {
+        	this.geoDB.shutdown();
+        }
+        
         // TODO make sure all references are being cut.
     }
 
@@ -219,6 +251,36 @@ implements IServerObjectExtension, IObjectConstruct, ISosTransactionalSoap, IRES
             }
             LOGGER.info("Cache update time: "+ this.cacheUpdateTime +" object: "+ cacheUpdateTime);
             
+            Object rebuildMode = propertySet.getProperty("cacheRebuildMode");
+            if (rebuildMode != null && !rebuildMode.toString().trim().isEmpty()) {
+            	this.cacheRebuildMode = rebuildMode.toString().trim();
+            }
+            LOGGER.info("Cache rebuild mode: "+ this.cacheRebuildMode);
+            
+            this.cacheBuildParallelism = readIntProperty(propertySet, "cacheBuildParallelism", 1, this.cacheBuildParallelism);
+            LOGGER.info("Cache build parallelism: "+ this.cacheBuildParallelism);
+            
+            this.observationQueryParallelism = readIntProperty(propertySet, "observationQueryParallelism", 1, this.observationQueryParallelism);
+            LOGGER.info("Observation query parallelism: "+ this.observationQueryParallelism);
+            
+            this.cacheIncrementalUpdateMinutes = readIntProperty(propertySet, "cacheIncrementalUpdateMinutes", 0, this.cacheIncrementalUpdateMinutes);
+            LOGGER.info("Incremental cache update interval (minutes, 0 = disabled): "+ this.cacheIncrementalUpdateMinutes);
+            
+            this.maximumConcurrentQueries = readIntProperty(propertySet, "maximumConcurrentQueries", 1, this.maximumConcurrentQueries);
+            LOGGER.info("Maximum concurrent queries: "+ this.maximumConcurrentQueries);
+            
+            this.queryQueueTimeoutSeconds = readIntProperty(propertySet, "queryQueueTimeoutSeconds", 0, this.queryQueueTimeoutSeconds);
+            LOGGER.info("Query queue timeout (seconds): "+ this.queryQueueTimeoutSeconds);
+            
+            this.responseCacheSizeMB = readIntProperty(propertySet, "responseCacheSizeMB", 0, this.responseCacheSizeMB);
+            LOGGER.info("Response cache size (MB, 0 = disabled): "+ this.responseCacheSizeMB);
+            
+            this.responseCacheTimeToLiveSeconds = readIntProperty(propertySet, "responseCacheTimeToLiveSeconds", 0, this.responseCacheTimeToLiveSeconds);
+            LOGGER.info("Response cache time to live (seconds): "+ this.responseCacheTimeToLiveSeconds);
+            
+            ObservationResponseCache.instance().configure(this.responseCacheSizeMB * 1024L * 1024L,
+            		this.responseCacheTimeToLiveSeconds * 1000L);
+            
         } catch (Exception e) {
             LOGGER.severe("There was a problem while reading properties: \n" + e.getLocalizedMessage() + "\n" + ExceptionSupporter.createStringFromStackTrace(e));
             throw new IOException(e);
@@ -239,11 +301,31 @@ implements IServerObjectExtension, IObjectConstruct, ISosTransactionalSoap, IRES
         /*
          * initiate the cache
          */
-        cacheScheduler = AbstractCacheScheduler.Instance.init(geoDB, this.updateCacheOnStartup, this.cacheUpdateTime);
+        cacheScheduler = AbstractCacheScheduler.Instance.init(geoDB, this.updateCacheOnStartup, this.cacheUpdateTime,
+        		this.cacheIncrementalUpdateMinutes * 60L * 1000L);
         
         LOGGER.info("Construction of SOE finished.");
     }
     
+    /**
+     * @return the integer property, at least min, or the default value
+     * if the property is not set or invalid
+     */
+    private int readIntProperty(IPropertySet propertySet, String name, int min, int defaultValue) throws IOException {
+    	Object value = propertySet.getProperty(name);
+    	if (value == null || value.toString().trim().isEmpty()) {
+    		return defaultValue;
+    	}
+    	
+    	try {
+    		return Math.max(min, Integer.parseInt(value.toString().trim()));
+    	}
+    	catch (NumberFormatException e) {
+    		LOGGER.warn("Invalid "+ name +": "+ value);
+    		return defaultValue;
+    	}
+    }
+    
     private void resolveServiceProperties() {
 		if (this.mapServerDataAccess instanceof IMapServer3) {
         	try {
@@ -433,12 +515,17 @@ implements IServerObjectExtension, IObjectConstruct, ISosTransactionalSoap, IRES
             String outputFormat,
             String requestProperties,
             String[] responseProperties) throws IOException, AutomationException {
-    	if (this.cacheScheduler.isCurrentyLocked()) {
-    		throw new IOException("A database maintenance is currently in progress. Please come back in a few minutes");
-    	}
-    	
+    	/*
+    	 * requests are served from the last complete cache generation
+    	 * while a cache update is in progress
+    	 */
     	LOGGER.debug("Starting to handle REST request...");
     	
+    	/*
+    	 * cache rebuilds back off while requests are served
+    	 */
+    	RebuildPacer.instance().requestStarted();
+    	
 //        LOGGER.info("capabilities: " + capabilities);
 //        LOGGER.info("resourceName: " + resourceName);
 //        LOGGER.info("operationName: " + operationName);
@@ -459,34 +546,8 @@ implements IServerObjectExtension, IObjectConstruct, ISosTransactionalSoap, IRES
                 
                 // extract operation input parameters to Map:
                 JSONObject inputObject = new JSONObject(operationInput);
-
-                // handle: observations/query
-                if (resourceName.equals("observations") && operationName.equalsIgnoreCase("query")) {
-                    return invokeObservationQueryOperation(inputObject, outputFormat, responseProperties);
-                }
-                /*
-                // handle: observations/diagram
-                else if (resourceName.equals("observations") && operationName.equalsIgnoreCase("diagram")) {
-                    return invokeObservationDiagramOperation(inputObject, outputFormat, responseProperties);
-                }
-                */
-
-                // handle: features/query
-                else if (resourceName.equals("features") && operationName.equalsIgnoreCase("query")) {
-                    return invokeFeatureQueryOperation(inputObject);
-                }
-
-                // handle: procedures/query
-                else if (resourceName.equals("procedures") && operationName.equalsIgnoreCase("query")) {
-                    return invokeProcedureQueryOperation(inputObject);
-                }
-                
-                else {
-                	OperationRequestHandler handler = resolveHandler(operationName);
-                	
-               		return handler.invokeOGCOperation(geoDB, inputObject, responseProperties);
-                }
                 
+                return invokeCoalesced(resourceName, operationName, inputObject, outputFormat, responseProperties);
             }
         } catch (ExceptionReport e) {
             LOGGER.info("OWS ExceptionReport thrown: \n" + e.getLocalizedMessage() + "\n" + ExceptionSupporter.createStringFromStackTrace(e));
@@ -494,10 +555,110 @@ implements IServerObjectExtension, IObjectConstruct, ISosTransactionalSoap, IRES
         } catch (IOException | RuntimeException e) {
             LOGGER.severe("Error while handle REST request: \n" + e.getLocalizedMessage() + "\n" + ExceptionSupporter.createStringFromStackTrace(e));
             return prepareExceptionResponse(new NoApplicableCodeException(e), responseProperties);
+        } finally {
+        	RebuildPacer.instance().requestFinished();
+        }
+        
+    }
+
+    
+    /**
+     * invokes the operation or, if an identical request is already being
+     * processed, waits for and shares its response
+     */
+    private byte[] invokeCoalesced(final String resourceName, final String operationName,
+    		final JSONObject inputObject, final String outputFormat,
+    		String[] responseProperties) throws ExceptionReport, IOException {
+    	final String initialProperties = responseProperties[0];
+    	String key = createRequestKey(resourceName, operationName, inputObject, outputFormat);
+    	
+    	CoalescedResponse response;
+    	try {
+    		response = inFlightRequests.execute(key, new Callable<CoalescedResponse>() {
+    			@Override
+    			public CoalescedResponse call() throws Exception {
+    				String[] properties = new String[] {initialProperties};
+    				byte[] bytes = invokeOperation(resourceName, operationName, inputObject, outputFormat, properties);
+    				return new CoalescedResponse(bytes, properties[0]);
+    			}
+    		});
+    	} catch (ExceptionReport | IOException | RuntimeException e) {
+    		throw e;
+    	} catch (Exception e) {
+    		throw new IOException(e);
+    	}
+    	
+    	responseProperties[0] = response.responseProperties;
+    	return response.bytes;
+    }
+
+    /**
+     * @return a key which is equal for requests with the same parameters,
+     * independent of their order
+     */
+    private String createRequestKey(String resourceName, String operationName,
+    		JSONObject inputObject, String outputFormat) {
+    	List<String> keys = new ArrayList<>();
+    	Iterator<?> it = inputObject.keys();
+    	while (it.hasNext()) {
+    		keys.add(it.next().toString());
+    	}
+    	Collections.sort(keys);
+    	
+    	StringBuilder sb = new StringBuilder();
+    	sb.append(geoDB.getDatabaseName()).append('/');
+    	sb.append(resourceName).append('/').append(operationName).append('?').append(outputFormat);
+    	for (String k : keys) {
+    		sb.append('&').append(k).append('=').append(inputObject.get(k));
+    	}
+    	return sb.toString();
+    }
+
+    private byte[] invokeOperation(String resourceName, String operationName,
+    		JSONObject inputObject, String outputFormat, String[] responseProperties) throws ExceptionReport, IOException {
+        // handle: observations/query
+        if (resourceName.equals("observations") && operationName.equalsIgnoreCase("query")) {
+            return invokeObservationQueryOperation(inputObject, outputFormat, responseProperties);
+        }
+        /*
+        // handle: observations/diagram
+        else if (resourceName.equals("observations") && operationName.equalsIgnoreCase("diagram")) {
+            return invokeObservationDiagramOperation(inputObject, outputFormat, responseProperties);
+        }
+        */
+
+        // handle: features/query
+        else if (resourceName.equals("features") && operationName.equalsIgnoreCase("query")) {
+            return invokeFeatureQueryOperation(inputObject);
+        }
+
+        // handle: procedures/query
+        else if (resourceName.equals("procedures") && operationName.equalsIgnoreCase("query")) {
+            return invokeProcedureQueryOperation(inputObject);
         }
         
+        else {
+        	OperationRequestHandler handler = resolveHandler(operationName);
+        	
+       		return handler.invokeOGCOperation(geoDB, inputObject, responseProperties);
+        }
     }
 
+    public static long getCoalescedRequestCount() {
+    	return inFlightRequests.getSharedCount();
+    }
+
+    private static class CoalescedResponse {
+
+    	private final byte[] bytes;
+    	private final String responseProperties;
+
+    	CoalescedResponse(byte[] bytes, String responseProperties) {
+    		this.bytes = bytes;
+    		this.responseProperties = responseProperties;
+    	}
+
+    }
     
     private byte[] prepareExceptionResponse(ExceptionReport e,
 			String[] responseProperties) {
@@ -793,6 +954,26 @@ implements IServerObjectExtension, IObjectConstruct, ISosTransactionalSoap, IRES
 		return maximumRecordCount;
 	}
 
+    public String getCacheRebuildMode() {
+    	return cacheRebuildMode;
+    }
+
+    public int getCacheBuildParallelism() {
+    	return cacheBuildParallelism;
+    }
+
+    public int getObservationQueryParallelism() {
+    	return observationQueryParallelism;
+    }
+
+    public int getMaximumConcurrentQueries() {
+    	return maximumConcurrentQueries;
+    }
+
+    public int getQueryQueueTimeoutSeconds() {
+    	return queryQueueTimeoutSeconds;
+    }
+
 	public String getSosTitle()
     {
         return sosTitle;
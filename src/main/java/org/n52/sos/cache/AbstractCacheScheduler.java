@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.joda.time.DateTime;
 import org.joda.time.LocalTime;
@@ -43,8 +44,18 @@ public abstract class AbstractCacheScheduler {
 
 	private File lockFile;
 
+	private CacheUpdateLock updateLock;
+
+	private CacheDirectoryWatcher directoryWatcher;
+
 	private LocalTime cacheUpdateTime;
 
+	/**
+	 * the lock state of this process. other processes working on the
+	 * same cache directory are excluded by the {@link CacheUpdateLock}
+	 */
+	private final AtomicBoolean updateInProgress = new AtomicBoolean(false);
+
 	public AbstractCacheScheduler(AccessGDB geoDB, boolean updateCacheOnStartup, LocalTime cacheUpdateTime) {
 		this.geoDB = geoDB;
 		this.updateCacheOnStartup = updateCacheOnStartup;
@@ -67,6 +78,24 @@ public abstract class AbstractCacheScheduler {
 		} catch (FileNotFoundException e) {
 			LOGGER.warn(e.getMessage(), e);
 		}
+
+		try {
+			candidates.add(SeriesStatisticsCache.instance(dbName));
+		} catch (FileNotFoundException e) {
+			LOGGER.warn(e.getMessage(), e);
+		}
+		
+		/*
+		 * only one process rebuilds the caches, the others pick up
+		 * the new generation as soon as it has been written
+		 */
+		try {
+			this.directoryWatcher = new CacheDirectoryWatcher(
+					CommonUtilities.resolveCacheBaseDir(dbName), candidates);
+			this.directoryWatcher.start();
+		} catch (IOException e) {
+			LOGGER.warn("Could not watch the cache directory. Caches written by other processes are picked up on access.", e);
+		}
 	}
 
 	private String resolveDatabaseName(AccessGDB geoDB) {
@@ -86,6 +115,12 @@ public abstract class AbstractCacheScheduler {
 
 	public abstract void shutdown();
 	
+	protected void stopWatchingCacheDirectory() {
+		if (this.directoryWatcher != null) {
+			this.directoryWatcher.stop();
+		}
+	}
+	
 	public List<AbstractEntityCache<?>> getCandidates() {
 		return candidates;
 	}
@@ -100,11 +135,12 @@ public abstract class AbstractCacheScheduler {
 	
 	protected void freeCacheUpdateLock() throws IOException {
 		synchronized (AbstractCacheScheduler.class) {
-			File lockFile = resolveCacheLockFile();
-			
-			if (lockFile.exists()) {
-				lockFile.delete();
-			}	
+			try {
+				resolveCacheUpdateLock().release();
+			}
+			finally {
+				updateInProgress.set(false);
+			}
 		}
 	}
 
@@ -116,39 +152,77 @@ public abstract class AbstractCacheScheduler {
 		
 		return lockFile;
 	}
+	
+	protected synchronized CacheUpdateLock resolveCacheUpdateLock() throws FileNotFoundException {
+		if (updateLock == null) {
+			updateLock = new CacheUpdateLock(resolveCacheLockFile());
+		}
+		
+		return updateLock;
+	}
 
 	public abstract void forceUpdate();
 	
+	/**
+	 * @return true if this process is currently updating the caches. Requests
+	 * are still served from the last complete cache generation in the meantime.
+	 */
 	public boolean isCurrentyLocked() {
-		synchronized (AbstractCacheScheduler.class) {
-			File lockFile;
-			try {
-				lockFile = resolveCacheLockFile();
-			} catch (FileNotFoundException e) {
-				return false;
-			}
-			
-			return lockFile.exists();
+		return updateInProgress.get();
+	}
+	
+	/**
+	 * @return true if this or another process working on the same
+	 * cache directory holds the cache update lock
+	 */
+	public boolean isUpdateLockHeld() {
+		try {
+			return resolveCacheUpdateLock().isHeld();
+		} catch (IOException e) {
+			LOGGER.warn("Could not determine the state of the cache.lock file: "+ e.getMessage());
+			return false;
 		}
 	}
 	
+	/**
+	 * @return the time in ms since this process acquired the cache
+	 * update lock or -1 if it does not hold the lock
+	 */
+	protected long getCacheUpdateLockAge() throws FileNotFoundException {
+		long acquiredAt = resolveCacheUpdateLock().getAcquiredAt();
+		return acquiredAt == 0 ? -1 : System.currentTimeMillis() - acquiredAt;
+	}
+	
 	protected boolean retrieveCacheUpdateLock() throws IOException {
 		synchronized (AbstractCacheScheduler.class) {
-			File lockFile = resolveCacheLockFile();
+			if (!updateInProgress.compareAndSet(false, true)) {
+				return false;
+			}
 			
-			if (!lockFile.exists()) {
-				boolean worked = lockFile.createNewFile();
-				if (worked) {
-					return true;
-				}
-				else {
-					LOGGER.info("Could not create cache.lock file!");
-					return false;
+			boolean worked = false;
+			try {
+				worked = resolveCacheUpdateLock().tryAcquire();
+			}
+			finally {
+				if (!worked) {
+					updateInProgress.set(false);
 				}
 			}
+			
+			if (!worked) {
+				LOGGER.info("cache.lock is held by another process");
+			}
+			return worked;
 		}
-		
-		return false;
+	}
+	
+	/**
+	 * @return true if the candidate has been written so recently (e.g. by
+	 * another process that held the lock just before this one) that a
+	 * rebuild would only put load on the database
+	 */
+	protected boolean isRecentlyUpdated(AbstractEntityCache<?> candidate) {
+		return candidate.hasCacheContent() && !candidate.requiresUpdate();
 	}
 	
 	public MutableDateTime resolveNextScheduleDate(LocalTime localTime, DateTime referenceTime) {
@@ -187,8 +261,17 @@ public abstract class AbstractCacheScheduler {
 		private static AbstractCacheScheduler instance;
 
 		public static synchronized AbstractCacheScheduler init(AccessGDB geoDB, boolean updateCacheOnStartup, LocalTime cacheUpdateTime) {
+			return init(geoDB, updateCacheOnStartup, cacheUpdateTime, 0);
+		}
+		
+		/**
+		 * @param incrementalUpdateInterval the interval of incremental
+		 * cache updates in ms. 0 disables them
+		 */
+		public static synchronized AbstractCacheScheduler init(AccessGDB geoDB, boolean updateCacheOnStartup, LocalTime cacheUpdateTime,
+				long incrementalUpdateInterval) {
 			if (instance == null) {
-				instance = new QuartzCacheScheduler(geoDB, updateCacheOnStartup, cacheUpdateTime);
+				instance = new QuartzCacheScheduler(geoDB, updateCacheOnStartup, cacheUpdateTime, incrementalUpdateInterval);
 			}
 			return instance;
 		}
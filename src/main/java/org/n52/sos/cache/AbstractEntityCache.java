@@ -15,19 +15,28 @@
  */
 package org.n52.sos.cache;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Scanner;
+import java.util.Set;
 
 import org.n52.sos.db.AccessGDB;
 import org.n52.util.CommonUtilities;
@@ -37,6 +46,20 @@ public abstract class AbstractEntityCache<T extends CacheEntity> {
 	
 	public Logger LOGGER = Logger.getLogger(AbstractEntityCache.class.getName());
 	
+	/**
+	 * an interrupted build older than this is not resumed, its
+	 * entries would be too outdated
+	 */
+	private static final long MAXIMUM_CHECKPOINT_AGE_MS = AbstractCacheScheduler.ONE_HOUR_MS * 48;
+	
+	/**
+	 * the number of entries after which the temporary
+	 * file of a build is committed to disk
+	 */
+	private static final int JOURNAL_GROUP_COMMIT_SIZE = 50;
+	
+	private static final String WATERMARK_PROPERTY = "watermark";
+	
 	private File cacheFile;
 	private Object cacheFileMutex = new Object();
 
@@ -48,7 +71,24 @@ public abstract class AbstractEntityCache<T extends CacheEntity> {
 
 	private String dbName;
 	
+	/**
+	 * the parsed, read-only contents of the cache file. readers
+	 * get this reference without taking any lock; it is replaced
+	 * as a whole whenever a new cache file has been written
+	 */
+	private volatile Snapshot<T> snapshot;
+	
+	/**
+	 * the progress of the ongoing or last interrupted build
+	 */
+	private CacheCheckpoint checkpoint;
 	
+	/**
+	 * the open temporary file of the ongoing build and the
+	 * entries written to it
+	 */
+	private CacheJournal journal;
+	private Map<String, T> journaledEntities;
 	
 	public AbstractEntityCache(String dbName) throws FileNotFoundException {
 		this.dbName = dbName;
@@ -85,34 +125,240 @@ public abstract class AbstractEntityCache<T extends CacheEntity> {
 	
 	protected abstract AbstractEntityCache<T> getSingleInstance();
 	
+	/**
+	 * @return the serializer for the binary cache format or null
+	 * if the cache shall be stored in the legacy text format
+	 * (see {@link #serializeEntity(CacheEntity)}). Legacy text files
+	 * are still read if a serializer is available and are replaced
+	 * with the binary format on the next update.
+	 */
+	protected EntitySerializer<T> getEntitySerializer() {
+		return null;
+	}
+	
+	/**
+	 * appends the entity to the temporary file of the ongoing build.
+	 * The file is kept open until the build is stored, see
+	 * {@link #storeEntityCollection(Map)}.
+	 */
 	public void storeTemporaryEntity(T et) {
-		FileOutputStream fs = null;
 		synchronized (cacheFileMutex) {
 			try {
-				fs = new FileOutputStream(getTempCacheFile(), true);
-				storeEntity(et.getItemId(), et, fs);	
-			} catch (FileNotFoundException | CacheException e) {
-				LOGGER.warn(e.getMessage(), e);
-			} finally {
-				try {
-					if (fs != null) {
-						fs.close();
+				if (this.journal == null) {
+					this.journal = new CacheJournal(getTempCacheFile(), JOURNAL_GROUP_COMMIT_SIZE);
+					if (this.journaledEntities == null) {
+						this.journaledEntities = new HashMap<>();
 					}
-				} catch (IOException e) {
-					LOGGER.warn(e.getMessage(), e);
 				}
+				
+				EntitySerializer<T> serializer = getEntitySerializer();
+				if (serializer != null) {
+					BinaryCacheFormat.appendRecord(this.journal.getOutputStream(), et.getItemId(), et, serializer);
+				}
+				else {
+					writeTextEntity(et.getItemId(), et, this.journal.getOutputStream());
+				}
+				this.journaledEntities.put(et.getItemId(), et);
+				
+				if (this.journal.recordAppended()) {
+					writeCheckpoint();
+				}
+			} catch (IOException | CacheException e) {
+				LOGGER.warn(e.getMessage(), e);
+			}
+		}
+	}
+	
+	/**
+	 * commits and closes the temporary file of the ongoing build
+	 */
+	private void closeJournal() {
+		synchronized (cacheFileMutex) {
+			if (this.journal == null) {
+				return;
 			}
+			
+			try {
+				this.journal.close();
+				writeCheckpoint();
+			} catch (IOException e) {
+				LOGGER.warn("Could not close the temporary cache file", e);
+			}
+			this.journal = null;
 		}
 	}
 	
 	protected void clearTempCacheFile() throws IOException {
 		synchronized (cacheFileMutex) {
+			closeJournal();
+			this.journaledEntities = null;
 			File f = getTempCacheFile();
 			f.delete();
 			f.createNewFile();
 		}
 	}
 	
+	/**
+	 * resumes an interrupted build of this cache if a valid checkpoint
+	 * and its temporary file are available. Otherwise a new generation
+	 * is started with an empty temporary file.
+	 * 
+	 * @return the ids of the entries already stored by the interrupted build
+	 */
+	protected Set<String> startOrResumeBuild() throws IOException {
+		synchronized (cacheFileMutex) {
+			closeJournal();
+			File tempCacheFile = getTempCacheFile();
+			CacheCheckpoint previous = CacheCheckpoint.read(getCheckpointFile());
+			
+			if (previous != null && hasCacheContent(tempCacheFile)
+					&& System.currentTimeMillis() - previous.getStarted() < MAXIMUM_CHECKPOINT_AGE_MS) {
+				try {
+					Map<String, T> stored = readEntityFile(tempCacheFile);
+					
+					/*
+					 * rewrite the entries, the interruption might have
+					 * left a partial record at the end of the file
+					 */
+					clearTempCacheFile();
+					this.checkpoint = previous;
+					for (T entity : stored.values()) {
+						storeTemporaryEntity(entity);
+					}
+					
+					LOGGER.info(String.format("Resuming cache generation %s of %s after '%s' (#%s); %s entries already stored",
+							previous.getGeneration(), getCacheFileName(), previous.getLastCompleted(),
+							previous.getLastCompletedIndex(), stored.size()));
+					return new HashSet<>(stored.keySet());
+				}
+				catch (IOException | RuntimeException e) {
+					LOGGER.warn("Could not resume from the temporary cache file, starting a new generation", e);
+				}
+			}
+			
+			clearTempCacheFile();
+			this.checkpoint = CacheCheckpoint.newGeneration();
+			this.checkpoint.write(getCheckpointFile());
+			LOGGER.info(String.format("Starting cache generation %s of %s",
+					this.checkpoint.getGeneration(), getCacheFileName()));
+			return new HashSet<>();
+		}
+	}
+	
+	/**
+	 * records an entry as the last completed one of the ongoing build. Call
+	 * this before storing the entry: the checkpoint is written together with
+	 * the next group commit of the temporary file.
+	 */
+	protected void checkpointEntry(String id, int index) {
+		synchronized (cacheFileMutex) {
+			if (this.checkpoint != null) {
+				this.checkpoint.entryCompleted(id, index);
+			}
+		}
+	}
+	
+	private void writeCheckpoint() {
+		if (this.checkpoint == null) {
+			return;
+		}
+		
+		try {
+			this.checkpoint.write(getCheckpointFile());
+		} catch (IOException e) {
+			LOGGER.warn("Could not write cache checkpoint: "+ e.getMessage());
+		}
+	}
+	
+	/**
+	 * @return the watermark of the ongoing build, i.e. the latest
+	 * insertion/update time of the database when it has been started
+	 */
+	protected String getBuildWatermark() {
+		synchronized (cacheFileMutex) {
+			return this.checkpoint == null ? null : this.checkpoint.getWatermark();
+		}
+	}
+	
+	protected void setBuildWatermark(String watermark) {
+		synchronized (cacheFileMutex) {
+			if (this.checkpoint != null) {
+				this.checkpoint.setWatermark(watermark);
+				writeCheckpoint();
+			}
+		}
+	}
+	
+	/**
+	 * @return the watermark of the current cache generation: changes of
+	 * the database at or after it are not yet reflected by the cache. null
+	 * if unknown.
+	 */
+	public String getGenerationWatermark() {
+		synchronized (cacheFileMutex) {
+			File f = getGenerationFile();
+			if (!f.exists()) {
+				return null;
+			}
+			
+			Properties props = new Properties();
+			try (FileInputStream fis = new FileInputStream(f)) {
+				props.load(fis);
+				return props.getProperty(WATERMARK_PROPERTY);
+			} catch (IOException e) {
+				LOGGER.warn("Could not read the cache generation file: "+ e.getMessage());
+				return null;
+			}
+		}
+	}
+	
+	private void storeGenerationWatermark(String watermark) {
+		if (watermark == null) {
+			return;
+		}
+		
+		Properties props = new Properties();
+		props.setProperty(WATERMARK_PROPERTY, watermark);
+		File f = getGenerationFile();
+		File tmp = new File(f.getParentFile(), f.getName() + ".tmp");
+		try {
+			try (FileOutputStream fos = new FileOutputStream(tmp)) {
+				props.store(fos, "cache generation");
+			}
+			Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			LOGGER.warn("Could not store the cache generation watermark: "+ e.getMessage());
+		}
+	}
+	
+	/**
+	 * @return true if the cache supports {@link #updateCacheIncrementally(AccessGDB)}
+	 */
+	public boolean supportsIncrementalUpdate() {
+		return false;
+	}
+	
+	/**
+	 * applies the changes of the database since the watermark of the
+	 * current generation. Caches not supporting this do a full update.
+	 */
+	public void updateCacheIncrementally(AccessGDB geoDB) throws CacheException, IOException {
+		updateCache(geoDB);
+	}
+	
+	/**
+	 * marks the ongoing build as complete. The temporary file and the
+	 * checkpoint are removed once the cache file has been written.
+	 * Otherwise they are kept to resume the build with the next update.
+	 */
+	protected void completeBuild() {
+		synchronized (cacheFileMutex) {
+			if (this.checkpoint != null) {
+				this.checkpoint.setCompleted(true);
+			}
+		}
+	}
+	
 
 	protected void setMaximumEntries(int c) {
 		this.maximumEntries = c;
@@ -124,14 +370,8 @@ public abstract class AbstractEntityCache<T extends CacheEntity> {
 	}
 	
 	public synchronized void storeEntity(String id, T entity, FileOutputStream fos) throws CacheException {
-		StringBuilder sb = new StringBuilder();
-		sb.append(id);
-		sb.append("=");
-		sb.append(serializeEntity(entity));
-		sb.append(System.getProperty("line.separator"));
-		
 		try {
-			fos.write(sb.toString().getBytes());
+			writeTextEntity(id, entity, fos);
 			fos.flush();
 			
 		} catch (IOException e) {
@@ -140,6 +380,16 @@ public abstract class AbstractEntityCache<T extends CacheEntity> {
 		
 	}
 	
+	private void writeTextEntity(String id, T entity, OutputStream out) throws CacheException, IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append(id);
+		sb.append("=");
+		sb.append(serializeEntity(entity));
+		sb.append(System.getProperty("line.separator"));
+		
+		out.write(sb.toString().getBytes());
+	}
+	
 	protected Map<String, T> deserializeEntityCollection(
 			InputStream fis) {
 		Map<String, T> result = new HashMap<>();
@@ -157,6 +407,47 @@ public abstract class AbstractEntityCache<T extends CacheEntity> {
 		return result;
 	}
 	
+	/**
+	 * reads a cache file in the binary format (complete file or record
+	 * sequence of an ongoing update) or in the legacy text format.
+	 */
+	protected Map<String, T> readEntityFile(File f) throws IOException {
+		EntitySerializer<T> serializer = getEntitySerializer();
+		if (serializer != null) {
+			if (BinaryCacheFormat.isBinaryCacheFile(f)) {
+				return BinaryCacheFormat.read(f, serializer);
+			}
+			if (BinaryCacheFormat.isRecordSequence(f)) {
+				return BinaryCacheFormat.readRecordSequence(f, serializer);
+			}
+			LOGGER.info("Reading legacy text cache file "+ f.getName() +". It will be converted with the next update.");
+		}
+		
+		try (FileInputStream fis = new FileInputStream(f)) {
+			return deserializeEntityCollection(fis);
+		}
+	}
+	
+	private void writeEntityFile(File f, Map<String, T> entities) throws CacheException {
+		EntitySerializer<T> serializer = getEntitySerializer();
+		if (serializer != null) {
+			try {
+				BinaryCacheFormat.write(f, entities, serializer);
+			} catch (IOException e) {
+				throw new CacheException(e);
+			}
+			return;
+		}
+		
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(f))) {
+			for (String id : entities.keySet()) {
+				writeTextEntity(id, entities.get(id), out);
+			}
+		} catch (IOException e) {
+			throw new CacheException(e);
+		}
+	}
+	
 	public synchronized void storeEntityCollection(Collection<T> entities) throws CacheException {
 		
 		Map<String, T> result = new HashMap<>();
@@ -172,57 +463,130 @@ public abstract class AbstractEntityCache<T extends CacheEntity> {
 		File tempCacheFile = getTempCacheFile();
 		
 		if (entities.isEmpty()) {
-			LOGGER.info("reloading entities from cache file");
-			try {
-				entities = deserializeEntityCollection(new FileInputStream(tempCacheFile));
-			} catch (FileNotFoundException e) {
-				LOGGER.warn("could not access the temp cache file contents", e);
+			Map<String, T> journaled;
+			synchronized (cacheFileMutex) {
+				closeJournal();
+				journaled = this.journaledEntities;
+			}
+			
+			if (journaled != null) {
+				entities = new HashMap<>(journaled);
+			}
+			else {
+				/*
+				 * the entities have been journaled by another process
+				 */
+				LOGGER.info("reloading entities from cache file");
+				try {
+					entities = readEntityFile(tempCacheFile);
+				} catch (IOException e) {
+					LOGGER.warn("could not access the temp cache file contents", e);
+				}
 			}
 		}
 		
 		if (mergeWithPreviousEntries()) {
-			mergePreviousEntries(entities, cacheFile);
+			mergePreviousEntries(entities);
 		}
 		
 		if (entities.size() > 0) {
-		
-			FileOutputStream fileStream;
-			try {
-				fileStream = new FileOutputStream(tempCacheFile);
-			} catch (FileNotFoundException e) {
-				throw new CacheException(e);
-			}
-			
-			
-			LOGGER.info("storing cache to temporary file "+ tempCacheFile.getAbsolutePath());
-			for (String id : entities.keySet()) {
-				storeEntity(id, entities.get(id), fileStream);
-			}
-			
-			try {
-				fileStream.close();
-			} catch (IOException e) {
-				throw new CacheException(e);
-			}
-			fileStream = null;
-			
 			synchronized (cacheFileMutex) {
-				try {
-					LOGGER.info("replacing target cache file "+ cacheFile.getAbsolutePath());
-					Files.copy(tempCacheFile.toPath(), this.cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-					tempCacheFile.delete();
-				} catch (IOException e) {
-					throw new CacheException(e);
-				}
+				writeAndPublish(entities);
+				finishBuild(tempCacheFile);
+			}
+		}
+		
+	}
+	
+	/**
+	 * stores the result of an incremental update. An interrupted build
+	 * (temporary file and checkpoint) is left untouched.
+	 * 
+	 * @param entities the complete contents of the new generation
+	 * @param watermark the watermark of the new generation, see
+	 * {@link #getGenerationWatermark()}
+	 */
+	protected synchronized void storeIncrementalUpdate(Map<String, T> entities, String watermark) throws CacheException {
+		synchronized (cacheFileMutex) {
+			if (!entities.isEmpty()) {
+				writeAndPublish(entities);
 			}
+			storeGenerationWatermark(watermark);
+		}
+	}
+	
+	private void writeAndPublish(Map<String, T> entities) throws CacheException {
+		File newCacheFile = getNewCacheFile();
+		LOGGER.info("storing cache to file "+ newCacheFile.getAbsolutePath());
+		writeEntityFile(newCacheFile, entities);
+		
+		try {
+			LOGGER.info("replacing target cache file "+ cacheFile.getAbsolutePath());
+			publish(newCacheFile);
+		} catch (IOException e) {
+			throw new CacheException(e);
 		}
 		
+		this.snapshot = new Snapshot<>(entities, this.cacheFile);
 	}
 	
-	private void mergePreviousEntries(Map<String, T> entities,
-			File fileToMerge) {
+	/**
+	 * replaces the cache file with a rename, so that readers of other
+	 * processes never see a partially written file
+	 */
+	private void publish(File newCacheFile) throws IOException {
+		Path source = newCacheFile.toPath();
+		Path target = this.cacheFile.toPath();
 		try {
-			Map<String, T> oldEntries = deserializeEntityCollection(new FileInputStream(fileToMerge));
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (FileSystemException e) {
+			/*
+			 * windows refuses to replace a file that is opened
+			 * by a reader of another process
+			 */
+			LOGGER.warn("Could not rename to the cache file, copying it: "+ e.getMessage());
+			Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+			Files.delete(source);
+		}
+	}
+	
+	private void finishBuild(File tempCacheFile) {
+		this.journaledEntities = null;
+		if (this.checkpoint == null || this.checkpoint.isCompleted()) {
+			if (this.checkpoint != null && this.checkpoint.getWatermark() != null) {
+				storeGenerationWatermark(this.checkpoint.getWatermark());
+			}
+			tempCacheFile.delete();
+			getCheckpointFile().delete();
+			this.checkpoint = null;
+		}
+		else {
+			LOGGER.info(String.format("Cache generation %s of %s is incomplete, keeping its temporary file to resume",
+					this.checkpoint.getGeneration(), getCacheFileName()));
+		}
+	}
+	
+	/**
+	 * adds the entries of the current generation that are missing in the
+	 * new one. The in-memory snapshot is used if it is up to date.
+	 */
+	private void mergePreviousEntries(Map<String, T> entities) {
+		try {
+			Map<String, T> oldEntries;
+			Snapshot<T> current = this.snapshot;
+			if (current != null && current.isCurrent(this.cacheFile)) {
+				oldEntries = current.entities;
+			}
+			else if (hasCacheContent(this.cacheFile)) {
+				oldEntries = readEntityFile(this.cacheFile);
+			}
+			else {
+				return;
+			}
 			
 			for (String key : oldEntries.keySet()) {
 				if (!entities.containsKey(key)) {
@@ -230,7 +594,7 @@ public abstract class AbstractEntityCache<T extends CacheEntity> {
 				}
 			}
 			
-		} catch (FileNotFoundException e) {
+		} catch (IOException e) {
 			LOGGER.warn("Could not read previous cache file", e);
 		}
 	}
@@ -245,9 +609,47 @@ public abstract class AbstractEntityCache<T extends CacheEntity> {
 		}
 	}
 
+	private File getNewCacheFile() {
+		synchronized (cacheFileMutex) {
+			return new File(this.cacheFile.getParent(), getCacheFileName()+".new");
+		}
+	}
+
+	private File getGenerationFile() {
+		synchronized (cacheFileMutex) {
+			return new File(this.cacheFile.getParent(), getCacheFileName()+".generation");
+		}
+	}
+
+	private File getCheckpointFile() {
+		synchronized (cacheFileMutex) {
+			return new File(this.cacheFile.getParent(), getCacheFileName()+".checkpoint");
+		}
+	}
+
+	/**
+	 * returns the current contents of the cache. The returned map
+	 * is immutable and shared between all callers. The cache file is only
+	 * parsed if no snapshot is available yet or if the file has been
+	 * modified since the snapshot was taken (e.g. by another process).
+	 */
 	public Map<String, T> getEntityCollection(AccessGDB geoDB) throws CacheException, CacheNotYetAvailableException {
+		Snapshot<T> current = this.snapshot;
+		if (current != null && current.isCurrent(this.cacheFile)) {
+			return current.entities;
+		}
+		
 		LOGGER.info("getEntityCollection for cache "+getClass().getSimpleName());
 		synchronized (cacheFileMutex) {
+			/*
+			 * another thread might have loaded the file while
+			 * we were waiting for the mutex
+			 */
+			current = this.snapshot;
+			if (current != null && current.isCurrent(this.cacheFile)) {
+				return current.entities;
+			}
+			
 			if (this.cacheFile == null || !(this.isCacheAvailable() && this.hasCacheContent())) {
 				if (geoDB != null) {
 					try {
@@ -265,30 +667,92 @@ public abstract class AbstractEntityCache<T extends CacheEntity> {
 			try {
 				LOGGER.info("Returning data from cache file...");
 				return deserializeCacheFile();
+			} catch (CacheNotYetAvailableException e) {
+				if (current != null) {
+					return current.entities;
+				}
+				throw e;
 			} catch (IOException e) {
+				if (current != null) {
+					/*
+					 * the file is probably just being replaced by
+					 * another process. stick to the previous generation
+					 */
+					LOGGER.warn("Could not read cache file, serving the previous generation: "+ e.getMessage());
+					return current.entities;
+				}
 				throw new CacheException(e);
 			}	
 		}
 	}
+	
+	/**
+	 * re-reads the cache file if it has been replaced since the current
+	 * snapshot was taken, e.g. by the cache update of another process.
+	 * 
+	 * @return true if a new generation has been loaded
+	 * @throws IOException if the file could not be read. The previous
+	 * generation is kept in that case
+	 */
+	public boolean reloadIfModified() throws IOException {
+		synchronized (cacheFileMutex) {
+			Snapshot<T> current = this.snapshot;
+			if (current != null && current.isCurrent(this.cacheFile)) {
+				return false;
+			}
+			
+			if (!hasCacheContent()) {
+				return false;
+			}
+			
+			try {
+				deserializeCacheFile();
+			} catch (CacheNotYetAvailableException e) {
+				return false;
+			}
+			return true;
+		}
+	}
 
 	private void scheduleCacheUpdate() {
-		AbstractCacheScheduler.Instance.instance().forceUpdate();
+		AbstractCacheScheduler scheduler = AbstractCacheScheduler.Instance.instance();
+		if (scheduler != null) {
+			scheduler.forceUpdate();
+		}
 	}
 
 	private Map<String, T> deserializeCacheFile() throws IOException, CacheNotYetAvailableException {
 		synchronized (cacheFileMutex) {
-			FileInputStream fis;
 			if (hasCacheContent()) {
-				fis = new FileInputStream(this.cacheFile);
+				/*
+				 * take the file stats before reading so that a concurrent
+				 * modification results in a reload on the next access
+				 */
+				Snapshot<T> loaded = new Snapshot<>(this.cacheFile);
+				try {
+					loaded.entities = Collections.unmodifiableMap(readEntityFile(this.cacheFile));
+					this.snapshot = loaded;
+					return loaded.entities;
+				} catch (UnsupportedCacheVersionException e) {
+					/*
+					 * written by another version of the service. treat it
+					 * like a missing cache until it has been rebuilt
+					 */
+					LOGGER.info(e.getMessage() +". Scheduling a cache update.");
+					scheduleCacheUpdate();
+				}
 			}
-			else if (hasCacheContent(getTempCacheFile())) {
-				fis = new FileInputStream(getTempCacheFile());
+			
+			if (hasCacheContent(getTempCacheFile())) {
+				/*
+				 * an update is in progress and no previous cache is available.
+				 * the temporary contents are incomplete, so do not keep them
+				 */
+				return Collections.unmodifiableMap(readEntityFile(getTempCacheFile()));
 			}
 			else {
 				throw new CacheNotYetAvailableException();
 			}
-			
-			return deserializeEntityCollection(fis);
 		}
 	}
 	
@@ -350,6 +814,24 @@ public abstract class AbstractEntityCache<T extends CacheEntity> {
 	public int getLatestEntryIndex() {
 		return latestEntryIndex;
 	}
+	
+	/**
+	 * @return the generation (modification time of the cache file) that
+	 * is currently served to readers or 0 if the cache has not been read yet
+	 */
+	public long getServedGeneration() {
+		Snapshot<T> current = this.snapshot;
+		return current == null ? 0 : current.fileModified;
+	}
+	
+	/**
+	 * @return the number of entries of the generation that
+	 * is currently served to readers
+	 */
+	public int getServedEntryCount() {
+		Snapshot<T> current = this.snapshot;
+		return current == null ? 0 : current.entities.size();
+	}
 
 //	public boolean requestUpdateLock() {
 //		File f = getCacheLockFile();
@@ -432,4 +914,30 @@ public abstract class AbstractEntityCache<T extends CacheEntity> {
 
 	public abstract void cancelCurrentExecution();
 
+	/**
+	 * an immutable view on the entities of the cache file, together
+	 * with the file stats at the time it was read or written.
+	 */
+	private static class Snapshot<T> {
+		
+		private Map<String, T> entities;
+		private final long fileModified;
+		private final long fileLength;
+		
+		Snapshot(File file) {
+			this.fileModified = file.lastModified();
+			this.fileLength = file.length();
+		}
+		
+		Snapshot(Map<String, T> entities, File file) {
+			this(file);
+			this.entities = Collections.unmodifiableMap(new HashMap<>(entities));
+		}
+		
+		boolean isCurrent(File file) {
+			return file.lastModified() == this.fileModified && file.length() == this.fileLength;
+		}
+		
+	}
+
 }
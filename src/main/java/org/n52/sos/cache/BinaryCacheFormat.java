@@ -0,0 +1,306 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.n52.util.logging.Logger;
+
+/**
+ * The versioned binary file format of the entity caches.
+ * 
+ * A cache file consists of a fixed size header followed by the
+ * entity records:
+ * <pre>
+ * int   magic ("SOSC")
+ * short container version
+ * short entity format version ({@link EntitySerializer#getEntityFormatVersion()})
+ * int   number of records
+ * long  length of the record section in bytes
+ * long  CRC32 checksum of the record section
+ * </pre>
+ * Every record is prefixed with its length in bytes and holds the
+ * length-prefixed UTF-8 id of the entity followed by the entity
+ * as written by the {@link EntitySerializer}.
+ * 
+ * Temporary files written during a cache update only contain
+ * the plain record sequence (see {@link #appendRecord(OutputStream, String, CacheEntity, EntitySerializer)}),
+ * so that they can be appended to without rewriting a header.
+ */
+public final class BinaryCacheFormat {
+
+	private static final Logger LOGGER = Logger.getLogger(BinaryCacheFormat.class.getName());
+
+	public static final int MAGIC = 0x534F5343;
+
+	public static final short CONTAINER_VERSION = 1;
+
+	public static final int HEADER_LENGTH = 4 + 2 + 2 + 4 + 8 + 8;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int CHECKSUM_CHUNK_SIZE = 64 * 1024;
+
+	private BinaryCacheFormat() {
+	}
+
+	/**
+	 * @return true if the file starts with the header of
+	 * a binary cache file
+	 */
+	public static boolean isBinaryCacheFile(File f) throws IOException {
+		if (!f.exists() || f.length() < HEADER_LENGTH) {
+			return false;
+		}
+		
+		try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+			return raf.readInt() == MAGIC;
+		}
+	}
+
+	/**
+	 * @return true if the file starts with a length-prefixed record,
+	 * as written by {@link #appendRecord(OutputStream, String, CacheEntity, EntitySerializer)}.
+	 * The legacy text format always starts with a printable character.
+	 */
+	public static boolean isRecordSequence(File f) throws IOException {
+		if (!f.exists() || f.length() < 4) {
+			return false;
+		}
+		
+		try (FileInputStream fis = new FileInputStream(f)) {
+			return fis.read() == 0;
+		}
+	}
+
+	public static <T extends CacheEntity> void write(File target, Map<String, T> entities,
+			EntitySerializer<T> serializer) throws IOException, CacheException {
+		CRC32 checksum = new CRC32();
+		long bodyLength = 0;
+		
+		try (FileOutputStream fos = new FileOutputStream(target)) {
+			/*
+			 * reserve the header, it is written once the
+			 * checksum of the records is known
+			 */
+			fos.write(new byte[HEADER_LENGTH]);
+			
+			BufferedOutputStream out = new BufferedOutputStream(fos, CHECKSUM_CHUNK_SIZE);
+			ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(256);
+			for (String id : entities.keySet()) {
+				byte[] record = encodeRecord(id, entities.get(id), serializer, recordBuffer);
+				checksum.update(record, 0, record.length);
+				out.write(record);
+				bodyLength += record.length;
+			}
+			out.flush();
+		}
+		
+		try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+			raf.writeInt(MAGIC);
+			raf.writeShort(CONTAINER_VERSION);
+			raf.writeShort(serializer.getEntityFormatVersion());
+			raf.writeInt(entities.size());
+			raf.writeLong(bodyLength);
+			raf.writeLong(checksum.getValue());
+		}
+	}
+
+	/**
+	 * appends a single record to a record sequence (e.g. the temporary
+	 * file of an ongoing update).
+	 */
+	public static <T extends CacheEntity> void appendRecord(OutputStream out, String id, T entity,
+			EntitySerializer<T> serializer) throws IOException, CacheException {
+		out.write(encodeRecord(id, entity, serializer, new ByteArrayOutputStream(256)));
+	}
+
+	private static <T extends CacheEntity> byte[] encodeRecord(String id, T entity,
+			EntitySerializer<T> serializer, ByteArrayOutputStream buffer) throws IOException, CacheException {
+		buffer.reset();
+		DataOutputStream dos = new DataOutputStream(buffer);
+		dos.writeInt(0);
+		writeString(dos, id);
+		serializer.serialize(entity, dos);
+		dos.flush();
+		
+		byte[] record = buffer.toByteArray();
+		int payloadLength = record.length - 4;
+		record[0] = (byte) (payloadLength >>> 24);
+		record[1] = (byte) (payloadLength >>> 16);
+		record[2] = (byte) (payloadLength >>> 8);
+		record[3] = (byte) payloadLength;
+		return record;
+	}
+
+	/**
+	 * reads a binary cache file into a heap buffer.
+	 * 
+	 * @throws UnsupportedCacheVersionException if the file has been written
+	 * with another format version
+	 * @throws IOException if the header does not match, the file is truncated
+	 * or the checksum of the records is invalid
+	 */
+	public static <T extends CacheEntity> Map<String, T> read(File source,
+			EntitySerializer<T> serializer) throws IOException {
+		ByteBuffer buffer = readFully(source);
+		if (buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC) {
+			throw new IOException("Not a binary cache file: "+ source.getAbsolutePath());
+		}
+		
+		short containerVersion = buffer.getShort();
+		short entityVersion = buffer.getShort();
+		if (containerVersion != CONTAINER_VERSION || entityVersion != serializer.getEntityFormatVersion()) {
+			throw new UnsupportedCacheVersionException(String.format("Unsupported cache file version %s/%s: %s",
+					containerVersion, entityVersion, source.getAbsolutePath()));
+		}
+		
+		int count = buffer.getInt();
+		long bodyLength = buffer.getLong();
+		long expectedChecksum = buffer.getLong();
+		
+		if (bodyLength != buffer.remaining()) {
+			throw new IOException(String.format("Truncated cache file, expected %s bytes but found %s: %s",
+					bodyLength, buffer.remaining(), source.getAbsolutePath()));
+		}
+		
+		if (checksum(buffer) != expectedChecksum) {
+			throw new IOException("Checksum mismatch in cache file: "+ source.getAbsolutePath());
+		}
+		
+		Map<String, T> result = new HashMap<>(Math.max(16, count * 4 / 3 + 1));
+		readRecords(buffer, serializer, result);
+		
+		if (result.size() != count) {
+			LOGGER.warn(String.format("Cache file %s announced %s records, but %s were read",
+					source.getName(), count, result.size()));
+		}
+		return result;
+	}
+
+	/**
+	 * reads a plain record sequence. A trailing incomplete record
+	 * (e.g. from an interrupted write) is ignored.
+	 */
+	public static <T extends CacheEntity> Map<String, T> readRecordSequence(File source,
+			EntitySerializer<T> serializer) throws IOException {
+		ByteBuffer buffer = readFully(source);
+		Map<String, T> result = new HashMap<>();
+		readRecords(buffer, serializer, result);
+		return result;
+	}
+
+	private static <T extends CacheEntity> void readRecords(ByteBuffer buffer,
+			EntitySerializer<T> serializer, Map<String, T> result) throws IOException {
+		while (buffer.remaining() >= 4) {
+			int length = buffer.getInt();
+			if (length < 0 || length > buffer.remaining()) {
+				LOGGER.warn("Ignoring incomplete trailing cache record");
+				return;
+			}
+			
+			int next = buffer.position() + length;
+			ByteBuffer record = buffer.slice();
+			record.limit(length);
+			
+			String id = readString(record);
+			T entity = serializer.deserialize(record);
+			if (id != null && entity != null) {
+				result.put(id, entity);
+			}
+			
+			buffer.position(next);
+		}
+	}
+
+	private static long checksum(ByteBuffer buffer) {
+		ByteBuffer body = buffer.slice();
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[CHECKSUM_CHUNK_SIZE];
+		while (body.hasRemaining()) {
+			int len = Math.min(chunk.length, body.remaining());
+			body.get(chunk, 0, len);
+			crc.update(chunk, 0, len);
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * reads the whole file through a channel instead of mapping it. A
+	 * mapping could only be released by the garbage collector, and
+	 * Windows refuses to replace a file while it is mapped, which would
+	 * block the publishing of the next cache update.
+	 */
+	private static ByteBuffer readFully(File source) throws IOException {
+		try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Cache file too large: "+ source.getAbsolutePath());
+			}
+			
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					throw new IOException("Unexpected end of cache file: "+ source.getAbsolutePath());
+				}
+			}
+			buffer.flip();
+			return buffer;
+		}
+	}
+
+	public static void writeString(DataOutput out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		
+		byte[] bytes = value.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	public static String readString(ByteBuffer buffer) throws IOException {
+		int length = buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+		if (length > buffer.remaining()) {
+			throw new IOException("Invalid string length in cache record: "+ length);
+		}
+		
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * The progress of a cache build, stored next to the temporary cache
+ * file. An interrupted build (shutdown, timeout, database error) is
+ * resumed from the checkpoint by the next update instead of starting
+ * over with an empty temporary file.
+ */
+public class CacheCheckpoint {
+
+	private static final String GENERATION = "generation";
+	private static final String STARTED = "started";
+	private static final String LAST_COMPLETED = "lastCompleted";
+	private static final String LAST_COMPLETED_INDEX = "lastCompletedIndex";
+	private static final String WATERMARK = "watermark";
+
+	private final String generation;
+	private final long started;
+	private String lastCompleted;
+	private int lastCompletedIndex;
+	private String watermark;
+	private boolean completed;
+
+	private CacheCheckpoint(String generation, long started) {
+		this.generation = generation;
+		this.started = started;
+	}
+
+	/**
+	 * @return a checkpoint for a new cache generation
+	 */
+	public static CacheCheckpoint newGeneration() {
+		return new CacheCheckpoint(UUID.randomUUID().toString(), System.currentTimeMillis());
+	}
+
+	/**
+	 * @return the checkpoint stored in the file or null if
+	 * there is none or it cannot be read
+	 */
+	public static CacheCheckpoint read(File f) {
+		if (!f.exists()) {
+			return null;
+		}
+		
+		Properties props = new Properties();
+		try (FileInputStream fis = new FileInputStream(f)) {
+			props.load(fis);
+			
+			String generation = props.getProperty(GENERATION);
+			if (generation == null) {
+				return null;
+			}
+			
+			CacheCheckpoint result = new CacheCheckpoint(generation,
+					Long.parseLong(props.getProperty(STARTED, "0")));
+			result.lastCompleted = props.getProperty(LAST_COMPLETED);
+			result.lastCompletedIndex = Integer.parseInt(props.getProperty(LAST_COMPLETED_INDEX, "0"));
+			result.watermark = props.getProperty(WATERMARK);
+			return result;
+		}
+		catch (IOException | NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * writes the checkpoint to a sibling file which then replaces the
+	 * target, so that an interruption never leaves a partial checkpoint
+	 */
+	public void write(File f) throws IOException {
+		Properties props = new Properties();
+		props.setProperty(GENERATION, this.generation);
+		props.setProperty(STARTED, Long.toString(this.started));
+		props.setProperty(LAST_COMPLETED_INDEX, Integer.toString(this.lastCompletedIndex));
+		if (this.lastCompleted != null) {
+			props.setProperty(LAST_COMPLETED, this.lastCompleted);
+		}
+		if (this.watermark != null) {
+			props.setProperty(WATERMARK, this.watermark);
+		}
+		
+		File tmp = new File(f.getParentFile(), f.getName() + ".tmp");
+		try (FileOutputStream fos = new FileOutputStream(tmp)) {
+			props.store(fos, "cache build checkpoint");
+		}
+		Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	public void entryCompleted(String id, int index) {
+		this.lastCompleted = id;
+		this.lastCompletedIndex = index;
+	}
+
+	public String getGeneration() {
+		return generation;
+	}
+
+	public long getStarted() {
+		return started;
+	}
+
+	public String getLastCompleted() {
+		return lastCompleted;
+	}
+
+	public int getLastCompletedIndex() {
+		return lastCompletedIndex;
+	}
+
+	/**
+	 * @return the latest insertion/update time of the database
+	 * before the generation has been started
+	 */
+	public String getWatermark() {
+		return watermark;
+	}
+
+	public void setWatermark(String watermark) {
+		this.watermark = watermark;
+	}
+
+	public boolean isCompleted() {
+		return completed;
+	}
+
+	public void setCompleted(boolean completed) {
+		this.completed = completed;
+	}
+
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.n52.util.logging.Logger;
+
+/**
+ * Watches the cache directory for cache files written by another
+ * process (the one holding the {@link CacheUpdateLock}) and loads
+ * the new generation into the in-memory snapshot of the affected cache
+ * before the next request needs it.
+ */
+public class CacheDirectoryWatcher implements Runnable {
+
+	private static final Logger LOGGER = Logger.getLogger(CacheDirectoryWatcher.class.getName());
+	
+	/**
+	 * writing a cache file results in a series of events. wait
+	 * until the directory has been quiet for this time
+	 */
+	private static final long QUIET_PERIOD_MS = 2000;
+
+	private final File directory;
+	private final List<AbstractEntityCache<?>> candidates;
+	private WatchService watchService;
+	private Thread watcherThread;
+
+	public CacheDirectoryWatcher(File directory, List<AbstractEntityCache<?>> candidates) {
+		this.directory = directory;
+		this.candidates = candidates;
+	}
+
+	public synchronized void start() throws IOException {
+		if (this.watcherThread != null) {
+			return;
+		}
+		
+		Path dir = this.directory.toPath();
+		this.watchService = dir.getFileSystem().newWatchService();
+		dir.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY);
+		
+		this.watcherThread = new Thread(this, "sos-cache-directory-watcher");
+		this.watcherThread.setDaemon(true);
+		this.watcherThread.start();
+		LOGGER.info("Watching cache directory "+ this.directory.getAbsolutePath());
+	}
+
+	public synchronized void stop() {
+		if (this.watcherThread == null) {
+			return;
+		}
+		
+		try {
+			this.watchService.close();
+		} catch (IOException e) {
+			LOGGER.warn(e.getMessage(), e);
+		}
+		this.watcherThread.interrupt();
+		this.watcherThread = null;
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				Set<String> changed = new HashSet<>();
+				WatchKey key = this.watchService.take();
+				
+				while (key != null) {
+					if (collectChangedFiles(key, changed)) {
+						/*
+						 * events got lost, check all caches
+						 */
+						for (AbstractEntityCache<?> cand : this.candidates) {
+							changed.add(cand.getCacheFileName());
+						}
+					}
+					key.reset();
+					key = this.watchService.poll(QUIET_PERIOD_MS, TimeUnit.MILLISECONDS);
+				}
+				
+				reloadCandidates(changed);
+			}
+		}
+		catch (InterruptedException | ClosedWatchServiceException e) {
+			LOGGER.info("Stopped watching the cache directory");
+		}
+	}
+
+	private boolean collectChangedFiles(WatchKey key, Set<String> changed) {
+		boolean overflow = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				overflow = true;
+			}
+			else if (event.context() instanceof Path) {
+				changed.add(((Path) event.context()).getFileName().toString());
+			}
+		}
+		return overflow;
+	}
+
+	private void reloadCandidates(Set<String> changed) {
+		for (AbstractEntityCache<?> cand : this.candidates) {
+			if (!changed.contains(cand.getCacheFileName())) {
+				continue;
+			}
+			
+			try {
+				if (cand.reloadIfModified()) {
+					LOGGER.info("Loaded new generation of cache "+ cand.getClass().getSimpleName());
+				}
+			}
+			catch (IOException | RuntimeException e) {
+				/*
+				 * the file might still be in the process of being written.
+				 * the next event triggers another attempt
+				 */
+				LOGGER.warn("Could not reload cache "+ cand.getClass().getSimpleName(), e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The append-only temporary file of a cache build. The file is kept open
+ * for the whole build and written through a buffer. Records become
+ * durable at group-commit points: every {@link #getGroupCommitSize()}
+ * records, when the build is checkpointed and when the journal is closed.
+ */
+public class CacheJournal implements Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final FileOutputStream fileStream;
+	private final BufferedOutputStream out;
+	private final int groupCommitSize;
+	private int pendingRecords;
+
+	/**
+	 * @param file the journal file. records are appended to existing contents
+	 * @param groupCommitSize the number of records after which the
+	 * journal is committed to disk
+	 */
+	public CacheJournal(File file, int groupCommitSize) throws IOException {
+		this.fileStream = new FileOutputStream(file, true);
+		this.out = new BufferedOutputStream(this.fileStream, BUFFER_SIZE);
+		this.groupCommitSize = groupCommitSize;
+	}
+
+	/**
+	 * @return the stream to write exactly one record to. Call
+	 * {@link #recordAppended()} afterwards.
+	 */
+	public OutputStream getOutputStream() {
+		return this.out;
+	}
+
+	/**
+	 * @return true if the journal has been committed as the
+	 * group-commit size has been reached
+	 */
+	public boolean recordAppended() throws IOException {
+		this.pendingRecords++;
+		if (this.pendingRecords >= this.groupCommitSize) {
+			commit();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * writes all buffered records to the disk
+	 */
+	public void commit() throws IOException {
+		this.out.flush();
+		this.fileStream.getFD().sync();
+		this.pendingRecords = 0;
+	}
+
+	public int getGroupCommitSize() {
+		return groupCommitSize;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			commit();
+		}
+		finally {
+			this.out.close();
+		}
+	}
+
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import org.joda.time.DateTime;
+import org.n52.util.logging.Logger;
+
+/**
+ * An OS-level lock on the cache.lock file of a cache directory. All SOC
+ * processes of a service share the cache directory; the process holding
+ * this lock is the only one allowed to rebuild the caches. The operating
+ * system releases the lock if the holding process dies, so a stale lock
+ * cannot survive a crashed process.
+ * <p>
+ * The lock file itself is never deleted: a process could otherwise lock
+ * a file that has already been unlinked by another one.
+ * <p>
+ * The holder writes its name into the file and clears it on release.
+ * Other processes read this owner line to tell whether the lock is held,
+ * probing the OS lock could make the holder's next acquisition fail.
+ * Only a single byte far beyond the owner line is locked, so the line
+ * stays readable on platforms with mandatory locks.
+ */
+public class CacheUpdateLock {
+	
+	private static final Logger LOGGER = Logger.getLogger(CacheUpdateLock.class.getName());
+
+	private static final long LOCK_POSITION = Long.MAX_VALUE - 1;
+
+	private final File lockFile;
+	private FileChannel channel;
+	private FileLock lock;
+	private long acquiredAt;
+
+	public CacheUpdateLock(File lockFile) {
+		this.lockFile = lockFile;
+	}
+
+	/**
+	 * @return true if the lock has been acquired, false if it is
+	 * already held by this or another process
+	 * @throws IOException if the lock file could not be accessed
+	 */
+	public synchronized boolean tryAcquire() throws IOException {
+		if (this.lock != null) {
+			return false;
+		}
+		
+		FileChannel ch = openChannel();
+		FileLock fl = tryLock(ch);
+		if (fl == null) {
+			ch.close();
+			return false;
+		}
+		
+		this.channel = ch;
+		this.lock = fl;
+		this.acquiredAt = System.currentTimeMillis();
+		try {
+			writeOwner();
+		}
+		catch (IOException e) {
+			LOGGER.warn("Could not write the owner of the cache.lock file", e);
+		}
+		return true;
+	}
+
+	/**
+	 * releases the lock if it is held by this process
+	 */
+	public synchronized void release() throws IOException {
+		if (this.lock == null) {
+			return;
+		}
+		
+		try {
+			clearOwner();
+		}
+		catch (IOException e) {
+			LOGGER.warn("Could not clear the owner of the cache.lock file", e);
+		}
+		
+		try {
+			this.lock.release();
+		}
+		finally {
+			this.channel.close();
+			this.lock = null;
+			this.channel = null;
+			this.acquiredAt = 0;
+		}
+	}
+
+	public synchronized boolean isHeldByThisProcess() {
+		return this.lock != null;
+	}
+
+	/**
+	 * @return true if this or any other process holds the lock, as told
+	 * by the owner line of the file. The line of a process that died
+	 * while holding the lock remains until the next process acquires it.
+	 */
+	public synchronized boolean isHeld() throws IOException {
+		if (this.lock != null) {
+			return true;
+		}
+		
+		if (!this.lockFile.exists()) {
+			return false;
+		}
+		
+		return this.lockFile.length() > 0;
+	}
+
+	/**
+	 * @return the time the lock has been acquired by this process
+	 * or 0 if it is not held by this process
+	 */
+	public synchronized long getAcquiredAt() {
+		return this.acquiredAt;
+	}
+
+	private FileChannel openChannel() throws IOException {
+		return FileChannel.open(this.lockFile.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+	}
+
+	private FileLock tryLock(FileChannel ch) throws IOException {
+		try {
+			return ch.tryLock(LOCK_POSITION, 1, false);
+		}
+		catch (OverlappingFileLockException e) {
+			/*
+			 * another channel of this JVM holds the lock
+			 */
+			return null;
+		}
+		catch (IOException e) {
+			ch.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * stores the holder of the lock in the file, helpful when
+	 * analysing a hanging update
+	 */
+	private void writeOwner() throws IOException {
+		String owner = ManagementFactory.getRuntimeMXBean().getName()
+				+ " since " + new DateTime(this.acquiredAt).toString();
+		this.channel.truncate(0);
+		this.channel.write(ByteBuffer.wrap(owner.getBytes(StandardCharsets.UTF_8)), 0);
+		this.channel.force(false);
+	}
+
+	private void clearOwner() throws IOException {
+		this.channel.truncate(0);
+		this.channel.force(false);
+	}
+
+}
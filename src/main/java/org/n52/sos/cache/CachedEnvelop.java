@@ -32,6 +32,11 @@ public class CachedEnvelop implements EnvelopeWrapper {
 		this.upperRight = new Point(Double.parseDouble(split[2]), Double.parseDouble(split[3]));
 	}
 
+	public CachedEnvelop(double minX, double minY, double maxX, double maxY) {
+		this.lowerLeft = new Point(minX, minY);
+		this.upperRight = new Point(maxX, maxY);
+	}
+
 	@Override
 	public boolean isEmpty() throws IOException {
 		return this.lowerLeft.equals(this.upperRight);
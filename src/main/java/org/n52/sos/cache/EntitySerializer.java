@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Serializes single cache entities into the binary cache
+ * format (see {@link BinaryCacheFormat}). Implementations
+ * have to be stateless as they are shared by reading and
+ * writing threads.
+ *
+ * @param <T> the type of the cache entity
+ */
+public interface EntitySerializer<T extends CacheEntity> {
+
+	/**
+	 * @return the version of the entity encoding. Files written with
+	 * a different version are treated like a missing cache and an
+	 * update is scheduled.
+	 */
+	int getEntityFormatVersion();
+
+	void serialize(T entity, DataOutput out) throws IOException, CacheException;
+
+	/**
+	 * @param buffer the buffer positioned at the start of an
+	 * entity as written by {@link #serialize(CacheEntity, DataOutput)}
+	 */
+	T deserialize(ByteBuffer buffer) throws IOException;
+
+}
@@ -20,15 +20,24 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.n52.oxf.valueDomains.time.ITimePeriod;
+import org.n52.oxf.valueDomains.time.ITimePosition;
+import org.n52.oxf.valueDomains.time.TimePeriod;
 import org.n52.sos.dataTypes.EnvelopeWrapper;
 import org.n52.sos.dataTypes.ObservationOffering;
 import org.n52.sos.db.AccessGDB;
+import org.n52.sos.db.AccessGdbForOfferings;
 
 public class ObservationOfferingCache extends AbstractEntityCache<ObservationOffering> {
 
 	private static final String TOKEN_SEP = "@@";
+	private static final ObservationOfferingSerializer SERIALIZER = new ObservationOfferingSerializer();
 	private static ObservationOfferingCache instance;
 
 	public static synchronized ObservationOfferingCache instance(String dbName) throws FileNotFoundException {
@@ -43,7 +52,7 @@ public class ObservationOfferingCache extends AbstractEntityCache<ObservationOff
 		return instance;
 	}
 
-	private boolean cancelled;
+	private volatile boolean cancelled;
 	
 	private ObservationOfferingCache(String dbName) throws FileNotFoundException {
 		super(dbName);
@@ -103,19 +112,42 @@ public class ObservationOfferingCache extends AbstractEntityCache<ObservationOff
 	protected Collection<ObservationOffering> getCollectionFromDAO(AccessGDB geoDB)
 			throws IOException {
 		this.cancelled = false;
-		clearTempCacheFile();
+		final Set<String> alreadyRetrieved = startOrResumeBuild();
+		
+		if (alreadyRetrieved.isEmpty()) {
+			/*
+			 * a new generation reflects all changes up to now. a resumed
+			 * one keeps the watermark of its start
+			 */
+			try {
+				setBuildWatermark(geoDB.getOfferingAccess().resolveValueWatermark());
+			} catch (IOException e) {
+				LOGGER.warn("Could not resolve the watermark of the new cache generation: "+ e.getMessage());
+			}
+		}
 		
 		geoDB.getOfferingAccess().getNetworksAsObservationOfferingsAsync(new OnOfferingRetrieved() {
 			
-			int count = 0;
+			int count = alreadyRetrieved.size();
 			
 			@Override
 			public void retrieveExpectedOfferingsCount(int c) {
 				setMaximumEntries(c);
 			}
 			
+			@Override
+			public boolean isAlreadyRetrieved(String offeringId) {
+				return alreadyRetrieved.contains(offeringId);
+			}
+			
+			@Override
+			public boolean isCancelled() {
+				return cancelled;
+			}
+			
 			@Override
 			public void retrieveOffering(ObservationOffering oo, int currentOfferingIndex) throws RetrievingCancelledException {
+				checkpointEntry(oo.getId(), currentOfferingIndex);
 				storeTemporaryEntity(oo);
 				setLatestEntryIndex(currentOfferingIndex);
 				LOGGER.info(String.format("Added ObservationOffering #%s to the cache.", count++));
@@ -126,10 +158,176 @@ public class ObservationOfferingCache extends AbstractEntityCache<ObservationOff
 			}
 			
 		});
+		
+		if (!this.cancelled) {
+			completeBuild();
+			refreshIdentifierIndex(geoDB);
+			refreshSpatialIndex(geoDB);
+		}
 		return Collections.emptyList();
 	}
+	
+	/**
+	 * the procedure identifier index is refreshed together with
+	 * the offerings, as both reflect the networks and procedures
+	 */
+	private void refreshIdentifierIndex(AccessGDB geoDB) {
+		try {
+			geoDB.getProcedureAccess().refreshIdentifierIndex();
+		} catch (IOException e) {
+			LOGGER.warn("Could not refresh the procedure identifier index: "+ e.getMessage());
+		}
+	}
+	
+	/**
+	 * the spatial index of the features of interest follows the
+	 * observed areas of the offerings
+	 */
+	private void refreshSpatialIndex(AccessGDB geoDB) {
+		try {
+			geoDB.getFeatureAccess().refreshSpatialIndex();
+		} catch (IOException e) {
+			LOGGER.warn("Could not refresh the feature spatial index: "+ e.getMessage());
+		}
+	}
 
 
+	@Override
+	public boolean supportsIncrementalUpdate() {
+		return true;
+	}
+	
+	/**
+	 * widens the time extents, observed properties and envelopes of the
+	 * networks with values inserted or updated since the watermark of
+	 * the current generation. Removed values are only reflected by the
+	 * next full update.
+	 */
+	@Override
+	public void updateCacheIncrementally(AccessGDB geoDB) throws CacheException, IOException {
+		this.cancelled = false;
+		String watermark = getGenerationWatermark();
+		
+		Map<String, ObservationOffering> current = null;
+		if (watermark != null) {
+			try {
+				current = getEntityCollection(geoDB);
+			} catch (CacheNotYetAvailableException e) {
+				current = null;
+			}
+		}
+		
+		if (current == null || current.isEmpty()) {
+			LOGGER.info("No cache generation with a watermark available. Doing a full update.");
+			updateCache(geoDB);
+			return;
+		}
+		
+		AccessGdbForOfferings access = geoDB.getOfferingAccess();
+		String newWatermark = access.resolveValueWatermark();
+		if (newWatermark == null) {
+			LOGGER.info("Database provides no watermark. Skipping incremental update.");
+			return;
+		}
+		
+		long start = System.currentTimeMillis();
+		final Map<String, ObservationOffering> merged = new HashMap<>(current);
+		final AtomicInteger changed = new AtomicInteger();
+		
+		access.getChangedNetworksAsObservationOfferingsAsync(watermark, new OnOfferingRetrieved() {
+			
+			@Override
+			public void retrieveExpectedOfferingsCount(int c) {
+			}
+			
+			@Override
+			public boolean isAlreadyRetrieved(String offeringId) {
+				return false;
+			}
+			
+			@Override
+			public boolean isCancelled() {
+				return cancelled;
+			}
+			
+			@Override
+			public void retrieveOffering(ObservationOffering oo, int currentOfferingIndex) throws RetrievingCancelledException {
+				if (cancelled) {
+					throw new RetrievingCancelledException("Incremental cache update cancelled.");
+				}
+				
+				ObservationOffering existing = merged.get(oo.getId());
+				merged.put(oo.getId(), existing == null ? oo : widen(existing, oo));
+				changed.incrementAndGet();
+			}
+			
+		});
+		
+		if (this.cancelled) {
+			LOGGER.info("Incremental cache update cancelled. Keeping watermark "+ watermark);
+			return;
+		}
+		
+		storeIncrementalUpdate(changed.get() > 0 ? merged : new HashMap<String, ObservationOffering>(), newWatermark);
+		refreshIdentifierIndex(geoDB);
+		refreshSpatialIndex(geoDB);
+		LOGGER.info(String.format("Incremental update since %s changed %s offerings in %s ms. New watermark: %s",
+				watermark, changed.get(), System.currentTimeMillis() - start, newWatermark));
+	}
+	
+	ObservationOffering widen(ObservationOffering existing, ObservationOffering delta) {
+		Set<String> props = new LinkedHashSet<>();
+		if (existing.getObservedProperties() != null) {
+			props.addAll(Arrays.asList(existing.getObservedProperties()));
+		}
+		if (delta.getObservedProperties() != null) {
+			props.addAll(Arrays.asList(delta.getObservedProperties()));
+		}
+		
+		return new ObservationOffering(existing.getId(), existing.getName(),
+				props.toArray(new String[props.size()]), existing.getProcedureIdentifier(),
+				widen(existing.getObservedArea(), delta.getObservedArea()),
+				widen(existing.getTimeExtent(), delta.getTimeExtent()));
+	}
+	
+	private EnvelopeWrapper widen(EnvelopeWrapper existing, EnvelopeWrapper delta) {
+		try {
+			if (existing == null || existing.isEmpty()) {
+				return delta;
+			}
+			if (delta == null || delta.isEmpty()) {
+				return existing;
+			}
+			
+			return new CachedEnvelop(
+					Math.min(existing.getLowerLeft().getX(), delta.getLowerLeft().getX()),
+					Math.min(existing.getLowerLeft().getY(), delta.getLowerLeft().getY()),
+					Math.max(existing.getUpperRight().getX(), delta.getUpperRight().getX()),
+					Math.max(existing.getUpperRight().getY(), delta.getUpperRight().getY()));
+		} catch (IOException e) {
+			LOGGER.warn("Could not merge envelopes: "+ e.getMessage());
+			return existing;
+		}
+	}
+	
+	private ITimePeriod widen(ITimePeriod existing, ITimePeriod delta) {
+		if (existing == null) {
+			return delta;
+		}
+		if (delta == null) {
+			return existing;
+		}
+		
+		ITimePosition start = existing.getStart().before(delta.getStart()) ? existing.getStart() : delta.getStart();
+		ITimePosition end = existing.getEnd().after(delta.getEnd()) ? existing.getEnd() : delta.getEnd();
+		return new TimePeriod(start, end);
+	}
+
+	@Override
+	protected EntitySerializer<ObservationOffering> getEntitySerializer() {
+		return SERIALIZER;
+	}
+
 	@Override
 	protected AbstractEntityCache<ObservationOffering> getSingleInstance() {
 		return instance;
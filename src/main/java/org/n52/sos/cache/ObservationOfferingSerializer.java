@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.n52.oxf.valueDomains.time.ITimePeriod;
+import org.n52.oxf.valueDomains.time.TimePeriod;
+import org.n52.sos.dataTypes.EnvelopeWrapper;
+import org.n52.sos.dataTypes.ObservationOffering;
+
+/**
+ * Binary encoding of {@link ObservationOffering}s. Envelopes are stored
+ * as raw doubles, time extents as their ISO 8601 representation, which
+ * keeps fractional seconds and the original (or missing) UTC offset.
+ */
+public class ObservationOfferingSerializer implements EntitySerializer<ObservationOffering> {
+
+	private static final int VERSION = 2;
+
+	@Override
+	public int getEntityFormatVersion() {
+		return VERSION;
+	}
+
+	@Override
+	public void serialize(ObservationOffering entity, DataOutput out)
+			throws IOException, CacheException {
+		BinaryCacheFormat.writeString(out, entity.getId());
+		BinaryCacheFormat.writeString(out, entity.getName());
+		BinaryCacheFormat.writeString(out, entity.getProcedureIdentifier());
+		
+		EnvelopeWrapper env = entity.getObservedArea();
+		out.writeBoolean(env != null);
+		if (env != null) {
+			out.writeDouble(env.getLowerLeft().getX());
+			out.writeDouble(env.getLowerLeft().getY());
+			out.writeDouble(env.getUpperRight().getX());
+			out.writeDouble(env.getUpperRight().getY());
+		}
+		
+		String[] props = entity.getObservedProperties();
+		out.writeInt(props == null ? -1 : props.length);
+		if (props != null) {
+			for (String p : props) {
+				BinaryCacheFormat.writeString(out, p);
+			}
+		}
+		
+		ITimePeriod time = entity.getTimeExtent();
+		out.writeBoolean(time != null);
+		if (time != null) {
+			BinaryCacheFormat.writeString(out, time.getStart().toISO8601Format());
+			BinaryCacheFormat.writeString(out, time.getEnd().toISO8601Format());
+		}
+	}
+
+	@Override
+	public ObservationOffering deserialize(ByteBuffer buffer) throws IOException {
+		String id = BinaryCacheFormat.readString(buffer);
+		String name = BinaryCacheFormat.readString(buffer);
+		String proc = BinaryCacheFormat.readString(buffer);
+		
+		EnvelopeWrapper env = null;
+		if (buffer.get() != 0) {
+			env = new CachedEnvelop(buffer.getDouble(), buffer.getDouble(),
+					buffer.getDouble(), buffer.getDouble());
+		}
+		
+		String[] props = null;
+		int propCount = buffer.getInt();
+		if (propCount >= 0) {
+			props = new String[propCount];
+			for (int i = 0; i < propCount; i++) {
+				props[i] = BinaryCacheFormat.readString(buffer);
+			}
+		}
+		
+		ITimePeriod time = null;
+		if (buffer.get() != 0) {
+			String start = BinaryCacheFormat.readString(buffer);
+			String end = BinaryCacheFormat.readString(buffer);
+			time = new TimePeriod(start, end);
+		}
+		
+		return new ObservationOffering(id, name, props, proc, env, time);
+	}
+
+}
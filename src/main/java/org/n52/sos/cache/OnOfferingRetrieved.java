@@ -22,6 +22,19 @@ public interface OnOfferingRetrieved {
 	void retrieveOffering(ObservationOffering oo, int currentOfferingIndex) throws RetrievingCancelledException;
 
 	void retrieveExpectedOfferingsCount(int count);
+	
+	/**
+	 * @param offeringId the id of the offering (network)
+	 * @return true if the offering has already been retrieved by a previous,
+	 * interrupted run. It is not queried again.
+	 */
+	boolean isAlreadyRetrieved(String offeringId);
+	
+	/**
+	 * @return true if the retrieval shall be stopped. Pending
+	 * computations of offerings are cancelled.
+	 */
+	boolean isCancelled();
 
 	public static class RetrievingCancelledException extends Exception {
 		
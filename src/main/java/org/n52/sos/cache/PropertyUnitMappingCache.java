@@ -32,6 +32,7 @@ public class PropertyUnitMappingCache extends
 
 	private static final Logger logger = Logger
 			.getLogger(PropertyUnitMappingCache.class.getName());
+	private static final PropertyUnitMappingSerializer SERIALIZER = new PropertyUnitMappingSerializer();
 	private static PropertyUnitMappingCache instance;
 
 	private Map<Integer, Unit> propertyUnitMap = null;
@@ -109,6 +110,11 @@ public class PropertyUnitMappingCache extends
 		return geoDB.getProcedureAccess().getPropertyUnitMappings();
 	}
 
+	@Override
+	protected EntitySerializer<PropertyUnitMapping> getEntitySerializer() {
+		return SERIALIZER;
+	}
+
 	@Override
 	protected AbstractEntityCache<PropertyUnitMapping> getSingleInstance() {
 		return instance;
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.n52.sos.dataTypes.PropertyUnitMapping;
+
+/**
+ * Binary encoding of {@link PropertyUnitMapping}s as a
+ * sequence of int pairs.
+ */
+public class PropertyUnitMappingSerializer implements EntitySerializer<PropertyUnitMapping> {
+
+	private static final int VERSION = 1;
+
+	@Override
+	public int getEntityFormatVersion() {
+		return VERSION;
+	}
+
+	@Override
+	public void serialize(PropertyUnitMapping entity, DataOutput out)
+			throws IOException, CacheException {
+		if (entity.size() == 0) {
+			throw new CacheException("No entries in PropertyUnitMappings! Check the database query");
+		}
+		
+		out.writeInt(entity.size());
+		for (Integer propertyId : entity.keySet()) {
+			out.writeInt(propertyId);
+			out.writeInt(entity.get(propertyId));
+		}
+	}
+
+	@Override
+	public PropertyUnitMapping deserialize(ByteBuffer buffer) throws IOException {
+		PropertyUnitMapping result = new PropertyUnitMapping();
+		
+		int count = buffer.getInt();
+		for (int i = 0; i < count; i++) {
+			int key = buffer.getInt();
+			int value = buffer.getInt();
+			result.put(key, value);
+		}
+		
+		return result;
+	}
+
+}
@@ -0,0 +1,253 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.n52.util.logging.Logger;
+
+/**
+ * Paces the queries of a cache rebuild. The pause between two queries is
+ * adapted to the load of the database (AIMD): it is decreased by a constant
+ * step while the query latency stays near its observed baseline and doubled
+ * as soon as the latency rises or live requests are being served by this
+ * process. An idle database is rebuilt at full speed while the rebuild backs
+ * off during daytime traffic.
+ * 
+ * The baseline is kept per kind of query, as a cheap network listing
+ * would otherwise make every time extent query look congested.
+ */
+public class RebuildPacer {
+
+	private static final Logger LOGGER = Logger.getLogger(RebuildPacer.class.getName());
+
+	public static final String QUERY_NETWORKS = "networks";
+
+	public static final String QUERY_TIME = "time";
+
+	public static final String QUERY_PROPERTIES = "properties";
+
+	public static final String QUERY_FEATURES = "features";
+
+	public static final String QUERY_WATERMARK = "watermark";
+
+	public static final long INITIAL_DELAY_MS = 200;
+
+	public static final long MAXIMUM_DELAY_MS = 10000;
+
+	/**
+	 * the additive decrease of the pause on a healthy query
+	 */
+	private static final long DELAY_STEP_MS = 20;
+
+	/**
+	 * the smallest pause after a backoff
+	 */
+	private static final long MINIMUM_BACKOFF_MS = 50;
+
+	/**
+	 * latencies below this are considered noise
+	 */
+	private static final long LATENCY_TOLERANCE_MS = 50;
+
+	/**
+	 * back off if at least this number of live requests is in progress
+	 */
+	private static final int BUSY_REQUEST_COUNT = 2;
+
+	private static final long MINIMUM_QUERY_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(2);
+
+	private static final long MAXIMUM_QUERY_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(10);
+
+	private static final double LATENCY_WEIGHT = 0.2;
+
+	private static final double BASELINE_WEIGHT = 0.01;
+
+	private static RebuildPacer instance;
+
+	private final AtomicInteger liveRequests = new AtomicInteger();
+	private long delay = INITIAL_DELAY_MS;
+	private double latency;
+	private long queryCount;
+	private final Map<String, QueryLatency> latencies = new HashMap<>();
+
+	public static synchronized RebuildPacer instance() {
+		if (instance == null) {
+			instance = new RebuildPacer();
+		}
+		
+		return instance;
+	}
+
+	/**
+	 * waits the current pause before the next rebuild query. An
+	 * interruption (cancelled rebuild) ends the pause immediately.
+	 */
+	public void pause() {
+		long d = getCurrentDelay();
+		if (d <= 0) {
+			return;
+		}
+		
+		try {
+			Thread.sleep(d);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * adapts the pause to the latency of a completed rebuild query
+	 * 
+	 * @param kind the kind of query, one of the QUERY_* constants
+	 * @param latencyMs the time the query took
+	 */
+	public synchronized void queryCompleted(String kind, long latencyMs) {
+		this.queryCount++;
+		if (this.queryCount == 1) {
+			this.latency = latencyMs;
+		}
+		else {
+			this.latency += (latencyMs - this.latency) * LATENCY_WEIGHT;
+		}
+		
+		QueryLatency query = this.latencies.get(kind);
+		if (query == null) {
+			query = new QueryLatency(latencyMs);
+			this.latencies.put(kind, query);
+		}
+		else {
+			query.update(latencyMs);
+		}
+		
+		if (isCongested(query)) {
+			backOff(query);
+		}
+		else {
+			this.delay = Math.max(0, this.delay - DELAY_STEP_MS);
+		}
+	}
+
+	/**
+	 * backs off after a failed or timed out rebuild query
+	 */
+	public synchronized void queryFailed() {
+		backOff(null);
+	}
+
+	private boolean isCongested(QueryLatency query) {
+		return this.liveRequests.get() >= BUSY_REQUEST_COUNT
+				|| query.latency > 2 * query.baseline + LATENCY_TOLERANCE_MS;
+	}
+
+	private void backOff(QueryLatency query) {
+		long previous = this.delay;
+		this.delay = Math.min(MAXIMUM_DELAY_MS, Math.max(MINIMUM_BACKOFF_MS, this.delay * 2));
+		if (previous != this.delay) {
+			LOGGER.debug(String.format("Rebuild backing off: pause %s ms, %s, live requests %s",
+					this.delay, query == null ? "query failed" : query, this.liveRequests.get()));
+		}
+	}
+
+	public void requestStarted() {
+		this.liveRequests.incrementAndGet();
+	}
+
+	public void requestFinished() {
+		this.liveRequests.decrementAndGet();
+	}
+
+	/**
+	 * @return the time to wait for a single rebuild query or row. It
+	 * grows with the observed latency so that a slow but healthy database
+	 * does not cancel the rebuild.
+	 */
+	public synchronized long getQueryTimeout() {
+		return Math.min(MAXIMUM_QUERY_TIMEOUT_MS,
+				Math.max(MINIMUM_QUERY_TIMEOUT_MS, (long) (this.latency * 10)));
+	}
+
+	public synchronized long getCurrentDelay() {
+		return delay;
+	}
+
+	public synchronized long getAverageLatency() {
+		return Math.round(latency);
+	}
+
+	/**
+	 * @return the baseline latency per kind of query
+	 */
+	public synchronized Map<String, Long> getBaselineLatencies() {
+		Map<String, Long> result = new TreeMap<>();
+		for (Map.Entry<String, QueryLatency> entry : this.latencies.entrySet()) {
+			result.put(entry.getKey(), Math.round(entry.getValue().baseline));
+		}
+		return result;
+	}
+
+	/**
+	 * @return the current rate of rebuild queries, derived from
+	 * the pause and the average latency
+	 */
+	public synchronized double getQueriesPerMinute() {
+		double perQuery = this.delay + this.latency;
+		if (perQuery <= 0) {
+			return 0;
+		}
+		return TimeUnit.MINUTES.toMillis(1) / perQuery;
+	}
+
+	public int getLiveRequests() {
+		return liveRequests.get();
+	}
+
+	/**
+	 * the smoothed latency of one kind of query and its baseline
+	 */
+	private static class QueryLatency {
+
+		private double latency;
+		private double baseline;
+
+		QueryLatency(long latencyMs) {
+			this.latency = latencyMs;
+			this.baseline = latencyMs;
+		}
+
+		void update(long latencyMs) {
+			this.latency += (latencyMs - this.latency) * LATENCY_WEIGHT;
+			/*
+			 * the baseline follows a lower smoothed latency right away
+			 * and a higher one only slowly. A single fast query does
+			 * not pull it down.
+			 */
+			this.baseline = Math.min(this.latency,
+					this.baseline + (latencyMs - this.baseline) * BASELINE_WEIGHT);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("latency %.0f ms (baseline %.0f ms)", this.latency, this.baseline);
+		}
+
+	}
+
+}
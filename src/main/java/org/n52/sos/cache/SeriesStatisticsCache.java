@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.n52.sos.dataTypes.SeriesStatistics;
+import org.n52.sos.db.AccessGDB;
+import org.n52.util.logging.Logger;
+
+/**
+ * Holds the number of values per time series, aggregation type and day.
+ * Used to estimate the size of a GetObservation response without
+ * counting the values in the database.
+ */
+public class SeriesStatisticsCache extends AbstractEntityCache<SeriesStatistics> {
+
+	private static final Logger logger = Logger.getLogger(SeriesStatisticsCache.class.getName());
+	private static final String TOKEN_SEP = "@@";
+	private static final SeriesStatisticsSerializer SERIALIZER = new SeriesStatisticsSerializer();
+	private static SeriesStatisticsCache instance;
+
+	public static synchronized SeriesStatisticsCache instance(String dbName) throws FileNotFoundException {
+		if (instance == null) {
+			instance = new SeriesStatisticsCache(dbName);
+		}
+		
+		return instance;
+	}
+
+	private SeriesStatisticsCache(String dbName) throws FileNotFoundException {
+		super(dbName);
+	}
+
+	@Override
+	protected String getCacheFileName() {
+		return "seriesStatistics.cache";
+	}
+
+	@Override
+	protected String serializeEntity(SeriesStatistics entity)
+			throws CacheException {
+		StringBuilder sb = new StringBuilder();
+		sb.append(entity.getNetwork());
+		sb.append(TOKEN_SEP);
+		sb.append(entity.getProcedure());
+		sb.append(TOKEN_SEP);
+		sb.append(entity.getFeature());
+		sb.append(TOKEN_SEP);
+		sb.append(entity.getProperty());
+		
+		Map<String, SortedMap<Integer, Integer>> counts = entity.getDailyCounts();
+		for (String type : counts.keySet()) {
+			sb.append(TOKEN_SEP);
+			sb.append(type);
+			sb.append("|");
+			for (Map.Entry<Integer, Integer> day : counts.get(type).entrySet()) {
+				sb.append(day.getKey());
+				sb.append("=");
+				sb.append(day.getValue());
+				sb.append(",");
+			}
+			sb.deleteCharAt(sb.length() - 1);
+		}
+		
+		return sb.toString();
+	}
+
+	@Override
+	protected SeriesStatistics deserializeEntity(String line) {
+		String[] tokens = line.split(TOKEN_SEP);
+		SeriesStatistics result = new SeriesStatistics(tokens[0], tokens[1], tokens[2], tokens[3]);
+		
+		for (int i = 4; i < tokens.length; i++) {
+			int typeEnd = tokens[i].lastIndexOf("|");
+			String type = tokens[i].substring(0, typeEnd);
+			for (String day : tokens[i].substring(typeEnd + 1).split(",")) {
+				String[] kvp = day.split("=");
+				try {
+					result.addCount(type, Integer.parseInt(kvp[0]), Integer.parseInt(kvp[1]));
+				} catch (NumberFormatException | IndexOutOfBoundsException e) {
+					logger.warn(e.getMessage(), e);
+				}
+			}
+		}
+		
+		return result;
+	}
+
+	@Override
+	protected Collection<SeriesStatistics> getCollectionFromDAO(AccessGDB geoDB)
+			throws IOException {
+		logger.info("Retrieving series statistics...");
+		return geoDB.getObservationAccess().getSeriesStatistics();
+	}
+
+	@Override
+	protected EntitySerializer<SeriesStatistics> getEntitySerializer() {
+		return SERIALIZER;
+	}
+
+	@Override
+	protected AbstractEntityCache<SeriesStatistics> getSingleInstance() {
+		return instance;
+	}
+
+	/**
+	 * in contrast to {@link #getEntityCollection(AccessGDB)}, a missing
+	 * cache does not trigger an update.
+	 * 
+	 * @return the statistics, or null if none are available
+	 */
+	public Map<String, SeriesStatistics> getAvailableStatistics() {
+		if (!isCacheAvailable() || !hasCacheContent()) {
+			return null;
+		}
+		
+		try {
+			return getEntityCollection(null);
+		} catch (CacheException | CacheNotYetAvailableException e) {
+			logger.warn("Series statistics not available: "+ e.getMessage());
+			return null;
+		}
+	}
+
+	@Override
+	public void cancelCurrentExecution() {
+	}
+
+}
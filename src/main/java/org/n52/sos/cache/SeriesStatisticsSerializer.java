@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.n52.sos.dataTypes.SeriesStatistics;
+
+public class SeriesStatisticsSerializer implements EntitySerializer<SeriesStatistics> {
+
+	private static final int VERSION = 1;
+
+	@Override
+	public int getEntityFormatVersion() {
+		return VERSION;
+	}
+
+	@Override
+	public void serialize(SeriesStatistics entity, DataOutput out)
+			throws IOException, CacheException {
+		BinaryCacheFormat.writeString(out, entity.getNetwork());
+		BinaryCacheFormat.writeString(out, entity.getProcedure());
+		BinaryCacheFormat.writeString(out, entity.getFeature());
+		BinaryCacheFormat.writeString(out, entity.getProperty());
+		
+		Map<String, SortedMap<Integer, Integer>> counts = entity.getDailyCounts();
+		out.writeInt(counts.size());
+		for (String type : counts.keySet()) {
+			BinaryCacheFormat.writeString(out, type);
+			SortedMap<Integer, Integer> days = counts.get(type);
+			out.writeInt(days.size());
+			for (Integer day : days.keySet()) {
+				out.writeInt(day);
+				out.writeInt(days.get(day));
+			}
+		}
+	}
+
+	@Override
+	public SeriesStatistics deserialize(ByteBuffer buffer) throws IOException {
+		SeriesStatistics result = new SeriesStatistics(
+				BinaryCacheFormat.readString(buffer),
+				BinaryCacheFormat.readString(buffer),
+				BinaryCacheFormat.readString(buffer),
+				BinaryCacheFormat.readString(buffer));
+		
+		int typeCount = buffer.getInt();
+		for (int i = 0; i < typeCount; i++) {
+			String type = BinaryCacheFormat.readString(buffer);
+			int dayCount = buffer.getInt();
+			for (int j = 0; j < dayCount; j++) {
+				int day = buffer.getInt();
+				result.addCount(type, day, buffer.getInt());
+			}
+		}
+		
+		return result;
+	}
+
+}
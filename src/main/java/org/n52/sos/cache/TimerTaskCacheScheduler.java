@@ -15,7 +15,6 @@
  */
 package org.n52.sos.cache;
 
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.Thread.State;
@@ -105,6 +104,7 @@ public class TimerTaskCacheScheduler extends AbstractCacheScheduler {
 
 
 	public void shutdown() {
+		stopWatchingCacheDirectory();
 		this.cacheTimer.cancel();
 		this.monitorTimer.cancel();
 		try {
@@ -124,7 +124,7 @@ public class TimerTaskCacheScheduler extends AbstractCacheScheduler {
 	
 
 	public void forceUpdate() {
-		if (isCurrentyLocked()) {
+		if (isCurrentyLocked() || isUpdateLockHeld()) {
 			LOGGER.info("chache updating locked. skipping");
 			return;
 		}
@@ -164,6 +164,10 @@ public class TimerTaskCacheScheduler extends AbstractCacheScheduler {
 				LOGGER.info("update cache... using thread "+ lastSchedulerThread);
 				
 				for (AbstractEntityCache<?> aec : this.candidates) {
+					if (isRecentlyUpdated(aec)) {
+						LOGGER.info("Skipping recently updated cache "+aec.getClass().getSimpleName());
+						continue;
+					}
 					aec.updateCache(getGeoDB());
 				}
 				
@@ -229,6 +233,10 @@ public class TimerTaskCacheScheduler extends AbstractCacheScheduler {
 			
 			boolean isLocked = true;
 			
+			/*
+			 * only a lock of this process can be stale. the operating
+			 * system releases the lock of a process that died
+			 */
 			isLocked = isCurrentyLocked();
 			if (isLocked) {
 				if (target != null && (target.getState() == Thread.State.TIMED_WAITING
@@ -239,14 +247,13 @@ public class TimerTaskCacheScheduler extends AbstractCacheScheduler {
 				
 				try {
 					if (this.maximumAge != Long.MIN_VALUE) {
-						LOGGER.info("Resolving age of cache.lock file");
-						File f = resolveCacheLockFile();
-						if (System.currentTimeMillis() - f.lastModified() > this.maximumAge) {
-							LOGGER.info("Trying to remove artifact cache.lock file due to its age");
+						LOGGER.info("Resolving age of the cache.lock");
+						if (getCacheUpdateLockAge() > this.maximumAge) {
+							LOGGER.info("Trying to release the cache.lock due to its age");
 							freeCacheUpdateLock();	
 						}
 						else {
-							LOGGER.info("cache.lock to young, an update might be in progress.");
+							LOGGER.info("cache.lock too young, an update might be in progress.");
 						}
 					}
 					else if (TimerTaskCacheScheduler.this.lastSchedulerThread != Long.MIN_VALUE) {
@@ -265,7 +272,7 @@ public class TimerTaskCacheScheduler extends AbstractCacheScheduler {
 				
 			}
 			else {
-				LOGGER.info("No stale cache.lock file found.");
+				LOGGER.info("No stale cache.lock found.");
 			}
 			
 		}
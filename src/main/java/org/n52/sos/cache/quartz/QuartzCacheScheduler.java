@@ -15,7 +15,6 @@
  */
 package org.n52.sos.cache.quartz;
 
-import java.io.File;
 import java.io.IOException;
 import java.lang.Thread.State;
 import java.util.Collections;
@@ -64,6 +63,11 @@ public class QuartzCacheScheduler extends AbstractCacheScheduler {
 
 	private Deque<NamedJob> shutdownHooks = new ConcurrentLinkedDeque<>();
 	
+	/**
+	 * the time a cancelled update thread is given to stop
+	 */
+	private static final long UPDATE_THREAD_JOIN_TIMEOUT_MS = 60000;
+	
 //	@Override
 //	public List<AbstractEntityCache<?>> getCandidates() {
 //		List<AbstractEntityCache<?>> result = new ArrayList<>();
@@ -76,6 +80,16 @@ public class QuartzCacheScheduler extends AbstractCacheScheduler {
 //	}
 
 	public QuartzCacheScheduler(AccessGDB geoDB, boolean updateCacheOnStartup, LocalTime cacheUpdateTime) {
+		this(geoDB, updateCacheOnStartup, cacheUpdateTime, 0);
+	}
+	
+	/**
+	 * @param incrementalUpdateInterval the interval of incremental updates
+	 * in ms, see {@link AbstractEntityCache#updateCacheIncrementally(AccessGDB)}.
+	 * 0 disables them
+	 */
+	public QuartzCacheScheduler(AccessGDB geoDB, boolean updateCacheOnStartup, LocalTime cacheUpdateTime,
+			long incrementalUpdateInterval) {
 		super(geoDB, updateCacheOnStartup, cacheUpdateTime);
 		
 		try {
@@ -126,9 +140,30 @@ public class QuartzCacheScheduler extends AbstractCacheScheduler {
 		
 		LOGGER.severe("Next scheduled cache update: "+mdt.toString());
 		
+		if (incrementalUpdateInterval > 0) {
+			try {
+				schedule(new IncrementalUpdateTask(getCandidates()), incrementalUpdateInterval,
+						incrementalUpdateInterval);
+			} catch (SchedulerException e) {
+				LOGGER.warn(e.getMessage(), e);
+			}
+		}
+		
+		try {
+			schedule(new RefreshDimensionTablesTask(), 0, ONE_HOUR_MS);
+		} catch (SchedulerException e) {
+			LOGGER.warn(e.getMessage(), e);
+		}
+		
+		try {
+			schedule(new RefreshLatestValueIndexTask(), ONE_HOUR_MS/60, ONE_HOUR_MS/12);
+		} catch (SchedulerException e) {
+			LOGGER.warn(e.getMessage(), e);
+		}
+		
 		/*
-		 * start ONE monitoring after 1 minute and check if the .lock file
-		 * is older than 30 minutes -> an artifact .lock file!!
+		 * start ONE monitoring after 1 minute and report if the .lock
+		 * has been held for more than 30 minutes
 		 */
 		try {
 			schedule(new MonitorCacheTask(ONE_HOUR_MS/2), ONE_HOUR_MS/60);
@@ -185,7 +220,7 @@ public class QuartzCacheScheduler extends AbstractCacheScheduler {
 	
 
 	public void forceUpdate() {
-		if (isCurrentyLocked()) {
+		if (isCurrentyLocked() || isUpdateLockHeld()) {
 			LOGGER.info("chache updating locked. skipping");
 			return;
 		}
@@ -200,12 +235,13 @@ public class QuartzCacheScheduler extends AbstractCacheScheduler {
 
 	@Override
 	public void shutdown() {
+		stopWatchingCacheDirectory();
 		try {
 			this.quartz.shutdown();
-			freeCacheUpdateLock();
 			for (NamedJob s : this.shutdownHooks) {
 				s.cancelExecution();
 			}
+			freeCacheUpdateLock();
 		} catch (IOException | SchedulerException e) {
 			LOGGER.warn(e.getMessage(), e);
 		}
@@ -245,6 +281,7 @@ public class QuartzCacheScheduler extends AbstractCacheScheduler {
 		private boolean reschedulingAllowed;
 		private AtomicBoolean running;
 		private Thread updateThread;
+		private volatile boolean cancelled;
 
 		/**
 		 * Constructor, allowing rescheduling of failed cache updates
@@ -279,8 +316,8 @@ public class QuartzCacheScheduler extends AbstractCacheScheduler {
 			/*
 			 * do a cache.lock check now and do it sequentially
 			 */
-			MonitorCacheTask freeTask = new MonitorCacheTask(ONE_HOUR_MS/2);
-			freeTask.execute(null);
+			MonitorCacheTask monitorTask = new MonitorCacheTask(ONE_HOUR_MS/2);
+			monitorTask.execute(null);
 			
 			running = new AtomicBoolean(true);
 			updateThread = new Thread(new Runnable() {
@@ -308,6 +345,7 @@ public class QuartzCacheScheduler extends AbstractCacheScheduler {
 			long start = System.currentTimeMillis();
 			while (running.get() && updateThread.getState() != Thread.State.TERMINATED) {
 				if (System.currentTimeMillis()-start > 1000 * 60 * 30) {
+					LOGGER.warn("update thread took more than 30 minutes... cancelling.");
 					cancelUpdateThread(updateThread);
 					break;
 				}
@@ -330,25 +368,41 @@ public class QuartzCacheScheduler extends AbstractCacheScheduler {
 		
 		@Override
 		public void cancelExecution() {
-			for (AbstractEntityCache<?> aec : this.candidates) {
-				aec.cancelCurrentExecution();
+			if (this.running != null) {
+				this.running.getAndSet(false);
 			}
-			this.running.getAndSet(false);
 			cancelUpdateThread(updateThread);
 		}
 		
+		/**
+		 * stops the candidates and waits a bounded time for the update
+		 * thread. The cache.lock is not released here but by the update
+		 * thread itself, so that no other process resumes the build
+		 * while this one may still write to it.
+		 */
 		private void cancelUpdateThread(Thread t) {
-			Map<Thread, StackTraceElement[]> stacks = Collections.singletonMap(t, t.getStackTrace());
+			this.cancelled = true;
+			for (AbstractEntityCache<?> aec : this.candidates) {
+				aec.cancelCurrentExecution();
+			}
+			
+			if (t == null) {
+				return;
+			}
 			
-			LOGGER.warn("update thread took more than 30 minutes... cancelling.  StackTrace: "+
-			dumpAllThreads(stacks));
+			Map<Thread, StackTraceElement[]> stacks = Collections.singletonMap(t, t.getStackTrace());
+			LOGGER.warn("cancelling update thread. StackTrace: "+ dumpAllThreads(stacks));
 			
+			t.interrupt();
 			try {
-				t.interrupt();
-				freeCacheUpdateLock();
-			} catch (IOException e) {
-				LOGGER.warn(e.getMessage(), e);
-			}			
+				t.join(UPDATE_THREAD_JOIN_TIMEOUT_MS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			
+			if (t.isAlive()) {
+				LOGGER.warn("update thread did not stop in time. The cache.lock stays held until it does.");
+			}
 		}
 
 		private void logNextFireTime() {
@@ -385,6 +439,16 @@ public class QuartzCacheScheduler extends AbstractCacheScheduler {
 				LOGGER.info("update cache... using thread "+ lastSchedulerThread);
 				
 				for (AbstractEntityCache<?> aec : this.candidates) {
+					if (this.cancelled || Thread.currentThread().isInterrupted()) {
+						LOGGER.info("Cache update cancelled. Skipping the remaining caches");
+						return;
+					}
+					
+					if (isRecentlyUpdated(aec)) {
+						LOGGER.info("Skipping recently updated cache "+aec.getClass().getSimpleName());
+						continue;
+					}
+					
 					try {
 						aec.updateCache(getGeoDB());
 					}
@@ -425,13 +489,111 @@ public class QuartzCacheScheduler extends AbstractCacheScheduler {
 
 	}
 	
+	/**
+	 * applies the latest changes of the database to the caches. Shares
+	 * the update lock with the full updates, so it is skipped while one
+	 * of them is running in this or another process.
+	 */
+	private class IncrementalUpdateTask extends NamedJob {
+
+		private List<AbstractEntityCache<?>> candidates;
+
+		public IncrementalUpdateTask(List<AbstractEntityCache<?>> candidates) {
+			this.candidates = candidates;
+		}
+
+		@Override
+		public void execute(JobExecutionContext arg0)
+				throws JobExecutionException {
+			try {
+				if (!retrieveCacheUpdateLock()) {
+					LOGGER.info("chache updating locked. skipping incremental update");
+					return;
+				}
+			} catch (IOException e) {
+				LOGGER.warn(e.getMessage(), e);
+				return;
+			}
+			
+			QuartzCacheScheduler.this.shutdownHooks.add(this);
+			try {
+				for (AbstractEntityCache<?> aec : this.candidates) {
+					if (aec.supportsIncrementalUpdate()) {
+						aec.updateCacheIncrementally(getGeoDB());
+					}
+				}
+			} catch (CacheException | IOException | RuntimeException e) {
+				LOGGER.warn("Incremental cache update failed. The next full update takes care.", e);
+			} finally {
+				QuartzCacheScheduler.this.shutdownHooks.remove(this);
+				try {
+					freeCacheUpdateLock();
+				} catch (IOException e) {
+					LOGGER.warn(e.getMessage(), e);
+				}
+			}
+		}
+
+		@Override
+		public void cancelExecution() {
+			for (AbstractEntityCache<?> aec : this.candidates) {
+				aec.cancelCurrentExecution();
+			}
+		}
+
+	}
+	
+	/**
+	 * reloads the lookup tables held in memory by the observation access.
+	 * They only live in this process, so the cache lock is not needed.
+	 */
+	private class RefreshDimensionTablesTask extends NamedJob {
+
+		@Override
+		public void execute(JobExecutionContext arg0)
+				throws JobExecutionException {
+			try {
+				getGeoDB().getObservationAccess().refreshDimensionTables();
+			} catch (IOException | RuntimeException e) {
+				LOGGER.warn("Could not refresh the dimension tables: "+ e.getMessage(), e);
+			}
+		}
+
+		@Override
+		public void cancelExecution() {
+		}
+
+	}
+	
+	/**
+	 * keeps the in-memory first/latest value index of the observation
+	 * access up to date
+	 */
+	private class RefreshLatestValueIndexTask extends NamedJob {
+
+		@Override
+		public void execute(JobExecutionContext arg0)
+				throws JobExecutionException {
+			try {
+				getGeoDB().getObservationAccess().refreshLatestValueIndex();
+			} catch (IOException | RuntimeException e) {
+				LOGGER.warn("Could not refresh the latest value index: "+ e.getMessage(), e);
+			}
+		}
+
+		@Override
+		public void cancelExecution() {
+		}
+
+	}
+	
 	private class MonitorCacheTask extends NamedJob {
 		
 		private long maximumAge = Long.MIN_VALUE;
 
 		
 		/**
-		 * @param maximumAge delete only a file that is older than this age
+		 * @param maximumAge warn about a lock held longer than this age
 		 */
 		public MonitorCacheTask(long maximumAge) {
 			this.maximumAge = maximumAge;
@@ -474,48 +636,28 @@ public class QuartzCacheScheduler extends AbstractCacheScheduler {
 				LOGGER.info("Could not find lastSchedulerThread in current stack traces");
 			}
 			
-			boolean isLocked = true;
-			
-			isLocked = isCurrentyLocked();
-			if (isLocked) {
-//				if (target != null && (target.getState() == Thread.State.TIMED_WAITING
-//						|| target.getState() == Thread.State.WAITING)) {
-//					LOGGER.warn("The cache update may have taken too long. trying to interrupt cache update.");
-//					target.interrupt();
-//				}
-				
-//				
-//				dumpAllThreads(stacks);
-				
+			/*
+			 * the lock of this process is released by the thread holding
+			 * it, a cancelled update included. the operating system
+			 * releases the lock of a process that died
+			 */
+			if (isCurrentyLocked()) {
 				try {
-					if (this.maximumAge != Long.MIN_VALUE) {
-						LOGGER.info("Resolving age of cache.lock file");
-						File f = resolveCacheLockFile();
-						if (System.currentTimeMillis() - f.lastModified() > this.maximumAge) {
-							LOGGER.info("Trying to remove artifact cache.lock file due to its age");
-							freeCacheUpdateLock();	
-						}
-						else {
-							LOGGER.info("cache.lock to young, an update might be in progress.");
-						}
+					long age = getCacheUpdateLockAge();
+					if (this.maximumAge != Long.MIN_VALUE && age > this.maximumAge) {
+						LOGGER.warn(String.format("The cache.lock has been held by this process for %s minutes",
+								age / 60000));
 					}
-					else if (QuartzCacheScheduler.this.lastSchedulerThread != Long.MIN_VALUE) {
-						/*
-						 * only free if this QuartzCacheScheduler instance (singleton in an SOE instance)
-						 * has already started a cache update. otherwise lastSchedulerThread has
-						 * not been set yet
-						 */
-						LOGGER.info("freeing cache.lock");
-						freeCacheUpdateLock();
+					else {
+						LOGGER.info("cache.lock held by this process, an update is in progress.");
 					}
 				}
 				catch (IOException e) {
 					LOGGER.warn(e.getMessage(), e);
 				}
-				
 			}
 			else {
-				LOGGER.info("No stale cache.lock file found.");
+				LOGGER.info("cache.lock not held by this process.");
 			}
 			
 		}
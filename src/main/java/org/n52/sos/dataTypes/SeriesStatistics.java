@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.dataTypes;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.n52.sos.cache.CacheEntity;
+
+/**
+ * The number of values of a time series (network, procedure, feature
+ * and property) per aggregation type and day. Days are encoded as
+ * <code>yyyyMMdd</code> integers.
+ */
+public class SeriesStatistics implements CacheEntity {
+
+	private String network;
+	private String procedure;
+	private String feature;
+	private String property;
+	private Map<String, SortedMap<Integer, Integer>> dailyCounts = new HashMap<>();
+
+	public SeriesStatistics(String network, String procedure, String feature,
+			String property) {
+		this.network = network;
+		this.procedure = procedure;
+		this.feature = feature;
+		this.property = property;
+	}
+
+	/**
+	 * @param time a time string starting with <code>yyyy-MM-dd</code>
+	 * @return the day as <code>yyyyMMdd</code> integer
+	 */
+	public static int toDay(String time) {
+		return Integer.parseInt(time.trim().substring(0, 10).replace("-", ""));
+	}
+
+	public static String createItemId(String network, String procedure, String feature,
+			String property) {
+		return network +"\t"+ procedure +"\t"+ feature +"\t"+ property;
+	}
+
+	@Override
+	public String getItemId() {
+		return createItemId(network, procedure, feature, property);
+	}
+
+	public String getNetwork() {
+		return network;
+	}
+
+	public String getProcedure() {
+		return procedure;
+	}
+
+	public String getFeature() {
+		return feature;
+	}
+
+	public String getProperty() {
+		return property;
+	}
+
+	public void addCount(String aggregationType, int day, int count) {
+		SortedMap<Integer, Integer> counts = this.dailyCounts.get(aggregationType);
+		if (counts == null) {
+			counts = new TreeMap<>();
+			this.dailyCounts.put(aggregationType, counts);
+		}
+		
+		Integer previous = counts.get(day);
+		counts.put(day, previous == null ? count : previous + count);
+	}
+
+	public Map<String, SortedMap<Integer, Integer>> getDailyCounts() {
+		return Collections.unmodifiableMap(dailyCounts);
+	}
+
+	/**
+	 * @param fromDay the first day, inclusive
+	 * @param toDay the last day, inclusive
+	 * @return the number of values of the aggregation types within
+	 * the days
+	 */
+	public long countValues(String[] aggregationTypes, int fromDay, int toDay) {
+		long result = 0;
+		for (String type : aggregationTypes) {
+			SortedMap<Integer, Integer> counts = this.dailyCounts.get(type);
+			if (counts == null || fromDay > toDay) {
+				continue;
+			}
+			
+			SortedMap<Integer, Integer> range = toDay == Integer.MAX_VALUE ?
+					counts.tailMap(fromDay) : counts.subMap(fromDay, toDay + 1);
+			for (Integer c : range.values()) {
+				result += c;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public int hashCode() {
+		return getItemId().hashCode() * 31 + dailyCounts.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof SeriesStatistics)) {
+			return false;
+		}
+		SeriesStatistics other = (SeriesStatistics) obj;
+		return getItemId().equals(other.getItemId()) && dailyCounts.equals(other.dailyCounts);
+	}
+
+	@Override
+	public String toString() {
+		return "SeriesStatistics [" + getItemId().replace('\t', ',') + ", " + dailyCounts + "]";
+	}
+
+}
@@ -48,4 +48,10 @@ public interface AccessGDB {
 	 */
 	String getDatabaseName();
 
+	/**
+	 * releases the worker threads held by the data access. Called once
+	 * when the SOE is shut down.
+	 */
+	void shutdown();
+
 }
@@ -28,4 +28,10 @@ public interface AccessGdbForFeatures {
 			String[] observedProperties, String[] procedures,
 			String spatialFilter) throws IOException, InvalidParameterValueException, ResponseExceedsSizeLimitException;
 
+	/**
+	 * rebuilds the in-memory spatial index of the feature of interest
+	 * geometries which answers envelope spatial filters
+	 */
+	void refreshSpatialIndex() throws IOException;
+
 }
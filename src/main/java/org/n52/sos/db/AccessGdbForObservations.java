@@ -16,11 +16,13 @@
 package org.n52.sos.db;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Map;
 
 import org.n52.om.observation.MultiValueObservation;
 import org.n52.ows.InvalidRequestException;
 import org.n52.ows.ResponseExceedsSizeLimitException;
+import org.n52.sos.dataTypes.SeriesStatistics;
 
 import com.esri.arcgis.interop.AutomationException;
 
@@ -35,4 +37,39 @@ public interface AccessGdbForObservations {
 			String[] procedures, String spatialFilter, String temporalFilter,
 			String[] aggregationTypes, String where) throws IOException, ResponseExceedsSizeLimitException, InvalidRequestException;
 
+	/**
+	 * like {@link #getObservations(String[], String[], String[], String[], String, String, String[], String)},
+	 * but passes each observation to the sink as soon as it is complete
+	 * instead of collecting all of them.
+	 */
+	void getObservations(String[] offerings,
+			String[] featuresOfInterest, String[] observedProperties,
+			String[] procedures, String spatialFilter, String temporalFilter,
+			String[] aggregationTypes, String where, ObservationSink sink) throws IOException, ResponseExceedsSizeLimitException, InvalidRequestException;
+
+	/**
+	 * @return the number of values per time series, aggregation type
+	 * and day. Empty if not supported by the database
+	 */
+	Collection<SeriesStatistics> getSeriesStatistics() throws IOException;
+
+	/**
+	 * reloads the in-memory copies of the small lookup tables (units,
+	 * validities, verifications, aggregation types and networks) which
+	 * replace their joins in the observation queries
+	 */
+	void refreshDimensionTables() throws IOException;
+
+	/**
+	 * updates the in-memory index of the first and latest value of each
+	 * series with the values inserted or updated since its last refresh,
+	 * builds it on the first call
+	 */
+	void refreshLatestValueIndex() throws IOException;
+
+	/**
+	 * stops the workers querying the offerings of a request in parallel
+	 */
+	void shutdown();
+
 }
@@ -30,4 +30,21 @@ public interface AccessGdbForOfferings {
 	void getNetworksAsObservationOfferingsAsync(OnOfferingRetrieved retriever)
 			throws IOException;
 
+	/**
+	 * @return the latest insertion or update time of all values as a
+	 * database time literal or null if the database does not provide
+	 * insertion/update times
+	 */
+	String resolveValueWatermark() throws IOException;
+
+	/**
+	 * retrieves the offerings of the networks with values inserted or
+	 * updated at or after the watermark. The offerings only cover these
+	 * values and have to be merged with the existing ones.
+	 * 
+	 * @param watermark as provided by {@link #resolveValueWatermark()}
+	 */
+	void getChangedNetworksAsObservationOfferingsAsync(String watermark,
+			OnOfferingRetrieved retriever) throws IOException;
+
 }
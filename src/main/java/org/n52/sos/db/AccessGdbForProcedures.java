@@ -41,6 +41,20 @@ public interface AccessGdbForProcedures {
 
 	boolean isProcedure(String procedure) throws AutomationException, IOException;
 
+	/**
+	 * classifies all identifiers at once, with at most one query per
+	 * table for identifiers not yet known from the identifier index.
+	 * 
+	 * @see #refreshIdentifierIndex()
+	 */
+	ProcedureClassification classifyProcedures(String[] procedures) throws IOException;
+
+	/**
+	 * reloads the in-memory index of all NETWORK identifiers and
+	 * PROCEDURE resources used by {@link #classifyProcedures(String[])}
+	 */
+	void refreshIdentifierIndex() throws IOException;
+
 	/**
 	 * Resolve the property (phenomenon) to unit of measurement mappings.
 	 * WARNING: this may take a while as the units are resolved via the
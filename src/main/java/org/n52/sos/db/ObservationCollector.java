@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.n52.om.observation.MultiValueObservation;
+import org.n52.om.result.MeasureResult;
+
+/**
+ * collects the observations of a query into a map of observation
+ * identifier to observation
+ */
+public class ObservationCollector implements ObservationSink {
+
+	private Map<String, MultiValueObservation> observations = new HashMap<>();
+
+	@Override
+	public void observation(MultiValueObservation observation) {
+		String id = observation.getIdentifier().getIdentifierValue();
+		MultiValueObservation existing = this.observations.get(id);
+		if (existing == null) {
+			this.observations.put(id, observation);
+		}
+		else {
+			for (MeasureResult value : observation.getResult().getValue()) {
+				existing.getResult().addResultValue(value);
+			}
+		}
+	}
+
+	@Override
+	public void reset() {
+		this.observations.clear();
+	}
+
+	public Map<String, MultiValueObservation> getObservations() {
+		return observations;
+	}
+
+}
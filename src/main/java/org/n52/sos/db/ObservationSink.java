@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db;
+
+import java.io.IOException;
+
+import org.n52.om.observation.MultiValueObservation;
+
+/**
+ * receives the observations of a query one at a time, while the
+ * remaining rows are still being fetched.
+ */
+public interface ObservationSink {
+
+	/**
+	 * @param observation a complete observation, with all of its values
+	 */
+	void observation(MultiValueObservation observation) throws IOException;
+
+	/**
+	 * discards all observations received so far. Called if the query
+	 * providing them has been abandoned in favour of another one.
+	 */
+	void reset() throws IOException;
+
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * the identifiers of a 'procedure' parameter, separated into NETWORK
+ * identifiers and PROCEDURE resources. Identifiers which are neither
+ * are dropped. The request order is kept.
+ */
+public class ProcedureClassification {
+
+	private List<String> networks = new ArrayList<>();
+	private List<String> procedures = new ArrayList<>();
+
+	public void addNetwork(String identifier) {
+		this.networks.add(identifier);
+	}
+
+	public void addProcedure(String identifier) {
+		this.procedures.add(identifier);
+	}
+
+	public List<String> getNetworks() {
+		return networks;
+	}
+
+	public List<String> getProcedures() {
+		return procedures;
+	}
+
+	/**
+	 * @return true if networks and procedures have been requested together
+	 */
+	public boolean isMixed() {
+		return !this.networks.isEmpty() && !this.procedures.isEmpty();
+	}
+
+	public boolean isEmpty() {
+		return this.networks.isEmpty() && this.procedures.isEmpty();
+	}
+
+}
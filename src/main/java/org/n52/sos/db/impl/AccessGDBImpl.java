@@ -16,10 +16,12 @@
 package org.n52.sos.db.impl;
 
 import java.io.IOException;
+import java.sql.Connection;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Properties;
 
@@ -81,6 +83,22 @@ public class AccessGDBImpl implements AccessGDB {
 
     static Logger LOGGER = Logger.getLogger(AccessGDBImpl.class.getName());
 
+    /**
+     * offerings are resolved with three queries per network
+     */
+    public static final String PER_NETWORK_REBUILD_MODE = "perNetwork";
+
+    /**
+     * offerings of all networks are resolved with a few grouped queries
+     */
+    public static final String GROUPED_REBUILD_MODE = "grouped";
+
+    /**
+     * the maximum number of entries of one IN list, as e.g. Oracle
+     * rejects longer lists
+     */
+    public static final int MAXIMUM_IN_LIST_SIZE = 1000;
+
     private SosSoe sos;
 
     private Properties props;
@@ -100,6 +118,14 @@ public class AccessGDBImpl implements AccessGDB {
 
 	private WorkspaceWrapper workspaceWrapper;
 
+	private boolean groupedOfferingRebuild;
+
+	private int cacheBuildParallelism = 1;
+
+	private int observationQueryParallelism = 1;
+
+	private volatile FeatureSpatialIndex featureSpatialIndex;
+
     /**
      * Creates an AccessObservationGDB object and connects to the DB specified
      * in the arcGisSosLocal.properties file.
@@ -126,6 +152,29 @@ public class AccessGDBImpl implements AccessGDB {
         workspaceWrapper.setWorkspace(new Workspace(factory.openFromFile(dbPath, 0)));
     }
     
+    /**
+     * Creates an AccessObservationGDB object on top of a plain JDBC
+     * connection, e.g. to an embedded database seeded with the
+     * AQ e-Reporting schema. Used for tests and benchmarks without
+     * ArcObjects; spatial filters are not supported.
+     * 
+     * @param databaseName the schema containing the tables, replaces
+     * the database name placeholder of the table names
+     * @param propsResourceName the properties with the schema mapping
+     * @throws IOException
+     */
+    public AccessGDBImpl(Connection connection, String databaseName,
+    		String propsResourceName) throws IOException {
+    	
+        LOGGER.info("Creating AccessGDBImpl for a JDBC connection.");
+        
+        this.databaseName = databaseName;
+        this.workspaceWrapper = new WorkspaceWrapper();
+        this.workspaceWrapper.setJdbcConnection(connection);
+        
+        init(propsResourceName, 0);
+    }
+    
     /**
      * Creates an AccessObservationGDB object and connects to the DB of the
      * ArcGIS MapServer handed over as a parameter.
@@ -172,6 +221,12 @@ public class AccessGDBImpl implements AccessGDB {
 
         init("/arcGisSos.properties", sos.getMaximumRecordCount());
         
+        this.groupedOfferingRebuild = GROUPED_REBUILD_MODE.equalsIgnoreCase(sos.getCacheRebuildMode());
+        this.cacheBuildParallelism = sos.getCacheBuildParallelism();
+        this.observationQueryParallelism = sos.getObservationQueryParallelism();
+        QueryConcurrencyLimiter.instance().configure(sos.getMaximumConcurrentQueries(),
+        		sos.getQueryQueueTimeoutSeconds() * 1000L);
+        
         long delta = System.currentTimeMillis() - start;
         
         LOGGER.info("End of creating AccessGDBImpl. Created in " + delta/1000 + " seconds.");
@@ -242,6 +297,11 @@ public class AccessGDBImpl implements AccessGDB {
         // init the field names:
         SubField.initSubfieldNames(props);
 
+        if (this.workspaceWrapper != null) {
+        	this.workspaceWrapper.setDialect(SqlDialect.fromName(props.getProperty("database.dialect")));
+        	LOGGER.info("SQL dialect: "+ this.workspaceWrapper.getDialect());
+        }
+        
         // init maxNumberOfResults:
         if (maxRecords == 0) {
         	maxNumberOfResults = Integer.parseInt(props.getProperty("database.maxNumberOfResults"));
@@ -260,6 +320,13 @@ public class AccessGDBImpl implements AccessGDB {
     public String getDatabaseName() {
     	return this.databaseName;
     }
+    
+    @Override
+    public void shutdown() {
+    	if (observationAccess != null) {
+    		observationAccess.shutdown();
+    	}
+    }
 
     /**
      * This method can be used to retrieve a {@link ServiceDescription} of the
@@ -364,58 +431,135 @@ public class AccessGDBImpl implements AccessGDB {
     }
 
     /**
-     * This method creates an or-clause out of a given field and a list of
+     * This method creates a predicate out of a given field and a list of
      * strings, where all entries of the list will be compared with the field.
+     * The entries are escaped and grouped into IN lists of at most
+     * {@link #MAXIMUM_IN_LIST_SIZE} entries, which are OR-ed.
      * 
      * @param field
      *            a database field
      * @param list
      *            a String array representing the list of values that are
      *            compared with the field.
-     * @return the created or-clause
+     * @return the created predicate, matching nothing if the list is empty
      */
     public static String createOrClause(String field,
             String[] list)
     {
-        StringBuilder sb = new StringBuilder();
-        sb.append("(");
-        for (String entry : list) {
-            sb.append(field);
-            sb.append(" = '");
-            sb.append(entry);
-            sb.append("'");
-            sb.append(" OR ");
+        List<String> literals = new ArrayList<String>(list.length);
+        for (String entry : new LinkedHashSet<String>(Arrays.asList(list))) {
+            literals.add(quote(entry));
         }
-        sb.delete(sb.length() - 4, sb.length());
-        sb.append(")");
-        return sb.toString();
+        return createChunkedInClause(field, literals);
     }
 
     /**
-     * This method creates an or-clause out of a given field and a Collection of
-     * Integers, where all Integer values will be compared with the field.
+     * This method creates a predicate out of a given field and a Collection
+     * of Integers, where all Integer values will be compared with the field.
      * 
      * @param field
      *            a database field
      * @param list
      *            a Collection of Integers representing the list of values that
      *            are compared with the field.
-     * @return the created or-clause
+     * @return the created predicate, matching nothing if the list is empty
      */
     public static String createOrClause(String field,
             Collection<Integer> list)
     {
+        return createInClause(field, list);
+    }
+
+    /**
+     * This method creates an in-clause out of a given field and a Collection
+     * of Integers.
+     * 
+     * @return the created in-clause, matching nothing if the collection is
+     * empty
+     */
+    public static String createInClause(String field,
+            Collection<Integer> list)
+    {
+        List<String> literals = new ArrayList<String>(list.size());
+        for (Integer entry : new LinkedHashSet<Integer>(list)) {
+            if (entry != null) {
+                literals.add(entry.toString());
+            }
+        }
+        return createChunkedInClause(field, literals);
+    }
+
+    /**
+     * @return the value as an SQL string literal
+     */
+    public static String quote(String value)
+    {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    private static String createChunkedInClause(String field, List<String> literals)
+    {
+        if (literals.isEmpty()) {
+            return "(1 = 0)";
+        }
+        
         StringBuilder sb = new StringBuilder();
         sb.append("(");
-        for (Integer entry : list) {
-            sb.append(field + " = '" + entry + "'");
-            sb.append(" OR ");
+        for (int start = 0; start < literals.size(); start += MAXIMUM_IN_LIST_SIZE) {
+            if (start > 0) {
+                sb.append(" OR ");
+            }
+            sb.append(field);
+            sb.append(" IN (");
+            int end = Math.min(start + MAXIMUM_IN_LIST_SIZE, literals.size());
+            for (int i = start; i < end; i++) {
+                if (i > start) {
+                    sb.append(", ");
+                }
+                sb.append(literals.get(i));
+            }
+            sb.append(")");
         }
-        sb.delete(sb.length() - 4, sb.length());
         sb.append(")");
         return sb.toString();
     }
 
+    void setFeatureSpatialIndex(FeatureSpatialIndex index) {
+        this.featureSpatialIndex = index;
+    }
+
+    /**
+     * resolves an envelope spatial filter from the in-memory index of the
+     * feature geometries, see {@link AccessGdbForFeatures#refreshSpatialIndex()}
+     * 
+     * @return the matching features or null if the index is not
+     * available or cannot answer the filter
+     */
+    protected List<FeatureSpatialIndex.IndexedPoint> queryIndexedFeaturesForSpatialFilter(String spatialFilter)
+    {
+        FeatureSpatialIndex index = this.featureSpatialIndex;
+        if (index == null) {
+            return null;
+        }
+        
+        try {
+            JSONObject json = new JSONObject(spatialFilter);
+            if (!json.has("xmin") || !json.has("ymin") || !json.has("xmax") || !json.has("ymax")) {
+                return null;
+            }
+            if (!json.has("spatialReference") || index.getWkid() == 0
+                    || json.getJSONObject("spatialReference").getInt("wkid") != index.getWkid()) {
+                return null;
+            }
+            
+            return index.query(json.getDouble("xmin"), json.getDouble("ymin"),
+                    json.getDouble("xmax"), json.getDouble("ymax"));
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not evaluate spatial filter on the index: "+ e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * 
      * @param spatialFilter
@@ -424,6 +568,10 @@ public class AccessGDBImpl implements AccessGDB {
      */
     protected Collection<String> queryFeatureIDsForSpatialFilter(String spatialFilter) throws IOException
     {
+        if (workspaceWrapper.usesJdbcConnection()) {
+        	throw new IOException("Spatial filters are not supported for JDBC connections.");
+        }
+        
         IGeometry geometry;
 		try {
 			geometry = ServerUtilities.getGeometryFromJSON(new JSONObject(spatialFilter));
@@ -566,6 +714,42 @@ public class AccessGDBImpl implements AccessGDB {
     protected int getMaxNumberOfResults() {
     	return maxNumberOfResults;
     }
+    
+    /**
+     * @return true if the offering cache shall be built with
+     * grouped queries over all networks (see {@link #GROUPED_REBUILD_MODE})
+     */
+    protected boolean isGroupedOfferingRebuild() {
+    	return groupedOfferingRebuild;
+    }
+    
+    public void setGroupedOfferingRebuild(boolean groupedOfferingRebuild) {
+    	this.groupedOfferingRebuild = groupedOfferingRebuild;
+    }
+    
+    /**
+     * @return the number of offerings that are computed
+     * in parallel while building the offering cache
+     */
+    protected int getCacheBuildParallelism() {
+    	return cacheBuildParallelism;
+    }
+    
+    public void setCacheBuildParallelism(int cacheBuildParallelism) {
+    	this.cacheBuildParallelism = Math.max(1, cacheBuildParallelism);
+    }
+    
+    /**
+     * @return the number of offerings of a GetObservation request
+     * that are queried in parallel, 1 to query them all at once
+     */
+    protected int getObservationQueryParallelism() {
+    	return observationQueryParallelism;
+    }
+    
+    public void setObservationQueryParallelism(int observationQueryParallelism) {
+    	this.observationQueryParallelism = Math.max(1, observationQueryParallelism);
+    }
 
 	
     /**
@@ -16,25 +16,21 @@
 package org.n52.sos.db.impl;
 
 import java.io.IOException;
-import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
-import org.n52.om.sampling.AQDSample;
 import org.n52.om.sampling.Feature;
 import org.n52.ows.InvalidParameterValueException;
 import org.n52.ows.ResponseExceedsSizeLimitException;
-import org.n52.sos.Constants;
 import org.n52.sos.db.AccessGdbForFeatures;
+import org.n52.sos.db.ProcedureClassification;
 import org.n52.util.CommonUtilities;
 import org.n52.util.logging.Logger;
 
-import com.esri.arcgis.geodatabase.Fields;
 import com.esri.arcgis.geodatabase.ICursor;
 import com.esri.arcgis.geodatabase.IRow;
-import com.esri.arcgis.geometry.Point;
 
 /**
  * @author <a href="mailto:broering@52north.org">Arne Broering</a>
@@ -105,14 +101,9 @@ public class AccessGdbForFeaturesImpl implements AccessGdbForFeatures {
     	List<String> proceduresWhichAreProcedures = new ArrayList<String>();
     	
         if (procedures != null) {
-        	for (String procedure : procedures) {
-        		if (gdb.getProcedureAccess().isNetwork(procedure)) {
-        			proceduresWhichAreNetworks.add(procedure);
-        		}
-        		else if (gdb.getProcedureAccess().isProcedure(procedure)) {
-        			proceduresWhichAreProcedures.add(procedure);
-        		}
-        	}
+        	ProcedureClassification classification = gdb.getProcedureAccess().classifyProcedures(procedures);
+        	proceduresWhichAreNetworks = classification.getNetworks();
+        	proceduresWhichAreProcedures = classification.getProcedures();
         	
         	/*
         	 * We only support the request of one kind of procedure per request:
@@ -256,7 +247,17 @@ public class AccessGdbForFeaturesImpl implements AccessGdbForFeatures {
         }
 
         // build query for spatial filter
-        if (spatialFilter != null) {
+        List<FeatureSpatialIndex.IndexedPoint> indexedFeatures = spatialFilter == null ? null : gdb.queryIndexedFeaturesForSpatialFilter(spatialFilter);
+        if (indexedFeatures != null) {
+        	if (indexedFeatures.size() > 0) {
+        		isFirst = ifIsFirstAppendAND (whereClause, isFirst);
+        		whereClause.append(AccessGDBImpl.createInClause(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST,
+        				SubField.FEATUREOFINTEREST_PK_FEATUREOFINTEREST), FeatureSpatialIndex.keys(indexedFeatures)));
+        	} else {
+        		LOGGER.warn("The defined spatialFilter '" + spatialFilter + "' did not match any features in the database.");
+        	}
+        }
+        else if (spatialFilter != null) {
         	Collection<String> featureList = gdb.queryFeatureIDsForSpatialFilter(spatialFilter);
             String[] featureArray = CommonUtilities.toArray(featureList);
             
@@ -307,13 +308,14 @@ public class AccessGdbForFeaturesImpl implements AccessGdbForFeatures {
         // evaluate the database query
 
         // convert cursor entries to abstract observations
+        FeatureRowMapper mapper = new FeatureRowMapper(subFields, shapeFromStations);
         IRow row;
         int count = 0;
         while ((row = cursor.nextRow()) != null && count < gdb.getMaxNumberOfResults()) {
             count++;
             Feature feature;
 			try {
-				feature = createFeature(row, subFields, shapeFromStations);
+				feature = mapper.createFeature(row);
 			} catch (URISyntaxException e) {
 				throw new IOException(e);
 			}
@@ -323,66 +325,24 @@ public class AccessGdbForFeaturesImpl implements AccessGdbForFeatures {
         return features;
     }
     
+    @Override
+    public void refreshSpatialIndex() throws IOException {
+    	long start = System.currentTimeMillis();
+    	FeatureSpatialIndex index = FeatureSpatialIndex.load(gdb);
+    	gdb.setFeatureSpatialIndex(index);
+    	if (index == null) {
+    		LOGGER.info("No point geometries available for the spatial index. Spatial filters are evaluated by the database.");
+    	}
+    	else {
+    		LOGGER.info(String.format("Spatial index built with %s features in %s ms",
+    				index.size(), System.currentTimeMillis() - start));
+    	}
+    }
+    
     ///////////////////////////////
     /////////////////////////////// Helper Methods:
     ///////////////////////////////     
     
-    /**
-     * This method creates a {@link AQDSample} of a given {@link IRow} and it's {@link Fields}
-     */
-    protected AQDSample createFeature(IRow row, List<String> fields, boolean shapeFromStations) throws IOException, URISyntaxException
-    {	
-        // gml identifier
-        String gmlId = (String) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_ID)));
-        
-        // resource URI
-        URI resourceUri = null;
-        String resource = (String) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_RESOURCE)));
-        if (resource != null) {
-        	resourceUri = new URI(resource);
-        }
-
-        // local ID
-        int localId = (Integer) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_PK_FEATUREOFINTEREST)));
-        
-        // shape
-        Point point = null;
-        Object shape;
-		if (!shapeFromStations) {
-        	shape = row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_SHAPE)));
-        }
-        else {
-        	shape = row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.STATION, SubField.STATION_SHAPE)));
-        }
-        
-        if (shape instanceof Point) {
-            point = (Point) shape;
-        } else {
-            LOGGER.warn("Shape of the feature '" + gmlId + "' is no point.");
-        }
-        
-        // inletHeight
-        Double inletHeight = (Double) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_INLETHEIGHT)));
-        if (inletHeight == null) {
-            inletHeight = Constants.FEATURE_INLET_HEIGHT;
-        }
-        
-        // buildingDistance
-        Double buildingDistance = (Double) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_BUILDINGDISTANCE)));
-        if (buildingDistance == null) {
-            buildingDistance = Constants.FEATURE_BUILDING_DISTANCE;
-        }
-        
-        // kerbDistance
-        Double kerbDistance = (Double) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_KERBDISTANCE)));
-        if (kerbDistance == null) {
-            kerbDistance = Constants.FEATURE_KERB_DISTANCE;
-        }
-
-        return new AQDSample(resourceUri, gmlId, localId, null, null, null, point, null, inletHeight, buildingDistance, kerbDistance);
-    }
-    
-    
     /**
      * helper method to reduce code length. Appends "AND" to WHERE clause if 'isFirst == false'.
      */
@@ -15,26 +15,45 @@
  */
 package org.n52.sos.db.impl;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.n52.gml.Identifier;
 import org.n52.om.observation.MultiValueObservation;
-import org.n52.om.result.MeasureResult;
 import org.n52.ows.InvalidRequestException;
 import org.n52.ows.ResponseExceedsSizeLimitException;
-import org.n52.oxf.valueDomains.time.ITimePosition;
 import org.n52.oxf.valueDomains.time.TimeConverter;
 import org.n52.sos.Constants;
+import org.n52.sos.cache.ObservationOfferingCache;
+import org.n52.sos.cache.SeriesStatisticsCache;
+import org.n52.sos.dataTypes.SeriesStatistics;
 import org.n52.sos.db.AccessGdbForObservations;
+import org.n52.sos.db.ObservationCollector;
+import org.n52.sos.db.ObservationSink;
 import org.n52.sos.handler.GetObservationOperationHandler;
 import org.n52.util.CommonUtilities;
 import org.n52.util.logging.Logger;
@@ -54,7 +73,31 @@ public class AccessGdbForObservationsImpl implements AccessGdbForObservations {
 			new String[] {Constants.GETOBSERVATION_DEFAULT_AGGREGATIONTYPE, Constants.GETOBSERVATION_DEFAULT_AGGREGATIONTYPE_ALT},
 			new String[] {Constants.GETOBSERVATION_DEFAULT_AGGREGATIONTYPE_SECOND, Constants.GETOBSERVATION_DEFAULT_AGGREGATIONTYPE_SECOND_ALT}};
     
+    /**
+     * the value watermark invalidating the chunk cache is resolved at
+     * most this often
+     */
+    static final long WATERMARK_MAXIMUM_AGE_MS = TimeUnit.SECONDS.toMillis(30);
+    
     private AccessGDBImpl gdb;
+    
+    private volatile DimensionTables dimensionTables;
+    private volatile boolean dimensionTablesUnavailable;
+    
+    private volatile LatestValueIndex latestValueIndex;
+    
+    private final Object watermarkLock = new Object();
+    
+    private String watermark;
+    
+    private volatile long watermarkResolved;
+    
+    private long offeringCacheGeneration = -1;
+    
+    private ExecutorService partitionWorkers;
+    
+    private final SeriesChunkCache chunkCache = new SeriesChunkCache(SeriesChunkCache.DEFAULT_MAXIMUM_VALUES,
+    		SeriesChunkCache.DEFAULT_TIME_TO_LIVE_MS);
 
     public AccessGdbForObservationsImpl(AccessGDBImpl accessGDB) {
         this.gdb = accessGDB;
@@ -68,9 +111,11 @@ public class AccessGdbForObservationsImpl implements AccessGdbForObservations {
      */
     public Map<String, MultiValueObservation> getObservations(String[] observationIdentifiers) throws ResponseExceedsSizeLimitException, AutomationException, IOException
     {
-        return getObservations(new StringBuilder(AccessGDBImpl.createOrClause(AccessGDBImpl.concatTableAndField(Table.OBSERVATION,
+        ObservationCollector collector = new ObservationCollector();
+        getObservations(new StringBuilder(AccessGDBImpl.createOrClause(AccessGDBImpl.concatTableAndField(Table.OBSERVATION,
         		SubField.OBSERVATION_ID), observationIdentifiers)), null,
-        		true);
+        		true, resolveDimensionTables(null, null, null), collector);
+        return collector.getObservations();
     }
 
     /**
@@ -99,6 +144,217 @@ public class AccessGdbForObservationsImpl implements AccessGdbForObservations {
             String[] aggregationTypes,
             String where) throws IOException, ResponseExceedsSizeLimitException, InvalidRequestException
     {
+        ObservationCollector collector = new ObservationCollector();
+        getObservations(offerings, featuresOfInterest, observedProperties, procedures,
+        		spatialFilter, temporalFilter, aggregationTypes, where, collector);
+        return collector.getObservations();
+    }
+    
+    @Override
+    public void getObservations(
+            String[] offerings,
+            String[] featuresOfInterest,
+            String[] observedProperties,
+            String[] procedures,
+            String spatialFilter,
+            String temporalFilter,
+            String[] aggregationTypes,
+            String where,
+            ObservationSink sink) throws IOException, ResponseExceedsSizeLimitException, InvalidRequestException
+    {
+        if (isPartitionedPerOffering(offerings, temporalFilter, aggregationTypes)) {
+        	getObservationsPerOffering(offerings, featuresOfInterest, observedProperties, procedures,
+        			spatialFilter, temporalFilter, aggregationTypes, where, sink);
+        	return;
+        }
+        
+        queryObservations(offerings, featuresOfInterest, observedProperties, procedures,
+        		spatialFilter, temporalFilter, aggregationTypes, where, sink);
+    }
+    
+    /**
+     * A request for several offerings is split into one query per
+     * offering if enabled. The aggregation types have to be given, as
+     * otherwise each partition would determine its own. Latest and
+     * first requests select one value over all offerings and are never
+     * split.
+     */
+    private boolean isPartitionedPerOffering(String[] offerings, String temporalFilter, String[] aggregationTypes) {
+    	return gdb.getObservationQueryParallelism() > 1 && offerings != null && offerings.length > 1
+    			&& aggregationTypes != null
+    			&& !GetObservationOperationHandler.OM_PHENOMENON_TIME_FIRST.equals(temporalFilter)
+    			&& !GetObservationOperationHandler.OM_PHENOMENON_TIME_LATEST.equals(temporalFilter);
+    }
+    
+    /**
+     * queries the offerings concurrently and passes their observations
+     * to the sink in the order of the offerings, once all have finished.
+     * The partitions share one budget of maxNumberOfResults values: the
+     * first partition exceeding it fails the request and the remaining
+     * ones are cancelled.
+     */
+    private void getObservationsPerOffering(
+            String[] offerings,
+            final String[] featuresOfInterest,
+            final String[] observedProperties,
+            final String[] procedures,
+            final String spatialFilter,
+            final String temporalFilter,
+            final String[] aggregationTypes,
+            final String where,
+            ObservationSink sink) throws IOException, ResponseExceedsSizeLimitException, InvalidRequestException
+    {
+    	final int maximum = gdb.getMaxNumberOfResults();
+    	final AtomicInteger valueBudget = new AtomicInteger();
+    	CompletionService<Integer> workers = new ExecutorCompletionService<>(resolvePartitionWorkers());
+    	final List<BudgetedCollector> collectors = new ArrayList<>();
+    	List<Future<Integer>> partitions = new ArrayList<>();
+    	for (final String offering : new LinkedHashSet<>(Arrays.asList(offerings))) {
+    		final int index = collectors.size();
+    		collectors.add(new BudgetedCollector(valueBudget, maximum));
+    		partitions.add(workers.submit(new Callable<Integer>() {
+    			@Override
+    			public Integer call() throws Exception {
+    				try {
+    					queryObservations(new String[] {offering}, featuresOfInterest, observedProperties, procedures,
+    							spatialFilter, temporalFilter, aggregationTypes, where, collectors.get(index));
+    				}
+    				catch (PartitionAbortedException e) {
+    					throw new ResponseExceedsSizeLimitException(maximum);
+    				}
+    				return index;
+    			}
+    		}));
+    	}
+    	LOGGER.debug(String.format("Querying %s offerings in parallel", partitions.size()));
+    	
+    	try {
+    		for (int i = 0; i < partitions.size(); i++) {
+    			workers.take().get();
+    		}
+    	}
+    	catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		throw new IOException("Interrupted while querying the offerings", e);
+    	}
+    	catch (ExecutionException e) {
+    		Throwable cause = e.getCause();
+    		if (cause instanceof ResponseExceedsSizeLimitException) {
+    			throw (ResponseExceedsSizeLimitException) cause;
+    		}
+    		if (cause instanceof InvalidRequestException) {
+    			throw (InvalidRequestException) cause;
+    		}
+    		if (cause instanceof IOException) {
+    			throw (IOException) cause;
+    		}
+    		if (cause instanceof RuntimeException) {
+    			throw (RuntimeException) cause;
+    		}
+    		throw new IOException(cause);
+    	}
+    	finally {
+    		for (Future<Integer> partition : partitions) {
+    			partition.cancel(true);
+    		}
+    	}
+    	
+    	for (BudgetedCollector collector : collectors) {
+    		for (MultiValueObservation o : collector.getObservations().values()) {
+    			sink.observation(o);
+    		}
+    	}
+    }
+    
+    /**
+     * collects the observations of one partition and counts their values
+     * against the budget shared by all partitions of a request
+     */
+    private static class BudgetedCollector implements ObservationSink {
+    	
+    	private final ObservationCollector collector = new ObservationCollector();
+    	private final AtomicInteger budget;
+    	private final int maximum;
+    	private int valueCount;
+    	
+    	public BudgetedCollector(AtomicInteger budget, int maximum) {
+    		this.budget = budget;
+    		this.maximum = maximum;
+    	}
+    	
+    	@Override
+    	public void observation(MultiValueObservation observation) throws IOException {
+    		int values = observation.getResult().getValue().size();
+    		this.valueCount += values;
+    		if (this.budget.addAndGet(values) > this.maximum) {
+    			throw new PartitionAbortedException();
+    		}
+    		if (Thread.currentThread().isInterrupted()) {
+    			throw new PartitionAbortedException();
+    		}
+    		this.collector.observation(observation);
+    	}
+    	
+    	@Override
+    	public void reset() {
+    		this.budget.addAndGet(-this.valueCount);
+    		this.valueCount = 0;
+    		this.collector.reset();
+    	}
+    	
+    	public Map<String, MultiValueObservation> getObservations() {
+    		return this.collector.getObservations();
+    	}
+    	
+    }
+    
+    /**
+     * aborts a partition query from within its sink, once the shared
+     * budget is exceeded or the partition has been cancelled
+     */
+    private static class PartitionAbortedException extends IOException {
+    	
+    	private static final long serialVersionUID = 1L;
+    	
+    }
+    
+    @Override
+    public synchronized void shutdown() {
+    	if (this.partitionWorkers != null) {
+    		this.partitionWorkers.shutdownNow();
+    		this.partitionWorkers = null;
+    	}
+    }
+    
+    private synchronized ExecutorService resolvePartitionWorkers() {
+    	if (this.partitionWorkers == null) {
+    		final AtomicInteger threadCount = new AtomicInteger();
+    		this.partitionWorkers = Executors.newFixedThreadPool(gdb.getObservationQueryParallelism(), new ThreadFactory() {
+    			
+    			@Override
+    			public Thread newThread(Runnable r) {
+    				Thread t = new Thread(r, "observation-query-worker-" + threadCount.incrementAndGet());
+    				t.setDaemon(true);
+    				return t;
+    			}
+    		});
+    	}
+    	return this.partitionWorkers;
+    }
+    
+    private void queryObservations(
+            String[] offerings,
+            String[] featuresOfInterest,
+            String[] observedProperties,
+            String[] procedures,
+            String spatialFilter,
+            String temporalFilter,
+            String[] aggregationTypes,
+            String where,
+            ObservationSink sink) throws IOException, ResponseExceedsSizeLimitException, InvalidRequestException
+    {
+        DimensionTables dimensions = resolveDimensionTables(offerings, aggregationTypes, where);
+        
         StringBuilder whereClauseParameterAppend = new StringBuilder();
         
         boolean isFirst = true;
@@ -106,7 +362,13 @@ public class AccessGdbForObservationsImpl implements AccessGdbForObservations {
         // build query for offerings
         if (offerings != null) {
         	isFirst = ifIsFirstAppendAND (whereClauseParameterAppend, isFirst);
-        	whereClauseParameterAppend.append(AccessGDBImpl.createOrClause(AccessGDBImpl.concatTableAndField(Table.NETWORK, SubField.NETWORK_ID), offerings));
+        	if (dimensions != null) {
+        		whereClauseParameterAppend.append(createKeyClause(AccessGDBImpl.concatTableAndField(Table.STATION, SubField.STATION_FK_NETWORK_GID),
+        				dimensions.getNetworks(), offerings));
+        	}
+        	else {
+        		whereClauseParameterAppend.append(AccessGDBImpl.createOrClause(AccessGDBImpl.concatTableAndField(Table.NETWORK, SubField.NETWORK_ID), offerings));
+        	}
         }
         
         // build query for feature of interest
@@ -128,13 +390,26 @@ public class AccessGdbForObservationsImpl implements AccessGdbForObservations {
         }
 
         // build query for spatial filter
-        if (spatialFilter != null) {
+        String[] spatialFeatures = null;
+        List<FeatureSpatialIndex.IndexedPoint> indexedFeatures = spatialFilter == null ? null : gdb.queryIndexedFeaturesForSpatialFilter(spatialFilter);
+        if (indexedFeatures != null) {
+        	if (indexedFeatures.size() > 0) {
+        		spatialFeatures = FeatureSpatialIndex.resources(indexedFeatures);
+        		isFirst = ifIsFirstAppendAND (whereClauseParameterAppend, isFirst);
+        		whereClauseParameterAppend.append(AccessGDBImpl.createInClause(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST,
+        				SubField.FEATUREOFINTEREST_PK_FEATUREOFINTEREST), FeatureSpatialIndex.keys(indexedFeatures)));
+        	} else {
+        		LOGGER.warn("The defined spatialFilter '" + spatialFilter + "' did not match any features in the database.");
+        	}
+        }
+        else if (spatialFilter != null) {
             // get the IDs of all features which are within the specified
             // spatialFilter:
             Collection<String> featureList = gdb.queryFeatureIDsForSpatialFilter(spatialFilter);
             String[] featureArray = CommonUtilities.toArray(featureList);
             
             if (featureList.size() > 0) {
+            	spatialFeatures = featureArray;
             	isFirst = ifIsFirstAppendAND (whereClauseParameterAppend, isFirst);          
             	// append the list of feature IDs:
                 whereClauseParameterAppend.append(AccessGDBImpl.createOrClause(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_RESOURCE), featureArray));
@@ -143,6 +418,8 @@ public class AccessGdbForObservationsImpl implements AccessGdbForObservations {
             }
         }
 
+        String selectionClause = whereClauseParameterAppend.toString();
+        
         // build query for temporal filter
         boolean firstOrLatest = false;
         if (temporalFilter != null) {
@@ -163,20 +440,471 @@ public class AccessGdbForObservationsImpl implements AccessGdbForObservations {
         }
 
         if (firstOrLatest) {
-        	return getFirstOrLatestObservation(whereClauseParameterAppend, temporalFilter.equals(GetObservationOperationHandler.OM_PHENOMENON_TIME_FIRST), aggregationTypes);
+        	boolean first = temporalFilter.equals(GetObservationOperationHandler.OM_PHENOMENON_TIME_FIRST);
+        	if (where == null && !selectionClause.trim().isEmpty()
+        			&& fetchFromLatestValueIndex(offerings, featuresOfInterest, spatialFeatures,
+        					observedProperties, procedures, aggregationTypes, first, sink)) {
+        		return;
+        	}
+        	getFirstOrLatestObservation(whereClauseParameterAppend, first, aggregationTypes, dimensions, sink);
+        	return;
+        }
+        
+        if (aggregationTypes == null && where == null) {
+        	String[] estimated = selectAggregationTypesFromStatistics(offerings, featuresOfInterest,
+        			spatialFeatures, observedProperties, procedures, temporalFilter);
+        	if (estimated != null) {
+        		try {
+        			if (!fetchFromChunkCache(selectionClause, temporalFilter, estimated, dimensions, sink)) {
+        				getObservations(new StringBuilder(whereClauseParameterAppend), estimated, true, dimensions, sink);
+        			}
+        			return;
+        		}
+        		catch (ResponseExceedsSizeLimitException e) {
+        			LOGGER.info("Series statistics seem outdated. Determining the aggregation type from the database.");
+        		}
+        	}
+        }
+        
+        if (aggregationTypes != null && where == null
+        		&& fetchFromChunkCache(selectionClause, temporalFilter, aggregationTypes, dimensions, sink)) {
+        	return;
         }
-        return getObservations(whereClauseParameterAppend, aggregationTypes, true);
+        
+        getObservations(whereClauseParameterAppend, aggregationTypes, true, dimensions, sink);
+    }
+
+    /**
+     * serves sliding windows ("during:" and "last:" filters) with the
+     * closed days within the window taken from the {@link SeriesChunkCache}.
+     * Only the partial first day, the days missing in the cache and the
+     * still open days are queried.
+     * 
+     * @param selectionClause the where clause without the temporal filter
+     * @return false if the request cannot be served this way
+     */
+    private boolean fetchFromChunkCache(String selectionClause, String temporalFilter,
+    		String[] aggregationTypes, DimensionTables dimensions, ObservationSink sink)
+    				throws IOException, ResponseExceedsSizeLimitException {
+    	if (temporalFilter == null) {
+    		return false;
+    	}
+    	
+    	String tempOperand = TimeConverter.extractTemporalOperandAfterKeyWord(temporalFilter);
+    	String lowerBound;
+    	String upperBound = null;
+    	String lowerOperator;
+    	if (temporalFilter.contains("during:")) {
+    		lowerBound = TimeConverter.convertLocalToUTC(tempOperand.split(",")[0]);
+    		upperBound = TimeConverter.convertLocalToUTC(tempOperand.split(",")[1]);
+    		lowerOperator = " >= '";
+    	}
+    	else if (temporalFilter.contains("last:")) {
+    		lowerBound = resolveLastTimeInstant(Long.parseLong(tempOperand));
+    		lowerOperator = " > '";
+    	}
+    	else {
+    		return false;
+    	}
+    	
+    	int firstCached = SeriesChunkCache.addDays(SeriesStatistics.toDay(lowerBound), 1);
+    	int lastCached = SeriesChunkCache.lastClosedDay();
+    	if (upperBound != null) {
+    		lastCached = Math.min(lastCached, SeriesChunkCache.addDays(SeriesStatistics.toDay(upperBound), -1));
+    	}
+    	if (firstCached > lastCached) {
+    		return false;
+    	}
+    	
+    	String selection = (selectionClause.isEmpty() ? "" : selectionClause + " AND ")
+    			+ createAggregationTypeClause(aggregationTypes, dimensions);
+    	checkChunkCacheValidity();
+    	long epoch = chunkCache.getEpoch();
+    	String tables = createFromClause(dimensions);
+    	List<String> subFields = createSubFieldsForQuery(dimensions);
+    	SeriesChunkCache.Merger merger = new SeriesChunkCache.Merger();
+    	
+    	fetchWithinMaximumRecordCount(tables, selection
+    			+ " AND " + SubField.VALUE_DATETIME_END + lowerOperator + lowerBound + "'"
+    			+ " AND " + SubField.VALUE_DATETIME_END + " < '" + SeriesChunkCache.dayStart(firstCached) + "'",
+    			subFields, dimensions, merger);
+    	
+    	int day = firstCached;
+    	while (day <= lastCached) {
+    		List<MultiValueObservation> cached = chunkCache.get(selection, day);
+    		if (cached != null) {
+    			merger.observations(cached);
+    			day = SeriesChunkCache.addDays(day, 1);
+    			continue;
+    		}
+    		
+    		int missingEnd = day;
+    		while (missingEnd < lastCached && !chunkCache.contains(selection, SeriesChunkCache.addDays(missingEnd, 1))) {
+    			missingEnd = SeriesChunkCache.addDays(missingEnd, 1);
+    		}
+    		
+    		SeriesChunkCache.DaySplitter splitter = new SeriesChunkCache.DaySplitter();
+    		fetchWithinMaximumRecordCount(tables, selection
+    				+ " AND " + SubField.VALUE_DATETIME_END + " >= '" + SeriesChunkCache.dayStart(day) + "'"
+    				+ " AND " + SubField.VALUE_DATETIME_END + " < '" + SeriesChunkCache.dayStart(SeriesChunkCache.addDays(missingEnd, 1)) + "'",
+    				subFields, dimensions, splitter);
+    		
+    		for (int d = day; d <= missingEnd; d = SeriesChunkCache.addDays(d, 1)) {
+    			List<MultiValueObservation> fragments = splitter.getObservations(d);
+    			chunkCache.put(selection, d, epoch, fragments);
+    			merger.observations(fragments);
+    		}
+    		day = SeriesChunkCache.addDays(missingEnd, 1);
+    	}
+    	
+    	fetchWithinMaximumRecordCount(tables, selection
+    			+ " AND " + SubField.VALUE_DATETIME_END + " >= '" + SeriesChunkCache.dayStart(SeriesChunkCache.addDays(lastCached, 1)) + "'"
+    			+ (upperBound == null ? "" : " AND " + SubField.VALUE_DATETIME_END + " <= '" + upperBound + "'"),
+    			subFields, dimensions, merger);
+    	
+    	if (merger.getValueCount() > gdb.getMaxNumberOfResults()) {
+    		throw new ResponseExceedsSizeLimitException(gdb.getMaxNumberOfResults());
+    	}
+    	
+    	LOGGER.debug(String.format("Served %s values for %s from the chunk cache (%s hits, %s misses)",
+    			merger.getValueCount(), temporalFilter, chunkCache.getHits(), chunkCache.getMisses()));
+    	merger.emit(sink);
+    	return true;
+    }
+
+    SeriesChunkCache getChunkCache() {
+    	return chunkCache;
+    }
+    
+    /**
+     * applies the changes of the database to the chunk cache, at most
+     * every {@link #WATERMARK_MAXIMUM_AGE_MS}
+     */
+    private void checkChunkCacheValidity() throws IOException {
+    	if (System.currentTimeMillis() - this.watermarkResolved > WATERMARK_MAXIMUM_AGE_MS) {
+    		advanceWatermark(gdb.getOfferingAccess().resolveValueWatermark());
+    	}
+    }
+    
+    /**
+     * drops the cached chunks from the first day with values inserted or
+     * updated since the previous watermark on. Without a watermark, the
+     * chunks are dropped with each new generation of the offering cache.
+     */
+    private void advanceWatermark(String newWatermark) throws IOException {
+    	synchronized (this.watermarkLock) {
+    		if (newWatermark == null) {
+    			long generation = resolveOfferingCacheGeneration();
+    			if (generation != this.offeringCacheGeneration) {
+    				chunkCache.clear();
+    				this.offeringCacheGeneration = generation;
+    			}
+    		}
+    		else if (this.watermark == null) {
+    			chunkCache.clear();
+    		}
+    		else if (!newWatermark.equals(this.watermark)) {
+    			String firstChange = resolveFirstChangedValueTime(this.watermark);
+    			if (firstChange != null) {
+    				LOGGER.debug("Values changed since "+ this.watermark +" from "+ firstChange +" on");
+    				chunkCache.invalidateFrom(SeriesStatistics.toDay(firstChange));
+    			}
+    		}
+    		
+    		this.watermark = newWatermark;
+    		this.watermarkResolved = System.currentTimeMillis();
+    	}
+    }
+    
+    /**
+     * @return the earliest end time of the values inserted or updated
+     * since the watermark, null if there are none
+     */
+    private String resolveFirstChangedValueTime(String since) throws IOException {
+    	String inserted = AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_INSERTED);
+    	String updated = AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_UPDATED);
+    	ICursor cursor = DatabaseUtils.evaluateQuery(Table.VALUE,
+    			"(" + inserted + " >= '" + since + "' OR " + updated + " >= '" + since + "')",
+    			"MIN(" + AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_END) + ")", gdb);
+    	
+    	IRow row = cursor.nextRow();
+    	Object time = row == null ? null : row.getValue(0);
+    	return time instanceof Date ? TimeConverter.createSqlTimeLiteral((Date) time) : null;
+    }
+    
+    /**
+     * @return the generation of the offering cache, 0 if not available
+     */
+    private long resolveOfferingCacheGeneration() {
+    	try {
+    		ObservationOfferingCache cache = ObservationOfferingCache.instance();
+    		return cache == null ? 0 : cache.getServedGeneration();
+    	} catch (FileNotFoundException e) {
+    		return 0;
+    	}
+    }
+
+    /**
+     * estimates the number of values per aggregation type candidate
+     * from the {@link SeriesStatisticsCache}. The estimate is an upper
+     * bound as the temporal filter is widened to full days.
+     * 
+     * @return the first candidate with values and an estimate below
+     * maxNumberOfResults, or null if the statistics are not available or
+     * no candidate qualifies
+     */
+    private String[] selectAggregationTypesFromStatistics(String[] offerings,
+    		String[] featuresOfInterest, String[] spatialFeatures,
+    		String[] observedProperties, String[] procedures, String temporalFilter) throws FileNotFoundException {
+    	Map<String, SeriesStatistics> statistics = SeriesStatisticsCache.instance(gdb.getDatabaseName()).getAvailableStatistics();
+    	if (statistics == null) {
+    		LOGGER.debug("No series statistics available");
+    		return null;
+    	}
+    	
+    	int[] days = resolveDayRange(temporalFilter);
+    	
+    	List<SeriesStatistics> matching = new ArrayList<>();
+    	Set<String> offeringSet = toSet(offerings);
+    	Set<String> featureSet = toSet(featuresOfInterest);
+    	Set<String> spatialFeatureSet = toSet(spatialFeatures);
+    	Set<String> propertySet = toSet(observedProperties);
+    	Set<String> procedureSet = toSet(procedures);
+    	for (SeriesStatistics series : statistics.values()) {
+    		if (matches(offeringSet, series.getNetwork()) && matches(featureSet, series.getFeature())
+    				&& matches(spatialFeatureSet, series.getFeature()) && matches(propertySet, series.getProperty())
+    				&& matches(procedureSet, series.getProcedure())) {
+    			matching.add(series);
+    		}
+    	}
+    	
+    	for (String[] candidate : aggregationTypesCandidates) {
+    		long count = 0;
+    		for (SeriesStatistics series : matching) {
+    			count += series.countValues(candidate, days[0], days[1]);
+    		}
+    		
+    		LOGGER.debug(String.format("Estimated %s values for aggregation types %s", count, Arrays.toString(candidate)));
+    		if (count > 0 && count < gdb.getMaxNumberOfResults()) {
+    			return candidate;
+    		}
+    	}
+    	
+    	return null;
+    }
+
+    private static Set<String> toSet(String[] values) {
+    	return values == null ? null : new HashSet<>(Arrays.asList(values));
+    }
+
+    private static boolean matches(Set<String> values, String value) {
+    	return values == null || values.contains(value);
+    }
+
+    /**
+     * @return the first and last day (inclusive, as yyyyMMdd) covered
+     * by the temporal filter
+     */
+    private int[] resolveDayRange(String temporalFilter) {
+    	int[] result = new int[] {Integer.MIN_VALUE, Integer.MAX_VALUE};
+    	if (temporalFilter == null) {
+    		return result;
+    	}
+    	
+    	String tempOperand = TimeConverter.extractTemporalOperandAfterKeyWord(temporalFilter);
+    	if (temporalFilter.contains("during:")) {
+    		result[0] = SeriesStatistics.toDay(TimeConverter.convertLocalToUTC(tempOperand.split(",")[0]));
+    		result[1] = SeriesStatistics.toDay(TimeConverter.convertLocalToUTC(tempOperand.split(",")[1]));
+    	}
+    	else if (temporalFilter.contains("equals:")) {
+    		result[0] = SeriesStatistics.toDay(TimeConverter.convertLocalToUTC(tempOperand));
+    		result[1] = result[0];
+    	}
+    	else if (temporalFilter.contains("after:")) {
+    		result[0] = SeriesStatistics.toDay(TimeConverter.convertLocalToUTC(tempOperand));
+    	}
+    	else if (temporalFilter.contains("before:")) {
+    		result[1] = SeriesStatistics.toDay(TimeConverter.convertLocalToUTC(tempOperand));
+    	}
+    	else if (temporalFilter.contains("last:")) {
+    		result[0] = SeriesStatistics.toDay(resolveLastTimeInstant(Long.parseLong(tempOperand)));
+    	}
+    	
+    	return result;
+    }
+
+    @Override
+    public Collection<SeriesStatistics> getSeriesStatistics() throws IOException {
+    	String day = gdb.getWorkspace().getDialect().truncateToDay(
+    			AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_END));
+    	if (day == null) {
+    		LOGGER.info("The SQL dialect does not support day buckets. No series statistics available.");
+    		return Collections.emptyList();
+    	}
+    	
+    	String groupFields = AccessGDBImpl.createCommaSeparatedList(
+    			AccessGDBImpl.concatTableAndField(Table.NETWORK, SubField.NETWORK_ID),
+    			AccessGDBImpl.concatTableAndField(Table.PROCEDURE, SubField.PROCEDURE_RESOURCE),
+    			AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_RESOURCE),
+    			AccessGDBImpl.concatTableAndField(Table.PROPERTY, SubField.PROPERTY_ID),
+    			AccessGDBImpl.concatTableAndField(Table.AGGREGATIONTYPE, SubField.AGGREGATIONTYPE_ID),
+    			day);
+    	
+    	ICursor cursor = DatabaseUtils.evaluateQuery(createFromClause(), null,
+    			groupFields + ", COUNT(*)", "GROUP BY " + groupFields, gdb);
+    	
+    	Map<String, SeriesStatistics> result = new HashMap<>();
+    	IRow row;
+    	while ((row = cursor.nextRow()) != null) {
+    		Object type = row.getValue(4);
+    		Object dayValue = row.getValue(5);
+    		Object count = row.getValue(6);
+    		if (type == null || dayValue == null || !(count instanceof Number)) {
+    			continue;
+    		}
+    		
+    		String network = toStringOrNull(row.getValue(0));
+    		String procedure = toStringOrNull(row.getValue(1));
+    		String feature = toStringOrNull(row.getValue(2));
+    		String property = toStringOrNull(row.getValue(3));
+    		
+    		String id = SeriesStatistics.createItemId(network, procedure, feature, property);
+    		SeriesStatistics series = result.get(id);
+    		if (series == null) {
+    			series = new SeriesStatistics(network, procedure, feature, property);
+    			result.put(id, series);
+    		}
+    		
+    		String dayString = dayValue instanceof Date ?
+    				TimeConverter.createISO8601TimeString((Date) dayValue) : dayValue.toString();
+    		series.addCount(type.toString(), SeriesStatistics.toDay(dayString), ((Number) count).intValue());
+    	}
+    	
+    	LOGGER.info("Series statistics resolved for series: "+ result.size());
+    	return result.values();
+    }
+
+    private static String toStringOrNull(Object value) {
+    	return value == null ? null : value.toString();
     }
 
     
-    private Map<String, MultiValueObservation> getFirstOrLatestObservation(
-			StringBuilder whereClauseParameterAppend, boolean first, String[] aggregationTypes) throws InvalidRequestException, IOException {
+    /**
+     * answers latest and first requests from the {@link LatestValueIndex}
+     * 
+     * @return false if the index is not (yet) available or has no matching
+     * series, e.g. one created since its last refresh
+     */
+    private boolean fetchFromLatestValueIndex(String[] offerings, String[] featuresOfInterest,
+    		String[] spatialFeatures, String[] observedProperties, String[] procedures,
+    		String[] aggregationTypes, boolean first, ObservationSink sink) throws IOException {
+    	LatestValueIndex index = this.latestValueIndex;
+    	if (index == null) {
+    		return false;
+    	}
+    	
+    	if (aggregationTypes == null) {
+    		aggregationTypes = new String[] {
+    				Constants.GETOBSERVATION_DEFAULT_AGGREGATIONTYPE,
+    				Constants.GETOBSERVATION_DEFAULT_AGGREGATIONTYPE_ALT
+    		};
+    	}
+    	
+    	MultiValueObservation result = index.select(toSet(offerings), toSet(featuresOfInterest),
+    			toSet(spatialFeatures), toSet(observedProperties), toSet(procedures),
+    			toSet(aggregationTypes), first);
+    	if (result == null) {
+    		return false;
+    	}
+    	sink.observation(result);
+    	return true;
+    }
+
+    @Override
+    public void refreshLatestValueIndex() throws IOException {
+    	long start = System.currentTimeMillis();
+    	String newWatermark = gdb.getOfferingAccess().resolveValueWatermark();
+    	advanceWatermark(newWatermark);
+    	
+    	LatestValueIndex index = this.latestValueIndex;
+    	if (index != null && !index.isExpired() && index.getWatermark() != null && newWatermark != null) {
+    		String inserted = AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_INSERTED);
+    		String updated = AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_UPDATED);
+    		int rows = loadLatestValues(index, "(" + inserted + " >= '" + index.getWatermark()
+    				+ "' OR " + updated + " >= '" + index.getWatermark() + "')");
+    		index.setWatermark(newWatermark);
+    		LOGGER.info(String.format("Latest value index updated with %s values in %s ms. New watermark: %s",
+    				rows, System.currentTimeMillis() - start, newWatermark));
+    		return;
+    	}
+    	
+    	index = new LatestValueIndex(newWatermark);
+    	loadLatestValues(index, "(" + createSeriesExtremeClause("MIN") + " OR " + createSeriesExtremeClause("MAX") + ")");
+    	this.latestValueIndex = index;
+    	LOGGER.info(String.format("Latest value index built for %s series in %s ms",
+    			index.size(), System.currentTimeMillis() - start));
+    }
+
+    /**
+     * @param function MIN or MAX
+     * @return a clause matching the first or last value of each series
+     * (observation and aggregation type), as a subquery correlated with
+     * the series of the row
+     */
+    private static String createSeriesExtremeClause(String function) {
+    	String alias = "extreme";
+    	return AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_END)
+    			+ " = (SELECT " + function + "(" + alias + "." + SubField.VALUE_DATETIME_END + ")"
+    			+ " FROM " + Table.VALUE + " " + alias
+    			+ " WHERE " + alias + "." + SubField.VALUE_FK_OBSERVATION
+    			+ " = " + AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_FK_OBSERVATION)
+    			+ " AND " + alias + "." + SubField.VALUE_FK_AGGREGATIONTYPE
+    			+ " = " + AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_FK_AGGREGATIONTYPE) + ")";
+    }
+
+    /**
+     * offers all values matching the where clause to the index
+     * 
+     * @return the number of values
+     */
+    private int loadLatestValues(LatestValueIndex index, String whereClause) throws IOException {
+    	List<String> subFields = createSubFieldsForQuery(null);
+    	subFields.add(AccessGDBImpl.concatTableAndField(Table.NETWORK, SubField.NETWORK_ID));
+    	subFields.add(AccessGDBImpl.concatTableAndField(Table.AGGREGATIONTYPE, SubField.AGGREGATIONTYPE_ID));
+    	int endOrdinal = subFields.indexOf(AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_END));
+    	int networkOrdinal = subFields.size() - 2;
+    	int aggregationTypeOrdinal = subFields.size() - 1;
+    	
+    	ICursor cursor = DatabaseUtils.evaluateQuery(createFromClause(), whereClause,
+    			AccessGDBImpl.createCommaSeparatedList(subFields), gdb);
+    	ObservationRowMapper mapper = new ObservationRowMapper(subFields);
+    	
+    	int count = 0;
+    	IRow row;
+    	while ((row = cursor.nextRow()) != null) {
+    		Object end = row.getValue(endOrdinal);
+    		if (!(end instanceof Date)) {
+    			continue;
+    		}
+    		
+    		MultiValueObservation observation = mapper.createMultiValueObservation(row);
+    		observation.getResult().addResultValue(mapper.createResultValue(row));
+    		index.offer(toStringOrNull(row.getValue(networkOrdinal)), toStringOrNull(row.getValue(aggregationTypeOrdinal)),
+    				observation, ((Date) end).getTime());
+    		count++;
+    	}
+    	return count;
+    }
+
+    private void getFirstOrLatestObservation(
+			StringBuilder whereClauseParameterAppend, boolean first, String[] aggregationTypes,
+			DimensionTables dimensions, ObservationSink sink) throws InvalidRequestException, ResponseExceedsSizeLimitException, IOException {
         if (whereClauseParameterAppend.toString().trim().isEmpty()) {
         	throw new InvalidRequestException("No filter of any kind was defined. Rejecting request.");
         }
     	
-    	String tables = createFromClause();
-        List<String> subFields = createSubFieldsForQuery();
+    	String tables = createFromClause(dimensions);
+        List<String> subFields = createSubFieldsForQuery(dimensions);
         
         /*
          * if no aggregation type was defined in the query use
@@ -190,7 +918,7 @@ public class AccessGdbForObservationsImpl implements AccessGdbForObservations {
         }
         
         ifIsFirstAppendAND(whereClauseParameterAppend, false);
-        whereClauseParameterAppend.append(AccessGDBImpl.createOrClause(AccessGDBImpl.concatTableAndField(Table.AGGREGATIONTYPE, SubField.AGGREGATIONTYPE_ID), aggregationTypes));
+        whereClauseParameterAppend.append(createAggregationTypeClause(aggregationTypes, dimensions));
         
         String originalWhereClause = whereClauseParameterAppend.toString();
         
@@ -222,9 +950,7 @@ public class AccessGdbForObservationsImpl implements AccessGdbForObservations {
         ICursor cursor = DatabaseUtils.evaluateQuery(tables, whereClause,
         		" DISTINCT TOP 1 ".concat(AccessGDBImpl.createCommaSeparatedList(subFields)), gdb);
 
-        Map<String, MultiValueObservation> idObsMap = createObservationsFromCursor(cursor, subFields);
-
-        return idObsMap;
+        streamObservationsFromCursor(cursor, subFields, -1, dimensions, sink);
 	}
 
 	/**
@@ -235,68 +961,173 @@ public class AccessGdbForObservationsImpl implements AccessGdbForObservations {
 	 * @throws IOException 
 	 * @throws AutomationException 
      */
-    private Map<String, MultiValueObservation> getObservations(StringBuilder whereClauseParameterAppend, String[] aggregationTypes, boolean checkForMaxRecords) throws ResponseExceedsSizeLimitException, AutomationException, IOException
+    private void getObservations(StringBuilder whereClauseParameterAppend, String[] aggregationTypes, boolean checkForMaxRecords,
+    		DimensionTables dimensions, ObservationSink sink) throws ResponseExceedsSizeLimitException, AutomationException, IOException
     {
-        String tables = createFromClause();
+        String tables = createFromClause(dimensions);
 
-        List<String> subFields = createSubFieldsForQuery();
+        List<String> subFields = createSubFieldsForQuery(dimensions);
         
         /*
          * if there are values for aggregationTypes, then it
          * is defined via the request. otherwise try the default
          * values
          */
+        /*
+         * if the database supports row limiting, the maximum record count
+         * is checked while fetching instead of counting the records first
+         */
+        boolean singlePass = checkForMaxRecords && gdb.getWorkspace().getDialect().supportsRowLimit();
+        
         boolean alreadyAssertedMaxRecords = false;
         if (aggregationTypes != null) {
         	ifIsFirstAppendAND(whereClauseParameterAppend, whereClauseParameterAppend.toString().trim().isEmpty());
-            whereClauseParameterAppend.append(AccessGDBImpl.createOrClause(AccessGDBImpl.concatTableAndField(Table.AGGREGATIONTYPE, SubField.AGGREGATIONTYPE_ID), aggregationTypes));
+            whereClauseParameterAppend.append(createAggregationTypeClause(aggregationTypes, dimensions));
+        }
+        else if (singlePass) {
+        	if (fetchWithBestAggregationType(whereClauseParameterAppend, tables, subFields, dimensions, sink)) {
+        		return;
+        	}
         }
         else {
-        	alreadyAssertedMaxRecords = determineBestAggregationType(whereClauseParameterAppend, tables, checkForMaxRecords);
+        	alreadyAssertedMaxRecords = determineBestAggregationType(whereClauseParameterAppend, tables, checkForMaxRecords, dimensions);
         }
         
         String whereClause = whereClauseParameterAppend.toString();
+        if (singlePass) {
+        	fetchWithinMaximumRecordCount(tables, whereClause, subFields, dimensions, sink);
+        	return;
+        }
+        
         if (checkForMaxRecords && !alreadyAssertedMaxRecords) {
         	DatabaseUtils.assertMaximumRecordCount(tables, whereClause, gdb);
         }
         
         ICursor cursor = DatabaseUtils.evaluateQuery(tables, whereClause,
-        		" DISTINCT " + AccessGDBImpl.createCommaSeparatedList(subFields), gdb);
-
-        Map<String, MultiValueObservation> idObsMap = createObservationsFromCursor(cursor, subFields);
+        		" DISTINCT " + AccessGDBImpl.createCommaSeparatedList(subFields),
+        		createOrderByClause(), gdb);
 
-        return idObsMap;
+        streamObservationsFromCursor(cursor, subFields, -1, dimensions, sink);
+    }
+    
+    /**
+     * orders the rows by observation, so that each observation
+     * is complete once a row of the next one is fetched
+     */
+    private static String createOrderByClause() {
+    	return "ORDER BY " + AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_ID)
+    			+ ", " + AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_BEGIN);
     }
 
-	private Map<String, MultiValueObservation> createObservationsFromCursor(
-			ICursor cursor, List<String> fields) throws IOException {
-		// convert cursor entries to abstract observations
-        // map that associates an observation-ID with an observation:
-        Map<String, MultiValueObservation> idObsMap = new HashMap<String, MultiValueObservation>();
+	/**
+	 * fetches maxNumberOfResults + 1 rows at most. The additional row
+	 * tells that the limit is exceeded, without counting the records
+	 * in a separate query. The sink is reset if the limit is exceeded.
+	 * 
+	 * @return the number of observations passed to the sink
+	 */
+	private int fetchWithinMaximumRecordCount(
+			String tables, String whereClause, List<String> subFields, DimensionTables dimensions,
+			ObservationSink sink) throws ResponseExceedsSizeLimitException, IOException {
+		int maximum = gdb.getMaxNumberOfResults();
+		ICursor cursor = DatabaseUtils.evaluateRowLimitedQuery(tables, whereClause,
+				AccessGDBImpl.createCommaSeparatedList(subFields), true, maximum + 1,
+				createOrderByClause(), gdb);
+		
+		try {
+			return streamObservationsFromCursor(cursor, subFields, maximum, dimensions, sink);
+		}
+		catch (ResponseExceedsSizeLimitException e) {
+			sink.reset();
+			throw e;
+		}
+	}
+
+	/**
+	 * the single pass variant of {@link #determineBestAggregationType(StringBuilder, String, boolean, DimensionTables)}:
+	 * the first candidate with results within the maximum record count
+	 * is the response.
+	 * 
+	 * @return true if a candidate matched and its observations have
+	 * been passed to the sink
+	 */
+	private boolean fetchWithBestAggregationType(
+			StringBuilder whereClauseParameterAppend, String tables, List<String> subFields,
+			DimensionTables dimensions, ObservationSink sink) throws IOException {
+		int lengthBefore = whereClauseParameterAppend.length();
+		
+		for (String[] aggregationTypes : aggregationTypesCandidates) {
+        	ifIsFirstAppendAND(whereClauseParameterAppend, whereClauseParameterAppend.toString().trim().isEmpty());
+            whereClauseParameterAppend.append(createAggregationTypeClause(aggregationTypes, dimensions));
+            
+            try {
+            	if (fetchWithinMaximumRecordCount(tables,
+            			whereClauseParameterAppend.toString(), subFields, dimensions, sink) > 0) {
+            		return true;
+            	}
+            }
+            catch (ResponseExceedsSizeLimitException e) {
+            	LOGGER.debug("Too many results for aggregation types "+ Arrays.toString(aggregationTypes));
+            }
+            
+            whereClauseParameterAppend.setLength(lengthBefore);
+		}
+		
+		return false;
+	}
+
+	/**
+	 * passes each observation to the sink as soon as its last row has been
+	 * read. Requires the rows to be ordered by observation.
+	 * 
+	 * @param maximumRows the maximum number of rows, -1 for no limit
+	 * @return the number of observations passed to the sink
+	 * @throws ResponseExceedsSizeLimitException if the cursor provides
+	 * more rows than the maximum
+	 */
+	private int streamObservationsFromCursor(ICursor cursor, List<String> fields,
+			int maximumRows, DimensionTables dimensions, ObservationSink sink) throws IOException, ResponseExceedsSizeLimitException {
+        ObservationRowMapper mapper = new ObservationRowMapper(fields, dimensions);
+        MultiValueObservation current = null;
+        String currentId = null;
+        int observationCount = 0;
         IRow row;
+        int rowCount = 0;
 		while ((row = cursor.nextRow()) != null) {
-            String obsID = row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_ID))).toString();
+			if (maximumRows >= 0 && ++rowCount > maximumRows) {
+				throw new ResponseExceedsSizeLimitException(maximumRows);
+			}
+			
+            String obsID = mapper.getObservationId(row);
 
-            if (!idObsMap.containsKey(obsID)) {
-                MultiValueObservation multiValObs = createMultiValueObservation(row, fields);
-                multiValObs.getResult().addResultValue(createResultValue(row, fields));
-                idObsMap.put(obsID, multiValObs);
-            } else {
-            	idObsMap.get(obsID).getResult().addResultValue(createResultValue(row, fields));
+            if (current == null || !Objects.equals(obsID, currentId)) {
+            	if (current != null) {
+            		sink.observation(current);
+            		observationCount++;
+            	}
+                current = mapper.createMultiValueObservation(row);
+                currentId = obsID;
             }
+            current.getResult().addResultValue(mapper.createResultValue(row));
         }
-		return idObsMap;
+		
+		if (current != null) {
+			sink.observation(current);
+			observationCount++;
+		}
+		return observationCount;
 	}
 
 
 	private boolean determineBestAggregationType(
-			StringBuilder whereClauseParameterAppend, String tables, boolean checkForMaxRecords) {
+			StringBuilder whereClauseParameterAppend, String tables, boolean checkForMaxRecords,
+			DimensionTables dimensions) {
 		int lengthBefore = whereClauseParameterAppend.length();
         
 		int c;
 		for (String[] aggregationTypes : aggregationTypesCandidates) {
         	ifIsFirstAppendAND(whereClauseParameterAppend, whereClauseParameterAppend.toString().trim().isEmpty());
-            whereClauseParameterAppend.append(AccessGDBImpl.createOrClause(AccessGDBImpl.concatTableAndField(Table.AGGREGATIONTYPE, SubField.AGGREGATIONTYPE_ID), aggregationTypes));
+            whereClauseParameterAppend.append(createAggregationTypeClause(aggregationTypes, dimensions));
             
             c = DatabaseUtils.resolveRecordCount(tables, whereClauseParameterAppend.toString(), gdb);
             if (c > 0 && (!checkForMaxRecords || c < gdb.getMaxNumberOfResults())) {
@@ -309,7 +1140,15 @@ public class AccessGdbForObservationsImpl implements AccessGdbForObservations {
 		return false;
 	}
 
-	private List<String> createSubFieldsForQuery() {
+	static List<String> createSubFieldsForQuery() {
+		return createSubFieldsForQuery(null);
+	}
+
+	/**
+	 * @param dimensions if not null, the foreign keys of the lookup
+	 * tables are selected instead of their columns
+	 */
+	static List<String> createSubFieldsForQuery(DimensionTables dimensions) {
 		List<String> subFields = new ArrayList<String>();
 		
 		subFields.add(AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_PK_OBSERVATION)); //this field is only needed so that DISTINCT works
@@ -319,21 +1158,38 @@ public class AccessGdbForObservationsImpl implements AccessGdbForObservations {
         subFields.add(AccessGDBImpl.concatTableAndField(Table.SAMPLINGPOINT, SubField.SAMPLINGPOINT_ID));
         subFields.add(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_RESOURCE));
         subFields.add(AccessGDBImpl.concatTableAndField(Table.PROPERTY, SubField.PROPERTY_ID));
-        subFields.add(AccessGDBImpl.concatTableAndField(Table.UNIT, SubField.UNIT_NOTATION));
-        subFields.add(AccessGDBImpl.concatTableAndField(Table.UNIT, SubField.UNIT_ID));
-        subFields.add(AccessGDBImpl.concatTableAndField(Table.UNIT, SubField.UNIT_LABEL));
+        if (dimensions == null) {
+        	subFields.add(AccessGDBImpl.concatTableAndField(Table.UNIT, SubField.UNIT_NOTATION));
+        	subFields.add(AccessGDBImpl.concatTableAndField(Table.UNIT, SubField.UNIT_ID));
+        	subFields.add(AccessGDBImpl.concatTableAndField(Table.UNIT, SubField.UNIT_LABEL));
+        }
         subFields.add(AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_BEGIN));
         subFields.add(AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_END));
         subFields.add(AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_VALUE_NUMERIC));
         subFields.add(AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_RESULTTIME));
-        subFields.add(AccessGDBImpl.concatTableAndField(Table.VALIDITY, SubField.VALIDITY_NOTATION)); 
-        subFields.add(AccessGDBImpl.concatTableAndField(Table.VERIFICATION, SubField.VERIFICATION_NOTATION));
-        subFields.add(AccessGDBImpl.concatTableAndField(Table.AGGREGATIONTYPE, SubField.AGGREGATIONTYPE_DEFINITION));
-        subFields.add(AccessGDBImpl.concatTableAndField(Table.AGGREGATIONTYPE, SubField.AGGREGATIONTYPE_NOTATION));
+        if (dimensions == null) {
+        	subFields.add(AccessGDBImpl.concatTableAndField(Table.VALIDITY, SubField.VALIDITY_NOTATION)); 
+        	subFields.add(AccessGDBImpl.concatTableAndField(Table.VERIFICATION, SubField.VERIFICATION_NOTATION));
+        	subFields.add(AccessGDBImpl.concatTableAndField(Table.AGGREGATIONTYPE, SubField.AGGREGATIONTYPE_DEFINITION));
+        	subFields.add(AccessGDBImpl.concatTableAndField(Table.AGGREGATIONTYPE, SubField.AGGREGATIONTYPE_NOTATION));
+        }
+        else {
+        	subFields.add(AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_FK_UNIT));
+        	subFields.add(AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_FK_VALIDITY));
+        	subFields.add(AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_FK_VERIFICATION));
+        	subFields.add(AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_FK_AGGREGATIONTYPE));
+        }
 		return subFields;
 	}
 
 	private String createFromClause() {
+		return createFromClause(null);
+	}
+
+	/**
+	 * @param dimensions if not null, the lookup tables are not joined
+	 */
+	private String createFromClause(DimensionTables dimensions) {
 		String fromClause = 
 		Table.OBSERVATION +
 		" LEFT JOIN " + Table.FEATUREOFINTEREST	+ " ON " + Table.OBSERVATION + "." + SubField.OBSERVATION_FK_FEATUREOFINTEREST	+ " = " + Table.FEATUREOFINTEREST + "." + SubField.FEATUREOFINTEREST_PK_FEATUREOFINTEREST +
@@ -341,129 +1197,98 @@ public class AccessGdbForObservationsImpl implements AccessGdbForObservations {
 		" LEFT JOIN " + Table.PROPERTY 			+ " ON " + Table.OBSERVATION + "." + SubField.OBSERVATION_FK_PROPERTY 			+ " = " + Table.PROPERTY + "." + SubField.PROPERTY_PK_PROPERTY +
 		" LEFT JOIN " + Table.SAMPLINGPOINT 	+ " ON " + Table.OBSERVATION + "." + SubField.OBSERVATION_FK_SAMPLINGPOINT 		+ " = " + Table.SAMPLINGPOINT + "." + SubField.SAMPLINGPOINT_PK_SAMPLINGPOINT + 
 		" LEFT JOIN " + Table.VALUE 			+ " ON " + Table.VALUE + "." + SubField.VALUE_FK_OBSERVATION 					+ " = " + Table.OBSERVATION + "." + SubField.OBSERVATION_PK_OBSERVATION +
+		" LEFT JOIN " + Table.STATION 			+ " ON " + Table.SAMPLINGPOINT + "." + SubField.SAMPLINGPOINT_FK_STATION 		+ " = " + Table.STATION + "." + SubField.STATION_PK_STATION;
 		
+		if (dimensions != null) {
+			return fromClause;
+		}
+		
+		return fromClause +
 		" LEFT JOIN " + Table.VALIDITY 			+ " ON " + Table.VALUE + "." + SubField.VALUE_FK_VALIDITY 						+ " = " + Table.VALIDITY + "." + SubField.VALIDITY_PK_VALIDITY +
 		" LEFT JOIN " + Table.VERIFICATION 		+ " ON " + Table.VALUE + "." + SubField.VALUE_FK_VERIFICATION 					+ " = " + Table.VERIFICATION + "." + SubField.VERIFICATION_PK_VERIFICATION +
 		" LEFT JOIN " + Table.AGGREGATIONTYPE 	+ " ON " + Table.VALUE + "." + SubField.VALUE_FK_AGGREGATIONTYPE 				+ " = " + Table.AGGREGATIONTYPE + "." + SubField.AGGREGATIONTYPE_PK_AGGREGATIONTYPE +
-		
-		" LEFT JOIN " + Table.STATION 			+ " ON " + Table.SAMPLINGPOINT + "." + SubField.SAMPLINGPOINT_FK_STATION 		+ " = " + Table.STATION + "." + SubField.STATION_PK_STATION +
 		" LEFT JOIN " + Table.UNIT 				+ " ON " + Table.UNIT + "." + SubField.UNIT_PK_UNIT 							+ " = " + Table.VALUE + "." + SubField.VALUE_FK_UNIT + 
 		" LEFT JOIN " + Table.NETWORK 			+ " ON " + Table.NETWORK + "." + SubField.NETWORK_PK_NETWOK 					+ " = " + Table.STATION + "." + SubField.STATION_FK_NETWORK_GID;
+	}
+	
+	private static String createAggregationTypeClause(String[] aggregationTypes, DimensionTables dimensions) {
+		if (dimensions == null) {
+			return AccessGDBImpl.createOrClause(AccessGDBImpl.concatTableAndField(Table.AGGREGATIONTYPE, SubField.AGGREGATIONTYPE_ID), aggregationTypes);
+		}
+		return createKeyClause(AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_FK_AGGREGATIONTYPE),
+				dimensions.getAggregationTypes(), aggregationTypes);
+	}
+	
+	/**
+	 * @return a clause matching the primary keys of the identifiers in
+	 * the foreign key column. Unknown identifiers match nothing
+	 */
+	private static String createKeyClause(String foreignKeyColumn, DimensionTables.DimensionTable table, String[] identifiers) {
+		List<Integer> keys = new ArrayList<>();
+		for (String identifier : identifiers) {
+			Integer key = table.keyOf(identifier);
+			if (key != null) {
+				keys.add(key);
+			}
+		}
+		return AccessGDBImpl.createInClause(foreignKeyColumn, keys);
+	}
+	
+	@Override
+	public void refreshDimensionTables() throws IOException {
+		long start = System.currentTimeMillis();
+		DimensionTables tables = DimensionTables.load(gdb);
+		this.dimensionTables = tables;
+		this.dimensionTablesUnavailable = false;
+		LOGGER.info(String.format("Dimension tables loaded in %s ms: %s units, %s validities, %s verifications, %s aggregation types, %s networks",
+				System.currentTimeMillis() - start, tables.getUnits().size(), tables.getValidities().size(),
+				tables.getVerifications().size(), tables.getAggregationTypes().size(), tables.getNetworks().size()));
+	}
+	
+	/**
+	 * @return the dimension tables, or null if the lookup tables have to
+	 * be joined: the tables could not be loaded, a custom where clause
+	 * may reference them or an identifier is not (yet) known
+	 */
+	private DimensionTables resolveDimensionTables(String[] offerings, String[] aggregationTypes, String where) {
+		if (where != null) {
+			return null;
+		}
+		
+		DimensionTables result = this.dimensionTables;
+		if (result == null && !this.dimensionTablesUnavailable) {
+			try {
+				refreshDimensionTables();
+				result = this.dimensionTables;
+			} catch (IOException e) {
+				LOGGER.warn("Could not load the dimension tables. Joining them instead: "+ e.getMessage());
+				this.dimensionTablesUnavailable = true;
+			}
+		}
 		
-		return fromClause;
+		if (result == null || !containsAll(result.getNetworks(), offerings)
+				|| !containsAll(result.getAggregationTypes(), aggregationTypes)) {
+			return null;
+		}
+		return result;
+	}
+	
+	private static boolean containsAll(DimensionTables.DimensionTable table, String[] identifiers) {
+		if (identifiers == null) {
+			return true;
+		}
+		for (String identifier : identifiers) {
+			if (table.keyOf(identifier) == null) {
+				return false;
+			}
+		}
+		return true;
 	}
     
     // /////////////////////////////
     // //////////////////////////// Helper Methods:
     // /////////////////////////////
 
-    protected MultiValueObservation createMultiValueObservation(IRow row,
-            List<String> fields) throws IOException
-    {
-        // Identifier
-        String obsID = row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_ID))).toString();
-        Identifier obsIdentifier = new Identifier(null, obsID);
-
-        // procedure
-        String procID = (String) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.PROCEDURE, SubField.PROCEDURE_RESOURCE)));
-        if (procID == null) {
-            procID = Constants.NULL_VALUE;
-        }
-
-        // observed property
-        String obsPropID = (String) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.PROPERTY, SubField.PROPERTY_ID)));
-        if (obsPropID == null) {
-            obsPropID = Constants.NULL_VALUE;
-        }
-
-        // featureOfInterest
-        String featureID = (String) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_RESOURCE)));
-        if (featureID == null) {
-            featureID = Constants.NULL_VALUE;
-        }
-        
-        // samplingFeature
-        String samplingPointID = (String) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.SAMPLINGPOINT, SubField.SAMPLINGPOINT_RESOURCE)));
-        // in case "resource" field is null, "id" field is used:
-        if (samplingPointID == null || samplingPointID.equals("")) {
-            samplingPointID = (String) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.SAMPLINGPOINT, SubField.SAMPLINGPOINT_ID)));
-        }
-
-        // unit ID
-        String unitID = (String) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.UNIT, SubField.UNIT_ID)));
-        if (unitID == null) {
-            unitID = Constants.NULL_VALUE;
-        }
-        
-        // unit notation
-        String unitNotation = (String) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.UNIT, SubField.UNIT_NOTATION)));
-        if (unitNotation == null) {
-            unitNotation = Constants.NULL_VALUE;
-        }
-        
-        // unit notation
-        String unitLabel = (String) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.UNIT, SubField.UNIT_LABEL)));
-        if (unitLabel == null) {
-        	unitLabel = Constants.NULL_VALUE;
-        }
-        
-        // aggregation type
-        String aggregationType = (String) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.AGGREGATIONTYPE, SubField.AGGREGATIONTYPE_DEFINITION)));
-        if (aggregationType == null) {
-            aggregationType = Constants.NULL_VALUE;
-        }
-        
-        // result time
-        Date resultDate = (Date) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_RESULTTIME)));
-        ITimePosition resultTimePos = TimeConverter.createTimeFromDate(resultDate, null);
-
-        return new MultiValueObservation(obsIdentifier, procID, obsPropID, featureID, samplingPointID, unitID, unitNotation, unitLabel, aggregationType, resultTimePos);
-    }
-
-    /**
-     * 
-     * @param row
-     * @param fields
-     * @return
-     * @throws IOException
-     * @throws AutomationException
-     */
-    protected MeasureResult createResultValue(IRow row,
-            List<String> fields) throws AutomationException, IOException
-    {
-        // start time
-        Date startDate = (Date) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_BEGIN)));
-        ITimePosition startTimePos = TimeConverter.createTimeFromDate(startDate, null);
-
-        // end time
-        Date endDate = (Date) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_END)));
-        ITimePosition endTimePos = TimeConverter.createTimeFromDate(endDate, null);
-
-        // validity
-        String validity = (String) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.VALIDITY, SubField.VALIDITY_NOTATION)));
-        if (validity == null) {
-            validity = Constants.NULL_VALUE;
-        }
-
-        // verification
-        String verification = (String) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.VERIFICATION, SubField.VERIFICATION_NOTATION)));
-        if (verification == null) {
-            verification = Constants.NULL_VALUE;
-        }
-        
-        //aggregationType
-        String aggregationType = (String) row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.AGGREGATIONTYPE, SubField.AGGREGATIONTYPE_NOTATION)));
-        if (aggregationType == null) {
-        	aggregationType = Constants.NULL_VALUE;
-        }
-
-        // result
-        Object numValue = row.getValue(fields.indexOf(AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_VALUE_NUMERIC)));
-        Double value = (Double) numValue;
-
-        return new MeasureResult(startTimePos, endTimePos, validity, verification, aggregationType, value);
-    }
- 
     /**
      * This method creates a temporal database clause out of a given temporal filter as
      * String.
@@ -504,25 +1329,26 @@ public class AccessGdbForObservationsImpl implements AccessGdbForObservations {
             clause = SubField.VALUE_DATETIME_END + " < '" + timeInstant + "'";
         } 
         else if (temporalFilter.contains("last:")) {
-            long duration = Long.parseLong(tempOperand);
-
-            // convert to UTC, since database is in UTC:
-            Calendar utcTime = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
-            utcTime.setTimeInMillis(System.currentTimeMillis() - duration);
-            int year = utcTime.get(Calendar.YEAR);
-            int month = utcTime.get(Calendar.MONTH) + 1;
-            int day = utcTime.get(Calendar.DAY_OF_MONTH);
-            int hour = utcTime.get(Calendar.HOUR_OF_DAY);
-            int minute = utcTime.get(Calendar.MINUTE);
-            int second = utcTime.get(Calendar.SECOND);
-            String timeInstant = TimeConverter.toISO8601(false, year, month, day, hour, minute, second);
-
+            String timeInstant = resolveLastTimeInstant(Long.parseLong(tempOperand));
             clause = SubField.VALUE_DATETIME_END + " > '" + timeInstant + "'";
         } else {
             throw new IllegalArgumentException("Error while parsing the temporal filter.");
         }
         return clause;
     }
+
+    private String resolveLastTimeInstant(long duration) {
+        // convert to UTC, since database is in UTC:
+        Calendar utcTime = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        utcTime.setTimeInMillis(System.currentTimeMillis() - duration);
+        int year = utcTime.get(Calendar.YEAR);
+        int month = utcTime.get(Calendar.MONTH) + 1;
+        int day = utcTime.get(Calendar.DAY_OF_MONTH);
+        int hour = utcTime.get(Calendar.HOUR_OF_DAY);
+        int minute = utcTime.get(Calendar.MINUTE);
+        int second = utcTime.get(Calendar.SECOND);
+        return TimeConverter.toISO8601(false, year, month, day, hour, minute, second);
+    }
     
 
     /**
@@ -16,22 +16,36 @@
 package org.n52.sos.db.impl;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.n52.oxf.valueDomains.time.ITimePeriod;
 import org.n52.oxf.valueDomains.time.ITimePosition;
+import org.n52.oxf.valueDomains.time.TimeConverter;
 import org.n52.oxf.valueDomains.time.TimePeriod;
+import org.n52.sos.cache.CachedEnvelop;
 import org.n52.sos.cache.OnOfferingRetrieved;
 import org.n52.sos.cache.OnOfferingRetrieved.RetrievingCancelledException;
+import org.n52.sos.cache.RebuildPacer;
 import org.n52.sos.dataTypes.AGSEnvelope;
 import org.n52.sos.dataTypes.ObservationOffering;
 import org.n52.sos.db.AccessGdbForOfferings;
@@ -49,7 +63,11 @@ public class AccessGdbForOfferingsImpl implements AccessGdbForOfferings {
 
 	static Logger LOGGER = Logger.getLogger(AccessGdbForOfferingsImpl.class.getName());
 
+	private static final long CANCELLATION_CHECK_INTERVAL_MS = 1000;
+
 	private ExecutorService futureExecutor = Executors.newSingleThreadExecutor();
+	
+	private RebuildPacer pacer = RebuildPacer.instance();
 
 	private AccessGDBImpl gdb;
 
@@ -72,6 +90,11 @@ public class AccessGdbForOfferingsImpl implements AccessGdbForOfferings {
 			OnOfferingRetrieved retriever) throws IOException {
 		LOGGER.info("getNetworksAsObservationOfferings() is called. "+System.identityHashCode(this));
 
+		if (gdb.isGroupedOfferingRebuild()) {
+			getNetworksAsObservationOfferingsGrouped(retriever, null);
+			return;
+		}
+		
 		List<ObservationOffering> offerings = new ArrayList<ObservationOffering>();
 
 		// ~~~~~~~~~~~~~~~~~~~~
@@ -88,7 +111,7 @@ public class AccessGdbForOfferingsImpl implements AccessGdbForOfferings {
 		// evaluate the database query
 		ICursor cursor;
 		try {
-			cursor = retrieveCursor(tables, new StringBuilder(), subFields);
+			cursor = retrieveCursor(RebuildPacer.QUERY_NETWORKS, tables, new StringBuilder(), subFields);
 		} catch (ExecutionException e1) {
 			throw new IOException(e1);
 		}
@@ -117,204 +140,642 @@ public class AccessGdbForOfferingsImpl implements AccessGdbForOfferings {
 		 */
 		retriever.retrieveExpectedOfferingsCount(offerings.size());
 
+		int parallelism = gdb.getCacheBuildParallelism();
+		ExecutorService workers = createWorkerPool(parallelism);
+		Deque<PendingOffering> window = new ArrayDeque<>();
+		Iterator<ObservationOffering> it = offerings.iterator();
 		int currentOffering = 0;
-		for (ObservationOffering offering : offerings) {
-			currentOffering++;
+		
+		try {
+			while (true) {
+				/*
+				 * keep the workers busy, but deliver the results
+				 * in the order of the networks
+				 */
+				while (window.size() < parallelism * 2 && it.hasNext()) {
+					ObservationOffering offering = it.next();
+					currentOffering++;
+					
+					if (retriever.isAlreadyRetrieved(offering.getId())) {
+						LOGGER.debug("Offering already retrieved by a previous run: " + offering.getId());
+						continue;
+					}
+					
+					LOGGER.info("Working on offering (id: '" + offering.getId() + "') at index " + currentOffering + " out of " + offerings.size());
+					OfferingComputation computation = new OfferingComputation(offering);
+					window.add(new PendingOffering(offering.getId(), currentOffering,
+							computation, workers.submit(computation)));
+				}
+				
+				PendingOffering next = window.poll();
+				if (next == null) {
+					break;
+				}
+				
+				ObservationOffering offering = awaitOffering(next, retriever);
+				if (offering != null) {
+					retriever.retrieveOffering(offering, next.index);
+				}
+			}
+		}
+		catch (RetrievingCancelledException e) {
+			LOGGER.warn("retrieval mechanism cancelled. stopping cache update", e);
+		}
+		catch (ExecutionException e) {
+			LOGGER.warn("Exception caught, cancelling cache update", e);				
+			throw new IOException(e);
+		}
+		finally {
+			for (PendingOffering pending : window) {
+				pending.future.cancel(true);
+			}
+			workers.shutdownNow();
+		}
+		
+	}
+
+	private ExecutorService createWorkerPool(int parallelism) {
+		final AtomicInteger threadCount = new AtomicInteger();
+		return Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "offering-cache-worker-" + threadCount.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * waits for the computation of an offering. A cancelled cache update
+	 * is recognized within a second.
+	 * 
+	 * @return the offering or null if the network has no observations
+	 */
+	private ObservationOffering awaitOffering(PendingOffering pending,
+			OnOfferingRetrieved retriever) throws ExecutionException, RetrievingCancelledException {
+		while (true) {
+			if (retriever.isCancelled()) {
+				throw new RetrievingCancelledException("Cache update cancelled.");
+			}
+			
 			try {
+				return pending.future.get(CANCELLATION_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+			}
+			catch (TimeoutException e) {
+				/*
+				 * three queries per offering, measured from the start of
+				 * the computation on its worker
+				 */
+				long started = pending.computation.getStarted();
+				if (started > 0 && System.currentTimeMillis() - started > pacer.getQueryTimeout() * 3) {
+					pending.future.cancel(true);
+					pacer.queryFailed();
+					LOGGER.severe("Timeout at computing offering " + pending.offeringId, e);
+					throw new ExecutionException(e);
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ExecutionException(e);
+			}
+		}
+	}
 
-				LOGGER.info("Working on offering (id: '" + offering.getId() + "') at index " + offerings.indexOf(offering) + " out of " + offerings.size());
+	/**
+	 * resolves time extent, observed properties and envelope of a single
+	 * network. Runs on a worker thread and queries the database directly
+	 * instead of going through the future executor for every row.
+	 * 
+	 * @return the offering or null if the network has no observations
+	 */
+	private ObservationOffering computeOffering(ObservationOffering offering) throws IOException, InterruptedException {
+		IRow row;
+		
+		// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+		// request the timeperiod
 
-				safetySleep(200);
-				// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
-				// request the timeperiod
+		// set tables
+		List<String> tablesTime = new ArrayList<String>();
+		tablesTime.add(Table.VALUE);
+		tablesTime.add(Table.OBSERVATION);
+		tablesTime.add(Table.SAMPLINGPOINT);
+		tablesTime.add(Table.STATION);
+		tablesTime.add(Table.NETWORK);
+		//            LOGGER.info("Tables clause := " + queryDefTime.getTables());
 
-				// set tables
-				final List<String> tablesTime = new ArrayList<String>();
-				tablesTime.add(Table.VALUE);
-				tablesTime.add(Table.OBSERVATION);
-				tablesTime.add(Table.SAMPLINGPOINT);
-				tablesTime.add(Table.STATION);
-				tablesTime.add(Table.NETWORK);
-				//            LOGGER.info("Tables clause := " + queryDefTime.getTables());
+		// set sub fields
+		List<String> subFieldsTime = new ArrayList<String>();
+		subFieldsTime.add("MIN(" + AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_END)+") AS MINTIME");
+		subFieldsTime.add("MAX(" + AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_END)+") AS MAXTIME");
+
+		// create where clause with joins and constraints
+		StringBuilder whereClauseTime = new StringBuilder();
+		whereClauseTime.append(AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_FK_OBSERVATION) + " = " + AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_PK_OBSERVATION));
+		whereClauseTime.append(" AND ");
+		whereClauseTime.append(AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_FK_SAMPLINGPOINT) + " = " + AccessGDBImpl.concatTableAndField(Table.SAMPLINGPOINT, SubField.SAMPLINGPOINT_PK_SAMPLINGPOINT));
+		whereClauseTime.append(" AND ");
+		whereClauseTime.append(AccessGDBImpl.concatTableAndField(Table.SAMPLINGPOINT, SubField.SAMPLINGPOINT_FK_STATION) + " = " + AccessGDBImpl.concatTableAndField(Table.STATION, SubField.STATION_PK_STATION));
+		whereClauseTime.append(" AND ");
+		whereClauseTime.append(AccessGDBImpl.concatTableAndField(Table.STATION, SubField.STATION_FK_NETWORK_GID) + " = " + AccessGDBImpl.concatTableAndField(Table.NETWORK, SubField.NETWORK_PK_NETWOK));
+		whereClauseTime.append(" AND ");
+		whereClauseTime.append(AccessGDBImpl.concatTableAndField(Table.NETWORK, SubField.NETWORK_ID) + " = '" + offering.getId() + "'");
+
+		LOGGER.debug(String.format("Evaluating time query for network: '%s'", offering.getId()));
+
+		ICursor cursorOffering = evaluateRebuildQuery(RebuildPacer.QUERY_TIME, tablesTime, whereClauseTime, subFieldsTime);
+
+		row = nextRow(cursorOffering);
+
+		Object startValue = row.getValue(0);
+		Object endValue = row.getValue(1);
+
+		if (startValue == null || endValue == null) {
+			LOGGER.debug("skipping network");
+			return null;
+		}
+		else {
+			//                LOGGER.info("start time: " + startValue);
+			//                LOGGER.info("end time: " + endValue);
 
-				// set sub fields
-				final List<String> subFieldsTime = new ArrayList<String>();
-				subFieldsTime.add("MIN(" + AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_END)+") AS MINTIME");
-				subFieldsTime.add("MAX(" + AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_END)+") AS MAXTIME");
+			// start time stamp
+			ITimePosition startTime = AccessGDBImpl.createTimePosition(startValue);                
 
-				// create where clause with joins and constraints
-				final StringBuilder whereClauseTime = new StringBuilder();
-				whereClauseTime.append(AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_FK_OBSERVATION) + " = " + AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_PK_OBSERVATION));
-				whereClauseTime.append(" AND ");
-				whereClauseTime.append(AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_FK_SAMPLINGPOINT) + " = " + AccessGDBImpl.concatTableAndField(Table.SAMPLINGPOINT, SubField.SAMPLINGPOINT_PK_SAMPLINGPOINT));
-				whereClauseTime.append(" AND ");
-				whereClauseTime.append(AccessGDBImpl.concatTableAndField(Table.SAMPLINGPOINT, SubField.SAMPLINGPOINT_FK_STATION) + " = " + AccessGDBImpl.concatTableAndField(Table.STATION, SubField.STATION_PK_STATION));
-				whereClauseTime.append(" AND ");
-				whereClauseTime.append(AccessGDBImpl.concatTableAndField(Table.STATION, SubField.STATION_FK_NETWORK_GID) + " = " + AccessGDBImpl.concatTableAndField(Table.NETWORK, SubField.NETWORK_PK_NETWOK));
-				whereClauseTime.append(" AND ");
-				whereClauseTime.append(AccessGDBImpl.concatTableAndField(Table.NETWORK, SubField.NETWORK_ID) + " = '" + offering.getId() + "'");
+			// end time stamp
+			ITimePosition endTime = AccessGDBImpl.createTimePosition(endValue);
 
-				LOGGER.debug(String.format("Evaluating time query for network: '%s'", offering.getId()));
+			// add time extent to offering
+			if (startTime != null && endTime != null) {
+				offering.setTimeExtent(new TimePeriod(startTime, endTime));
+			}
+		}
 
-				final ICursor cursorOffering = retrieveCursor(tablesTime, whereClauseTime, subFieldsTime);
+		pacer.pause();
+		// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+		// set observed property
 
-				row = retrieveNextRow(cursorOffering);
+		// set tables
+		List<String> tablesProp = new ArrayList<String>();
+		tablesProp.add(Table.PROPERTY);
+		tablesProp.add(Table.OBSERVATION);
+		tablesProp.add(Table.SAMPLINGPOINT);
+		tablesProp.add(Table.STATION);
+		tablesProp.add(Table.NETWORK);
 
-				Object startValue = row.getValue(0);
-				Object endValue = row.getValue(1);
+		// set sub fields
+		List<String> subFieldsProp = new ArrayList<String>();
+		subFieldsProp.add(AccessGDBImpl.concatTableAndField(Table.PROPERTY, SubField.PROPERTY_ID));
+
+		// create where clause with joins and constraints
+		StringBuilder whereClauseProp = new StringBuilder();
+		whereClauseProp.append(AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_FK_PROPERTY) + " = " + AccessGDBImpl.concatTableAndField(Table.PROPERTY, SubField.PROPERTY_PK_PROPERTY));
+		whereClauseProp.append(" AND ");
+		whereClauseProp.append(AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_FK_SAMPLINGPOINT) + " = " + AccessGDBImpl.concatTableAndField(Table.SAMPLINGPOINT, SubField.SAMPLINGPOINT_PK_SAMPLINGPOINT));
+		whereClauseProp.append(" AND ");
+		whereClauseProp.append(AccessGDBImpl.concatTableAndField(Table.SAMPLINGPOINT, SubField.SAMPLINGPOINT_FK_STATION) + " = " + AccessGDBImpl.concatTableAndField(Table.STATION, SubField.STATION_PK_STATION));
+		whereClauseProp.append(" AND ");
+		whereClauseProp.append(AccessGDBImpl.concatTableAndField(Table.STATION, SubField.STATION_FK_NETWORK_GID) + " = " + AccessGDBImpl.concatTableAndField(Table.NETWORK, SubField.NETWORK_PK_NETWOK));
+		whereClauseProp.append(" AND ");
+		whereClauseProp.append(AccessGDBImpl.concatTableAndField(Table.NETWORK, SubField.NETWORK_ID) + " = '" + offering.getId() + "'");
+		LOGGER.debug(String.format("Evaluating property query for network: '%s'", offering.getId()));
 
-				if (startValue == null || endValue == null) {
-					LOGGER.debug("skipping network");
-					continue;
-				}
-				else {
-					//                LOGGER.info("start time: " + startValue);
-					//                LOGGER.info("end time: " + endValue);
+		// evaluate the database query
+		ICursor cursorProp = evaluateRebuildQuery(RebuildPacer.QUERY_PROPERTIES, tablesProp, whereClauseProp, subFieldsProp);
 
-					// start time stamp
-					ITimePosition startTime = AccessGDBImpl.createTimePosition(startValue);                
+		List<String> obsProps = new ArrayList<String>();
+		while ((row = nextRow(cursorProp)) != null) {
+			String obsPropID = (String) row.getValue(subFieldsProp.indexOf(AccessGDBImpl.concatTableAndField(Table.PROPERTY, SubField.PROPERTY_ID)));
+			if (! obsProps.contains(obsPropID)) {
+				obsProps.add(obsPropID);
+			}
+		}
 
-					// end time stamp
-					ITimePosition endTime = AccessGDBImpl.createTimePosition(endValue);
+		// copy obsProps list to String Array:
+		String[] obsPropsArray = new String[obsProps.size()];
+		int i=0;
+		for (Iterator<String> iterator = obsProps.iterator(); iterator.hasNext();) {
+			obsPropsArray[i++] = (String) iterator.next();
+		}
 
-					// add time extent to offering
-					if (startTime != null && endTime != null) {
-						offering.setTimeExtent(new TimePeriod(startTime, endTime));
-					}
-				}
+		offering.setObservedProperties(obsPropsArray);
 
-				safetySleep(200);
-				// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
-				// set observed property
+		pacer.pause();
+		// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+		// set envelope through feature positions
 
-				// set tables
-				List<String> tablesProp = new ArrayList<String>();
-				tablesProp.add(Table.PROPERTY);
-				tablesProp.add(Table.OBSERVATION);
-				tablesProp.add(Table.SAMPLINGPOINT);
-				tablesProp.add(Table.STATION);
-				tablesProp.add(Table.NETWORK);
+		// set tables
+		List<String> tablesFoi = new ArrayList<String>();
+		tablesFoi.add(Table.FEATUREOFINTEREST);
+		tablesFoi.add(Table.OBSERVATION);
+		tablesFoi.add(Table.SAMPLINGPOINT);
+		tablesFoi.add(Table.STATION);
+		tablesFoi.add(Table.NETWORK);
 
-				// set sub fields
-				List<String> subFieldsProp = new ArrayList<String>();
-				subFieldsProp.add(AccessGDBImpl.concatTableAndField(Table.PROPERTY, SubField.PROPERTY_ID));
+		// set sub fields
+		List<String> subFieldsFoi = new ArrayList<String>();
+		subFieldsFoi.add(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_SHAPE));
+
+		// create the where clause with joins and constraints
+		StringBuilder whereClauseFoi = new StringBuilder();
+		whereClauseFoi.append(AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_FK_FEATUREOFINTEREST) + " = " + AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_PK_FEATUREOFINTEREST));
+		whereClauseFoi.append(" AND ");
+		whereClauseFoi.append(AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_FK_SAMPLINGPOINT) + " = " + AccessGDBImpl.concatTableAndField(Table.SAMPLINGPOINT, SubField.SAMPLINGPOINT_PK_SAMPLINGPOINT));
+		whereClauseFoi.append(" AND ");
+		whereClauseFoi.append(AccessGDBImpl.concatTableAndField(Table.SAMPLINGPOINT, SubField.SAMPLINGPOINT_FK_STATION) + " = " + AccessGDBImpl.concatTableAndField(Table.STATION, SubField.STATION_PK_STATION));
+		whereClauseFoi.append(" AND ");
+		whereClauseFoi.append(AccessGDBImpl.concatTableAndField(Table.STATION, SubField.STATION_FK_NETWORK_GID) + " = " + AccessGDBImpl.concatTableAndField(Table.NETWORK, SubField.NETWORK_PK_NETWOK));
+		whereClauseFoi.append(" AND ");
+		whereClauseFoi.append(AccessGDBImpl.concatTableAndField(Table.NETWORK, SubField.NETWORK_ID) + " = '" + offering.getId() + "'");
+		//                LOGGER.info("Where clause := " + queryDefFoi.getWhereClause());
+
+		LOGGER.debug(String.format("Evaluating FOI query for network: '%s'", offering.getId()));
+		// evaluate the database query
+		ICursor cursorFoi = evaluateRebuildQuery(RebuildPacer.QUERY_FEATURES, tablesFoi, whereClauseFoi, subFieldsFoi);
 
-				// create where clause with joins and constraints
-				StringBuilder whereClauseProp = new StringBuilder();
-				whereClauseProp.append(AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_FK_PROPERTY) + " = " + AccessGDBImpl.concatTableAndField(Table.PROPERTY, SubField.PROPERTY_PK_PROPERTY));
-				whereClauseProp.append(" AND ");
-				whereClauseProp.append(AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_FK_SAMPLINGPOINT) + " = " + AccessGDBImpl.concatTableAndField(Table.SAMPLINGPOINT, SubField.SAMPLINGPOINT_PK_SAMPLINGPOINT));
-				whereClauseProp.append(" AND ");
-				whereClauseProp.append(AccessGDBImpl.concatTableAndField(Table.SAMPLINGPOINT, SubField.SAMPLINGPOINT_FK_STATION) + " = " + AccessGDBImpl.concatTableAndField(Table.STATION, SubField.STATION_PK_STATION));
-				whereClauseProp.append(" AND ");
-				whereClauseProp.append(AccessGDBImpl.concatTableAndField(Table.STATION, SubField.STATION_FK_NETWORK_GID) + " = " + AccessGDBImpl.concatTableAndField(Table.NETWORK, SubField.NETWORK_PK_NETWOK));
-				whereClauseProp.append(" AND ");
-				whereClauseProp.append(AccessGDBImpl.concatTableAndField(Table.NETWORK, SubField.NETWORK_ID) + " = '" + offering.getId() + "'");
-				LOGGER.debug(String.format("Evaluating property query for network: '%s'", offering.getId()));
-
-				// evaluate the database query
-				ICursor cursorProp = retrieveCursor(tablesProp, whereClauseProp, subFieldsProp);
-
-				List<String> obsProps = new ArrayList<String>();
-				while ((row = retrieveNextRow(cursorProp)) != null) {
-					String obsPropID = (String) row.getValue(subFieldsProp.indexOf(AccessGDBImpl.concatTableAndField(Table.PROPERTY, SubField.PROPERTY_ID)));
-					if (! obsProps.contains(obsPropID)) {
-						obsProps.add(obsPropID);
-					}
-				}
+		/*
+		 * the same bounding box as computed by the grouped rebuild
+		 */
+		double[] bbox = null;
+		while ((row = nextRow(cursorFoi)) != null) {
+			Object shape = row.getValue(subFieldsFoi.indexOf(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_SHAPE)));
+			double[] coordinates = getPointCoordinates(shape);
+			if (coordinates == null) {
+				LOGGER.debug("Could not cast a shape in offering " + offering.getId() + " to a Point. Shape object class: "+(shape==null?"null":shape.getClass()));
+				continue;
+			}
+			
+			if (bbox == null) {
+				bbox = new double[] {coordinates[0], coordinates[1], coordinates[0], coordinates[1]};
+			}
+			else {
+				bbox[0] = Math.min(bbox[0], coordinates[0]);
+				bbox[1] = Math.min(bbox[1], coordinates[1]);
+				bbox[2] = Math.max(bbox[2], coordinates[0]);
+				bbox[3] = Math.max(bbox[3], coordinates[1]);
+			}
+		}
 
-				// copy obsProps list to String Array:
-				String[] obsPropsArray = new String[obsProps.size()];
-				int i=0;
-				for (Iterator<String> iterator = obsProps.iterator(); iterator.hasNext();) {
-					obsPropsArray[i++] = (String) iterator.next();
-				}
+		if (bbox == null) {
+			LOGGER.debug("No points in offering " + offering.getId());
+			return null;
+		}
+		
+		offering.setObservedArea(new CachedEnvelop(bbox[0], bbox[1], bbox[2], bbox[3]));
+		
+		return offering;
+	}
 
-				offering.setObservedProperties(obsPropsArray);
+	private ICursor evaluateRebuildQuery(String kind, List<String> tables,
+			StringBuilder whereClause, List<String> subFields) throws IOException {
+		long start = System.currentTimeMillis();
+		try {
+			ICursor result = DatabaseUtils.evaluateQuery(AccessGDBImpl.createCommaSeparatedList(tables),
+					whereClause.toString(),
+					AccessGDBImpl.createCommaSeparatedList(subFields),
+					null, gdb);
+			pacer.queryCompleted(kind, System.currentTimeMillis() - start);
+			return result;
+		}
+		catch (IOException | RuntimeException e) {
+			pacer.queryFailed();
+			throw e;
+		}
+	}
 
-				safetySleep(200);
-				// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
-				// set envelope through feature positions
+	/**
+	 * @return the next row of the cursor
+	 * @throws InterruptedException if the computation has been cancelled
+	 */
+	private IRow nextRow(ICursor cursor) throws IOException, InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException("offering computation cancelled");
+		}
+		return cursor.nextRow();
+	}
 
-				// set tables
-				List<String> tablesFoi = new ArrayList<String>();
-				tablesFoi.add(Table.FEATUREOFINTEREST);
-				tablesFoi.add(Table.OBSERVATION);
-				tablesFoi.add(Table.SAMPLINGPOINT);
-				tablesFoi.add(Table.STATION);
-				tablesFoi.add(Table.NETWORK);
+	private class OfferingComputation implements Callable<ObservationOffering> {
 
-				// set sub fields
-				List<String> subFieldsFoi = new ArrayList<String>();
-				subFieldsFoi.add(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_SHAPE));
-
-				// create the where clause with joins and constraints
-				StringBuilder whereClauseFoi = new StringBuilder();
-				whereClauseFoi.append(AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_FK_FEATUREOFINTEREST) + " = " + AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_PK_FEATUREOFINTEREST));
-				whereClauseFoi.append(" AND ");
-				whereClauseFoi.append(AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_FK_SAMPLINGPOINT) + " = " + AccessGDBImpl.concatTableAndField(Table.SAMPLINGPOINT, SubField.SAMPLINGPOINT_PK_SAMPLINGPOINT));
-				whereClauseFoi.append(" AND ");
-				whereClauseFoi.append(AccessGDBImpl.concatTableAndField(Table.SAMPLINGPOINT, SubField.SAMPLINGPOINT_FK_STATION) + " = " + AccessGDBImpl.concatTableAndField(Table.STATION, SubField.STATION_PK_STATION));
-				whereClauseFoi.append(" AND ");
-				whereClauseFoi.append(AccessGDBImpl.concatTableAndField(Table.STATION, SubField.STATION_FK_NETWORK_GID) + " = " + AccessGDBImpl.concatTableAndField(Table.NETWORK, SubField.NETWORK_PK_NETWOK));
-				whereClauseFoi.append(" AND ");
-				whereClauseFoi.append(AccessGDBImpl.concatTableAndField(Table.NETWORK, SubField.NETWORK_ID) + " = '" + offering.getId() + "'");
-				//                LOGGER.info("Where clause := " + queryDefFoi.getWhereClause());
-
-				LOGGER.debug(String.format("Evaluating FOI query for network: '%s'", offering.getId()));
-				// evaluate the database query
-				ICursor cursorFoi = retrieveCursor(tablesFoi, whereClauseFoi, subFieldsFoi);
-
-				List<Point> points = new ArrayList<Point>();
-				while ((row = retrieveNextRow(cursorFoi)) != null) {
-					Object shape = row.getValue(subFieldsFoi.indexOf(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_SHAPE)));
-					if (shape != null && shape instanceof Point) {
-						points.add((Point) shape);
-					} else {
-						LOGGER.debug("Could not cast a shape in offering " + offering.getId() + " to a Point. Shape object class: "+(shape==null?"null":shape.getClass()));
-						continue;
-					}
-				}
+		private final ObservationOffering offering;
+		private volatile long started;
+
+		public OfferingComputation(ObservationOffering offering) {
+			this.offering = offering;
+		}
 
-				if (points.size() == 0) {
-					LOGGER.debug("No points in offering " + offering.getId());
+		@Override
+		public ObservationOffering call() throws Exception {
+			pacer.pause();
+			this.started = System.currentTimeMillis();
+			return computeOffering(this.offering);
+		}
+
+		/**
+		 * @return the time the queries of this computation started,
+		 * 0 while it is still queued or paused
+		 */
+		public long getStarted() {
+			return started;
+		}
+
+	}
+
+	private static class PendingOffering {
+
+		private final String offeringId;
+		private final int index;
+		private final OfferingComputation computation;
+		private final Future<ObservationOffering> future;
+
+		public PendingOffering(String offeringId, int index, OfferingComputation computation,
+				Future<ObservationOffering> future) {
+			this.offeringId = offeringId;
+			this.index = index;
+			this.computation = computation;
+			this.future = future;
+		}
+
+	}
+
+
+	@Override
+	public String resolveValueWatermark() throws IOException {
+		if (SubField.VALUE_DATETIME_INSERTED == null || SubField.VALUE_DATETIME_UPDATED == null) {
+			return null;
+		}
+		
+		List<String> tables = new ArrayList<String>();
+		tables.add(Table.VALUE);
+		
+		List<String> subFields = new ArrayList<String>();
+		subFields.add("MAX(" + AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_INSERTED)+") AS MAXINSERTED");
+		subFields.add("MAX(" + AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_UPDATED)+") AS MAXUPDATED");
+		
+		try {
+			IRow row = retrieveNextRow(retrieveCursor(RebuildPacer.QUERY_WATERMARK, tables, new StringBuilder(), subFields));
+			if (row == null) {
+				return null;
+			}
+			
+			Date watermark = latest(row.getValue(0), row.getValue(1));
+			return watermark == null ? null : TimeConverter.createSqlTimeLiteral(watermark);
+		}
+		catch (ExecutionException e) {
+			throw new IOException(e);
+		}
+	}
+	
+	private Date latest(Object inserted, Object updated) {
+		Date result = inserted instanceof Date ? (Date) inserted : null;
+		if (updated instanceof Date && (result == null || ((Date) updated).after(result))) {
+			result = (Date) updated;
+		}
+		return result;
+	}
+
+	@Override
+	public void getChangedNetworksAsObservationOfferingsAsync(String watermark,
+			OnOfferingRetrieved retriever) throws IOException {
+		LOGGER.info("getChangedNetworksAsObservationOfferingsAsync() is called. Watermark: "+ watermark);
+		
+		String inserted = AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_INSERTED);
+		String updated = AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_UPDATED);
+		String valueConstraint = "(" + inserted + " >= '" + watermark + "' OR " + updated + " >= '" + watermark + "')";
+		
+		getNetworksAsObservationOfferingsGrouped(retriever, valueConstraint);
+	}
+
+	/**
+	 * Resolves the offerings of all networks with three grouped
+	 * queries (time extents, observed properties, feature positions)
+	 * instead of three queries per network. The bounding boxes are
+	 * reduced while streaming the feature positions as the geometry
+	 * column does not allow a portable MIN/MAX in SQL.
+	 * 
+	 * @param valueConstraint a condition on the VALUE table to restrict the
+	 * offerings to a subset of the values, may be null
+	 */
+	private void getNetworksAsObservationOfferingsGrouped(
+			OnOfferingRetrieved retriever, String valueConstraint) throws IOException {
+		String networkIdField = AccessGDBImpl.concatTableAndField(Table.NETWORK, SubField.NETWORK_ID);
+		String groupByNetwork = "GROUP BY " + networkIdField;
+		
+		/*
+		 * restricts property and FOI queries to the observations with matching
+		 * values. a sub query avoids one row per value
+		 */
+		String observationConstraint = null;
+		if (valueConstraint != null) {
+			observationConstraint = " AND " + AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_PK_OBSERVATION)
+					+ " IN (SELECT " + AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_FK_OBSERVATION)
+					+ " FROM " + Table.VALUE + " WHERE " + valueConstraint + ")";
+		}
+		
+		Map<String, ITimePeriod> timeExtents = new LinkedHashMap<>();
+		Map<String, Set<String>> properties = new LinkedHashMap<>();
+		Map<String, double[]> boundingBoxes = new LinkedHashMap<>();
+		
+		try {
+			// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+			// time periods of all networks
+			List<String> tablesTime = new ArrayList<String>();
+			tablesTime.add(Table.VALUE);
+			tablesTime.add(Table.OBSERVATION);
+			tablesTime.add(Table.SAMPLINGPOINT);
+			tablesTime.add(Table.STATION);
+			tablesTime.add(Table.NETWORK);
+			
+			List<String> subFieldsTime = new ArrayList<String>();
+			subFieldsTime.add(networkIdField);
+			subFieldsTime.add("MIN(" + AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_END)+") AS MINTIME");
+			subFieldsTime.add("MAX(" + AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_DATETIME_END)+") AS MAXTIME");
+			
+			StringBuilder whereClauseTime = new StringBuilder();
+			whereClauseTime.append(AccessGDBImpl.concatTableAndField(Table.VALUE, SubField.VALUE_FK_OBSERVATION) + " = " + AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_PK_OBSERVATION));
+			whereClauseTime.append(" AND ");
+			appendJoinsFromObservationToNetwork(whereClauseTime);
+			if (valueConstraint != null) {
+				whereClauseTime.append(" AND " + valueConstraint);
+			}
+			
+			LOGGER.info("Evaluating grouped time query for all networks");
+			ICursor cursorTime = retrieveCursor(RebuildPacer.QUERY_TIME, tablesTime, whereClauseTime, subFieldsTime, groupByNetwork);
+			IRow row;
+			while ((row = retrieveNextRow(cursorTime)) != null) {
+				Object networkId = row.getValue(0);
+				Object startValue = row.getValue(1);
+				Object endValue = row.getValue(2);
+				
+				if (networkId == null || startValue == null || endValue == null) {
 					continue;
 				}
 				
-				Point[] pointArray = new Point[points.size()];
-				for (int j = 0; j < pointArray.length; j++) {
-					pointArray[j] = points.get(j);
+				ITimePosition startTime = AccessGDBImpl.createTimePosition(startValue);
+				ITimePosition endTime = AccessGDBImpl.createTimePosition(endValue);
+				if (startTime != null && endTime != null) {
+					timeExtents.put(networkId.toString(), new TimePeriod(startTime, endTime));
 				}
-
-				Envelope envelope = new Envelope();
-				envelope.defineFromPoints(pointArray);
-				offering.setObservedArea(new AGSEnvelope(envelope));
-
-				try {
-					retriever.retrieveOffering(offering, currentOffering);
+			}
+			
+			// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+			// observed properties of all networks
+			List<String> tablesProp = new ArrayList<String>();
+			tablesProp.add(Table.PROPERTY);
+			tablesProp.add(Table.OBSERVATION);
+			tablesProp.add(Table.SAMPLINGPOINT);
+			tablesProp.add(Table.STATION);
+			tablesProp.add(Table.NETWORK);
+			
+			List<String> subFieldsProp = new ArrayList<String>();
+			subFieldsProp.add("DISTINCT " + networkIdField);
+			subFieldsProp.add(AccessGDBImpl.concatTableAndField(Table.PROPERTY, SubField.PROPERTY_ID));
+			
+			StringBuilder whereClauseProp = new StringBuilder();
+			whereClauseProp.append(AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_FK_PROPERTY) + " = " + AccessGDBImpl.concatTableAndField(Table.PROPERTY, SubField.PROPERTY_PK_PROPERTY));
+			whereClauseProp.append(" AND ");
+			appendJoinsFromObservationToNetwork(whereClauseProp);
+			if (observationConstraint != null) {
+				whereClauseProp.append(observationConstraint);
+			}
+			
+			checkCancelled(retriever);
+			pacer.pause();
+			LOGGER.info("Evaluating grouped property query for all networks");
+			ICursor cursorProp = retrieveCursor(RebuildPacer.QUERY_PROPERTIES, tablesProp, whereClauseProp, subFieldsProp, null);
+			while ((row = retrieveNextRow(cursorProp)) != null) {
+				Object networkId = row.getValue(0);
+				Object propertyId = row.getValue(1);
+				if (networkId == null || propertyId == null) {
+					continue;
 				}
-				catch (RetrievingCancelledException e) {
-					LOGGER.warn("retrieval mechanism cancelled. stopping cache update", e);
-					break;
+				
+				Set<String> set = properties.get(networkId.toString());
+				if (set == null) {
+					set = new LinkedHashSet<>();
+					properties.put(networkId.toString(), set);
 				}
-
+				set.add(propertyId.toString());
 			}
-			catch (ExecutionException e) {
-				futureExecutor.shutdownNow();
-				futureExecutor = Executors.newSingleThreadExecutor();
-				LOGGER.warn("Exception caught, cancelling cache update", e);				
-				throw new IOException(e);
+			
+			// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+			// bounding boxes of all networks
+			List<String> tablesFoi = new ArrayList<String>();
+			tablesFoi.add(Table.FEATUREOFINTEREST);
+			tablesFoi.add(Table.OBSERVATION);
+			tablesFoi.add(Table.SAMPLINGPOINT);
+			tablesFoi.add(Table.STATION);
+			tablesFoi.add(Table.NETWORK);
+			
+			List<String> subFieldsFoi = new ArrayList<String>();
+			subFieldsFoi.add(networkIdField);
+			subFieldsFoi.add(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_SHAPE));
+			
+			StringBuilder whereClauseFoi = new StringBuilder();
+			whereClauseFoi.append(AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_FK_FEATUREOFINTEREST) + " = " + AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_PK_FEATUREOFINTEREST));
+			whereClauseFoi.append(" AND ");
+			appendJoinsFromObservationToNetwork(whereClauseFoi);
+			if (observationConstraint != null) {
+				whereClauseFoi.append(observationConstraint);
 			}
+			
+			checkCancelled(retriever);
+			pacer.pause();
+			LOGGER.info("Evaluating grouped FOI query for all networks");
+			ICursor cursorFoi = retrieveCursor(RebuildPacer.QUERY_FEATURES, tablesFoi, whereClauseFoi, subFieldsFoi, null);
+			while ((row = retrieveNextRow(cursorFoi)) != null) {
+				Object networkId = row.getValue(0);
+				double[] coordinates = getPointCoordinates(row.getValue(1));
+				if (networkId == null || coordinates == null) {
+					continue;
+				}
+				
+				double x = coordinates[0];
+				double y = coordinates[1];
+				double[] bbox = boundingBoxes.get(networkId.toString());
+				if (bbox == null) {
+					boundingBoxes.put(networkId.toString(), new double[] {x, y, x, y});
+				}
+				else {
+					bbox[0] = Math.min(bbox[0], x);
+					bbox[1] = Math.min(bbox[1], y);
+					bbox[2] = Math.max(bbox[2], x);
+					bbox[3] = Math.max(bbox[3], y);
+				}
+			}
+			checkCancelled(retriever);
 		}
+		catch (RetrievingCancelledException e) {
+			LOGGER.warn("retrieval mechanism cancelled. stopping cache update", e);
+			return;
+		}
+		catch (ExecutionException e) {
+			futureExecutor.shutdownNow();
+			futureExecutor = Executors.newSingleThreadExecutor();
+			LOGGER.warn("Exception caught, cancelling cache update", e);				
+			throw new IOException(e);
+		}
+		
+		retriever.retrieveExpectedOfferingsCount(timeExtents.size());
 		
+		int currentOffering = 0;
+		for (String networkId : timeExtents.keySet()) {
+			currentOffering++;
+			
+			if (retriever.isAlreadyRetrieved(networkId)) {
+				continue;
+			}
+			
+			double[] bbox = boundingBoxes.get(networkId);
+			if (bbox == null) {
+				LOGGER.debug("No points in offering " + networkId);
+				continue;
+			}
+			
+			Set<String> obsProps = properties.get(networkId);
+			String[] obsPropsArray = obsProps == null ? new String[0] : obsProps.toArray(new String[obsProps.size()]);
+			
+			ObservationOffering offering = new ObservationOffering(networkId, networkId, obsPropsArray, networkId,
+					new CachedEnvelop(bbox[0], bbox[1], bbox[2], bbox[3]), timeExtents.get(networkId));
+			
+			try {
+				retriever.retrieveOffering(offering, currentOffering);
+			}
+			catch (RetrievingCancelledException e) {
+				LOGGER.warn("retrieval mechanism cancelled. stopping cache update", e);
+				break;
+			}
+		}
 	}
 
-	private void safetySleep(int i) {
-		try {
-			Thread.sleep(i);
-		} catch (InterruptedException e) {
-			LOGGER.warn(e.getMessage(), e);
-		}		
+	/**
+	 * @return the x and y coordinate of a point shape, or null if
+	 * the shape is not a point
+	 */
+	double[] getPointCoordinates(Object shape) throws IOException {
+		if (!(shape instanceof Point)) {
+			return null;
+		}
+		
+		Point p = (Point) shape;
+		return new double[] {p.getX(), p.getY()};
+	}
+
+	/**
+	 * the grouped queries run on the rebuild thread, they are
+	 * stopped by a cancelled retriever as well as an interruption
+	 */
+	private static void checkCancelled(OnOfferingRetrieved retriever) throws RetrievingCancelledException {
+		if (retriever.isCancelled() || Thread.currentThread().isInterrupted()) {
+			throw new RetrievingCancelledException("Cache update cancelled.");
+		}
+	}
+
+	private void appendJoinsFromObservationToNetwork(StringBuilder whereClause) {
+		whereClause.append(AccessGDBImpl.concatTableAndField(Table.OBSERVATION, SubField.OBSERVATION_FK_SAMPLINGPOINT) + " = " + AccessGDBImpl.concatTableAndField(Table.SAMPLINGPOINT, SubField.SAMPLINGPOINT_PK_SAMPLINGPOINT));
+		whereClause.append(" AND ");
+		whereClause.append(AccessGDBImpl.concatTableAndField(Table.SAMPLINGPOINT, SubField.SAMPLINGPOINT_FK_STATION) + " = " + AccessGDBImpl.concatTableAndField(Table.STATION, SubField.STATION_PK_STATION));
+		whereClause.append(" AND ");
+		whereClause.append(AccessGDBImpl.concatTableAndField(Table.STATION, SubField.STATION_FK_NETWORK_GID) + " = " + AccessGDBImpl.concatTableAndField(Table.NETWORK, SubField.NETWORK_PK_NETWOK));
 	}
 
 
@@ -549,6 +1010,16 @@ public class AccessGdbForOfferingsImpl implements AccessGdbForOfferings {
 			@Override
 			public void retrieveExpectedOfferingsCount(int count) {
 			}
+
+			@Override
+			public boolean isAlreadyRetrieved(String offeringId) {
+				return false;
+			}
+
+			@Override
+			public boolean isCancelled() {
+				return false;
+			}
 		};
 
 		getNetworksAsObservationOfferingsAsync(retriever);
@@ -559,8 +1030,14 @@ public class AccessGdbForOfferingsImpl implements AccessGdbForOfferings {
 	}
 
 
-	private ICursor retrieveCursor(final List<String> tablesTime,
+	private ICursor retrieveCursor(String kind, final List<String> tablesTime,
 			final StringBuilder whereClauseTime, final List<String> subFieldsTime) throws ExecutionException {
+		return retrieveCursor(kind, tablesTime, whereClauseTime, subFieldsTime, null);
+	}
+
+	private ICursor retrieveCursor(String kind, final List<String> tablesTime,
+			final StringBuilder whereClauseTime, final List<String> subFieldsTime,
+			final String postfixClause) throws ExecutionException {
 		FutureTask<ICursor> curFuture = new FutureTask<>(new Callable<ICursor>() {
 
 			@Override
@@ -568,20 +1045,23 @@ public class AccessGdbForOfferingsImpl implements AccessGdbForOfferings {
 				ICursor cursorOffering = DatabaseUtils.evaluateQuery(AccessGDBImpl.createCommaSeparatedList(tablesTime),
 						whereClauseTime.toString(),
 						AccessGDBImpl.createCommaSeparatedList(subFieldsTime),
-						gdb);
+						postfixClause, gdb);
 				return cursorOffering;
 			}
 		});
 		futureExecutor.execute(curFuture);
 
 		final ICursor cur;
+		long start = System.currentTimeMillis();
 		try {
-			cur = curFuture.get(2, TimeUnit.MINUTES);
+			cur = curFuture.get(pacer.getQueryTimeout(), TimeUnit.MILLISECONDS);
 		} catch (InterruptedException | ExecutionException
 				| TimeoutException e) {
+			pacer.queryFailed();
 			LOGGER.severe("Timeout at cursor retrieval", e);
 			throw new ExecutionException(e);
 		}
+		pacer.queryCompleted(kind, System.currentTimeMillis() - start);
 		
 		if (cur == null) {
 			throw new ExecutionException("Future Result was null", new NullPointerException());
@@ -602,8 +1082,9 @@ public class AccessGdbForOfferingsImpl implements AccessGdbForOfferings {
 
 		IRow nextRow;
 		try {
-			nextRow = nextRowFuture.get(2, TimeUnit.MINUTES);
+			nextRow = nextRowFuture.get(pacer.getQueryTimeout(), TimeUnit.MILLISECONDS);
 		} catch (InterruptedException | ExecutionException | TimeoutException e) {
+			pacer.queryFailed();
 			LOGGER.severe("Timeout at cursor next row retrieval", e);
 			throw new ExecutionException(e);
 		}
@@ -20,8 +20,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.n52.ows.NoApplicableCodeException;
 import org.n52.sos.cache.CacheNotYetAvailableException;
@@ -31,6 +34,7 @@ import org.n52.sos.dataTypes.Procedure;
 import org.n52.sos.dataTypes.PropertyUnitMapping;
 import org.n52.sos.dataTypes.Unit;
 import org.n52.sos.db.AccessGdbForProcedures;
+import org.n52.sos.db.ProcedureClassification;
 import org.n52.util.logging.Logger;
 
 import com.esri.arcgis.geodatabase.ICursor;
@@ -47,6 +51,12 @@ public class AccessGdbForProceduresImpl implements AccessGdbForProcedures {
 	static Logger LOGGER = Logger.getLogger(AccessGdbForProceduresImpl.class.getName());
 
     private AccessGDBImpl gdb;
+    
+    /**
+     * lower case NETWORK identifiers and PROCEDURE resources. Replaced as
+     * a whole on refresh. null until the first refresh
+     */
+    private volatile IdentifierIndex identifierIndex;
 
     public AccessGdbForProceduresImpl(AccessGDBImpl accessGDB) {
         this.gdb = accessGDB;
@@ -76,12 +86,11 @@ public class AccessGdbForProceduresImpl implements AccessGdbForProcedures {
         ICursor cursor = DatabaseUtils.evaluateQuery(AccessGDBImpl.createCommaSeparatedList(tables),
         		"", AccessGDBImpl.createCommaSeparatedList(subFields), gdb);
         
+        int procedureIdOrdinal = RowMapper.ordinal(subFields, Table.PROCEDURE, SubField.PROCEDURE_ID);
         IRow row;
         List<String> procedureIdList = new ArrayList<String>();
-        String key;
         while ((row = cursor.nextRow()) != null) {
-        	key = AccessGDBImpl.concatTableAndField(Table.PROCEDURE, SubField.PROCEDURE_ID);
-            String procedureId = row.getValue(subFields.indexOf(key)).toString();
+            String procedureId = row.getValue(procedureIdOrdinal).toString();
             
             procedureIdList.add(procedureId);
         }
@@ -118,13 +127,15 @@ public class AccessGdbForProceduresImpl implements AccessGdbForProcedures {
         		whereClause.toString(), AccessGDBImpl.createCommaSeparatedList(subFields),
         		gdb);
 
+        int procedureIdOrdinal = RowMapper.ordinal(subFields, Table.PROCEDURE, SubField.PROCEDURE_ID);
+        int procedureResourceOrdinal = RowMapper.ordinal(subFields, Table.PROCEDURE, SubField.PROCEDURE_RESOURCE);
         IRow row;
         List<Procedure> procedures = new ArrayList<Procedure>();
         while ((row = cursor.nextRow()) != null) {
 
-            String id = row.getValue(subFields.indexOf(AccessGDBImpl.concatTableAndField(Table.PROCEDURE, SubField.PROCEDURE_ID))).toString();
+            String id = row.getValue(procedureIdOrdinal).toString();
 
-            String resource = (String) row.getValue(subFields.indexOf(AccessGDBImpl.concatTableAndField(Table.PROCEDURE, SubField.PROCEDURE_RESOURCE)));
+            String resource = (String) row.getValue(procedureResourceOrdinal);
 
             procedures.add(new Procedure(id, resource));
         }
@@ -200,38 +211,45 @@ public class AccessGdbForProceduresImpl implements AccessGdbForProcedures {
 		// evaluate the database query
         ICursor cursor = DatabaseUtils.evaluateQuery(fromClause, whereClause.toString(), " DISTINCT " + AccessGDBImpl.createCommaSeparatedList(subFields),
         		gdb);
+        int procedureIdOrdinal = RowMapper.ordinal(subFields, Table.PROCEDURE, SubField.PROCEDURE_ID);
+        int procedureResourceOrdinal = RowMapper.ordinal(subFields, Table.PROCEDURE, SubField.PROCEDURE_RESOURCE);
+        int unitNotationOrdinal = RowMapper.ordinal(subFields, Table.UNIT, SubField.UNIT_NOTATION);
+        int propertyIdOrdinal = RowMapper.ordinal(subFields, Table.PROPERTY, SubField.PROPERTY_ID);
+        int propertyLabelOrdinal = RowMapper.ordinal(subFields, Table.PROPERTY, SubField.PROPERTY_LABEL);
+        int featureResourceOrdinal = RowMapper.ordinal(subFields, Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_RESOURCE);
+        int aggregationTypeIdOrdinal = RowMapper.ordinal(subFields, Table.AGGREGATIONTYPE, SubField.AGGREGATIONTYPE_ID);
         IRow row;
         while ((row = cursor.nextRow()) != null) {
 
-            String procedureID 	= row.getValue(subFields.indexOf(AccessGDBImpl.concatTableAndField(Table.PROCEDURE, SubField.PROCEDURE_ID))).toString();
-            String resource 	= row.getValue(subFields.indexOf(AccessGDBImpl.concatTableAndField(Table.PROCEDURE, SubField.PROCEDURE_RESOURCE))).toString();
+            String procedureID 	= row.getValue(procedureIdOrdinal).toString();
+            String resource 	= row.getValue(procedureResourceOrdinal).toString();
         	
             String unit = null;
-            Object unitField = row.getValue(subFields.indexOf(AccessGDBImpl.concatTableAndField(Table.UNIT, SubField.UNIT_NOTATION)));
+            Object unitField = row.getValue(unitNotationOrdinal);
             if (unitField != null) {
             	unit = unitField.toString();
             }
         	
             String property = null;
-            Object propertyField = row.getValue(subFields.indexOf(AccessGDBImpl.concatTableAndField(Table.PROPERTY, SubField.PROPERTY_ID)));
+            Object propertyField = row.getValue(propertyIdOrdinal);
             if (propertyField != null) {
             	property = propertyField.toString();
             }
         	
             String propertyLabel = null;
-            Object propertyLabelField = row.getValue(subFields.indexOf(AccessGDBImpl.concatTableAndField(Table.PROPERTY, SubField.PROPERTY_LABEL)));
+            Object propertyLabelField = row.getValue(propertyLabelOrdinal);
             if (propertyLabelField != null) {
             	propertyLabel = propertyField.toString();
             }
         	
             String feature = null;
-            Object featureField = row.getValue(subFields.indexOf(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_RESOURCE)));
+            Object featureField = row.getValue(featureResourceOrdinal);
             if (featureField != null) {
             	feature = featureField.toString();
             }
         	
             String aggrTypeID = null;
-            Object aggrTypeIDField = row.getValue(subFields.indexOf(AccessGDBImpl.concatTableAndField(Table.AGGREGATIONTYPE, SubField.AGGREGATIONTYPE_ID)));
+            Object aggrTypeIDField = row.getValue(aggregationTypeIdOrdinal);
             if (aggrTypeIDField != null) {
             	aggrTypeID = aggrTypeIDField.toString();
             }
@@ -351,15 +369,21 @@ public class AccessGdbForProceduresImpl implements AccessGdbForProcedures {
         		"DISTINCT "+AccessGDBImpl.createCommaSeparatedList(subFields),
         		gdb);
         
+        int procedureIdOrdinal = RowMapper.ordinal(subFields, Table.PROCEDURE, SubField.PROCEDURE_ID);
+        int procedureResourceOrdinal = RowMapper.ordinal(subFields, Table.PROCEDURE, SubField.PROCEDURE_RESOURCE);
+        int propertyPkOrdinal = RowMapper.ordinal(subFields, Table.PROPERTY, SubField.PROPERTY_PK_PROPERTY);
+        int propertyIdOrdinal = RowMapper.ordinal(subFields, Table.PROPERTY, SubField.PROPERTY_ID);
+        int propertyLabelOrdinal = RowMapper.ordinal(subFields, Table.PROPERTY, SubField.PROPERTY_LABEL);
+        int featureResourceOrdinal = RowMapper.ordinal(subFields, Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_RESOURCE);
         IRow row;
         while ((row = cursor.nextRow()) != null) {
 
-            String procedureID 	= row.getValue(subFields.indexOf(AccessGDBImpl.concatTableAndField(Table.PROCEDURE, SubField.PROCEDURE_ID))).toString();
-            String resource 	= row.getValue(subFields.indexOf(AccessGDBImpl.concatTableAndField(Table.PROCEDURE, SubField.PROCEDURE_RESOURCE))).toString();
-            String propertyPk 	= row.getValue(subFields.indexOf(AccessGDBImpl.concatTableAndField(Table.PROPERTY, SubField.PROPERTY_PK_PROPERTY))).toString();
-            String property 	= row.getValue(subFields.indexOf(AccessGDBImpl.concatTableAndField(Table.PROPERTY, SubField.PROPERTY_ID))).toString();
-        	String propertyLabel= row.getValue(subFields.indexOf(AccessGDBImpl.concatTableAndField(Table.PROPERTY, SubField.PROPERTY_LABEL))).toString();
-        	String feature 		= row.getValue(subFields.indexOf(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_RESOURCE))).toString();
+            String procedureID 	= row.getValue(procedureIdOrdinal).toString();
+            String resource 	= row.getValue(procedureResourceOrdinal).toString();
+            String propertyPk 	= row.getValue(propertyPkOrdinal).toString();
+            String property 	= row.getValue(propertyIdOrdinal).toString();
+        	String propertyLabel= row.getValue(propertyLabelOrdinal).toString();
+        	String feature 		= row.getValue(featureResourceOrdinal).toString();
         	
         	//TODO: check for null value -> resolve a "default for all properties" unit
         	Unit relatedUnit = propertyUnitMap.get(Integer.parseInt(propertyPk));
@@ -408,6 +432,94 @@ public class AccessGdbForProceduresImpl implements AccessGdbForProcedures {
 		return false;
 	}
 
+	@Override
+	public ProcedureClassification classifyProcedures(String[] procedures) throws IOException {
+		ProcedureClassification result = new ProcedureClassification();
+		if (procedures == null || procedures.length == 0) {
+			return result;
+		}
+		
+		IdentifierIndex index = this.identifierIndex;
+		Set<String> networks = new HashSet<>();
+		Set<String> unknown = new LinkedHashSet<>();
+		for (String procedure : procedures) {
+			String key = procedure.toLowerCase();
+			if (index != null && index.networks.contains(key)) {
+				networks.add(key);
+			}
+			else if (index == null || !index.procedures.contains(key)) {
+				unknown.add(procedure);
+			}
+		}
+		
+		/*
+		 * identifiers added after the last refresh are resolved with
+		 * one query per table
+		 */
+		Set<String> unknownProcedures = new HashSet<>();
+		if (!unknown.isEmpty()) {
+			String[] unknownArray = unknown.toArray(new String[unknown.size()]);
+			networks.addAll(queryExistingIdentifiers(Table.NETWORK, SubField.NETWORK_ID, unknownArray));
+			unknownProcedures.addAll(queryExistingIdentifiers(Table.PROCEDURE, SubField.PROCEDURE_RESOURCE, unknownArray));
+		}
+		
+		for (String procedure : procedures) {
+			String key = procedure.toLowerCase();
+			if (networks.contains(key)) {
+				result.addNetwork(procedure);
+			}
+			else if ((index != null && index.procedures.contains(key)) || unknownProcedures.contains(key)) {
+				result.addProcedure(procedure);
+			}
+		}
+		
+		return result;
+	}
+	
+	@Override
+	public void refreshIdentifierIndex() throws IOException {
+		long start = System.currentTimeMillis();
+		IdentifierIndex index = new IdentifierIndex(
+				queryExistingIdentifiers(Table.NETWORK, SubField.NETWORK_ID, null),
+				queryExistingIdentifiers(Table.PROCEDURE, SubField.PROCEDURE_RESOURCE, null));
+		this.identifierIndex = index;
+		LOGGER.info(String.format("Identifier index refreshed with %s networks and %s procedures in %s ms",
+				index.networks.size(), index.procedures.size(), System.currentTimeMillis() - start));
+	}
+	
+	/**
+	 * @param identifiers the identifiers to look for, null for all
+	 * @return the lower case identifiers present in the table
+	 */
+	private Set<String> queryExistingIdentifiers(String table, String field, String[] identifiers) throws IOException {
+		String column = AccessGDBImpl.concatTableAndField(table, field);
+		ICursor cursor = DatabaseUtils.evaluateQuery(table,
+				identifiers == null ? "" : AccessGDBImpl.createOrClause(column, identifiers),
+				column, gdb);
+		
+		Set<String> result = new HashSet<>();
+		IRow row;
+		while ((row = cursor.nextRow()) != null) {
+			Object value = row.getValue(0);
+			if (value != null) {
+				result.add(value.toString().toLowerCase());
+			}
+		}
+		return result;
+	}
+	
+	private static class IdentifierIndex {
+		
+		private final Set<String> networks;
+		private final Set<String> procedures;
+		
+		IdentifierIndex(Set<String> networks, Set<String> procedures) {
+			this.networks = networks;
+			this.procedures = procedures;
+		}
+		
+	}
+
 	@Override
 	public boolean isProcedure(String procedureResourceID) throws AutomationException, IOException {
 
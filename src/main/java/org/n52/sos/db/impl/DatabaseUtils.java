@@ -23,6 +23,8 @@ import org.n52.util.logging.Logger;
 import com.esri.arcgis.datasourcesGDB.SqlWorkspace;
 import com.esri.arcgis.geodatabase.ICursor;
 import com.esri.arcgis.geodatabase.IQueryDef;
+import com.esri.arcgis.geodatabase.IQueryDef2;
+import com.esri.arcgis.geodatabase.IQueryDef2Proxy;
 import com.esri.arcgis.geodatabase.IRow;
 import com.esri.arcgis.interop.AutomationException;
 
@@ -65,27 +67,71 @@ public class DatabaseUtils {
 		return 0;
 	}
 
-	public static synchronized ICursor evaluateQuery(String tables, String whereClause,
+	public static ICursor evaluateQuery(String tables, String whereClause,
 			String subFields, AccessGDBImpl gdb, boolean logAtInfoLevel) throws IOException {
 		return evaluateQuery(tables, whereClause, subFields, gdb.getWorkspace(), logAtInfoLevel);
 	}
 	
-	public static synchronized ICursor evaluateQuery(String tables, String whereClause,
+	public static ICursor evaluateQuery(String tables, String whereClause,
 			String subFields, AccessGDBImpl gdb) throws IOException {
 		return evaluateQuery(tables, whereClause, subFields, gdb.getWorkspace(), false);
 	}
 
-	public static synchronized ICursor evaluateQuery(String tables, String whereClause,
+	public static ICursor evaluateQuery(String tables, String whereClause,
 			String subFields, WorkspaceWrapper workspace) throws IOException {
 		return evaluateQuery(tables, whereClause, subFields, workspace, false);
 	}
 	
-	public static synchronized ICursor evaluateQuery(String tables, String whereClause,
+	public static ICursor evaluateQuery(String tables, String whereClause,
 			String subFields, WorkspaceWrapper workspace, boolean logAtInfoLevel) throws IOException {
+		return evaluateQuery(tables, whereClause, subFields, null, workspace, logAtInfoLevel);
+	}
+	
+	/**
+	 * evaluates a query that returns at most the given number of rows,
+	 * using the row limiting of the configured {@link SqlDialect}.
+	 * Dialects without row limiting return all rows.
+	 * 
+	 * @param subFields the select list, without DISTINCT
+	 * @param postfixClause e.g. an ORDER BY clause. may be null
+	 */
+	public static ICursor evaluateRowLimitedQuery(String tables, String whereClause,
+			String subFields, boolean distinct, int rowLimit, String postfixClause, AccessGDBImpl gdb) throws IOException {
+		SqlDialect dialect = gdb.getWorkspace().getDialect();
+		return evaluateQuery(tables, whereClause,
+				dialect.limitSubFields(subFields, distinct, rowLimit),
+				dialect.limitPostfixClause(postfixClause, rowLimit),
+				gdb);
+	}
+	
+	/**
+	 * @param postfixClause a clause appended after the WHERE clause,
+	 * e.g. GROUP BY or ORDER BY. may be null
+	 */
+	public static ICursor evaluateQuery(String tables, String whereClause,
+			String subFields, String postfixClause, AccessGDBImpl gdb) throws IOException {
+		return evaluateQuery(tables, whereClause, subFields, postfixClause, gdb.getWorkspace(), false);
+	}
+	
+	public static ICursor evaluateQuery(String tables, String whereClause,
+			String subFields, String postfixClause, WorkspaceWrapper workspace, boolean logAtInfoLevel) throws IOException {
+		try (QueryConcurrencyLimiter.Permit permit = QueryConcurrencyLimiter.instance().acquire()) {
+			return evaluateQueryWithPermit(tables, whereClause, subFields, postfixClause, workspace, logAtInfoLevel);
+		}
+	}
+	
+	private static ICursor evaluateQueryWithPermit(String tables, String whereClause,
+			String subFields, String postfixClause, WorkspaceWrapper workspace, boolean logAtInfoLevel) throws IOException {
+		
+		if (workspace.usesJdbcConnection()) {
+			String sql = createSelectStatement(tables, whereClause, subFields, postfixClause);
+			log(sql, logAtInfoLevel);
+			return JdbcCursor.open(workspace.getJdbcConnection(), sql);
+		}
 		
 		if (workspace.usesSqlWorkspace()) {
 			return evaluateSqlWorkspaceQuery(tables, whereClause, subFields,
-					workspace.getSqlWorkspace(),
+					postfixClause, workspace.getSqlWorkspace(),
 					logAtInfoLevel);
 		}
 		
@@ -118,14 +164,33 @@ public class DatabaseUtils {
 			}
 		}
 		
+		if (postfixClause != null && !postfixClause.isEmpty()) {
+			IQueryDef2 queryDef2 = new IQueryDef2Proxy(queryDef);
+			queryDef2.setPostfixClause(postfixClause);
+			if (logAtInfoLevel) {
+				LOGGER.info(postfixClause);
+			}
+			else {
+				LOGGER.debug(postfixClause);
+			}
+		}
+		
 		// evaluate the database query
 		ICursor cursor = queryDef.evaluate();
 		return cursor;
 	}
 
 	private static ICursor evaluateSqlWorkspaceQuery(String tables,
-			String whereClause, String subFields, SqlWorkspace workspace,
-			boolean logAtInfoLevel) throws IOException {
+			String whereClause, String subFields, String postfixClause,
+			SqlWorkspace workspace, boolean logAtInfoLevel) throws IOException {
+		String sql = createSelectStatement(tables, whereClause, subFields, postfixClause);
+		log(sql, logAtInfoLevel);
+		
+		return workspace.openQueryCursor(sql);
+	}
+	
+	private static String createSelectStatement(String tables,
+			String whereClause, String subFields, String postfixClause) {
 		StringBuilder sb = new StringBuilder();
 		sb.append("SELECT ");
 		sb.append(subFields);
@@ -138,14 +203,21 @@ public class DatabaseUtils {
 			sb.append(whereClause);	
 		}
 		
+		if (postfixClause != null && !postfixClause.trim().isEmpty()) {
+			sb.append(" ");
+			sb.append(postfixClause);
+		}
+		
+		return sb.toString();
+	}
+	
+	private static void log(String sql, boolean logAtInfoLevel) {
 		if (logAtInfoLevel) {
-			LOGGER.info(sb.toString());
+			LOGGER.info(sql);
 		}
 		else {
-			LOGGER.debug(sb.toString());
+			LOGGER.debug(sql);
 		}
-		
-		return workspace.openQueryCursor(sb.toString());
 	}
 
 }
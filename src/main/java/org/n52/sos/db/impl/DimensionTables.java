@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.esri.arcgis.geodatabase.ICursor;
+import com.esri.arcgis.geodatabase.IRow;
+
+/**
+ * an immutable snapshot of the small lookup tables (UNIT, VALIDITY,
+ * VERIFICATION, AGGREGATIONTYPE and NETWORK). Observation queries select
+ * the foreign keys only and resolve the entries from this snapshot
+ * instead of joining the tables onto every value row.
+ */
+class DimensionTables {
+
+	private final DimensionTable units;
+	private final DimensionTable validities;
+	private final DimensionTable verifications;
+	private final DimensionTable aggregationTypes;
+	private final DimensionTable networks;
+	private final long loadedAt = System.currentTimeMillis();
+
+	private DimensionTables(DimensionTable units, DimensionTable validities,
+			DimensionTable verifications, DimensionTable aggregationTypes,
+			DimensionTable networks) {
+		this.units = units;
+		this.validities = validities;
+		this.verifications = verifications;
+		this.aggregationTypes = aggregationTypes;
+		this.networks = networks;
+	}
+
+	static DimensionTables load(AccessGDBImpl gdb) throws IOException {
+		return new DimensionTables(
+				DimensionTable.load(gdb, Table.UNIT, SubField.UNIT_PK_UNIT, SubField.UNIT_ID,
+						SubField.UNIT_NOTATION, null, SubField.UNIT_LABEL),
+				DimensionTable.load(gdb, Table.VALIDITY, SubField.VALIDITY_PK_VALIDITY, SubField.VALIDITY_ID,
+						SubField.VALIDITY_NOTATION, null, null),
+				DimensionTable.load(gdb, Table.VERIFICATION, SubField.VERIFICATION_PK_VERIFICATION, SubField.VERIFICATION_ID,
+						SubField.VERIFICATION_NOTATION, null, null),
+				DimensionTable.load(gdb, Table.AGGREGATIONTYPE, SubField.AGGREGATIONTYPE_PK_AGGREGATIONTYPE, SubField.AGGREGATIONTYPE_ID,
+						SubField.AGGREGATIONTYPE_NOTATION, SubField.AGGREGATIONTYPE_DEFINITION, null),
+				DimensionTable.load(gdb, Table.NETWORK, SubField.NETWORK_PK_NETWOK, SubField.NETWORK_ID,
+						null, null, null));
+	}
+
+	public DimensionTable getUnits() {
+		return units;
+	}
+
+	public DimensionTable getValidities() {
+		return validities;
+	}
+
+	public DimensionTable getVerifications() {
+		return verifications;
+	}
+
+	public DimensionTable getAggregationTypes() {
+		return aggregationTypes;
+	}
+
+	public DimensionTable getNetworks() {
+		return networks;
+	}
+
+	public long getLoadedAt() {
+		return loadedAt;
+	}
+
+	/**
+	 * the entries of one lookup table, by primary key and by identifier
+	 */
+	static class DimensionTable {
+
+		private final Map<Integer, Entry> byKey;
+		private final Map<String, Integer> keyById;
+
+		DimensionTable(Map<Integer, Entry> byKey) {
+			Map<String, Integer> ids = new HashMap<>();
+			for (Map.Entry<Integer, Entry> e : byKey.entrySet()) {
+				if (e.getValue().getId() != null) {
+					ids.put(e.getValue().getId().toLowerCase(), e.getKey());
+				}
+			}
+			this.byKey = Collections.unmodifiableMap(byKey);
+			this.keyById = Collections.unmodifiableMap(ids);
+		}
+
+		/**
+		 * @param notation the notation column, may be null
+		 * @param definition the definition column, may be null
+		 * @param label the label column, may be null
+		 */
+		static DimensionTable load(AccessGDBImpl gdb, String table, String primaryKey, String id,
+				String notation, String definition, String label) throws IOException {
+			List<String> subFields = new ArrayList<>();
+			subFields.add(AccessGDBImpl.concatTableAndField(table, primaryKey));
+			subFields.add(AccessGDBImpl.concatTableAndField(table, id));
+			int notationOrdinal = addOptional(subFields, table, notation);
+			int definitionOrdinal = addOptional(subFields, table, definition);
+			int labelOrdinal = addOptional(subFields, table, label);
+			
+			ICursor cursor = DatabaseUtils.evaluateQuery(table, "",
+					AccessGDBImpl.createCommaSeparatedList(subFields), gdb);
+			
+			Map<Integer, Entry> entries = new HashMap<>();
+			IRow row;
+			while ((row = cursor.nextRow()) != null) {
+				Integer key = RowMapper.intValue(row, 0);
+				if (key != null) {
+					entries.put(key, new Entry(
+							RowMapper.stringValue(row, 1, null),
+							RowMapper.stringValue(row, notationOrdinal, null),
+							RowMapper.stringValue(row, definitionOrdinal, null),
+							RowMapper.stringValue(row, labelOrdinal, null)));
+				}
+			}
+			return new DimensionTable(entries);
+		}
+
+		private static int addOptional(List<String> subFields, String table, String field) {
+			if (field == null) {
+				return -1;
+			}
+			subFields.add(AccessGDBImpl.concatTableAndField(table, field));
+			return subFields.size() - 1;
+		}
+
+		/**
+		 * @return the entry, or null if the key is null or unknown
+		 */
+		public Entry get(Integer key) {
+			return key == null ? null : this.byKey.get(key);
+		}
+
+		/**
+		 * @return the primary key of the identifier (case insensitive),
+		 * or null if unknown
+		 */
+		public Integer keyOf(String id) {
+			return id == null ? null : this.keyById.get(id.toLowerCase());
+		}
+
+		public int size() {
+			return this.byKey.size();
+		}
+
+	}
+
+	static class Entry {
+
+		private final String id;
+		private final String notation;
+		private final String definition;
+		private final String label;
+
+		Entry(String id, String notation, String definition, String label) {
+			this.id = id;
+			this.notation = notation;
+			this.definition = definition;
+			this.label = label;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getNotation() {
+			return notation;
+		}
+
+		public String getDefinition() {
+			return definition;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+
+	}
+
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db.impl;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+
+import org.n52.om.sampling.AQDSample;
+import org.n52.sos.Constants;
+import org.n52.util.logging.Logger;
+
+import com.esri.arcgis.geodatabase.IRow;
+import com.esri.arcgis.geometry.Point;
+
+/**
+ * maps the rows of a feature of interest query to {@link AQDSample}s
+ */
+class FeatureRowMapper extends RowMapper {
+
+	private static final Logger LOGGER = Logger.getLogger(FeatureRowMapper.class.getName());
+
+	private final int id;
+	private final int resource;
+	private final int primaryKey;
+	private final int shape;
+	private final int inletHeight;
+	private final int buildingDistance;
+	private final int kerbDistance;
+
+	/**
+	 * @param shapeFromStations if the shape is taken from the station
+	 * instead of the feature of interest
+	 */
+	public FeatureRowMapper(List<String> fields, boolean shapeFromStations) {
+		this.id = ordinal(fields, Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_ID);
+		this.resource = ordinal(fields, Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_RESOURCE);
+		this.primaryKey = ordinal(fields, Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_PK_FEATUREOFINTEREST);
+		if (shapeFromStations) {
+			this.shape = ordinal(fields, Table.STATION, SubField.STATION_SHAPE);
+		}
+		else {
+			this.shape = ordinal(fields, Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_SHAPE);
+		}
+		this.inletHeight = ordinal(fields, Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_INLETHEIGHT);
+		this.buildingDistance = ordinal(fields, Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_BUILDINGDISTANCE);
+		this.kerbDistance = ordinal(fields, Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_KERBDISTANCE);
+	}
+
+	public AQDSample createFeature(IRow row) throws IOException, URISyntaxException {
+		String gmlId = (String) value(row, this.id);
+		
+		URI resourceUri = null;
+		String resourceValue = (String) value(row, this.resource);
+		if (resourceValue != null) {
+			resourceUri = new URI(resourceValue);
+		}
+		
+		int localId = (Integer) value(row, this.primaryKey);
+		
+		Point point = null;
+		Object shapeValue = value(row, this.shape);
+		if (shapeValue instanceof Point) {
+			point = (Point) shapeValue;
+		} else {
+			LOGGER.warn("Shape of the feature '" + gmlId + "' is no point.");
+		}
+		
+		Double inletHeightValue = (Double) value(row, this.inletHeight);
+		if (inletHeightValue == null) {
+			inletHeightValue = Constants.FEATURE_INLET_HEIGHT;
+		}
+		
+		Double buildingDistanceValue = (Double) value(row, this.buildingDistance);
+		if (buildingDistanceValue == null) {
+			buildingDistanceValue = Constants.FEATURE_BUILDING_DISTANCE;
+		}
+		
+		Double kerbDistanceValue = (Double) value(row, this.kerbDistance);
+		if (kerbDistanceValue == null) {
+			kerbDistanceValue = Constants.FEATURE_KERB_DISTANCE;
+		}
+		
+		return new AQDSample(resourceUri, gmlId, localId, null, null, null, point, null,
+				inletHeightValue, buildingDistanceValue, kerbDistanceValue);
+	}
+
+}
@@ -0,0 +1,292 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.esri.arcgis.geodatabase.ICursor;
+import com.esri.arcgis.geodatabase.IRow;
+import com.esri.arcgis.geometry.ISpatialReference;
+import com.esri.arcgis.geometry.Point;
+
+/**
+ * an immutable, bulk loaded (Sort-Tile-Recursive) R-tree over the point
+ * geometries of the features of interest. Answers bounding box filters
+ * with the matching features without querying the geodatabase.
+ */
+class FeatureSpatialIndex {
+
+	static final int NODE_CAPACITY = 16;
+
+	private final Node root;
+	private final int wkid;
+	private final int size;
+
+	FeatureSpatialIndex(List<IndexedPoint> points, int wkid) {
+		this.wkid = wkid;
+		this.size = points.size();
+		this.root = points.isEmpty() ? null : build(points);
+	}
+
+	/**
+	 * reads the shapes of all features of interest
+	 * 
+	 * @return the index or null if no point geometries are available
+	 */
+	static FeatureSpatialIndex load(AccessGDBImpl gdb) throws IOException {
+		List<String> subFields = new ArrayList<>();
+		subFields.add(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_PK_FEATUREOFINTEREST));
+		subFields.add(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_RESOURCE));
+		subFields.add(AccessGDBImpl.concatTableAndField(Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_SHAPE));
+		
+		ICursor cursor = DatabaseUtils.evaluateQuery(Table.FEATUREOFINTEREST, "",
+				AccessGDBImpl.createCommaSeparatedList(subFields), gdb);
+		
+		List<IndexedPoint> points = new ArrayList<>();
+		Integer wkid = null;
+		IRow row;
+		while ((row = cursor.nextRow()) != null) {
+			Integer key = RowMapper.intValue(row, 0);
+			Object shape = row.getValue(2);
+			if (key == null || !(shape instanceof Point)) {
+				continue;
+			}
+			
+			Point point = (Point) shape;
+			int pointWkid = resolveWkid(point);
+			if (wkid == null) {
+				wkid = pointWkid;
+			}
+			else if (wkid.intValue() != pointWkid) {
+				/*
+				 * mixed spatial references cannot be answered from one index
+				 */
+				return null;
+			}
+			points.add(new IndexedPoint(key, RowMapper.stringValue(row, 1, null), point.getX(), point.getY()));
+		}
+		
+		if (points.isEmpty()) {
+			return null;
+		}
+		return new FeatureSpatialIndex(points, wkid);
+	}
+
+	private static int resolveWkid(Point point) throws IOException {
+		ISpatialReference reference = point.getSpatialReference();
+		return reference == null ? 0 : reference.getFactoryCode();
+	}
+
+	/**
+	 * @return all features within or on the bounds of the box
+	 */
+	public List<IndexedPoint> query(double xmin, double ymin, double xmax, double ymax) {
+		List<IndexedPoint> result = new ArrayList<>();
+		if (this.root != null) {
+			this.root.query(Math.min(xmin, xmax), Math.min(ymin, ymax),
+					Math.max(xmin, xmax), Math.max(ymin, ymax), result);
+		}
+		return result;
+	}
+
+	static List<Integer> keys(List<IndexedPoint> points) {
+		List<Integer> result = new ArrayList<>(points.size());
+		for (IndexedPoint p : points) {
+			result.add(p.key);
+		}
+		return result;
+	}
+
+	static String[] resources(List<IndexedPoint> points) {
+		String[] result = new String[points.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = points.get(i).resource;
+		}
+		return result;
+	}
+
+	/**
+	 * @return the EPSG code of the indexed geometries, 0 if unknown
+	 */
+	public int getWkid() {
+		return wkid;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private static Node build(List<IndexedPoint> points) {
+		List<Node> level = new ArrayList<>();
+		for (List<IndexedPoint> tile : tile(new ArrayList<>(points), POINT_X, POINT_Y)) {
+			level.add(Node.leaf(tile));
+		}
+		
+		while (level.size() > 1) {
+			List<Node> parents = new ArrayList<>();
+			for (List<Node> tile : tile(level, NODE_X, NODE_Y)) {
+				parents.add(Node.inner(tile));
+			}
+			level = parents;
+		}
+		return level.get(0);
+	}
+
+	/**
+	 * sorts the items into vertical slices by x and packs each slice
+	 * into runs of {@link #NODE_CAPACITY} by y
+	 */
+	private static <T> List<List<T>> tile(List<T> items, Comparator<T> byX, Comparator<T> byY) {
+		int leafCount = (int) Math.ceil(items.size() / (double) NODE_CAPACITY);
+		int sliceCount = (int) Math.ceil(Math.sqrt(leafCount));
+		int sliceSize = sliceCount * NODE_CAPACITY;
+		
+		Collections.sort(items, byX);
+		
+		List<List<T>> result = new ArrayList<>(leafCount);
+		for (int sliceStart = 0; sliceStart < items.size(); sliceStart += sliceSize) {
+			List<T> slice = new ArrayList<>(items.subList(sliceStart, Math.min(sliceStart + sliceSize, items.size())));
+			Collections.sort(slice, byY);
+			for (int i = 0; i < slice.size(); i += NODE_CAPACITY) {
+				result.add(slice.subList(i, Math.min(i + NODE_CAPACITY, slice.size())));
+			}
+		}
+		return result;
+	}
+
+	private static final Comparator<IndexedPoint> POINT_X = new Comparator<IndexedPoint>() {
+		@Override
+		public int compare(IndexedPoint o1, IndexedPoint o2) {
+			return Double.compare(o1.x, o2.x);
+		}
+	};
+
+	private static final Comparator<IndexedPoint> POINT_Y = new Comparator<IndexedPoint>() {
+		@Override
+		public int compare(IndexedPoint o1, IndexedPoint o2) {
+			return Double.compare(o1.y, o2.y);
+		}
+	};
+
+	private static final Comparator<Node> NODE_X = new Comparator<Node>() {
+		@Override
+		public int compare(Node o1, Node o2) {
+			return Double.compare(o1.minX + o1.maxX, o2.minX + o2.maxX);
+		}
+	};
+
+	private static final Comparator<Node> NODE_Y = new Comparator<Node>() {
+		@Override
+		public int compare(Node o1, Node o2) {
+			return Double.compare(o1.minY + o1.maxY, o2.minY + o2.maxY);
+		}
+	};
+
+	static class IndexedPoint {
+
+		private final int key;
+		private final String resource;
+		private final double x;
+		private final double y;
+
+		IndexedPoint(int key, String resource, double x, double y) {
+			this.key = key;
+			this.resource = resource;
+			this.x = x;
+			this.y = y;
+		}
+
+		public int getKey() {
+			return key;
+		}
+
+		public String getResource() {
+			return resource;
+		}
+
+		public double getX() {
+			return x;
+		}
+
+		public double getY() {
+			return y;
+		}
+
+	}
+
+	private static class Node {
+
+		private double minX = Double.POSITIVE_INFINITY;
+		private double minY = Double.POSITIVE_INFINITY;
+		private double maxX = Double.NEGATIVE_INFINITY;
+		private double maxY = Double.NEGATIVE_INFINITY;
+		private final Node[] children;
+		private final IndexedPoint[] points;
+
+		private Node(Node[] children, IndexedPoint[] points) {
+			this.children = children;
+			this.points = points;
+		}
+
+		static Node leaf(List<IndexedPoint> points) {
+			Node result = new Node(null, points.toArray(new IndexedPoint[points.size()]));
+			for (IndexedPoint p : result.points) {
+				result.expand(p.x, p.y, p.x, p.y);
+			}
+			return result;
+		}
+
+		static Node inner(List<Node> children) {
+			Node result = new Node(children.toArray(new Node[children.size()]), null);
+			for (Node n : result.children) {
+				result.expand(n.minX, n.minY, n.maxX, n.maxY);
+			}
+			return result;
+		}
+
+		private void expand(double x1, double y1, double x2, double y2) {
+			this.minX = Math.min(this.minX, x1);
+			this.minY = Math.min(this.minY, y1);
+			this.maxX = Math.max(this.maxX, x2);
+			this.maxY = Math.max(this.maxY, y2);
+		}
+
+		void query(double xmin, double ymin, double xmax, double ymax, List<IndexedPoint> result) {
+			if (this.maxX < xmin || this.minX > xmax || this.maxY < ymin || this.minY > ymax) {
+				return;
+			}
+			
+			if (this.points != null) {
+				for (IndexedPoint p : this.points) {
+					if (p.x >= xmin && p.x <= xmax && p.y >= ymin && p.y <= ymax) {
+						result.add(p);
+					}
+				}
+			}
+			else {
+				for (Node child : this.children) {
+					child.query(xmin, ymin, xmax, ymax, result);
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db.impl;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import org.n52.util.logging.Logger;
+
+import com.esri.arcgis.geodatabase.ICursor;
+import com.esri.arcgis.geodatabase.IFields;
+import com.esri.arcgis.geodatabase.IRow;
+
+/**
+ * provides the rows of a JDBC query as an {@link ICursor}, so that the
+ * data access classes can run against a plain JDBC database (e.g. an
+ * embedded one for tests and benchmarks) without ArcObjects.
+ * 
+ * Only the read access used by the data access classes is supported:
+ * {@link ICursor#nextRow()}, getFields() and findField(String) on the
+ * cursor and {@link IRow#getValue(int)} and getFields() on the rows.
+ * Values are converted to the types ArcObjects provides (String,
+ * Integer, Double, Date). The statement is closed once the last row
+ * has been read.
+ */
+class JdbcCursor implements InvocationHandler {
+
+	private static final Logger LOGGER = Logger.getLogger(JdbcCursor.class.getName());
+
+	private Statement statement;
+	private ResultSet resultSet;
+	private String[] columnNames;
+	private IFields fields;
+
+	private JdbcCursor(Statement statement, ResultSet resultSet) throws SQLException {
+		this.statement = statement;
+		this.resultSet = resultSet;
+		
+		ResultSetMetaData metaData = resultSet.getMetaData();
+		this.columnNames = new String[metaData.getColumnCount()];
+		for (int i = 0; i < this.columnNames.length; i++) {
+			this.columnNames[i] = metaData.getColumnLabel(i + 1);
+		}
+		this.fields = createFields(this.columnNames);
+	}
+
+	static ICursor open(Connection connection, String sql) throws IOException {
+		Statement statement = null;
+		try {
+			statement = connection.createStatement();
+			JdbcCursor cursor = new JdbcCursor(statement, statement.executeQuery(sql));
+			return (ICursor) Proxy.newProxyInstance(ICursor.class.getClassLoader(),
+					new Class<?>[] {ICursor.class}, cursor);
+		} catch (SQLException e) {
+			close(statement);
+			throw new IOException("Could not evaluate query: "+ sql, e);
+		}
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		switch (method.getName()) {
+		case "nextRow":
+			return nextRow();
+		case "getFields":
+			return this.fields;
+		case "findField":
+			return findField(this.columnNames, (String) args[0]);
+		case "toString":
+			return "JdbcCursor"+ Arrays.toString(this.columnNames);
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		case "equals":
+			return proxy == args[0];
+		default:
+			throw new UnsupportedOperationException("Not supported by JDBC cursors: "+ method.getName());
+		}
+	}
+
+	private IRow nextRow() throws IOException {
+		if (this.resultSet == null) {
+			return null;
+		}
+		
+		try {
+			if (!this.resultSet.next()) {
+				this.resultSet = null;
+				close(this.statement);
+				return null;
+			}
+			
+			Object[] values = new Object[this.columnNames.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = toArcObjectsValue(this.resultSet.getObject(i + 1));
+			}
+			return createRow(values, this.fields);
+		} catch (SQLException e) {
+			close(this.statement);
+			throw new IOException(e);
+		}
+	}
+
+	static Object toArcObjectsValue(Object value) throws SQLException {
+		if (value instanceof BigDecimal || value instanceof Float) {
+			return ((Number) value).doubleValue();
+		}
+		if (value instanceof Long || value instanceof Short || value instanceof Byte) {
+			long longValue = ((Number) value).longValue();
+			if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) {
+				return (int) longValue;
+			}
+			return ((Number) value).doubleValue();
+		}
+		if (value instanceof Clob) {
+			Clob clob = (Clob) value;
+			return clob.getSubString(1, (int) clob.length());
+		}
+		return value;
+	}
+
+	/**
+	 * @return the index of the column, matched case insensitive with or
+	 * without table prefix, or -1
+	 */
+	static int findField(String[] columnNames, String name) {
+		if (name == null) {
+			return -1;
+		}
+		String unqualified = name.substring(name.lastIndexOf('.') + 1);
+		for (int i = 0; i < columnNames.length; i++) {
+			if (columnNames[i].equalsIgnoreCase(name) || columnNames[i].equalsIgnoreCase(unqualified)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static IRow createRow(final Object[] values, final IFields fields) {
+		return (IRow) Proxy.newProxyInstance(IRow.class.getClassLoader(),
+				new Class<?>[] {IRow.class}, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						switch (method.getName()) {
+						case "getValue":
+							return values[(Integer) args[0]];
+						case "getFields":
+							return fields;
+						case "toString":
+							return Arrays.toString(values);
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						default:
+							throw new UnsupportedOperationException("Not supported by JDBC rows: "+ method.getName());
+						}
+					}
+				});
+	}
+
+	private static IFields createFields(final String[] columnNames) {
+		return (IFields) Proxy.newProxyInstance(IFields.class.getClassLoader(),
+				new Class<?>[] {IFields.class}, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						switch (method.getName()) {
+						case "findField":
+							return findField(columnNames, (String) args[0]);
+						case "getFieldCount":
+							return columnNames.length;
+						case "toString":
+							return Arrays.toString(columnNames);
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						default:
+							throw new UnsupportedOperationException("Not supported by JDBC fields: "+ method.getName());
+						}
+					}
+				});
+	}
+
+	private static void close(Statement statement) {
+		if (statement == null) {
+			return;
+		}
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			LOGGER.warn("Could not close statement: "+ e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.n52.om.observation.MultiValueObservation;
+import org.n52.om.result.MeasureResult;
+
+/**
+ * Keeps the newest and the oldest value of each series (observation and
+ * aggregation type) in memory, so that latest and first requests do not
+ * need the MIN/MAX subqueries. Values are only added: the index is
+ * rebuilt once it reaches {@link #MAXIMUM_AGE_MS} to drop deleted ones.
+ * The series are indexed by network and procedure, so that a request
+ * only scans the series of its offerings or procedures. Identifiers are
+ * matched ignoring case, like the database collation does.
+ */
+class LatestValueIndex {
+
+	static final long MAXIMUM_AGE_MS = TimeUnit.DAYS.toMillis(1);
+
+	private final Map<String, Series> series = new HashMap<>();
+	private final Map<String, List<Series>> seriesByNetwork = new HashMap<>();
+	private final Map<String, List<Series>> seriesByProcedure = new HashMap<>();
+	private final long created = System.currentTimeMillis();
+	private String watermark;
+
+	/**
+	 * @param watermark the value watermark the index is complete for,
+	 * null if the database does not provide one
+	 */
+	LatestValueIndex(String watermark) {
+		this.watermark = watermark;
+	}
+
+	/**
+	 * @param observation an observation with exactly one value
+	 * @param time the end time of the value
+	 */
+	public synchronized void offer(String network, String aggregationType, MultiValueObservation observation, long time) {
+		String key = toLowerCase(observation.getIdentifier().getIdentifierValue() + "|" + aggregationType);
+		Series s = this.series.get(key);
+		if (s == null) {
+			s = new Series(key, network, aggregationType, observation);
+			this.series.put(key, s);
+			addToIndex(this.seriesByNetwork, s.network, s);
+			addToIndex(this.seriesByProcedure, s.procedure, s);
+		}
+		
+		if (s.newest == null || time >= s.newestTime) {
+			s.newest = observation;
+			s.newestTime = time;
+		}
+		if (s.oldest == null || time <= s.oldestTime) {
+			s.oldest = observation;
+			s.oldestTime = time;
+		}
+	}
+
+	private static void addToIndex(Map<String, List<Series>> index, String value, Series s) {
+		List<Series> list = index.get(value);
+		if (list == null) {
+			list = new ArrayList<>();
+			index.put(value, list);
+		}
+		list.add(s);
+	}
+
+	/**
+	 * selects the first or latest value of all matching series, like the
+	 * MIN/MAX subquery it replaces. A null filter matches everything.
+	 * 
+	 * @return a copy of the observation holding the value, null if no
+	 * series matches
+	 */
+	public synchronized MultiValueObservation select(Set<String> networks, Set<String> features,
+			Set<String> spatialFeatures, Set<String> properties, Set<String> procedures,
+			Set<String> aggregationTypes, boolean first) {
+		networks = toLowerCase(networks);
+		features = toLowerCase(features);
+		spatialFeatures = toLowerCase(spatialFeatures);
+		properties = toLowerCase(properties);
+		procedures = toLowerCase(procedures);
+		aggregationTypes = toLowerCase(aggregationTypes);
+		
+		MultiValueObservation result = null;
+		long resultTime = 0;
+		String resultKey = null;
+		for (Series s : resolveCandidates(networks, procedures)) {
+			MultiValueObservation candidate = first ? s.oldest : s.newest;
+			long time = first ? s.oldestTime : s.newestTime;
+			if (!matches(networks, s.network) || !matches(aggregationTypes, s.aggregationType)
+					|| !matches(features, s.feature) || !matches(spatialFeatures, s.feature)
+					|| !matches(properties, s.property) || !matches(procedures, s.procedure)) {
+				continue;
+			}
+			
+			boolean better = result == null || (first ? time < resultTime : time > resultTime)
+					|| (time == resultTime && s.key.compareTo(resultKey) < 0);
+			if (better) {
+				result = candidate;
+				resultTime = time;
+				resultKey = s.key;
+			}
+		}
+		
+		if (result == null) {
+			return null;
+		}
+		
+		MultiValueObservation copy = SeriesChunkCache.copyWithoutValues(result);
+		for (MeasureResult value : result.getResult().getValue()) {
+			copy.getResult().addResultValue(value);
+		}
+		return copy;
+	}
+
+	/**
+	 * @return the series of the networks or of the procedures, whichever
+	 * are fewer, all series if neither is filtered
+	 */
+	private Collection<Series> resolveCandidates(Set<String> networks, Set<String> procedures) {
+		Collection<Series> byNetwork = networks == null ? null : lookup(this.seriesByNetwork, networks);
+		Collection<Series> byProcedure = procedures == null ? null : lookup(this.seriesByProcedure, procedures);
+		if (byNetwork == null) {
+			return byProcedure == null ? this.series.values() : byProcedure;
+		}
+		if (byProcedure == null || byNetwork.size() <= byProcedure.size()) {
+			return byNetwork;
+		}
+		return byProcedure;
+	}
+
+	private static Collection<Series> lookup(Map<String, List<Series>> index, Set<String> values) {
+		if (values.size() == 1) {
+			List<Series> list = index.get(values.iterator().next());
+			return list == null ? Collections.<Series>emptyList() : list;
+		}
+		List<Series> result = new ArrayList<>();
+		for (String value : values) {
+			List<Series> list = index.get(value);
+			if (list != null) {
+				result.addAll(list);
+			}
+		}
+		return result;
+	}
+
+	private static boolean matches(Set<String> values, String value) {
+		return values == null || values.contains(value);
+	}
+
+	private static Set<String> toLowerCase(Set<String> values) {
+		if (values == null) {
+			return null;
+		}
+		Set<String> result = new HashSet<>(values.size());
+		for (String value : values) {
+			result.add(toLowerCase(value));
+		}
+		return result;
+	}
+
+	private static String toLowerCase(String value) {
+		return value == null ? null : value.toLowerCase();
+	}
+
+	public synchronized String getWatermark() {
+		return watermark;
+	}
+
+	public synchronized void setWatermark(String watermark) {
+		this.watermark = watermark;
+	}
+
+	public boolean isExpired() {
+		return System.currentTimeMillis() - this.created > MAXIMUM_AGE_MS;
+	}
+
+	public synchronized int size() {
+		return this.series.size();
+	}
+
+	private static class Series {
+
+		private final String key;
+		private final String network;
+		private final String aggregationType;
+		private final String feature;
+		private final String property;
+		private final String procedure;
+		private MultiValueObservation newest;
+		private long newestTime;
+		private MultiValueObservation oldest;
+		private long oldestTime;
+
+		/**
+		 * keeps the identifiers of the series in lower case
+		 */
+		Series(String key, String network, String aggregationType, MultiValueObservation observation) {
+			this.key = key;
+			this.network = toLowerCase(network);
+			this.aggregationType = toLowerCase(aggregationType);
+			this.feature = toLowerCase(observation.getFeatureOfInterest());
+			this.property = toLowerCase(observation.getObservedProperty());
+			this.procedure = toLowerCase(observation.getProcedure());
+		}
+
+	}
+
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db.impl;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+import org.n52.gml.Identifier;
+import org.n52.om.observation.MultiValueObservation;
+import org.n52.om.result.MeasureResult;
+import org.n52.oxf.valueDomains.time.ITimePosition;
+import org.n52.oxf.valueDomains.time.TimeConverter;
+import org.n52.sos.Constants;
+
+import com.esri.arcgis.geodatabase.IRow;
+
+/**
+ * maps the rows of an observation query to {@link MultiValueObservation}s
+ * and their {@link MeasureResult}s
+ */
+class ObservationRowMapper extends RowMapper {
+
+	private final int observationId;
+	private final int procedureResource;
+	private final int propertyId;
+	private final int featureResource;
+	private final int samplingPointResource;
+	private final int samplingPointId;
+	private final int unitId;
+	private final int unitNotation;
+	private final int unitLabel;
+	private final int aggregationTypeDefinition;
+	private final int aggregationTypeNotation;
+	private final int resultTime;
+	private final int dateTimeBegin;
+	private final int dateTimeEnd;
+	private final int validityNotation;
+	private final int verificationNotation;
+	private final int numericValue;
+	private final int unitKey;
+	private final int validityKey;
+	private final int verificationKey;
+	private final int aggregationTypeKey;
+	private final DimensionTables dimensions;
+
+	public ObservationRowMapper(List<String> fields) {
+		this(fields, null);
+	}
+
+	/**
+	 * @param dimensions if not null, units, validities, verifications and
+	 * aggregation types are resolved from the foreign keys of the VALUE
+	 * table
+	 */
+	public ObservationRowMapper(List<String> fields, DimensionTables dimensions) {
+		this.dimensions = dimensions;
+		this.observationId = ordinal(fields, Table.OBSERVATION, SubField.OBSERVATION_ID);
+		this.procedureResource = ordinal(fields, Table.PROCEDURE, SubField.PROCEDURE_RESOURCE);
+		this.propertyId = ordinal(fields, Table.PROPERTY, SubField.PROPERTY_ID);
+		this.featureResource = ordinal(fields, Table.FEATUREOFINTEREST, SubField.FEATUREOFINTEREST_RESOURCE);
+		this.samplingPointResource = ordinal(fields, Table.SAMPLINGPOINT, SubField.SAMPLINGPOINT_RESOURCE);
+		this.samplingPointId = ordinal(fields, Table.SAMPLINGPOINT, SubField.SAMPLINGPOINT_ID);
+		this.unitId = ordinal(fields, Table.UNIT, SubField.UNIT_ID);
+		this.unitNotation = ordinal(fields, Table.UNIT, SubField.UNIT_NOTATION);
+		this.unitLabel = ordinal(fields, Table.UNIT, SubField.UNIT_LABEL);
+		this.aggregationTypeDefinition = ordinal(fields, Table.AGGREGATIONTYPE, SubField.AGGREGATIONTYPE_DEFINITION);
+		this.aggregationTypeNotation = ordinal(fields, Table.AGGREGATIONTYPE, SubField.AGGREGATIONTYPE_NOTATION);
+		this.resultTime = ordinal(fields, Table.VALUE, SubField.VALUE_RESULTTIME);
+		this.dateTimeBegin = ordinal(fields, Table.VALUE, SubField.VALUE_DATETIME_BEGIN);
+		this.dateTimeEnd = ordinal(fields, Table.VALUE, SubField.VALUE_DATETIME_END);
+		this.validityNotation = ordinal(fields, Table.VALIDITY, SubField.VALIDITY_NOTATION);
+		this.verificationNotation = ordinal(fields, Table.VERIFICATION, SubField.VERIFICATION_NOTATION);
+		this.numericValue = ordinal(fields, Table.VALUE, SubField.VALUE_VALUE_NUMERIC);
+		this.unitKey = ordinal(fields, Table.VALUE, SubField.VALUE_FK_UNIT);
+		this.validityKey = ordinal(fields, Table.VALUE, SubField.VALUE_FK_VALIDITY);
+		this.verificationKey = ordinal(fields, Table.VALUE, SubField.VALUE_FK_VERIFICATION);
+		this.aggregationTypeKey = ordinal(fields, Table.VALUE, SubField.VALUE_FK_AGGREGATIONTYPE);
+	}
+
+	public String getObservationId(IRow row) throws IOException {
+		return row.getValue(this.observationId).toString();
+	}
+
+	public MultiValueObservation createMultiValueObservation(IRow row) throws IOException {
+		Identifier obsIdentifier = new Identifier(null, getObservationId(row));
+		
+		String procID = stringValue(row, this.procedureResource, Constants.NULL_VALUE);
+		String obsPropID = stringValue(row, this.propertyId, Constants.NULL_VALUE);
+		String featureID = stringValue(row, this.featureResource, Constants.NULL_VALUE);
+		
+		// in case "resource" field is null, "id" field is used:
+		String samplingPointID = stringValue(row, this.samplingPointResource, null);
+		if (samplingPointID == null || samplingPointID.equals("")) {
+			samplingPointID = stringValue(row, this.samplingPointId, null);
+		}
+		
+		String unitID;
+		String unitNotationValue;
+		String unitLabelValue;
+		String aggregationType;
+		if (this.dimensions != null) {
+			DimensionTables.Entry unit = this.dimensions.getUnits().get(intValue(row, this.unitKey));
+			unitID = unit == null ? null : unit.getId();
+			unitNotationValue = unit == null ? null : unit.getNotation();
+			unitLabelValue = unit == null ? null : unit.getLabel();
+			DimensionTables.Entry aggregation = this.dimensions.getAggregationTypes().get(intValue(row, this.aggregationTypeKey));
+			aggregationType = aggregation == null ? null : aggregation.getDefinition();
+		}
+		else {
+			unitID = stringValue(row, this.unitId, null);
+			unitNotationValue = stringValue(row, this.unitNotation, null);
+			unitLabelValue = stringValue(row, this.unitLabel, null);
+			aggregationType = stringValue(row, this.aggregationTypeDefinition, null);
+		}
+		unitID = orNullValue(unitID);
+		unitNotationValue = orNullValue(unitNotationValue);
+		unitLabelValue = orNullValue(unitLabelValue);
+		aggregationType = orNullValue(aggregationType);
+		
+		Date resultDate = (Date) value(row, this.resultTime);
+		ITimePosition resultTimePos = TimeConverter.createTimeFromDate(resultDate, null);
+		
+		return new MultiValueObservation(obsIdentifier, procID, obsPropID, featureID, samplingPointID,
+				unitID, unitNotationValue, unitLabelValue, aggregationType, resultTimePos);
+	}
+
+	public MeasureResult createResultValue(IRow row) throws IOException {
+		ITimePosition startTimePos = TimeConverter.createTimeFromDate((Date) value(row, this.dateTimeBegin), null);
+		ITimePosition endTimePos = TimeConverter.createTimeFromDate((Date) value(row, this.dateTimeEnd), null);
+		
+		String validity;
+		String verification;
+		String aggregationType;
+		if (this.dimensions != null) {
+			validity = notation(this.dimensions.getValidities(), row, this.validityKey);
+			verification = notation(this.dimensions.getVerifications(), row, this.verificationKey);
+			aggregationType = notation(this.dimensions.getAggregationTypes(), row, this.aggregationTypeKey);
+		}
+		else {
+			validity = stringValue(row, this.validityNotation, Constants.NULL_VALUE);
+			verification = stringValue(row, this.verificationNotation, Constants.NULL_VALUE);
+			aggregationType = stringValue(row, this.aggregationTypeNotation, Constants.NULL_VALUE);
+		}
+		
+		Double value = (Double) value(row, this.numericValue);
+		
+		return new MeasureResult(startTimePos, endTimePos, validity, verification, aggregationType, value);
+	}
+
+	private static String notation(DimensionTables.DimensionTable table, IRow row, int keyOrdinal) throws IOException {
+		DimensionTables.Entry entry = table.get(intValue(row, keyOrdinal));
+		return orNullValue(entry == null ? null : entry.getNotation());
+	}
+
+	private static String orNullValue(String value) {
+		return value == null ? Constants.NULL_VALUE : value;
+	}
+
+}
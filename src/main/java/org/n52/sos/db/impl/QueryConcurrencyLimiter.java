@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db.impl;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.n52.util.logging.Logger;
+
+/**
+ * Limits the number of database queries evaluated at the same time
+ * within this process. Waiting queries are served in arrival order
+ * and give up after the configured queue timeout, so a slow query
+ * only delays the others if all permits are taken.
+ */
+public class QueryConcurrencyLimiter {
+
+	private static final Logger LOGGER = Logger.getLogger(QueryConcurrencyLimiter.class.getName());
+
+	/**
+	 * one query at a time, as before the limiter was introduced.
+	 * Deployments may raise it with maximumConcurrentQueries.
+	 */
+	public static final int DEFAULT_MAXIMUM_CONCURRENT_QUERIES = 1;
+
+	public static final long DEFAULT_QUEUE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(2);
+
+	private static QueryConcurrencyLimiter instance;
+
+	private volatile Semaphore permits;
+	private volatile int maximumConcurrentQueries;
+	private volatile long queueTimeout;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicLong rejected = new AtomicLong();
+
+	public static synchronized QueryConcurrencyLimiter instance() {
+		if (instance == null) {
+			instance = new QueryConcurrencyLimiter(DEFAULT_MAXIMUM_CONCURRENT_QUERIES,
+					DEFAULT_QUEUE_TIMEOUT_MS);
+		}
+		
+		return instance;
+	}
+
+	QueryConcurrencyLimiter(int maximumConcurrentQueries, long queueTimeout) {
+		configure(maximumConcurrentQueries, queueTimeout);
+	}
+
+	/**
+	 * applies new limits. Queries already holding a permit keep it
+	 * and return it to the limits they were admitted with.
+	 * 
+	 * @param maximumConcurrentQueries the number of queries evaluated
+	 * at the same time, at least 1
+	 * @param queueTimeout the time in ms a query waits for a permit
+	 */
+	public synchronized void configure(int maximumConcurrentQueries, long queueTimeout) {
+		this.maximumConcurrentQueries = Math.max(1, maximumConcurrentQueries);
+		this.queueTimeout = Math.max(0, queueTimeout);
+		this.permits = new Semaphore(this.maximumConcurrentQueries, true);
+		LOGGER.info(String.format("Database query concurrency: %s, queue timeout: %s ms",
+				this.maximumConcurrentQueries, this.queueTimeout));
+	}
+
+	/**
+	 * waits for a permit to evaluate a query
+	 * 
+	 * @return the permit, to be closed after the query was evaluated
+	 * @throws IOException if no permit became available within the
+	 * queue timeout or the thread was interrupted
+	 */
+	public Permit acquire() throws IOException {
+		Semaphore s = this.permits;
+		
+		this.queued.incrementAndGet();
+		boolean acquired;
+		try {
+			acquired = s.tryAcquire(this.queueTimeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a database query permit", e);
+		}
+		finally {
+			this.queued.decrementAndGet();
+		}
+		
+		if (!acquired) {
+			this.rejected.incrementAndGet();
+			throw new IOException(String.format(
+					"No database query permit available within %s ms (%s queries in flight, %s queued)",
+					this.queueTimeout, getInFlight(), getQueued()));
+		}
+		
+		this.inFlight.incrementAndGet();
+		return new Permit(s);
+	}
+
+	public int getInFlight() {
+		return this.inFlight.get();
+	}
+
+	public int getQueued() {
+		return this.queued.get();
+	}
+
+	public long getRejected() {
+		return this.rejected.get();
+	}
+
+	public int getMaximumConcurrentQueries() {
+		return this.maximumConcurrentQueries;
+	}
+
+	public long getQueueTimeout() {
+		return this.queueTimeout;
+	}
+
+	public class Permit implements AutoCloseable {
+
+		private final Semaphore semaphore;
+		private boolean released;
+
+		private Permit(Semaphore semaphore) {
+			this.semaphore = semaphore;
+		}
+
+		@Override
+		public synchronized void close() {
+			if (!this.released) {
+				this.released = true;
+				inFlight.decrementAndGet();
+				this.semaphore.release();
+			}
+		}
+
+	}
+
+}
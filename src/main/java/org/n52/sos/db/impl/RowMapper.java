@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db.impl;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.esri.arcgis.geodatabase.IRow;
+
+/**
+ * Base for mappers from query rows to domain objects. The ordinals of
+ * the fields are resolved once per query, in the constructor of the
+ * mapper, instead of looking up the field name for every column of
+ * every row.
+ */
+abstract class RowMapper {
+
+	/**
+	 * @return the ordinal of the field within the sub fields of the
+	 * query, -1 if the field is not part of it
+	 */
+	protected static int ordinal(List<String> fields, String table, String field) {
+		return fields.indexOf(AccessGDBImpl.concatTableAndField(table, field));
+	}
+
+	/**
+	 * @return the value at the ordinal, null if the ordinal is -1
+	 */
+	protected static Object value(IRow row, int ordinal) throws IOException {
+		if (ordinal < 0) {
+			return null;
+		}
+		return row.getValue(ordinal);
+	}
+
+	/**
+	 * @return the string value at the ordinal, the default if it is null
+	 */
+	protected static String stringValue(IRow row, int ordinal, String defaultValue) throws IOException {
+		String result = (String) value(row, ordinal);
+		return result == null ? defaultValue : result;
+	}
+
+	/**
+	 * @return the integer value at the ordinal, e.g. of a foreign key.
+	 * null if the value is null
+	 */
+	protected static Integer intValue(IRow row, int ordinal) throws IOException {
+		Object result = value(row, ordinal);
+		if (result == null) {
+			return null;
+		}
+		if (result instanceof Number) {
+			return ((Number) result).intValue();
+		}
+		return Integer.valueOf(result.toString().trim());
+	}
+
+}
@@ -0,0 +1,326 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.n52.om.observation.MultiValueObservation;
+import org.n52.om.result.MeasureResult;
+import org.n52.oxf.valueDomains.time.ITimePosition;
+import org.n52.oxf.valueDomains.time.TimeConverter;
+import org.n52.sos.db.ObservationSink;
+
+/**
+ * Caches the observation values of a series selection (the non-temporal
+ * filters and aggregation types of a request) in buckets of one day, by
+ * the end time of the values. Only days which are closed, i.e. older than
+ * {@link #OPEN_DAYS}, are cached. The size is bounded by the number of
+ * cached values, the least recently used buckets are evicted first.
+ * Values inserted or updated later invalidate the buckets from their
+ * day on, see {@link #invalidateFrom(int)}.
+ */
+class SeriesChunkCache {
+
+	/**
+	 * today and yesterday may still receive values
+	 */
+	static final int OPEN_DAYS = 2;
+
+	static final int DEFAULT_MAXIMUM_VALUES = 200000;
+
+	static final long DEFAULT_TIME_TO_LIVE_MS = TimeUnit.HOURS.toMillis(6);
+
+	private final LinkedHashMap<String, Chunk> chunks = new LinkedHashMap<>(16, 0.75f, true);
+	private final int maximumValues;
+	private final long timeToLive;
+	private int currentValues;
+	private long hits;
+	private long misses;
+	private long epoch;
+
+	SeriesChunkCache(int maximumValues, long timeToLive) {
+		this.maximumValues = maximumValues;
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * @return the observations of the day or null if not cached
+	 */
+	public synchronized List<MultiValueObservation> get(String selection, int day) {
+		Chunk chunk = resolve(selection, day);
+		if (chunk == null) {
+			this.misses++;
+			return null;
+		}
+		this.hits++;
+		return chunk.observations;
+	}
+
+	public synchronized boolean contains(String selection, int day) {
+		return resolve(selection, day) != null;
+	}
+
+	private Chunk resolve(String selection, int day) {
+		String key = createKey(selection, day);
+		Chunk chunk = this.chunks.get(key);
+		if (chunk != null && System.currentTimeMillis() - chunk.created > this.timeToLive) {
+			remove(key);
+			return null;
+		}
+		return chunk;
+	}
+
+	/**
+	 * @param epoch the {@link #getEpoch()} before the observations have
+	 * been queried. They are discarded if the cache has been invalidated
+	 * in the meantime, as they might miss the changes.
+	 * @param observations the observations of the day, not modified
+	 * afterwards
+	 */
+	public synchronized void put(String selection, int day, long epoch, List<MultiValueObservation> observations) {
+		Chunk chunk = new Chunk(observations, day);
+		if (epoch != this.epoch || chunk.valueCount > this.maximumValues) {
+			return;
+		}
+		
+		String key = createKey(selection, day);
+		remove(key);
+		this.chunks.put(key, chunk);
+		this.currentValues += chunk.valueCount;
+		
+		Iterator<Chunk> it = this.chunks.values().iterator();
+		while (this.currentValues > this.maximumValues && it.hasNext()) {
+			this.currentValues -= it.next().valueCount;
+			it.remove();
+		}
+	}
+
+	private void remove(String key) {
+		Chunk previous = this.chunks.remove(key);
+		if (previous != null) {
+			this.currentValues -= previous.valueCount;
+		}
+	}
+
+	/**
+	 * drops the buckets of the day and all later days
+	 */
+	public synchronized void invalidateFrom(int day) {
+		this.epoch++;
+		Iterator<Chunk> it = this.chunks.values().iterator();
+		while (it.hasNext()) {
+			Chunk chunk = it.next();
+			if (chunk.day >= day) {
+				this.currentValues -= chunk.valueCount;
+				it.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		this.epoch++;
+		this.chunks.clear();
+		this.currentValues = 0;
+	}
+
+	public synchronized long getEpoch() {
+		return epoch;
+	}
+
+	private static String createKey(String selection, int day) {
+		return day + "|" + selection;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized int getValueCount() {
+		return currentValues;
+	}
+
+	/**
+	 * @return the last day (yyyyMMdd, UTC) which is cached
+	 */
+	static int lastClosedDay() {
+		Calendar now = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+		return addDays(toDay(now), -OPEN_DAYS);
+	}
+
+	static int addDays(int day, int days) {
+		Calendar c = toCalendar(day);
+		c.add(Calendar.DAY_OF_MONTH, days);
+		return toDay(c);
+	}
+
+	/**
+	 * @return the start of the day as used in the temporal clauses
+	 */
+	static String dayStart(int day) {
+		return TimeConverter.toISO8601(false, day / 10000, (day / 100) % 100, day % 100, 0, 0, 0);
+	}
+
+	static int dayOf(ITimePosition time) {
+		return (int) time.getYear() * 10000 + time.getMonth() * 100 + time.getDay();
+	}
+
+	private static Calendar toCalendar(int day) {
+		Calendar c = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+		c.clear();
+		c.set(day / 10000, (day / 100) % 100 - 1, day % 100);
+		return c;
+	}
+
+	private static int toDay(Calendar c) {
+		return c.get(Calendar.YEAR) * 10000 + (c.get(Calendar.MONTH) + 1) * 100 + c.get(Calendar.DAY_OF_MONTH);
+	}
+
+	/**
+	 * @return an observation with the metadata but without the values
+	 */
+	static MultiValueObservation copyWithoutValues(MultiValueObservation o) {
+		return new MultiValueObservation(o.getIdentifier(), o.getProcedure(), o.getObservedProperty(),
+				o.getFeatureOfInterest(), o.getSamplingPoint(), o.getUnit(), o.getUnitNotation(),
+				o.getUnitLabel(), o.getAggregationType(), o.getResultTime());
+	}
+
+	/**
+	 * splits the values of the streamed observations into day buckets
+	 */
+	static class DaySplitter implements ObservationSink {
+
+		private final Map<Integer, Map<String, MultiValueObservation>> days = new TreeMap<>();
+
+		@Override
+		public void observation(MultiValueObservation observation) {
+			String id = observation.getIdentifier().getIdentifierValue();
+			for (MeasureResult value : observation.getResult().getValue()) {
+				int day = dayOf(value.getDateTimeEnd());
+				Map<String, MultiValueObservation> bucket = this.days.get(day);
+				if (bucket == null) {
+					bucket = new TreeMap<>();
+					this.days.put(day, bucket);
+				}
+				
+				MultiValueObservation target = bucket.get(id);
+				if (target == null) {
+					target = copyWithoutValues(observation);
+					bucket.put(id, target);
+				}
+				target.getResult().addResultValue(value);
+			}
+		}
+
+		@Override
+		public void reset() {
+			this.days.clear();
+		}
+
+		/**
+		 * @return the observations of the day, empty if there are none
+		 */
+		public List<MultiValueObservation> getObservations(int day) {
+			Map<String, MultiValueObservation> bucket = this.days.get(day);
+			if (bucket == null) {
+				return Collections.emptyList();
+			}
+			return Collections.unmodifiableList(new ArrayList<>(bucket.values()));
+		}
+
+	}
+
+	/**
+	 * merges observations passed in chronological order into one
+	 * observation per identifier, without modifying them
+	 */
+	static class Merger implements ObservationSink {
+
+		private final Map<String, MultiValueObservation> observations = new TreeMap<>();
+		private int valueCount;
+
+		@Override
+		public void observation(MultiValueObservation observation) {
+			String id = observation.getIdentifier().getIdentifierValue();
+			MultiValueObservation target = this.observations.get(id);
+			if (target == null) {
+				target = copyWithoutValues(observation);
+				this.observations.put(id, target);
+			}
+			for (MeasureResult value : observation.getResult().getValue()) {
+				target.getResult().addResultValue(value);
+				this.valueCount++;
+			}
+		}
+
+		public void observations(List<MultiValueObservation> list) {
+			for (MultiValueObservation o : list) {
+				observation(o);
+			}
+		}
+
+		@Override
+		public void reset() {
+			this.observations.clear();
+			this.valueCount = 0;
+		}
+
+		public int getValueCount() {
+			return valueCount;
+		}
+
+		public void emit(ObservationSink sink) throws IOException {
+			for (MultiValueObservation o : this.observations.values()) {
+				sink.observation(o);
+			}
+		}
+
+	}
+
+	private static class Chunk {
+
+		private final List<MultiValueObservation> observations;
+		private final int day;
+		private final long created = System.currentTimeMillis();
+		private final int valueCount;
+
+		Chunk(List<MultiValueObservation> observations, int day) {
+			this.observations = observations;
+			this.day = day;
+			int count = 0;
+			for (MultiValueObservation o : observations) {
+				count += o.getResult().getValue().size();
+			}
+			this.valueCount = count;
+		}
+
+	}
+
+}
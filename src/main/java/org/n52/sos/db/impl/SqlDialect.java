@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db.impl;
+
+/**
+ * The SQL flavour of the underlying database, as far as it differs
+ * between the supported systems. Configured via the property
+ * <code>database.dialect</code>.
+ */
+public enum SqlDialect {
+
+	/**
+	 * row limiting via <code>SELECT TOP n</code>
+	 */
+	SQLSERVER {
+		@Override
+		public String limitSubFields(String subFields, boolean distinct, int rowLimit) {
+			return (distinct ? " DISTINCT TOP " : " TOP ") + rowLimit + " " + subFields;
+		}
+	},
+	
+	/**
+	 * row limiting via <code>FETCH FIRST n ROWS ONLY</code> (Oracle 12c+)
+	 */
+	ORACLE {
+		@Override
+		public String limitPostfixClause(String postfixClause, int rowLimit) {
+			return append(postfixClause, "FETCH FIRST " + rowLimit + " ROWS ONLY");
+		}
+		
+		@Override
+		public String truncateToDay(String column) {
+			return "TRUNC(" + column + ")";
+		}
+	},
+	
+	/**
+	 * row limiting via <code>LIMIT n</code>
+	 */
+	POSTGRESQL {
+		@Override
+		public String limitPostfixClause(String postfixClause, int rowLimit) {
+			return append(postfixClause, "LIMIT " + rowLimit);
+		}
+	},
+	
+	/**
+	 * no row limiting available
+	 */
+	NONE {
+		@Override
+		public boolean supportsRowLimit() {
+			return false;
+		}
+		
+		@Override
+		public String truncateToDay(String column) {
+			return null;
+		}
+	};
+
+	public static final SqlDialect DEFAULT = SQLSERVER;
+
+	/**
+	 * @return the dialect of the given name (case insensitive), the
+	 * default if the name is null or empty
+	 * @throws IllegalArgumentException if the name is unknown
+	 */
+	public static SqlDialect fromName(String name) {
+		if (name == null || name.trim().isEmpty()) {
+			return DEFAULT;
+		}
+		
+		return valueOf(name.trim().toUpperCase());
+	}
+
+	public boolean supportsRowLimit() {
+		return true;
+	}
+
+	/**
+	 * @return the select list, restricted to the given number of rows
+	 * if the dialect does so in the select list
+	 */
+	public String limitSubFields(String subFields, boolean distinct, int rowLimit) {
+		return (distinct ? " DISTINCT " : " ") + subFields;
+	}
+
+	/**
+	 * @param postfixClause the clause following the WHERE clause. may be null
+	 * @return the postfix clause, restricted to the given number of rows
+	 * if the dialect does so after the WHERE clause
+	 */
+	public String limitPostfixClause(String postfixClause, int rowLimit) {
+		return postfixClause;
+	}
+
+	/**
+	 * @return an expression truncating the date time column to the
+	 * day, or null if not supported
+	 */
+	public String truncateToDay(String column) {
+		return "CAST(" + column + " AS DATE)";
+	}
+
+	private static String append(String postfixClause, String limit) {
+		if (postfixClause == null || postfixClause.trim().isEmpty()) {
+			return limit;
+		}
+		return postfixClause.trim() + " " + limit;
+	}
+
+}
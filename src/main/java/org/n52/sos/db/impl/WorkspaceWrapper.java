@@ -16,6 +16,7 @@
 package org.n52.sos.db.impl;
 
 import java.io.IOException;
+import java.sql.Connection;
 
 import com.esri.arcgis.datasourcesGDB.SqlWorkspace;
 import com.esri.arcgis.geodatabase.Workspace;
@@ -24,6 +25,8 @@ public class WorkspaceWrapper {
 
 	private SqlWorkspace sqlWorkspace;
 	private Workspace workspace;
+	private SqlDialect dialect = SqlDialect.DEFAULT;
+	private Connection jdbcConnection;
 
 	public void setSqlWorkspace(SqlWorkspace workspace) {
 		this.sqlWorkspace = workspace;
@@ -37,6 +40,22 @@ public class WorkspaceWrapper {
 		return this.sqlWorkspace != null;
 	}
 
+	/**
+	 * @param connection a plain JDBC connection, used instead of the
+	 * ArcObjects workspaces for all queries
+	 */
+	public void setJdbcConnection(Connection connection) {
+		this.jdbcConnection = connection;
+	}
+	
+	public boolean usesJdbcConnection() {
+		return this.jdbcConnection != null;
+	}
+
+	public Connection getJdbcConnection() {
+		return jdbcConnection;
+	}
+
 	public SqlWorkspace getSqlWorkspace() {
 		return sqlWorkspace;
 	}
@@ -44,6 +63,14 @@ public class WorkspaceWrapper {
 	public Workspace getWorkspace() {
 		return workspace;
 	}
+
+	public SqlDialect getDialect() {
+		return dialect;
+	}
+
+	public void setDialect(SqlDialect dialect) {
+		this.dialect = dialect;
+	}
 	
 	
 	@Override
@@ -55,6 +82,10 @@ public class WorkspaceWrapper {
 		sb.append(this.sqlWorkspace == null ? "n/a" : this.sqlWorkspace.getClass());
 		sb.append("; Workspace = ");
 		sb.append(this.workspace == null ? "n/a" : this.workspace.getClass());
+		sb.append("; JDBC connection = ");
+		sb.append(this.jdbcConnection == null ? "n/a" : this.jdbcConnection.getClass());
+		sb.append("; SqlDialect = ");
+		sb.append(this.dialect);
 		sb.append("; Workspace (child) = ");
 		if (this.workspace != null) {
 			try {
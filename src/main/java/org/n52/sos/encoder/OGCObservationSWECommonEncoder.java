@@ -79,29 +79,8 @@ public class OGCObservationSWECommonEncoder extends AbstractEncoder {
         for (String obsId : obsIdSet) {
 
             MultiValueObservation multiValObs = idObsList.get(obsId);
-        	
-            StringBuilder observation = new StringBuilder();
-            observation.append(getObservationTemplate());
             
-            StringBuilder allValues = new StringBuilder();
-            for (MeasureResult resultValue : multiValObs.getResult().getValue()) {
-                allValues.append(encodeMeasureResult(resultValue));
-            }
-            
-            replace(observation, OBSERVATION_ID, multiValObs.getIdentifier().getIdentifierValue());
-            replace(observation, OBSERVATION_UNIT_ID, multiValObs.getUnit());
-            replace(observation, OBSERVATION_UNIT_NOTATION, multiValObs.getUnitNotation());
-            replace(observation, OBSERVATION_PHENTIME_START, multiValObs.getResult().getDateTimeBegin().toISO8601Format());
-            replace(observation, OBSERVATION_PHENTIME_END, multiValObs.getResult().getDateTimeEnd().toISO8601Format());
-            replace(observation, OBSERVATION_PROCEDURE, multiValObs.getProcedure());
-            replace(observation, OBSERVATION_PROPERTY, multiValObs.getObservedProperty());
-            replace(observation, OBSERVATION_FEATURE, multiValObs.getFeatureOfInterest());
-            replace(observation, OBSERVATION_SAMPLING_POINT, multiValObs.getSamplingPoint());
-            replace(observation, OBSERVATION_AGGREGATION_TYPE, multiValObs.getAggregationType());
-            replace(observation, ELEMENT_COUNT, Integer.toString(multiValObs.getResult().getValue().size()));
-            replace(observation, VALUES, allValues.toString());
-            
-            encodedObservations.append(observation);
+            encodedObservations.append(encodeObservation(multiValObs));
             
             startTimes.add(multiValObs.getResult().getDateTimeBegin());
             endTimes.add(multiValObs.getResult().getDateTimeEnd());
@@ -110,6 +89,62 @@ public class OGCObservationSWECommonEncoder extends AbstractEncoder {
     }
 
 
+    /**
+     * encodes a single observation, without the envelope
+     */
+    public StringBuilder encodeObservation(MultiValueObservation multiValObs) {
+        StringBuilder observation = new StringBuilder();
+        observation.append(getObservationTemplate());
+        
+        StringBuilder allValues = new StringBuilder();
+        for (MeasureResult resultValue : multiValObs.getResult().getValue()) {
+            allValues.append(encodeMeasureResult(resultValue));
+        }
+        
+        replace(observation, OBSERVATION_ID, multiValObs.getIdentifier().getIdentifierValue());
+        replace(observation, OBSERVATION_UNIT_ID, multiValObs.getUnit());
+        replace(observation, OBSERVATION_UNIT_NOTATION, multiValObs.getUnitNotation());
+        replace(observation, OBSERVATION_PHENTIME_START, multiValObs.getResult().getDateTimeBegin().toISO8601Format());
+        replace(observation, OBSERVATION_PHENTIME_END, multiValObs.getResult().getDateTimeEnd().toISO8601Format());
+        replace(observation, OBSERVATION_PROCEDURE, multiValObs.getProcedure());
+        replace(observation, OBSERVATION_PROPERTY, multiValObs.getObservedProperty());
+        replace(observation, OBSERVATION_FEATURE, multiValObs.getFeatureOfInterest());
+        replace(observation, OBSERVATION_SAMPLING_POINT, multiValObs.getSamplingPoint());
+        replace(observation, OBSERVATION_AGGREGATION_TYPE, multiValObs.getAggregationType());
+        replace(observation, ELEMENT_COUNT, Integer.toString(multiValObs.getResult().getValue().size()));
+        replace(observation, VALUES, allValues.toString());
+        
+        return observation;
+    }
+    
+    /**
+     * @return true if the envelope does not depend on the encoded
+     * observations (e.g. their overall phenomenon time), so that the
+     * observations can be encoded one at a time
+     */
+    public boolean supportsStreaming() {
+    	String envelope = getObservationEnvelopeTemplate();
+    	return envelope.contains(OBSERVATIONS)
+    			&& !envelope.contains(OBSERVATION_PHENTIME_START)
+    			&& !envelope.contains(OBSERVATION_PHENTIME_END);
+    }
+    
+    /**
+     * @return the envelope content preceding the observations
+     */
+    public String getEnvelopePrefix() {
+    	String envelope = getObservationEnvelopeTemplate();
+    	return envelope.substring(0, envelope.indexOf(OBSERVATIONS));
+    }
+    
+    /**
+     * @return the envelope content following the observations
+     */
+    public String getEnvelopeSuffix() {
+    	String envelope = getObservationEnvelopeTemplate();
+    	return envelope.substring(envelope.indexOf(OBSERVATIONS) + OBSERVATIONS.length());
+    }
+
     private String wrapInEnvelope(String result, List<ITimePosition> startTimes, List<ITimePosition> endTimes) throws IOException {
         String start, end;
     	if (startTimes != null && startTimes.size() > 0) {
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.encoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.n52.om.observation.MultiValueObservation;
+import org.n52.sos.db.ObservationSink;
+
+/**
+ * encodes each observation as soon as it is received and writes it into
+ * the response buffer. Only the encoded response and the observation
+ * currently encoded are kept in memory.
+ * 
+ * Requires an encoder which {@link OGCObservationSWECommonEncoder#supportsStreaming()}.
+ */
+public class StreamingObservationEncoder implements ObservationSink {
+
+	private OGCObservationSWECommonEncoder encoder;
+	private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+	private Writer writer;
+	private int observationCount;
+
+	public StreamingObservationEncoder(OGCObservationSWECommonEncoder encoder) throws IOException {
+		if (!encoder.supportsStreaming()) {
+			throw new IllegalArgumentException("The encoder does not support streaming: "+ encoder.getClass().getSimpleName());
+		}
+		this.encoder = encoder;
+		start();
+	}
+
+	private void start() throws IOException {
+		this.writer = new OutputStreamWriter(this.buffer, StandardCharsets.UTF_8);
+		this.writer.write(this.encoder.getEnvelopePrefix());
+	}
+
+	@Override
+	public void observation(MultiValueObservation observation) throws IOException {
+		this.writer.append(this.encoder.encodeObservation(observation));
+		this.observationCount++;
+	}
+
+	@Override
+	public void reset() throws IOException {
+		this.buffer.reset();
+		this.observationCount = 0;
+		start();
+	}
+
+	public int getObservationCount() {
+		return observationCount;
+	}
+
+	/**
+	 * completes the envelope
+	 * 
+	 * @return the UTF-8 encoded response
+	 */
+	public byte[] toByteArray() throws IOException {
+		this.writer.write(this.encoder.getEnvelopeSuffix());
+		this.writer.flush();
+		return this.buffer.toByteArray();
+	}
+
+}
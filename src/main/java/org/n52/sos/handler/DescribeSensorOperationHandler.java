@@ -29,6 +29,7 @@ import org.n52.ows.NoApplicableCodeException;
 import org.n52.sos.Constants;
 import org.n52.sos.dataTypes.Procedure;
 import org.n52.sos.db.AccessGDB;
+import org.n52.sos.db.ProcedureClassification;
 import org.n52.sos.encoder.OGCProcedureEncoder;
 
 import com.esri.arcgis.interop.AutomationException;
@@ -114,16 +115,9 @@ public class DescribeSensorOperationHandler extends OGCOperationRequestHandler {
 		 * 
 		 * Hence, we have to check what they are first:
 		 */
-    	List<String> proceduresWhichAreNetworks   = new ArrayList<String>();
-    	List<String> proceduresWhichAreProcedures = new ArrayList<String>();
-    	for (String procedure : procedures) {
-    		if (geoDB.getProcedureAccess().isNetwork(procedure)) {
-    			proceduresWhichAreNetworks.add(procedure);
-    		}
-    		else if (geoDB.getProcedureAccess().isProcedure(procedure)) {
-    			proceduresWhichAreProcedures.add(procedure);
-    		}
-    	}
+    	ProcedureClassification classification = geoDB.getProcedureAccess().classifyProcedures(procedures);
+    	List<String> proceduresWhichAreNetworks   = classification.getNetworks();
+    	List<String> proceduresWhichAreProcedures = classification.getProcedures();
     	
     	/*
     	 * We only support the request of one kind of procedure per request:
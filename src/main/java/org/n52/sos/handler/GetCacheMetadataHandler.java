@@ -16,15 +16,19 @@
 package org.n52.sos.handler;
 
 import java.io.FileNotFoundException;
+import java.util.Map;
 
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 import org.n52.ows.ExceptionReport;
+import org.n52.sos.SosSoe;
 import org.n52.sos.cache.AbstractEntityCache;
 import org.n52.sos.cache.AbstractCacheScheduler;
 import org.n52.sos.cache.DummyCache;
 import org.n52.sos.cache.ObservationOfferingCache;
+import org.n52.sos.cache.RebuildPacer;
 import org.n52.sos.db.AccessGDB;
+import org.n52.sos.db.impl.QueryConcurrencyLimiter;
 import org.n52.util.CommonUtilities;
 import org.n52.util.VersionInfo;
 
@@ -60,6 +64,11 @@ public class GetCacheMetadataHandler implements OperationRequestHandler {
 				candidateObject.put("maximumEntries", aec.getMaximumEntries());
 				candidateObject.put("latestEntryIndex", aec.getLatestEntryIndex());
 				
+				long servedGeneration = aec.getServedGeneration();
+				candidateObject.put("servedGeneration", servedGeneration == 0 ? "n/a" : format.print(servedGeneration));
+				candidateObject.put("servedGenerationUnixTimestamp", servedGeneration / 1000);
+				candidateObject.put("servedEntries", aec.getServedEntryCount());
+				
 				String className = aec.getClass().getSimpleName();
 				if (className.equals(DummyCache.class.getSimpleName())) {
 					className = ObservationOfferingCache.class.getSimpleName();
@@ -69,7 +78,44 @@ public class GetCacheMetadataHandler implements OperationRequestHandler {
 			}
 
 			result.put("currentlyLocked", cache.isCurrentyLocked());
+			result.put("updateLockHeld", cache.isUpdateLockHeld());
 			result.put("updateCacheOnStartup", cache.isUpdateCacheOnStartup());
+			
+			RebuildPacer pacer = RebuildPacer.instance();
+			JSONObject pacing = new JSONObject();
+			pacing.put("queriesPerMinute", Math.round(pacer.getQueriesPerMinute()));
+			pacing.put("pauseMs", pacer.getCurrentDelay());
+			pacing.put("averageLatencyMs", pacer.getAverageLatency());
+			JSONObject baselines = new JSONObject();
+			for (Map.Entry<String, Long> baseline : pacer.getBaselineLatencies().entrySet()) {
+				baselines.put(baseline.getKey(), baseline.getValue());
+			}
+			pacing.put("baselineLatencyMs", baselines);
+			pacing.put("queryTimeoutMs", pacer.getQueryTimeout());
+			pacing.put("liveRequests", pacer.getLiveRequests());
+			result.put("rebuildPacing", pacing);
+			
+			QueryConcurrencyLimiter limiter = QueryConcurrencyLimiter.instance();
+			JSONObject queries = new JSONObject();
+			queries.put("inFlight", limiter.getInFlight());
+			queries.put("queued", limiter.getQueued());
+			queries.put("rejected", limiter.getRejected());
+			queries.put("maximumConcurrent", limiter.getMaximumConcurrentQueries());
+			queries.put("queueTimeoutMs", limiter.getQueueTimeout());
+			result.put("databaseQueries", queries);
+			
+			ObservationResponseCache responses = ObservationResponseCache.instance();
+			JSONObject responseCache = new JSONObject();
+			responseCache.put("hits", responses.getHits());
+			responseCache.put("misses", responses.getMisses());
+			responseCache.put("hitRatio", responses.getHitRatio());
+			responseCache.put("evictions", responses.getEvictions());
+			responseCache.put("entries", responses.getEntryCount());
+			responseCache.put("sizeBytes", responses.getCurrentBytes());
+			responseCache.put("maximumBytes", responses.getMaximumBytes());
+			responseCache.put("timeToLiveMs", responses.getTimeToLive());
+			result.put("responseCache", responseCache);
+			result.put("coalescedRequests", SosSoe.getCoalescedRequestCount());
 			try {
 				result.put("cacheBaseDir", CommonUtilities.resolveCacheBaseDir(geoDB.getDatabaseName()));
 			}
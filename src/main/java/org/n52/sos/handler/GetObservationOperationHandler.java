@@ -15,6 +15,7 @@
  */
 package org.n52.sos.handler;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
@@ -25,9 +26,11 @@ import org.n52.ows.ExceptionReport;
 import org.n52.ows.InvalidParameterValueException;
 import org.n52.ows.NoApplicableCodeException;
 import org.n52.sos.Constants;
+import org.n52.sos.cache.ObservationOfferingCache;
 import org.n52.sos.db.AccessGDB;
 import org.n52.sos.encoder.AQDObservationEncoder;
 import org.n52.sos.encoder.OGCObservationSWECommonEncoder;
+import org.n52.sos.encoder.StreamingObservationEncoder;
 
 import com.esri.arcgis.server.json.JSONObject;
 
@@ -107,27 +110,86 @@ public class GetObservationOperationHandler extends OGCOperationRequestHandler {
         	aggregationTypes = inputObject.getString(AGGREGATION_TYPE).split(",");
         }
         
+        /*
+         * the same values make up the cache key and the query
+         */
+        offerings = ObservationResponseCache.normalizeValues(offerings);
+        featuresOfInterest = ObservationResponseCache.normalizeValues(featuresOfInterest);
+        observedProperties = ObservationResponseCache.normalizeValues(observedProperties);
+        procedures = ObservationResponseCache.normalizeValues(procedures);
+        aggregationTypes = ObservationResponseCache.normalizeValues(aggregationTypes);
+        
+        ObservationResponseCache responseCache = ObservationResponseCache.instance();
+        String cacheKey = ObservationResponseCache.createKey(geoDB.getDatabaseName(),
+        		ObservationResponseCache.normalize(offerings),
+        		ObservationResponseCache.normalize(featuresOfInterest),
+        		ObservationResponseCache.normalize(observedProperties),
+        		ObservationResponseCache.normalize(procedures),
+        		ObservationResponseCache.normalize(aggregationTypes),
+        		spatialFilter, temporalFilter,
+        		responseFormat == null ? Constants.RESPONSE_FORMAT_OM.toLowerCase() : responseFormat.toLowerCase());
+        long generation = resolveCacheGeneration();
+        
+        byte[] cached = responseCache.get(cacheKey, generation);
+        if (cached != null) {
+        	return cached;
+        }
+        
+        byte[] response = queryAndEncode(geoDB, offerings, featuresOfInterest, observedProperties,
+        		procedures, spatialFilter, temporalFilter, responseFormat, aggregationTypes);
+        responseCache.put(cacheKey, generation, response);
+        return response;
+    }
+
+    /**
+     * @return the generation of the offering cache, 0 if not available
+     */
+    private long resolveCacheGeneration() {
+    	try {
+    		ObservationOfferingCache cache = ObservationOfferingCache.instance();
+    		return cache == null ? 0 : cache.getServedGeneration();
+    	} catch (FileNotFoundException e) {
+    		return 0;
+    	}
+    }
+
+	private byte[] queryAndEncode(AccessGDB geoDB, String[] offerings,
+			String[] featuresOfInterest, String[] observedProperties,
+			String[] procedures, String spatialFilter, String temporalFilter,
+			String responseFormat, String[] aggregationTypes) throws ExceptionReport {
         String result;
            
-        Map<String, MultiValueObservation> observationCollection;
 		try {
-			observationCollection = geoDB.getObservationAccess().getObservations(offerings, featuresOfInterest, observedProperties, procedures, spatialFilter, temporalFilter, aggregationTypes, null);
-        
 	        if (responseFormat != null && responseFormat.equalsIgnoreCase(Constants.RESPONSE_FORMAT_RDF)) {
 	//        	constructInvokedURL(offerings, featuresOfInterest, observedProperties, procedures, spatialFilter, temporalFilter, responseFormat);
 	            throw new UnsupportedOperationException("RDF not yet supported");
 	//            result = new RDFEncoder(sosUrlExtension).getObservationCollectionTriples(observationCollection, invokedURL);
 	        }
-	        else if (responseFormat != null && responseFormat.equalsIgnoreCase(Constants.RESPONSE_FORMAT_AQ)) {
-	            result = new AQDObservationEncoder().encodeObservations(observationCollection);
+	        
+	        OGCObservationSWECommonEncoder encoder;
+	        if (responseFormat != null && responseFormat.equalsIgnoreCase(Constants.RESPONSE_FORMAT_AQ)) {
+	            encoder = new AQDObservationEncoder();
 	        }
 	        else if (responseFormat == null || responseFormat.equalsIgnoreCase(Constants.RESPONSE_FORMAT_OM)) {
-	            result = new OGCObservationSWECommonEncoder().encodeObservations(observationCollection);
+	            encoder = new OGCObservationSWECommonEncoder();
 	        }
 	        else {
 	            throw new InvalidParameterValueException("Specified responseFormat '" + responseFormat + "' is unsupported. Please use either '"+Constants.RESPONSE_FORMAT_OM+"', '"+Constants.RESPONSE_FORMAT_AQ+"', or '"+Constants.RESPONSE_FORMAT_RDF+"'.");
 	        }
 	        
+	        /*
+	         * encode the observations while reading them from the database,
+	         * unless the envelope requires all of them (e.g. AQD)
+	         */
+	        if (encoder.supportsStreaming()) {
+	        	StreamingObservationEncoder sink = new StreamingObservationEncoder(encoder);
+	        	geoDB.getObservationAccess().getObservations(offerings, featuresOfInterest, observedProperties, procedures, spatialFilter, temporalFilter, aggregationTypes, null, sink);
+	        	return sink.toByteArray();
+	        }
+	        
+	        Map<String, MultiValueObservation> observationCollection = geoDB.getObservationAccess().getObservations(offerings, featuresOfInterest, observedProperties, procedures, spatialFilter, temporalFilter, aggregationTypes, null);
+	        result = encoder.encodeObservations(observationCollection);
+	        
 	        return result.getBytes("utf-8");
 		} catch (IOException e) {
 			throw new NoApplicableCodeException(e);
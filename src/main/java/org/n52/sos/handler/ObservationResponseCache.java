@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.handler;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.n52.util.logging.Logger;
+
+/**
+ * A bounded LRU cache of encoded GetObservation responses. The size is
+ * measured in bytes of the responses. Entries expire after the time to
+ * live and as soon as the offering cache serves a new generation.
+ */
+public class ObservationResponseCache {
+
+	private static final Logger LOGGER = Logger.getLogger(ObservationResponseCache.class.getName());
+
+	public static final int DEFAULT_MAXIMUM_SIZE_MB = 32;
+
+	public static final long DEFAULT_TIME_TO_LIVE_MS = TimeUnit.MINUTES.toMillis(1);
+
+	/**
+	 * a single response may take at most this fraction of the cache
+	 */
+	private static final int MAXIMUM_ENTRY_FRACTION = 4;
+
+	private static ObservationResponseCache instance;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long maximumBytes;
+	private long timeToLive;
+	private long currentBytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public static synchronized ObservationResponseCache instance() {
+		if (instance == null) {
+			instance = new ObservationResponseCache(DEFAULT_MAXIMUM_SIZE_MB * 1024L * 1024L,
+					DEFAULT_TIME_TO_LIVE_MS);
+		}
+		
+		return instance;
+	}
+
+	ObservationResponseCache(long maximumBytes, long timeToLive) {
+		configure(maximumBytes, timeToLive);
+	}
+
+	/**
+	 * applies new limits and clears the cache
+	 * 
+	 * @param maximumBytes the total size of the cached responses, 0
+	 * disables the cache
+	 * @param timeToLive the time in ms a response is served from the cache
+	 */
+	public synchronized void configure(long maximumBytes, long timeToLive) {
+		this.maximumBytes = Math.max(0, maximumBytes);
+		this.timeToLive = Math.max(0, timeToLive);
+		this.entries.clear();
+		this.currentBytes = 0;
+		LOGGER.info(String.format("GetObservation response cache: %s bytes, time to live: %s ms",
+				this.maximumBytes, this.timeToLive));
+	}
+
+	/**
+	 * @param generation the generation of the offering cache the
+	 * response has to be based on
+	 * @return the cached response or null
+	 */
+	public synchronized byte[] get(String key, long generation) {
+		if (!isEnabled()) {
+			return null;
+		}
+		
+		Entry entry = this.entries.get(key);
+		if (entry != null && (entry.generation != generation
+				|| System.currentTimeMillis() - entry.created > this.timeToLive)) {
+			remove(key);
+			entry = null;
+		}
+		
+		if (entry == null) {
+			this.misses++;
+			return null;
+		}
+		
+		this.hits++;
+		return entry.response;
+	}
+
+	public synchronized void put(String key, long generation, byte[] response) {
+		if (!isEnabled() || response.length > this.maximumBytes / MAXIMUM_ENTRY_FRACTION) {
+			return;
+		}
+		
+		remove(key);
+		this.entries.put(key, new Entry(response, generation));
+		this.currentBytes += response.length;
+		
+		Iterator<Map.Entry<String, Entry>> it = this.entries.entrySet().iterator();
+		while (this.currentBytes > this.maximumBytes && it.hasNext()) {
+			this.currentBytes -= it.next().getValue().response.length;
+			it.remove();
+			this.evictions++;
+		}
+	}
+
+	private void remove(String key) {
+		Entry previous = this.entries.remove(key);
+		if (previous != null) {
+			this.currentBytes -= previous.response.length;
+		}
+	}
+
+	public synchronized void clear() {
+		this.entries.clear();
+		this.currentBytes = 0;
+	}
+
+	public synchronized boolean isEnabled() {
+		return this.maximumBytes > 0 && this.timeToLive > 0;
+	}
+
+	/**
+	 * @return the request parameter values trimmed, without duplicates
+	 * and sorted, so that their order does not matter. The request has to
+	 * be evaluated with these values, as they make up its cache key.
+	 */
+	public static String[] normalizeValues(String[] values) {
+		if (values == null) {
+			return null;
+		}
+		
+		TreeSet<String> result = new TreeSet<>();
+		for (String v : values) {
+			result.add(v.trim());
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
+	/**
+	 * @return the key part of the values, see {@link #normalizeValues(String[])}
+	 */
+	public static String normalize(String[] values) {
+		if (values == null) {
+			return "";
+		}
+		
+		return Arrays.toString(normalizeValues(values));
+	}
+
+	/**
+	 * @return a key for the normalized parts
+	 */
+	public static String createKey(String... parts) {
+		return Arrays.toString(parts);
+	}
+
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+	public synchronized double getHitRatio() {
+		long total = this.hits + this.misses;
+		return total == 0 ? 0.0 : this.hits / (double) total;
+	}
+
+	public synchronized long getEvictions() {
+		return this.evictions;
+	}
+
+	public synchronized int getEntryCount() {
+		return this.entries.size();
+	}
+
+	public synchronized long getCurrentBytes() {
+		return this.currentBytes;
+	}
+
+	public synchronized long getMaximumBytes() {
+		return this.maximumBytes;
+	}
+
+	public synchronized long getTimeToLive() {
+		return this.timeToLive;
+	}
+
+	private static class Entry {
+
+		private final byte[] response;
+		private final long generation;
+		private final long created = System.currentTimeMillis();
+
+		Entry(byte[] response, long generation) {
+			this.response = response;
+			this.generation = generation;
+		}
+
+	}
+
+}
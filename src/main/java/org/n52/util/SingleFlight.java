@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent computations with the same key: the first caller
+ * computes the value, callers arriving while it is in flight wait for
+ * and share its result (or exception). Nothing is kept once the
+ * computation has finished.
+ * 
+ * @param <V> the type of the computed values
+ */
+public class SingleFlight<V> {
+
+	private final ConcurrentHashMap<String, FutureTask<V>> inFlight = new ConcurrentHashMap<>();
+	private final AtomicLong shared = new AtomicLong();
+
+	/**
+	 * @return the result of the computation in flight for the key, or
+	 * of the given one if there is none
+	 * @throws Exception the exception thrown by the computation
+	 */
+	public V execute(String key, Callable<V> computation) throws Exception {
+		FutureTask<V> task = new FutureTask<>(computation);
+		FutureTask<V> existing = this.inFlight.putIfAbsent(key, task);
+		if (existing != null) {
+			this.shared.incrementAndGet();
+			return await(existing);
+		}
+		
+		try {
+			task.run();
+		}
+		finally {
+			this.inFlight.remove(key, task);
+		}
+		return await(task);
+	}
+
+	private V await(FutureTask<V> task) throws Exception {
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the number of callers which received the result of
+	 * another caller's computation
+	 */
+	public long getSharedCount() {
+		return this.shared.get();
+	}
+
+	public int getInFlightCount() {
+		return this.inFlight.size();
+	}
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.BDDMockito;
+import org.n52.util.CommonUtilities;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(CommonUtilities.class)
+public class AbstractEntityCacheTest {
+
+	private File baseDir;
+
+	@Before
+	public void init() throws IOException {
+		this.baseDir = Files.createTempDirectory("entitycache").toFile();
+		PowerMockito.mockStatic(CommonUtilities.class);
+		BDDMockito.given(CommonUtilities.resolveCacheBaseDir("test")).willReturn(this.baseDir);
+	}
+
+	@Test
+	public void shouldReadTheCurrentVersion() throws Exception {
+		TestEntityCache cache = new TestEntityCache("test");
+		writeCacheFile(TestEntityCache.serializer().getEntityFormatVersion());
+		
+		Map<String, TestEntityCache.Entity> entities = cache.getEntityCollection(null);
+		Assert.assertEquals(1, entities.size());
+		Assert.assertEquals(1, entities.get("NET_1").getValue());
+	}
+
+	@Test(expected = CacheNotYetAvailableException.class)
+	public void shouldTreatAnotherVersionLikeAMissingCache() throws Exception {
+		TestEntityCache cache = new TestEntityCache("test");
+		writeCacheFile(TestEntityCache.serializer().getEntityFormatVersion() + 1);
+		
+		cache.getEntityCollection(null);
+	}
+
+	private void writeCacheFile(final int version) throws IOException, CacheException {
+		final EntitySerializer<TestEntityCache.Entity> current = TestEntityCache.serializer();
+		EntitySerializer<TestEntityCache.Entity> serializer = new EntitySerializer<TestEntityCache.Entity>() {
+
+			@Override
+			public int getEntityFormatVersion() {
+				return version;
+			}
+
+			@Override
+			public void serialize(TestEntityCache.Entity entity, DataOutput out) throws IOException, CacheException {
+				current.serialize(entity, out);
+			}
+
+			@Override
+			public TestEntityCache.Entity deserialize(ByteBuffer buffer) throws IOException {
+				return current.deserialize(buffer);
+			}
+		};
+		
+		BinaryCacheFormat.write(new File(this.baseDir, "test.cache"),
+				Collections.singletonMap("NET_1", new TestEntityCache.Entity("NET_1", 1)), serializer);
+	}
+
+}
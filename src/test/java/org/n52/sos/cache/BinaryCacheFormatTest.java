@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.sos.dataTypes.PropertyUnitMapping;
+
+public class BinaryCacheFormatTest {
+
+	private PropertyUnitMappingSerializer serializer = new PropertyUnitMappingSerializer();
+	private Map<String, PropertyUnitMapping> entities;
+
+	@Before
+	public void init() {
+		entities = new HashMap<>();
+		for (int i = 0; i < 3; i++) {
+			PropertyUnitMapping m = new PropertyUnitMapping();
+			m.put(i, i * 10);
+			m.put(i + 100, 6);
+			entities.put("mapping"+i, m);
+		}
+	}
+
+	@Test
+	public void testFileRoundtrip() throws IOException, CacheException {
+		File f = File.createTempFile("binary", ".cache");
+		f.deleteOnExit();
+		BinaryCacheFormat.write(f, entities, serializer);
+		
+		Assert.assertTrue(BinaryCacheFormat.isBinaryCacheFile(f));
+		Assert.assertEquals(entities, BinaryCacheFormat.read(f, serializer));
+	}
+
+	@Test(expected = IOException.class)
+	public void testChecksumMismatchIsDetected() throws IOException, CacheException {
+		File f = File.createTempFile("binary", ".cache");
+		f.deleteOnExit();
+		BinaryCacheFormat.write(f, entities, serializer);
+		
+		try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+			raf.seek(f.length() - 1);
+			raf.write(42);
+		}
+		
+		BinaryCacheFormat.read(f, serializer);
+	}
+
+	@Test(expected = UnsupportedCacheVersionException.class)
+	public void testVersionMismatchIsDetected() throws IOException, CacheException {
+		File f = File.createTempFile("binary", ".cache");
+		f.deleteOnExit();
+		BinaryCacheFormat.write(f, entities, serializer);
+		
+		BinaryCacheFormat.read(f, new PropertyUnitMappingSerializer() {
+			@Override
+			public int getEntityFormatVersion() {
+				return super.getEntityFormatVersion() + 1;
+			}
+		});
+	}
+
+	@Test
+	public void testRecordSequenceIgnoresIncompleteRecord() throws IOException, CacheException {
+		File f = File.createTempFile("binary", ".tmp");
+		f.deleteOnExit();
+		
+		try (FileOutputStream fos = new FileOutputStream(f, true)) {
+			for (String id : entities.keySet()) {
+				BinaryCacheFormat.appendRecord(fos, id, entities.get(id), serializer);
+			}
+			// an interrupted write
+			fos.write(new byte[] {0, 0, 0, 32, 1, 2});
+		}
+		
+		Assert.assertFalse(BinaryCacheFormat.isBinaryCacheFile(f));
+		Assert.assertTrue(BinaryCacheFormat.isRecordSequence(f));
+		Assert.assertEquals(entities, BinaryCacheFormat.readRecordSequence(f, serializer));
+	}
+
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.BDDMockito;
+import org.n52.util.CommonUtilities;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(CommonUtilities.class)
+public class CacheCheckpointTest {
+
+	private File baseDir;
+
+	@Before
+	public void init() throws IOException {
+		this.baseDir = Files.createTempDirectory("checkpoint").toFile();
+		PowerMockito.mockStatic(CommonUtilities.class);
+		BDDMockito.given(CommonUtilities.resolveCacheBaseDir("test")).willReturn(this.baseDir);
+	}
+
+	@Test
+	public void shouldStoreTheProgress() throws IOException {
+		File f = new File(this.baseDir, "test.cache.checkpoint");
+		Assert.assertNull(CacheCheckpoint.read(f));
+		
+		CacheCheckpoint checkpoint = CacheCheckpoint.newGeneration();
+		checkpoint.entryCompleted("NET_2", 2);
+		checkpoint.setWatermark("2015-01-01 00:00:00");
+		checkpoint.write(f);
+		
+		CacheCheckpoint read = CacheCheckpoint.read(f);
+		Assert.assertEquals(checkpoint.getGeneration(), read.getGeneration());
+		Assert.assertEquals(checkpoint.getStarted(), read.getStarted());
+		Assert.assertEquals("NET_2", read.getLastCompleted());
+		Assert.assertEquals(2, read.getLastCompletedIndex());
+		Assert.assertEquals("2015-01-01 00:00:00", read.getWatermark());
+	}
+
+	@Test
+	public void shouldResumeAfterPartialBuild() throws IOException, CacheException {
+		File checkpointFile = new File(this.baseDir, "test.cache.checkpoint");
+		
+		TestEntityCache interrupted = new TestEntityCache("test");
+		Assert.assertTrue(interrupted.startOrResumeBuild().isEmpty());
+		String generation = CacheCheckpoint.read(checkpointFile).getGeneration();
+		
+		/*
+		 * the first group commit makes 50 entries durable, the
+		 * remaining ones are still buffered when the process stops
+		 */
+		for (int i = 0; i < 60; i++) {
+			interrupted.checkpointEntry("NET_"+ i, i);
+			interrupted.storeTemporaryEntity(new TestEntityCache.Entity("NET_"+ i, i));
+		}
+		try (FileOutputStream fos = new FileOutputStream(new File(this.baseDir, "test.cache.tmp"), true)) {
+			fos.write(new byte[] {0, 0, 0, 32, 1, 2});
+		}
+		
+		TestEntityCache resumed = new TestEntityCache("test");
+		Set<String> stored = resumed.startOrResumeBuild();
+		Assert.assertEquals(50, stored.size());
+		Assert.assertTrue(stored.contains("NET_49"));
+		Assert.assertFalse(stored.contains("NET_50"));
+		
+		CacheCheckpoint checkpoint = CacheCheckpoint.read(checkpointFile);
+		Assert.assertEquals(generation, checkpoint.getGeneration());
+		Assert.assertEquals("NET_49", checkpoint.getLastCompleted());
+		Assert.assertEquals(49, checkpoint.getLastCompletedIndex());
+		
+		for (int i = 50; i < 60; i++) {
+			resumed.checkpointEntry("NET_"+ i, i);
+			resumed.storeTemporaryEntity(new TestEntityCache.Entity("NET_"+ i, i));
+		}
+		resumed.completeBuild();
+		resumed.storeEntityCollection(new HashMap<String, TestEntityCache.Entity>());
+		
+		Map<String, TestEntityCache.Entity> published = BinaryCacheFormat.read(
+				new File(this.baseDir, "test.cache"), TestEntityCache.serializer());
+		Assert.assertEquals(60, published.size());
+		Assert.assertFalse(checkpointFile.exists());
+	}
+
+}
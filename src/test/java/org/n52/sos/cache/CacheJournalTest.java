@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.BDDMockito;
+import org.n52.util.CommonUtilities;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(CommonUtilities.class)
+public class CacheJournalTest {
+
+	private File baseDir;
+
+	@Before
+	public void init() throws IOException {
+		this.baseDir = Files.createTempDirectory("journal").toFile();
+		PowerMockito.mockStatic(CommonUtilities.class);
+		BDDMockito.given(CommonUtilities.resolveCacheBaseDir("test")).willReturn(this.baseDir);
+	}
+
+	@Test
+	public void shouldCommitGroups() throws IOException, CacheException {
+		File f = new File(this.baseDir, "test.cache.tmp");
+		try (CacheJournal journal = new CacheJournal(f, 2)) {
+			Assert.assertFalse(appendEntity(journal, "NET_1"));
+			Assert.assertEquals(0, f.length());
+			Assert.assertTrue(appendEntity(journal, "NET_2"));
+			
+			Assert.assertEquals(2, BinaryCacheFormat.readRecordSequence(f, TestEntityCache.serializer()).size());
+			Assert.assertFalse(appendEntity(journal, "NET_3"));
+		}
+		
+		Assert.assertEquals(3, BinaryCacheFormat.readRecordSequence(f, TestEntityCache.serializer()).size());
+	}
+
+	@Test
+	public void shouldReplayTheJournalAndPublish() throws IOException, CacheException {
+		TestEntityCache cache = new TestEntityCache("test");
+		
+		/*
+		 * the entities have been journaled by another process
+		 */
+		try (CacheJournal journal = new CacheJournal(new File(this.baseDir, "test.cache.tmp"), 50)) {
+			for (int i = 0; i < 3; i++) {
+				appendEntity(journal, "NET_"+ i);
+			}
+		}
+		
+		cache.storeEntityCollection(new HashMap<String, TestEntityCache.Entity>());
+		
+		File cacheFile = new File(this.baseDir, "test.cache");
+		Assert.assertTrue(BinaryCacheFormat.isBinaryCacheFile(cacheFile));
+		Map<String, TestEntityCache.Entity> published = BinaryCacheFormat.read(cacheFile, TestEntityCache.serializer());
+		Assert.assertEquals(3, published.size());
+		Assert.assertEquals(2, published.get("NET_2").getValue());
+		
+		Assert.assertFalse(new File(this.baseDir, "test.cache.new").exists());
+		Assert.assertFalse(new File(this.baseDir, "test.cache.tmp").exists());
+	}
+
+	private static boolean appendEntity(CacheJournal journal, String id) throws IOException, CacheException {
+		BinaryCacheFormat.appendRecord(journal.getOutputStream(), id,
+				new TestEntityCache.Entity(id, Integer.parseInt(id.substring(4))), TestEntityCache.serializer());
+		return journal.recordAppended();
+	}
+
+}
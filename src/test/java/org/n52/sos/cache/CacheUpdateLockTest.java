@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CacheUpdateLockTest {
+
+	@Test
+	public void shouldAcquireAndRelease() throws IOException {
+		File f = File.createTempFile("cache", ".lock");
+		f.deleteOnExit();
+		
+		CacheUpdateLock lock = new CacheUpdateLock(f);
+		Assert.assertFalse(lock.isHeld());
+		
+		Assert.assertTrue(lock.tryAcquire());
+		Assert.assertTrue(lock.isHeld());
+		Assert.assertTrue(lock.isHeldByThisProcess());
+		Assert.assertTrue(lock.getAcquiredAt() > 0);
+		Assert.assertFalse(lock.tryAcquire());
+		
+		lock.release();
+		Assert.assertFalse(lock.isHeld());
+		Assert.assertFalse(lock.isHeldByThisProcess());
+		Assert.assertEquals(0, lock.getAcquiredAt());
+		Assert.assertTrue(f.exists());
+	}
+
+	@Test
+	public void shouldRespectTheLockOfAnotherChannel() throws IOException {
+		File f = File.createTempFile("cache", ".lock");
+		f.deleteOnExit();
+		
+		CacheUpdateLock first = new CacheUpdateLock(f);
+		CacheUpdateLock second = new CacheUpdateLock(f);
+		
+		Assert.assertTrue(first.tryAcquire());
+		Assert.assertTrue(second.isHeld());
+		Assert.assertFalse(second.isHeldByThisProcess());
+		Assert.assertFalse(second.tryAcquire());
+		
+		first.release();
+		Assert.assertFalse(second.isHeld());
+		Assert.assertTrue(second.tryAcquire());
+		Assert.assertTrue(first.isHeld());
+		second.release();
+	}
+
+	@Test
+	public void shouldTellTheHolderFromTheOwnerLine() throws IOException {
+		File f = File.createTempFile("cache", ".lock");
+		f.deleteOnExit();
+		
+		/*
+		 * the owner line of a process that died while holding the lock
+		 */
+		Files.write(f.toPath(), "1234@host".getBytes(StandardCharsets.UTF_8));
+		
+		CacheUpdateLock lock = new CacheUpdateLock(f);
+		Assert.assertTrue(lock.isHeld());
+		Assert.assertTrue(lock.tryAcquire());
+		Assert.assertTrue(f.length() > 0);
+		
+		lock.release();
+		Assert.assertEquals(0, f.length());
+		Assert.assertFalse(new CacheUpdateLock(f).isHeld());
+	}
+
+}
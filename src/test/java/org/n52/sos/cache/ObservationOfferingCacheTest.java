@@ -0,0 +1,220 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.BDDMockito;
+import org.n52.oxf.valueDomains.time.TimePeriod;
+import org.n52.sos.dataTypes.EnvelopeWrapper;
+import org.n52.sos.dataTypes.ObservationOffering;
+import org.n52.sos.db.AccessGDB;
+import org.n52.sos.db.AccessGdbForOfferings;
+import org.n52.util.CommonUtilities;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(CommonUtilities.class)
+public class ObservationOfferingCacheTest {
+
+	private ObservationOfferingCache cache;
+
+	@Before
+	public void init() throws IOException {
+		PowerMockito.mockStatic(CommonUtilities.class);
+		BDDMockito.given(CommonUtilities.resolveCacheBaseDir("test")).willReturn(
+				Files.createTempDirectory("offerings").toFile());
+		this.cache = ObservationOfferingCache.instance("test");
+	}
+
+	@Test
+	public void shouldWidenTimePropertiesAndEnvelope() throws IOException {
+		ObservationOffering existing = createOffering("NET_1", "2014-01-01T00:00:00Z", "2014-01-02T00:00:00Z",
+				new CachedEnvelop(1, 1, 2, 2), "NO2");
+		ObservationOffering delta = createOffering("NET_1", "2014-01-03T00:00:00Z", "2014-01-04T00:00:00Z",
+				new CachedEnvelop(0, 1.5, 1.5, 3), "O3", "NO2");
+		
+		ObservationOffering widened = this.cache.widen(existing, delta);
+		Assert.assertEquals("NET_1", widened.getId());
+		Assert.assertEquals(Arrays.asList("NO2", "O3"), Arrays.asList(widened.getObservedProperties()));
+		Assert.assertEquals(existing.getTimeExtent().getStart().toISO8601Format(),
+				widened.getTimeExtent().getStart().toISO8601Format());
+		Assert.assertEquals(delta.getTimeExtent().getEnd().toISO8601Format(),
+				widened.getTimeExtent().getEnd().toISO8601Format());
+		assertEnvelope(widened.getObservedArea(), 0, 1, 2, 3);
+		
+		/*
+		 * a delta without points keeps the envelope
+		 */
+		ObservationOffering withoutArea = createOffering("NET_1", "2014-01-01T12:00:00Z", "2014-01-01T13:00:00Z",
+				null, "NO2");
+		widened = this.cache.widen(existing, withoutArea);
+		assertEnvelope(widened.getObservedArea(), 1, 1, 2, 2);
+		Assert.assertEquals(existing.getTimeExtent().getEnd().toISO8601Format(),
+				widened.getTimeExtent().getEnd().toISO8601Format());
+	}
+
+	@Test
+	public void shouldUpdateIncrementallySinceTheWatermark() throws Exception {
+		FakeOfferingAccess access = new FakeOfferingAccess();
+		AccessGDB geoDB = createGeoDB(access);
+		
+		/*
+		 * without a generation watermark, a full update is done
+		 */
+		access.watermark = "2015-01-01 00:00:00";
+		access.offerings.add(createOffering("NET_1", "2014-01-01T00:00:00Z", "2014-01-02T00:00:00Z",
+				new CachedEnvelop(1, 1, 2, 2), "NO2"));
+		this.cache.updateCacheIncrementally(geoDB);
+		Assert.assertEquals(1, access.fullUpdates);
+		Assert.assertNull(access.changedSince);
+		Assert.assertEquals("2015-01-01 00:00:00", this.cache.getGenerationWatermark());
+		Assert.assertTrue(this.cache.getEntityCollection(geoDB).containsKey("NET_1"));
+		
+		/*
+		 * a database without a watermark is skipped
+		 */
+		access.watermark = null;
+		this.cache.updateCacheIncrementally(geoDB);
+		Assert.assertEquals(1, access.fullUpdates);
+		Assert.assertNull(access.changedSince);
+		Assert.assertEquals("2015-01-01 00:00:00", this.cache.getGenerationWatermark());
+		
+		/*
+		 * changed networks are widened or added
+		 */
+		access.watermark = "2015-01-02 00:00:00";
+		access.offerings.clear();
+		access.offerings.add(createOffering("NET_1", "2014-01-03T00:00:00Z", "2014-01-04T00:00:00Z",
+				new CachedEnvelop(2, 2, 3, 3), "O3"));
+		access.offerings.add(createOffering("NET_2", "2014-01-03T00:00:00Z", "2014-01-04T00:00:00Z",
+				new CachedEnvelop(5, 5, 6, 6), "NO2"));
+		this.cache.updateCacheIncrementally(geoDB);
+		Assert.assertEquals(1, access.fullUpdates);
+		Assert.assertEquals("2015-01-01 00:00:00", access.changedSince);
+		Assert.assertEquals("2015-01-02 00:00:00", this.cache.getGenerationWatermark());
+		
+		Map<String, ObservationOffering> offerings = this.cache.getEntityCollection(geoDB);
+		ObservationOffering widened = offerings.get("NET_1");
+		Assert.assertEquals(Arrays.asList("NO2", "O3"), Arrays.asList(widened.getObservedProperties()));
+		Assert.assertEquals("2014-01-01", widened.getTimeExtent().getStart().toISO8601Format().substring(0, 10));
+		Assert.assertEquals("2014-01-04", widened.getTimeExtent().getEnd().toISO8601Format().substring(0, 10));
+		assertEnvelope(widened.getObservedArea(), 1, 1, 3, 3);
+		Assert.assertTrue(offerings.containsKey("NET_2"));
+	}
+
+	private static ObservationOffering createOffering(String id, String start, String end,
+			EnvelopeWrapper area, String... properties) {
+		return new ObservationOffering(id, id, properties, id, area, new TimePeriod(start, end));
+	}
+
+	private static void assertEnvelope(EnvelopeWrapper envelope, double minX, double minY,
+			double maxX, double maxY) throws IOException {
+		Assert.assertEquals(minX, envelope.getLowerLeft().getX(), 0.0);
+		Assert.assertEquals(minY, envelope.getLowerLeft().getY(), 0.0);
+		Assert.assertEquals(maxX, envelope.getUpperRight().getX(), 0.0);
+		Assert.assertEquals(maxY, envelope.getUpperRight().getY(), 0.0);
+	}
+
+	/**
+	 * provides the offering access and no-op implementations
+	 * of the other data access interfaces
+	 */
+	private static AccessGDB createGeoDB(final AccessGdbForOfferings access) {
+		InvocationHandler handler = new InvocationHandler() {
+			
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getReturnType() == AccessGdbForOfferings.class) {
+					return access;
+				}
+				if (method.getReturnType().isInterface() && method.getReturnType().getName().startsWith("org.n52")) {
+					return Proxy.newProxyInstance(getClass().getClassLoader(),
+							new Class<?>[] {method.getReturnType()}, this);
+				}
+				return null;
+			}
+		};
+		
+		return (AccessGDB) Proxy.newProxyInstance(ObservationOfferingCacheTest.class.getClassLoader(),
+				new Class<?>[] {AccessGDB.class}, handler);
+	}
+
+	private static class FakeOfferingAccess implements AccessGdbForOfferings {
+
+		private String watermark;
+		private List<ObservationOffering> offerings = new ArrayList<>();
+		private int fullUpdates;
+		private String changedSince;
+
+		@Override
+		public Collection<ObservationOffering> getNetworksAsObservationOfferings() {
+			return offerings;
+		}
+
+		@Override
+		public Collection<ObservationOffering> getProceduresAsObservationOfferings() {
+			return new ArrayList<>();
+		}
+
+		@Override
+		public void getNetworksAsObservationOfferingsAsync(OnOfferingRetrieved retriever) throws IOException {
+			this.fullUpdates++;
+			deliver(retriever);
+		}
+
+		@Override
+		public String resolveValueWatermark() {
+			return watermark;
+		}
+
+		@Override
+		public void getChangedNetworksAsObservationOfferingsAsync(String since, OnOfferingRetrieved retriever)
+				throws IOException {
+			this.changedSince = since;
+			deliver(retriever);
+		}
+
+		private void deliver(OnOfferingRetrieved retriever) throws IOException {
+			retriever.retrieveExpectedOfferingsCount(this.offerings.size());
+			int index = 0;
+			for (ObservationOffering offering : this.offerings) {
+				try {
+					retriever.retrieveOffering(offering, ++index);
+				} catch (OnOfferingRetrieved.RetrievingCancelledException e) {
+					throw new IOException(e);
+				}
+			}
+		}
+
+	}
+
+}
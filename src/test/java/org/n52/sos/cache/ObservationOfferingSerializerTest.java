@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.n52.oxf.valueDomains.time.TimePeriod;
+import org.n52.sos.dataTypes.ObservationOffering;
+
+public class ObservationOfferingSerializerTest {
+
+	@Test
+	public void shouldKeepFractionalSecondsAndOffsets() throws Exception {
+		TimePeriod time = new TimePeriod("2015-01-01T00:00:00.123", "2015-06-30T12:30:00.5+02:00");
+		ObservationOffering offering = new ObservationOffering("NET_1", "NET_1",
+				new String[] {"property"}, "NET_1", null, time);
+		
+		ObservationOfferingSerializer serializer = new ObservationOfferingSerializer();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		serializer.serialize(offering, new DataOutputStream(bytes));
+		ObservationOffering result = serializer.deserialize(ByteBuffer.wrap(bytes.toByteArray()));
+		
+		Assert.assertEquals(time.getStart().toISO8601Format(), result.getTimeExtent().getStart().toISO8601Format());
+		Assert.assertEquals(time.getEnd().toISO8601Format(), result.getTimeExtent().getEnd().toISO8601Format());
+	}
+
+}
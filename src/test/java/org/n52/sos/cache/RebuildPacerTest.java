@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RebuildPacerTest {
+
+	@Test
+	public void shouldDecreaseThePauseOnHealthyQueries() {
+		RebuildPacer pacer = new RebuildPacer();
+		for (int i = 0; i < 5; i++) {
+			pacer.queryCompleted(RebuildPacer.QUERY_TIME, 100);
+		}
+		Assert.assertEquals(RebuildPacer.INITIAL_DELAY_MS - 5 * 20, pacer.getCurrentDelay());
+		
+		for (int i = 0; i < 10; i++) {
+			pacer.queryCompleted(RebuildPacer.QUERY_TIME, 100);
+		}
+		Assert.assertEquals(0, pacer.getCurrentDelay());
+		
+		pacer.queryFailed();
+		Assert.assertEquals(50, pacer.getCurrentDelay());
+	}
+
+	@Test
+	public void shouldTrackTheBaselinePerQueryKind() {
+		RebuildPacer pacer = new RebuildPacer();
+		for (int i = 0; i < 10; i++) {
+			pacer.queryCompleted(RebuildPacer.QUERY_NETWORKS, 5);
+			pacer.queryCompleted(RebuildPacer.QUERY_TIME, 1000);
+		}
+		
+		/*
+		 * the cheap network query does not make the time query look slow
+		 */
+		Assert.assertEquals(0, pacer.getCurrentDelay());
+		Assert.assertEquals(Long.valueOf(5), pacer.getBaselineLatencies().get(RebuildPacer.QUERY_NETWORKS));
+		Assert.assertEquals(Long.valueOf(1000), pacer.getBaselineLatencies().get(RebuildPacer.QUERY_TIME));
+	}
+
+	@Test
+	public void shouldNotFollowASingleFastQuery() {
+		RebuildPacer pacer = new RebuildPacer();
+		for (int i = 0; i < 5; i++) {
+			pacer.queryCompleted(RebuildPacer.QUERY_TIME, 1000);
+		}
+		pacer.queryCompleted(RebuildPacer.QUERY_TIME, 10);
+		pacer.queryCompleted(RebuildPacer.QUERY_TIME, 1000);
+		
+		Assert.assertEquals(RebuildPacer.INITIAL_DELAY_MS - 7 * 20, pacer.getCurrentDelay());
+		Assert.assertTrue(pacer.getBaselineLatencies().get(RebuildPacer.QUERY_TIME) > 500);
+	}
+
+	@Test
+	public void shouldBackOffUpToTheMaximum() {
+		RebuildPacer pacer = new RebuildPacer();
+		for (int i = 0; i < 5; i++) {
+			pacer.queryCompleted(RebuildPacer.QUERY_TIME, 100);
+		}
+		
+		pacer.queryCompleted(RebuildPacer.QUERY_TIME, 2000);
+		Assert.assertEquals(2 * (RebuildPacer.INITIAL_DELAY_MS - 5 * 20), pacer.getCurrentDelay());
+		
+		for (int i = 0; i < 20; i++) {
+			pacer.queryCompleted(RebuildPacer.QUERY_TIME, 2000);
+		}
+		Assert.assertEquals(RebuildPacer.MAXIMUM_DELAY_MS, pacer.getCurrentDelay());
+	}
+
+	@Test
+	public void shouldBackOffWhileServingLiveRequests() {
+		RebuildPacer pacer = new RebuildPacer();
+		pacer.requestStarted();
+		pacer.queryCompleted(RebuildPacer.QUERY_TIME, 100);
+		Assert.assertEquals(RebuildPacer.INITIAL_DELAY_MS - 20, pacer.getCurrentDelay());
+		
+		pacer.requestStarted();
+		pacer.queryCompleted(RebuildPacer.QUERY_TIME, 100);
+		Assert.assertEquals(2 * (RebuildPacer.INITIAL_DELAY_MS - 20), pacer.getCurrentDelay());
+		Assert.assertEquals(2, pacer.getLiveRequests());
+		
+		pacer.requestFinished();
+		pacer.requestFinished();
+		pacer.queryCompleted(RebuildPacer.QUERY_TIME, 100);
+		Assert.assertEquals(2 * (RebuildPacer.INITIAL_DELAY_MS - 20) - 20, pacer.getCurrentDelay());
+	}
+
+}
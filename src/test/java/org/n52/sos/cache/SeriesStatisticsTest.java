@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.n52.sos.dataTypes.SeriesStatistics;
+
+public class SeriesStatisticsTest {
+
+	private SeriesStatistics createStatistics() {
+		SeriesStatistics result = new SeriesStatistics("network", "procedure", "feature", "property");
+		result.addCount("1h", SeriesStatistics.toDay("2014-01-01 00:00:00"), 24);
+		result.addCount("1h", SeriesStatistics.toDay("2014-01-02T00:00:00"), 20);
+		result.addCount("1h", SeriesStatistics.toDay("2014-01-02"), 4);
+		result.addCount("1d", 20140101, 1);
+		return result;
+	}
+
+	@Test
+	public void testCountValues() {
+		SeriesStatistics stats = createStatistics();
+		String[] hourly = new String[] {"1h"};
+		
+		Assert.assertEquals(48, stats.countValues(hourly, Integer.MIN_VALUE, Integer.MAX_VALUE));
+		Assert.assertEquals(24, stats.countValues(hourly, 20140102, Integer.MAX_VALUE));
+		Assert.assertEquals(24, stats.countValues(hourly, Integer.MIN_VALUE, 20140101));
+		Assert.assertEquals(0, stats.countValues(hourly, 20140103, 20140105));
+		Assert.assertEquals(25, stats.countValues(new String[] {"1h", "1d", "8h"}, 20140101, 20140101));
+	}
+
+	@Test
+	public void testSerializerRoundtrip() throws IOException, CacheException {
+		SeriesStatisticsSerializer serializer = new SeriesStatisticsSerializer();
+		SeriesStatistics stats = createStatistics();
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		serializer.serialize(stats, new DataOutputStream(bytes));
+		
+		Assert.assertEquals(stats, serializer.deserialize(ByteBuffer.wrap(bytes.toByteArray())));
+	}
+
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.cache;
+
+import java.io.DataOutput;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.n52.sos.db.AccessGDB;
+
+/**
+ * a minimal binary cache of named values, used to test the build and
+ * publish mechanics of {@link AbstractEntityCache}
+ */
+public class TestEntityCache extends AbstractEntityCache<TestEntityCache.Entity> {
+
+	private static final EntitySerializer<Entity> SERIALIZER = new EntitySerializer<Entity>() {
+
+		@Override
+		public int getEntityFormatVersion() {
+			return 1;
+		}
+
+		@Override
+		public void serialize(Entity entity, DataOutput out) throws IOException {
+			BinaryCacheFormat.writeString(out, entity.id);
+			out.writeInt(entity.value);
+		}
+
+		@Override
+		public Entity deserialize(ByteBuffer buffer) throws IOException {
+			return new Entity(BinaryCacheFormat.readString(buffer), buffer.getInt());
+		}
+	};
+
+	public TestEntityCache(String dbName) throws FileNotFoundException {
+		super(dbName);
+	}
+
+	static EntitySerializer<Entity> serializer() {
+		return SERIALIZER;
+	}
+
+	@Override
+	protected String getCacheFileName() {
+		return "test.cache";
+	}
+
+	@Override
+	protected String serializeEntity(Entity entity) throws CacheException {
+		return entity.id + "=" + entity.value;
+	}
+
+	@Override
+	protected Entity deserializeEntity(String line) {
+		String[] kvp = line.split("=");
+		return new Entity(kvp[0], Integer.parseInt(kvp[1]));
+	}
+
+	@Override
+	protected Collection<Entity> getCollectionFromDAO(AccessGDB geoDB) throws IOException {
+		return Collections.emptyList();
+	}
+
+	@Override
+	protected EntitySerializer<Entity> getEntitySerializer() {
+		return SERIALIZER;
+	}
+
+	@Override
+	protected AbstractEntityCache<Entity> getSingleInstance() {
+		return this;
+	}
+
+	@Override
+	public void cancelCurrentExecution() {
+	}
+
+	public static class Entity implements CacheEntity {
+
+		private final String id;
+		private final int value;
+
+		public Entity(String id, int value) {
+			this.id = id;
+			this.value = value;
+		}
+
+		@Override
+		public String getItemId() {
+			return id;
+		}
+
+		public int getValue() {
+			return value;
+		}
+
+	}
+
+}
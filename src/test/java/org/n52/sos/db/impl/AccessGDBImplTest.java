@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AccessGDBImplTest {
+
+	@Test
+	public void shouldCreateEscapedInList() {
+		Assert.assertEquals("(T.ID IN ('a', 'o''brien'))",
+				AccessGDBImpl.createOrClause("T.ID", new String[] {"a", "o'brien", "a"}));
+		Assert.assertEquals("(T.PK IN (3, 1))",
+				AccessGDBImpl.createInClause("T.PK", Arrays.asList(3, 1, 3)));
+	}
+
+	@Test
+	public void shouldSplitLongInLists() {
+		String[] values = new String[AccessGDBImpl.MAXIMUM_IN_LIST_SIZE * 2 + 1];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = "v" + i;
+		}
+		
+		String clause = AccessGDBImpl.createOrClause("T.ID", values);
+		Assert.assertEquals(3, clause.split(" OR ").length);
+		Assert.assertTrue(clause.endsWith("OR T.ID IN ('v2000'))"));
+	}
+
+	@Test
+	public void shouldMatchNothingForEmptyLists() {
+		Assert.assertEquals("(1 = 0)", AccessGDBImpl.createOrClause("T.ID", new String[0]));
+		Assert.assertEquals("(1 = 0)", AccessGDBImpl.createInClause("T.PK", Collections.<Integer>emptyList()));
+	}
+
+}
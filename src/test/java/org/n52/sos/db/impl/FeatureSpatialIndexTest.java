@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FeatureSpatialIndexTest {
+
+	@Test
+	public void shouldMatchBruteForceSearch() {
+		Random random = new Random(52);
+		List<FeatureSpatialIndex.IndexedPoint> points = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			points.add(new FeatureSpatialIndex.IndexedPoint(i, "feature-"+i,
+					-10 + random.nextDouble() * 40, 35 + random.nextDouble() * 30));
+		}
+		
+		FeatureSpatialIndex index = new FeatureSpatialIndex(points, 4326);
+		Assert.assertEquals(5000, index.size());
+		
+		for (int q = 0; q < 100; q++) {
+			double x = -10 + random.nextDouble() * 40;
+			double y = 35 + random.nextDouble() * 30;
+			double xmax = x + random.nextDouble() * 5;
+			double ymax = y + random.nextDouble() * 5;
+			
+			List<Integer> expected = new ArrayList<>();
+			for (int i = 0; i < points.size(); i++) {
+				FeatureSpatialIndex.IndexedPoint p = points.get(i);
+				if (p.getX() >= x && p.getX() <= xmax && p.getY() >= y && p.getY() <= ymax) {
+					expected.add(p.getKey());
+				}
+			}
+			
+			List<Integer> actual = FeatureSpatialIndex.keys(index.query(x, y, xmax, ymax));
+			Collections.sort(actual);
+			Assert.assertEquals(expected, actual);
+		}
+	}
+	
+	@Test
+	public void shouldIncludePointsOnTheBoundary() {
+		List<FeatureSpatialIndex.IndexedPoint> points = new ArrayList<>();
+		points.add(new FeatureSpatialIndex.IndexedPoint(1, "a", 0.0, 40.0));
+		points.add(new FeatureSpatialIndex.IndexedPoint(2, "b", 2.0, 43.0));
+		points.add(new FeatureSpatialIndex.IndexedPoint(3, "c", 2.1, 43.0));
+		
+		FeatureSpatialIndex index = new FeatureSpatialIndex(points, 4326);
+		
+		Assert.assertArrayEquals(new String[] {"a", "b"},
+				FeatureSpatialIndex.resources(index.query(0.0, 40.0, 2.0, 43.0)));
+		Assert.assertTrue(index.query(5.0, 5.0, 6.0, 6.0).isEmpty());
+	}
+
+}
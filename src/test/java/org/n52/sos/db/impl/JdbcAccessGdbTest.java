@@ -0,0 +1,465 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.om.observation.MultiValueObservation;
+import org.n52.om.result.MeasureResult;
+import org.n52.ows.ResponseExceedsSizeLimitException;
+import org.n52.sos.Constants;
+import org.n52.sos.cache.OnOfferingRetrieved;
+import org.n52.sos.dataTypes.ObservationOffering;
+import org.n52.sos.db.ObservationCollector;
+import org.n52.sos.db.ProcedureClassification;
+import org.n52.sos.handler.GetObservationOperationHandler;
+
+import com.esri.arcgis.geodatabase.ICursor;
+import com.esri.arcgis.geodatabase.IRow;
+
+/**
+ * runs the data access classes against an embedded H2 database
+ * seeded with a minimal AQ e-Reporting schema
+ */
+public class JdbcAccessGdbTest {
+
+	private Connection connection;
+	private AccessGDBImpl gdb;
+
+	@Before
+	public void init() throws SQLException, IOException {
+		this.connection = DriverManager.getConnection("jdbc:h2:mem:aq");
+		
+		try (InputStream in = getClass().getResourceAsStream("aq-ereporting-h2.sql");
+				Statement statement = this.connection.createStatement()) {
+			Scanner scanner = new Scanner(in, "UTF-8").useDelimiter(";");
+			while (scanner.hasNext()) {
+				String sql = scanner.next().trim();
+				if (!sql.isEmpty()) {
+					statement.execute(sql);
+				}
+			}
+		}
+		
+		this.gdb = new AccessGDBImpl(this.connection, "AQ", "/arcGisSos.properties");
+		this.gdb.getWorkspace().setDialect(SqlDialect.POSTGRESQL);
+	}
+
+	@After
+	public void shutdown() throws SQLException {
+		this.connection.close();
+	}
+
+	@Test
+	public void shouldProvideRowsAsCursor() throws IOException {
+		ICursor cursor = DatabaseUtils.evaluateQuery(Table.UNIT, null,
+				AccessGDBImpl.concatTableAndField(Table.UNIT, SubField.UNIT_NOTATION)
+				+ ", " + AccessGDBImpl.concatTableAndField(Table.UNIT, SubField.UNIT_PK_UNIT),
+				null, this.gdb);
+		
+		IRow row = cursor.nextRow();
+		Assert.assertEquals("ug.m-3", row.getValue(0));
+		Assert.assertEquals(Integer.valueOf(1), row.getValue(1));
+		Assert.assertEquals(1, row.getFields().findField(SubField.UNIT_PK_UNIT));
+		Assert.assertNull(cursor.nextRow());
+	}
+
+	@Test
+	public void shouldResolveObservationsPerAggregationType() throws Exception {
+		Map<String, MultiValueObservation> hourly = this.gdb.getObservationAccess().getObservations(
+				new String[] {"NET_1"}, null, null, null, null, null,
+				new String[] {Constants.GETOBSERVATION_DEFAULT_AGGREGATIONTYPE}, null);
+		
+		Assert.assertEquals(1, hourly.size());
+		MultiValueObservation observation = hourly.get("OBS_1");
+		Assert.assertEquals(3, observation.getResult().getValue().size());
+		Assert.assertEquals("http://example.org/process/1", observation.getProcedure());
+		Assert.assertEquals(21.0, observation.getResult().getValue().get(0).getValue(), 0.0);
+		
+		Map<String, MultiValueObservation> daily = this.gdb.getObservationAccess().getObservations(
+				null, null, null, new String[] {"http://example.org/process/1"}, null, null,
+				new String[] {Constants.GETOBSERVATION_DEFAULT_AGGREGATIONTYPE_SECOND}, null);
+		
+		Assert.assertEquals(1, daily.size());
+		Assert.assertEquals(2, daily.get("OBS_2").getResult().getValue().size());
+	}
+
+	@Test
+	public void shouldResolveLookupValuesFromDimensionTables() throws Exception {
+		String[] aggregationTypes = new String[] {Constants.GETOBSERVATION_DEFAULT_AGGREGATIONTYPE};
+		
+		/*
+		 * a custom where clause falls back to joining the lookup tables
+		 */
+		MultiValueObservation joined = this.gdb.getObservationAccess().getObservations(
+				new String[] {"NET_1"}, null, null, null, null, null, aggregationTypes, "1 = 1").get("OBS_1");
+		
+		this.gdb.getObservationAccess().refreshDimensionTables();
+		MultiValueObservation resolved = this.gdb.getObservationAccess().getObservations(
+				new String[] {"NET_1"}, null, null, null, null, null, aggregationTypes, null).get("OBS_1");
+		
+		Assert.assertEquals(joined.getUnitNotation(), resolved.getUnitNotation());
+		Assert.assertEquals(joined.getUnitLabel(), resolved.getUnitLabel());
+		Assert.assertEquals(joined.getAggregationType(), resolved.getAggregationType());
+		Assert.assertEquals(joined.getResult().getValue().size(), resolved.getResult().getValue().size());
+		Assert.assertEquals(joined.getResult().getValue().get(0).getValidity(),
+				resolved.getResult().getValue().get(0).getValidity());
+		Assert.assertEquals(joined.getResult().getValue().get(0).getVerification(),
+				resolved.getResult().getValue().get(0).getVerification());
+		Assert.assertEquals(joined.getResult().getValue().get(0).getAggregationNotation(),
+				resolved.getResult().getValue().get(0).getAggregationNotation());
+		
+		Assert.assertTrue(this.gdb.getObservationAccess().getObservations(
+				new String[] {"unknown"}, null, null, null, null, null, aggregationTypes, null).isEmpty());
+	}
+
+	@Test
+	public void shouldAnswerFirstAndLatestFromIndex() throws Exception {
+		String[] offerings = new String[] {"NET_1"};
+		String[] aggregationTypes = new String[] {Constants.GETOBSERVATION_DEFAULT_AGGREGATIONTYPE};
+		
+		for (String filter : new String[] {GetObservationOperationHandler.OM_PHENOMENON_TIME_LATEST,
+				GetObservationOperationHandler.OM_PHENOMENON_TIME_FIRST}) {
+			MultiValueObservation queried = this.gdb.getObservationAccess().getObservations(
+					offerings, null, null, null, null, filter, aggregationTypes, null).get("OBS_1");
+			
+			this.gdb.getObservationAccess().refreshLatestValueIndex();
+			MultiValueObservation indexed = this.gdb.getObservationAccess().getObservations(
+					offerings, null, null, null, null, filter, aggregationTypes, null).get("OBS_1");
+			
+			Assert.assertEquals(1, indexed.getResult().getValue().size());
+			Assert.assertEquals(queried.getResult().getValue().get(0).getValue(),
+					indexed.getResult().getValue().get(0).getValue());
+			Assert.assertEquals(queried.getResult().getDateTimeEnd().toISO8601Format(),
+					indexed.getResult().getDateTimeEnd().toISO8601Format());
+		}
+		
+		Assert.assertTrue(this.gdb.getObservationAccess().getObservations(
+				new String[] {"unknown"}, null, null, null, null, GetObservationOperationHandler.OM_PHENOMENON_TIME_LATEST,
+				aggregationTypes, null).isEmpty());
+	}
+
+	@Test
+	public void shouldMergeObservationsQueriedPerOffering() throws Exception {
+		String[] offerings = new String[] {"NET_2", "NET_1", "unknown"};
+		String[] aggregationTypes = new String[] {Constants.GETOBSERVATION_DEFAULT_AGGREGATIONTYPE};
+		
+		Map<String, MultiValueObservation> joint = this.gdb.getObservationAccess().getObservations(
+				offerings, null, null, null, null, null, aggregationTypes, null);
+		Assert.assertEquals(2, joint.size());
+		
+		this.gdb.setObservationQueryParallelism(2);
+		final List<String> order = new ArrayList<>();
+		ObservationCollector partitioned = new ObservationCollector() {
+			@Override
+			public void observation(MultiValueObservation observation) {
+				order.add(observation.getIdentifier().getIdentifierValue());
+				super.observation(observation);
+			}
+		};
+		this.gdb.getObservationAccess().getObservations(
+				offerings, null, null, null, null, null, aggregationTypes, null, partitioned);
+		
+		Assert.assertEquals(Arrays.asList("OBS_3", "OBS_1"), order);
+		for (String id : joint.keySet()) {
+			Assert.assertEquals(joint.get(id).getResult().getValue().size(),
+					partitioned.getObservations().get(id).getResult().getValue().size());
+		}
+		
+		this.gdb.getObservationAccess().shutdown();
+	}
+
+	@Test(expected = ResponseExceedsSizeLimitException.class)
+	public void shouldShareTheValueBudgetBetweenOfferings() throws Exception {
+		/*
+		 * each offering on its own stays within the limit
+		 */
+		this.gdb.init("/arcGisSos.properties", 4);
+		this.gdb.setObservationQueryParallelism(2);
+		
+		try {
+			this.gdb.getObservationAccess().getObservations(new String[] {"NET_1", "NET_2"}, null, null, null,
+					null, null, new String[] {Constants.GETOBSERVATION_DEFAULT_AGGREGATIONTYPE}, null);
+		}
+		finally {
+			this.gdb.getObservationAccess().shutdown();
+		}
+	}
+
+	@Test
+	public void shouldClassifyProcedures() throws IOException {
+		String[] identifiers = new String[] {"NET_1", "http://example.org/process/1", "unknown"};
+		
+		ProcedureClassification fromDatabase = this.gdb.getProcedureAccess().classifyProcedures(identifiers);
+		Assert.assertEquals(Collections.singletonList("NET_1"), fromDatabase.getNetworks());
+		Assert.assertEquals(Collections.singletonList("http://example.org/process/1"), fromDatabase.getProcedures());
+		Assert.assertTrue(fromDatabase.isMixed());
+		
+		this.gdb.getProcedureAccess().refreshIdentifierIndex();
+		ProcedureClassification fromIndex = this.gdb.getProcedureAccess().classifyProcedures(identifiers);
+		Assert.assertEquals(fromDatabase.getNetworks(), fromIndex.getNetworks());
+		Assert.assertEquals(fromDatabase.getProcedures(), fromIndex.getProcedures());
+	}
+
+	@Test
+	public void shouldMergeCachedDaysWithQueriedDays() throws Exception {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		long now = System.currentTimeMillis();
+		
+		/*
+		 * every six hours, the latest value marks the watermark
+		 */
+		try (Statement statement = this.connection.createStatement()) {
+			int pk = 100;
+			for (long time = now - TimeUnit.DAYS.toMillis(6) + TimeUnit.HOURS.toMillis(3);
+					time < now - TimeUnit.HOURS.toMillis(1); time += TimeUnit.HOURS.toMillis(6)) {
+				boolean latest = time + TimeUnit.HOURS.toMillis(6) >= now - TimeUnit.HOURS.toMillis(1);
+				insertValue(statement, pk++, format.format(new Date(time)), latest ? "'2030-01-01 00:00:00'" : "NULL");
+			}
+		}
+		
+		String[] offerings = new String[] {"NET_2"};
+		String[] aggregationTypes = new String[] {Constants.GETOBSERVATION_DEFAULT_AGGREGATIONTYPE};
+		String filter = "last:" + TimeUnit.DAYS.toMillis(5);
+		AccessGdbForObservationsImpl observations = (AccessGdbForObservationsImpl) this.gdb.getObservationAccess();
+		observations.refreshLatestValueIndex();
+		
+		/*
+		 * a custom where clause bypasses the chunk cache
+		 */
+		List<String> expected = collectEndTimes(observations.getObservations(
+				offerings, null, null, null, null, filter, aggregationTypes, "1 = 1").get("OBS_3"));
+		Assert.assertFalse(expected.isEmpty());
+		Assert.assertEquals(expected.size(), new HashSet<>(expected).size());
+		
+		Assert.assertEquals(expected, collectEndTimes(observations.getObservations(
+				offerings, null, null, null, null, filter, aggregationTypes, null).get("OBS_3")));
+		SeriesChunkCache chunkCache = observations.getChunkCache();
+		Assert.assertEquals(0, chunkCache.getHits());
+		
+		/*
+		 * three closed days with four values each
+		 */
+		Assert.assertEquals(12, chunkCache.getValueCount());
+		
+		Assert.assertEquals(expected, collectEndTimes(observations.getObservations(
+				offerings, null, null, null, null, filter, aggregationTypes, null).get("OBS_3")));
+		Assert.assertEquals(3, chunkCache.getHits());
+		
+		/*
+		 * a late value within the last closed day drops only that day
+		 */
+		String late = SeriesChunkCache.dayStart(SeriesChunkCache.lastClosedDay()).replace(" 00:00:00", " 12:00:30");
+		try (Statement statement = this.connection.createStatement()) {
+			insertValue(statement, 200, late, "'2030-01-02 00:00:00'");
+		}
+		observations.refreshLatestValueIndex();
+		Assert.assertEquals(8, chunkCache.getValueCount());
+		
+		List<String> merged = collectEndTimes(observations.getObservations(
+				offerings, null, null, null, null, filter, aggregationTypes, null).get("OBS_3"));
+		Assert.assertEquals(expected.size() + 1, merged.size());
+		Assert.assertEquals(collectEndTimes(observations.getObservations(
+				offerings, null, null, null, null, filter, aggregationTypes, "1 = 1").get("OBS_3")), merged);
+	}
+
+	private static void insertValue(Statement statement, int pk, String end, String inserted) throws SQLException {
+		statement.execute("INSERT INTO AQ.Value VALUES (" + pk + ", 3, '" + end + "', '" + end + "', NULL, 1.0, 1, 1, "
+				+ inserted + ", NULL, '" + end + "', 1, 1)");
+	}
+
+	private static List<String> collectEndTimes(MultiValueObservation observation) {
+		List<String> result = new ArrayList<>();
+		for (MeasureResult value : observation.getResult().getValue()) {
+			result.add(value.getDateTimeEnd().toISO8601Format());
+		}
+		return result;
+	}
+
+	@Test
+	public void shouldRetrieveTheChangedNetworks() throws Exception {
+		try (Statement statement = this.connection.createStatement()) {
+			insertFeatureShapes(statement);
+			statement.execute("UPDATE AQ.Value SET datetime_updated = '2029-01-01 00:00:00' WHERE pk_value = 2");
+			statement.execute("UPDATE AQ.Value SET datetime_inserted = '2030-01-01 00:00:00' WHERE pk_value IN (7, 8)");
+		}
+		
+		AccessGdbForOfferingsImpl access = createOfferingAccess();
+		Assert.assertEquals("2030-01-01 00:00:00", access.resolveValueWatermark());
+		
+		/*
+		 * the network without point features is skipped
+		 */
+		OfferingCollector changed = new OfferingCollector();
+		access.getChangedNetworksAsObservationOfferingsAsync("2029-06-01 00:00:00", changed);
+		Assert.assertEquals(Collections.singletonList("NET_2"), new ArrayList<>(changed.offerings.keySet()));
+		
+		/*
+		 * the offering only covers the changed value
+		 */
+		String end = this.gdb.getObservationAccess().getObservations(new String[] {"NET_2"}, null, null, null, null, null,
+				new String[] {Constants.GETOBSERVATION_DEFAULT_AGGREGATIONTYPE}, null).get("OBS_3")
+				.getResult().getValue().get(1).getDateTimeEnd().toISO8601Format();
+		ObservationOffering offering = changed.offerings.get("NET_2");
+		Assert.assertEquals(end, offering.getTimeExtent().getStart().toISO8601Format());
+		Assert.assertEquals(end, offering.getTimeExtent().getEnd().toISO8601Format());
+		Assert.assertEquals(Collections.singletonList("http://dd.eionet.europa.eu/vocabulary/aq/pollutant/8"),
+				Arrays.asList(offering.getObservedProperties()));
+		Assert.assertEquals(8.0, offering.getObservedArea().getLowerLeft().getX(), 0.0);
+		Assert.assertEquals(52.0, offering.getObservedArea().getUpperRight().getY(), 0.0);
+		
+		OfferingCollector unchanged = new OfferingCollector();
+		access.getChangedNetworksAsObservationOfferingsAsync("2030-01-01 00:00:01", unchanged);
+		Assert.assertTrue(unchanged.offerings.isEmpty());
+	}
+
+	@Test
+	public void shouldRebuildTheSameOfferingsInBothModes() throws Exception {
+		try (Statement statement = this.connection.createStatement()) {
+			insertFeatureShapes(statement);
+		}
+		
+		AccessGdbForOfferingsImpl access = createOfferingAccess();
+		this.gdb.setGroupedOfferingRebuild(true);
+		OfferingCollector grouped = new OfferingCollector();
+		access.getNetworksAsObservationOfferingsAsync(grouped);
+		
+		this.gdb.setGroupedOfferingRebuild(false);
+		OfferingCollector perNetwork = new OfferingCollector();
+		access.getNetworksAsObservationOfferingsAsync(perNetwork);
+		
+		/*
+		 * NET_3 has no point features
+		 */
+		Assert.assertEquals(new HashSet<>(Arrays.asList("NET_1", "NET_2")), grouped.offerings.keySet());
+		Assert.assertEquals(grouped.offerings.keySet(), perNetwork.offerings.keySet());
+		
+		for (String id : grouped.offerings.keySet()) {
+			ObservationOffering expected = grouped.offerings.get(id);
+			ObservationOffering actual = perNetwork.offerings.get(id);
+			Assert.assertEquals(expected.getTimeExtent().getStart().toISO8601Format(),
+					actual.getTimeExtent().getStart().toISO8601Format());
+			Assert.assertEquals(expected.getTimeExtent().getEnd().toISO8601Format(),
+					actual.getTimeExtent().getEnd().toISO8601Format());
+			Assert.assertEquals(new HashSet<>(Arrays.asList(expected.getObservedProperties())),
+					new HashSet<>(Arrays.asList(actual.getObservedProperties())));
+			Assert.assertEquals(expected.getObservedArea().getLowerLeft().getX(), actual.getObservedArea().getLowerLeft().getX(), 0.0);
+			Assert.assertEquals(expected.getObservedArea().getLowerLeft().getY(), actual.getObservedArea().getLowerLeft().getY(), 0.0);
+			Assert.assertEquals(expected.getObservedArea().getUpperRight().getX(), actual.getObservedArea().getUpperRight().getX(), 0.0);
+			Assert.assertEquals(expected.getObservedArea().getUpperRight().getY(), actual.getObservedArea().getUpperRight().getY(), 0.0);
+		}
+		
+		Assert.assertEquals(7.0, grouped.offerings.get("NET_1").getObservedArea().getLowerLeft().getX(), 0.0);
+		Assert.assertEquals(52.0, grouped.offerings.get("NET_2").getObservedArea().getUpperRight().getY(), 0.0);
+		Assert.assertEquals(perNetwork.offerings.get("NET_1").getTimeExtent().getStart().toISO8601Format(),
+				this.gdb.getObservationAccess().getObservations(new String[] {"NET_1"}, null, null, null, null, null,
+						new String[] {Constants.GETOBSERVATION_DEFAULT_AGGREGATIONTYPE}, null).get("OBS_1")
+						.getResult().getValue().get(0).getDateTimeEnd().toISO8601Format());
+	}
+
+	/**
+	 * point shapes for SAM_1 and SAM_2, NET_3 with a single value
+	 * at a feature without a point shape
+	 */
+	private static void insertFeatureShapes(Statement statement) throws SQLException {
+		statement.execute("UPDATE AQ.FEATUREOFINTEREST SET Shape = 'POINT (7.0 51.0)' WHERE PK_FEATUREOFINTEREST = 1");
+		statement.execute("UPDATE AQ.FEATUREOFINTEREST SET Shape = 'POINT (8.0 52.0)' WHERE PK_FEATUREOFINTEREST = 2");
+		statement.execute("INSERT INTO AQ.NETWORK VALUES (3, 'NET_3')");
+		statement.execute("INSERT INTO AQ.STATION VALUES (3, NULL, 3, 'STA_3', 'http://example.org/station/3', 3, '2010-01-01 00:00:00', NULL, 1)");
+		statement.execute("INSERT INTO AQ.SamplingPoint VALUES (3, NULL, 3, 'SPO_3', 'http://example.org/samplingpoint/3', 3)");
+		statement.execute("INSERT INTO AQ.FEATUREOFINTEREST VALUES (3, 'LINESTRING (0 0, 1 1)', 3, 'SAM_3', 'http://example.org/sample/3', 3.5, 10.0, 2.0)");
+		statement.execute("INSERT INTO AQ.Observation VALUES (4, 'OBS_4', 3, 3, 1, 1)");
+		statement.execute("INSERT INTO AQ.Value VALUES (8, 4, '2014-01-01 00:00:00', '2014-01-01 01:00:00', NULL, 41.0, 1, 1, NULL, NULL, '2014-01-01 01:00:00', 1, 1)");
+	}
+
+	/**
+	 * H2 provides the shapes as well-known text instead of ArcObjects geometries
+	 */
+	private AccessGdbForOfferingsImpl createOfferingAccess() {
+		return new AccessGdbForOfferingsImpl(this.gdb) {
+			
+			@Override
+			double[] getPointCoordinates(Object shape) {
+				if (!(shape instanceof String) || !((String) shape).startsWith("POINT")) {
+					return null;
+				}
+				
+				String[] coordinates = ((String) shape).replaceAll("[^0-9. -]", "").trim().split(" ");
+				return new double[] {Double.parseDouble(coordinates[0]), Double.parseDouble(coordinates[1])};
+			}
+		};
+	}
+
+	private static class OfferingCollector implements OnOfferingRetrieved {
+
+		private Map<String, ObservationOffering> offerings = new LinkedHashMap<>();
+
+		@Override
+		public void retrieveOffering(ObservationOffering oo, int currentOfferingIndex) {
+			this.offerings.put(oo.getId(), oo);
+		}
+
+		@Override
+		public void retrieveExpectedOfferingsCount(int count) {
+		}
+
+		@Override
+		public boolean isAlreadyRetrieved(String offeringId) {
+			return false;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+
+	}
+
+	@Test
+	public void shouldResolveObservationsById() throws Exception {
+		Map<String, MultiValueObservation> result = this.gdb.getObservationAccess().getObservations(
+				new String[] {"OBS_1", "OBS_2"});
+		
+		/*
+		 * the hourly aggregation type is preferred
+		 */
+		Assert.assertEquals(1, result.size());
+		Assert.assertTrue(result.containsKey("OBS_1"));
+	}
+
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.n52.gml.Identifier;
+import org.n52.om.observation.MultiValueObservation;
+import org.n52.om.result.MeasureResult;
+import org.n52.oxf.valueDomains.time.TimePosition;
+import org.n52.sos.Constants;
+
+public class LatestValueIndexTest {
+
+	private static final String HOURLY = Constants.GETOBSERVATION_DEFAULT_AGGREGATIONTYPE;
+
+	@Test
+	public void shouldSelectFromTheIndexedSeries() {
+		LatestValueIndex index = new LatestValueIndex(null);
+		index.offer("NET_1", HOURLY, createObservation("OBS_1", "proc_1", "2014-01-01T01:00:00Z", 1.0), 1000);
+		index.offer("NET_1", HOURLY, createObservation("OBS_1", "proc_1", "2014-01-01T03:00:00Z", 3.0), 3000);
+		index.offer("NET_2", HOURLY, createObservation("OBS_2", "proc_2", "2014-01-01T02:00:00Z", 2.0), 2000);
+		index.offer("NET_2", HOURLY, createObservation("OBS_2", "proc_2", "2014-01-01T04:00:00Z", 4.0), 4000);
+		Assert.assertEquals(2, index.size());
+		
+		Assert.assertEquals(3.0, selectValue(index, Collections.singleton("NET_1"), null, false), 0.0);
+		Assert.assertEquals(2.0, selectValue(index, null, Collections.singleton("proc_2"), true), 0.0);
+		Assert.assertEquals(4.0, selectValue(index, null, null, false), 0.0);
+		Assert.assertEquals(1.0, selectValue(index, new HashSet<>(Arrays.asList("NET_1", "NET_2")),
+				null, true), 0.0);
+		
+		Assert.assertNull(index.select(Collections.singleton("NET_1"), null, null, null,
+				Collections.singleton("proc_2"), null, false));
+		Assert.assertNull(index.select(Collections.singleton("unknown"), null, null, null, null, null, false));
+	}
+
+	@Test
+	public void shouldMatchIdentifiersIgnoringCase() {
+		LatestValueIndex index = new LatestValueIndex(null);
+		index.offer("NET_1", HOURLY, createObservation("OBS_1", "http://example.org/Process/1", "2014-01-01T01:00:00Z", 1.0), 1000);
+		
+		Assert.assertEquals(1.0, selectValue(index, Collections.singleton("net_1"),
+				Collections.singleton("http://example.org/process/1"), false), 0.0);
+		Assert.assertNotNull(index.select(null, null, null, Collections.singleton("no2"), null,
+				Collections.singleton(HOURLY.toUpperCase()), true));
+	}
+
+	private static double selectValue(LatestValueIndex index, Set<String> networks, Set<String> procedures, boolean first) {
+		MultiValueObservation result = index.select(networks, null, null, null, procedures,
+				Collections.singleton(HOURLY), first);
+		Assert.assertEquals(1, result.getResult().getValue().size());
+		return result.getResult().getValue().get(0).getValue();
+	}
+
+	private static MultiValueObservation createObservation(String id, String procedure, String time, double value) {
+		MultiValueObservation observation = new MultiValueObservation(new Identifier(null, id), procedure,
+				"NO2", "feature", "point", "ug.m-3", "ug.m-3", "microgram", HOURLY, null);
+		observation.getResult().addResultValue(new MeasureResult(new TimePosition(time),
+				new TimePosition(time), "1", "3", HOURLY, value));
+		return observation;
+	}
+
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db.impl;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.esri.arcgis.geodatabase.IRow;
+
+/**
+ * Compares mapping observation rows with ordinals resolved once per
+ * query against resolving them for every row, as done by looking up
+ * the field names per column. The rows are fakes, so only the mapping
+ * is measured. Run via {@link #main(String[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ObservationRowMapperBenchmark {
+
+	private static final int ROW_COUNT = 1000;
+
+	private List<String> fields;
+	private IRow[] rows;
+
+	@Setup
+	public void setup() throws IOException {
+		Properties props = new Properties();
+		props.load(AccessGDBImpl.class.getResourceAsStream("/arcGisSos.properties"));
+		Table.initTableNames(props, "benchmark");
+		SubField.initSubfieldNames(props);
+		
+		this.fields = AccessGdbForObservationsImpl.createSubFieldsForQuery();
+		this.rows = new IRow[ROW_COUNT];
+		for (int i = 0; i < ROW_COUNT; i++) {
+			this.rows[i] = createRow(i);
+		}
+	}
+
+	private IRow createRow(int index) {
+		final Object[] values = new Object[this.fields.size()];
+		for (int i = 0; i < values.length; i++) {
+			String field = this.fields.get(i);
+			if (field.endsWith(SubField.VALUE_DATETIME_BEGIN) || field.endsWith(SubField.VALUE_DATETIME_END)
+					|| field.endsWith(SubField.VALUE_RESULTTIME)) {
+				values[i] = new Date(index * 3600000L);
+			}
+			else if (field.endsWith(SubField.VALUE_VALUE_NUMERIC)) {
+				values[i] = Double.valueOf(index);
+			}
+			else {
+				values[i] = field + (index / 24);
+			}
+		}
+		
+		return (IRow) Proxy.newProxyInstance(IRow.class.getClassLoader(),
+				new Class<?>[] {IRow.class}, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (method.getName().equals("getValue")) {
+							return values[(Integer) args[0]];
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	@Benchmark
+	public void resolvePerRow(Blackhole bh) throws IOException {
+		for (IRow row : this.rows) {
+			ObservationRowMapper mapper = new ObservationRowMapper(this.fields);
+			bh.consume(mapper.createMultiValueObservation(row));
+			bh.consume(mapper.createResultValue(row));
+		}
+	}
+
+	@Benchmark
+	public void resolvePerQuery(Blackhole bh) throws IOException {
+		ObservationRowMapper mapper = new ObservationRowMapper(this.fields);
+		for (IRow row : this.rows) {
+			bh.consume(mapper.createMultiValueObservation(row));
+			bh.consume(mapper.createResultValue(row));
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(ObservationRowMapperBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+
+}
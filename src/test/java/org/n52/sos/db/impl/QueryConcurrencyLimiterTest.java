@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db.impl;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QueryConcurrencyLimiterTest {
+
+	@Test
+	public void testPermitsAreCountedAndReleased() throws IOException {
+		QueryConcurrencyLimiter limiter = new QueryConcurrencyLimiter(2, 100);
+		
+		QueryConcurrencyLimiter.Permit first = limiter.acquire();
+		QueryConcurrencyLimiter.Permit second = limiter.acquire();
+		Assert.assertEquals(2, limiter.getInFlight());
+		
+		first.close();
+		first.close();
+		Assert.assertEquals(1, limiter.getInFlight());
+		
+		try (QueryConcurrencyLimiter.Permit third = limiter.acquire()) {
+			Assert.assertEquals(2, limiter.getInFlight());
+		}
+		
+		second.close();
+		Assert.assertEquals(0, limiter.getInFlight());
+	}
+
+	@Test
+	public void testQueueTimeout() throws IOException {
+		QueryConcurrencyLimiter limiter = new QueryConcurrencyLimiter(1, 50);
+		
+		try (QueryConcurrencyLimiter.Permit permit = limiter.acquire()) {
+			try {
+				limiter.acquire();
+				Assert.fail("expected a queue timeout");
+			}
+			catch (IOException e) {
+				Assert.assertEquals(1, limiter.getRejected());
+				Assert.assertEquals(0, limiter.getQueued());
+			}
+		}
+		
+		limiter.acquire().close();
+	}
+
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db.impl;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.n52.gml.Identifier;
+import org.n52.om.observation.MultiValueObservation;
+import org.n52.om.result.MeasureResult;
+import org.n52.oxf.valueDomains.time.TimePosition;
+
+public class SeriesChunkCacheTest {
+
+	@Test
+	public void shouldCalculateDays() {
+		Assert.assertEquals(20150301, SeriesChunkCache.addDays(20150228, 1));
+		Assert.assertEquals(20141231, SeriesChunkCache.addDays(20150101, -1));
+		Assert.assertEquals("2015-03-01 00:00:00", SeriesChunkCache.dayStart(20150301));
+	}
+
+	@Test
+	public void shouldInvalidateFromTheChangedDay() {
+		SeriesChunkCache cache = new SeriesChunkCache(100, 60000);
+		cache.put("a", 20150101, cache.getEpoch(), createDay(20150101, 2));
+		cache.put("a", 20150102, cache.getEpoch(), createDay(20150102, 2));
+		cache.put("b", 20150103, cache.getEpoch(), createDay(20150103, 2));
+		
+		Assert.assertNotNull(cache.get("a", 20150101));
+		Assert.assertNull(cache.get("b", 20150101));
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+		
+		long epoch = cache.getEpoch();
+		cache.invalidateFrom(20150102);
+		Assert.assertTrue(cache.contains("a", 20150101));
+		Assert.assertFalse(cache.contains("a", 20150102));
+		Assert.assertFalse(cache.contains("b", 20150103));
+		Assert.assertEquals(2, cache.getValueCount());
+		
+		/*
+		 * queried before the invalidation
+		 */
+		cache.put("a", 20150102, epoch, createDay(20150102, 2));
+		Assert.assertFalse(cache.contains("a", 20150102));
+	}
+
+	@Test
+	public void shouldEvictByValueBudget() {
+		SeriesChunkCache cache = new SeriesChunkCache(10, 60000);
+		cache.put("a", 20150101, cache.getEpoch(), createDay(20150101, 4));
+		cache.put("a", 20150102, cache.getEpoch(), createDay(20150102, 4));
+		Assert.assertNotNull(cache.get("a", 20150101));
+		
+		cache.put("a", 20150103, cache.getEpoch(), createDay(20150103, 4));
+		Assert.assertTrue(cache.contains("a", 20150101));
+		Assert.assertFalse(cache.contains("a", 20150102));
+		Assert.assertTrue(cache.contains("a", 20150103));
+		Assert.assertEquals(8, cache.getValueCount());
+		
+		cache.put("b", 20150101, cache.getEpoch(), createDay(20150101, 11));
+		Assert.assertFalse(cache.contains("b", 20150101));
+		Assert.assertEquals(8, cache.getValueCount());
+	}
+
+	private static List<MultiValueObservation> createDay(int day, int values) {
+		MultiValueObservation observation = new MultiValueObservation(new Identifier(null, "OBS_1"), "proc",
+				"NO2", "feature", "point", "ug.m-3", "ug.m-3", "microgram", "hour", null);
+		for (int i = 0; i < values; i++) {
+			String time = SeriesChunkCache.dayStart(day).replace(" 00:", String.format("T%02d:", i));
+			observation.getResult().addResultValue(new MeasureResult(new TimePosition(time),
+					new TimePosition(time), "1", "3", "hour", (double) i));
+		}
+		return Collections.singletonList(observation);
+	}
+
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.db.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SqlDialectTest {
+
+	@Test
+	public void testRowLimiting() {
+		Assert.assertEquals(" DISTINCT TOP 11 a, b", SqlDialect.SQLSERVER.limitSubFields("a, b", true, 11));
+		Assert.assertNull(SqlDialect.SQLSERVER.limitPostfixClause(null, 11));
+		
+		Assert.assertEquals(" DISTINCT a, b", SqlDialect.POSTGRESQL.limitSubFields("a, b", true, 11));
+		Assert.assertEquals("LIMIT 11", SqlDialect.POSTGRESQL.limitPostfixClause(null, 11));
+		Assert.assertEquals("ORDER BY a FETCH FIRST 11 ROWS ONLY", SqlDialect.ORACLE.limitPostfixClause("ORDER BY a ", 11));
+		
+		Assert.assertFalse(SqlDialect.NONE.supportsRowLimit());
+		Assert.assertEquals(" a", SqlDialect.NONE.limitSubFields("a", false, 11));
+	}
+
+	@Test
+	public void testFromName() {
+		Assert.assertEquals(SqlDialect.DEFAULT, SqlDialect.fromName(null));
+		Assert.assertEquals(SqlDialect.POSTGRESQL, SqlDialect.fromName(" postgresql"));
+	}
+
+}
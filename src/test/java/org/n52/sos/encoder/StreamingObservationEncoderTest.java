@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.encoder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.n52.gml.Identifier;
+import org.n52.om.observation.MultiValueObservation;
+import org.n52.om.result.MeasureResult;
+import org.n52.oxf.valueDomains.time.ITimePosition;
+import org.n52.oxf.valueDomains.time.TimeConverter;
+
+public class StreamingObservationEncoderTest {
+
+	@Test
+	public void shouldEncodeLikeTheCollectingEncoder() throws IOException, URISyntaxException {
+		OGCObservationSWECommonEncoder encoder = new OGCObservationSWECommonEncoder();
+		Assert.assertTrue(encoder.supportsStreaming());
+		
+		MultiValueObservation observation = createObservation("obs-1", 40.0);
+		Map<String, MultiValueObservation> map = new LinkedHashMap<>();
+		map.put("obs-1", observation);
+		
+		StreamingObservationEncoder sink = new StreamingObservationEncoder(encoder);
+		sink.observation(observation);
+		
+		Assert.assertEquals(encoder.encodeObservations(map), new String(sink.toByteArray(), "UTF-8"));
+	}
+	
+	@Test
+	public void shouldDiscardObservationsOnReset() throws IOException, URISyntaxException {
+		OGCObservationSWECommonEncoder encoder = new OGCObservationSWECommonEncoder();
+		
+		StreamingObservationEncoder sink = new StreamingObservationEncoder(encoder);
+		sink.observation(createObservation("obs-1", 40.0));
+		sink.reset();
+		sink.observation(createObservation("obs-2", 41.0));
+		
+		String response = new String(sink.toByteArray(), "UTF-8");
+		Assert.assertEquals(1, sink.getObservationCount());
+		Assert.assertFalse(response.contains("obs-1"));
+		Assert.assertTrue(response.contains("obs-2"));
+	}
+	
+	@Test
+	public void shouldNotStreamAQD() throws IOException {
+		Assert.assertFalse(new AQDObservationEncoder().supportsStreaming());
+	}
+
+	private MultiValueObservation createObservation(String id, double value) throws URISyntaxException {
+		ITimePosition time = TimeConverter.createTimePosition(new Date(1400000000000L));
+		MultiValueObservation result = new MultiValueObservation(
+				new Identifier(new URI("http://example.org/"), id), "procedure",
+				"property", "feature", "samplingPoint", "unit", "unitCode",
+				"unitLabel", "aggregationType", time);
+		result.getResult().addResultValue(new MeasureResult(time, time, "1", "3", "summer", value));
+		return result;
+	}
+
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sos.handler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ObservationResponseCacheTest {
+
+	@Test
+	public void shouldEvictLeastRecentlyUsed() {
+		ObservationResponseCache cache = new ObservationResponseCache(40, 60000);
+		cache.put("a", 1, new byte[10]);
+		cache.put("b", 1, new byte[10]);
+		cache.put("c", 1, new byte[10]);
+		Assert.assertNotNull(cache.get("a", 1));
+		
+		cache.put("d", 1, new byte[10]);
+		cache.put("e", 1, new byte[10]);
+		
+		Assert.assertNull(cache.get("b", 1));
+		Assert.assertNotNull(cache.get("a", 1));
+		Assert.assertEquals(40, cache.getCurrentBytes());
+		Assert.assertEquals(1, cache.getEvictions());
+	}
+
+	@Test
+	public void shouldInvalidateOnNewGeneration() {
+		ObservationResponseCache cache = new ObservationResponseCache(1000, 60000);
+		cache.put("a", 1, new byte[10]);
+		
+		Assert.assertNull(cache.get("a", 2));
+		Assert.assertEquals(0, cache.getEntryCount());
+		Assert.assertEquals(0.0, cache.getHitRatio(), 0.0);
+	}
+
+	@Test
+	public void shouldNotCacheLargeResponses() {
+		ObservationResponseCache cache = new ObservationResponseCache(100, 60000);
+		cache.put("a", 1, new byte[26]);
+		
+		Assert.assertNull(cache.get("a", 1));
+	}
+
+	@Test
+	public void shouldNormalizeParameterLists() {
+		Assert.assertEquals(ObservationResponseCache.normalize(new String[] {"b", " a", "b"}),
+				ObservationResponseCache.normalize(new String[] {"a", "b"}));
+		Assert.assertFalse(ObservationResponseCache.createKey("a", null).equals(
+				ObservationResponseCache.createKey("a", "b")));
+	}
+
+	@Test
+	public void shouldNormalizeTheQueriedValues() {
+		String[] values = ObservationResponseCache.normalizeValues("b, a,b".split(","));
+		Assert.assertArrayEquals(new String[] {"a", "b"}, values);
+		Assert.assertEquals(ObservationResponseCache.normalize(values),
+				ObservationResponseCache.normalize(new String[] {"a", "b"}));
+		Assert.assertNull(ObservationResponseCache.normalizeValues(null));
+	}
+
+}
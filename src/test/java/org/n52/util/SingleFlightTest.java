@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2012 52°North Initiative for Geospatial Open Source Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+	@Test
+	public void shouldShareOneComputation() throws Exception {
+		final SingleFlight<String> flight = new SingleFlight<>();
+		final AtomicInteger computations = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<String>> results = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			results.add(executor.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return flight.execute("key", new Callable<String>() {
+						@Override
+						public String call() throws Exception {
+							computations.incrementAndGet();
+							release.await(5, TimeUnit.SECONDS);
+							return "result";
+						}
+					});
+				}
+			}));
+		}
+		
+		long deadline = System.currentTimeMillis() + 5000;
+		while (flight.getSharedCount() < 7) {
+			if (System.currentTimeMillis() > deadline) {
+				Assert.fail("the callers did not join the computation within 5 seconds");
+			}
+			Thread.sleep(10);
+		}
+		release.countDown();
+		
+		for (Future<String> f : results) {
+			Assert.assertEquals("result", f.get(5, TimeUnit.SECONDS));
+		}
+		executor.shutdown();
+		
+		Assert.assertEquals(1, computations.get());
+		Assert.assertEquals(0, flight.getInFlightCount());
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldRethrowTheException() throws Exception {
+		new SingleFlight<String>().execute("key", new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				throw new IOException("failed");
+			}
+		});
+	}
+
+}
@@ -0,0 +1,55 @@
+-- minimal AQ e-Reporting schema, following the mapping of arcGisSos.properties
+CREATE SCHEMA AQ;
+
+CREATE TABLE AQ.NETWORK (pk_network INT PRIMARY KEY, ID VARCHAR(255));
+CREATE TABLE AQ.STATION (OBJECTID INT, Shape VARCHAR(255), PK_STATION INT PRIMARY KEY, ID VARCHAR(255), RESOURCE VARCHAR(255),
+	FK_NETWORK_GID INT, DATETIME_OPEN TIMESTAMP, DATETIME_CLOSED TIMESTAMP, OPERATIONAL INT);
+CREATE TABLE AQ.SamplingPoint (OBJECTID INT, Shape VARCHAR(255), PK_SAMPLINGPOINT INT PRIMARY KEY, ID VARCHAR(255),
+	RESOURCE VARCHAR(255), FK_STATION INT);
+CREATE TABLE AQ.FEATUREOFINTEREST (OBJECTID INT, Shape VARCHAR(255), PK_FEATUREOFINTEREST INT PRIMARY KEY, ID VARCHAR(255),
+	RESOURCE VARCHAR(255), INLETHEIGHT DOUBLE, BUILDINGDISTANCE DOUBLE, KERBDISTANCE DOUBLE);
+CREATE TABLE AQ.Procedures (pk_procedure INT PRIMARY KEY, id VARCHAR(255), resource VARCHAR(255));
+CREATE TABLE AQ.Property (pk_Property INT PRIMARY KEY, id VARCHAR(255), label VARCHAR(255), notation VARCHAR(255),
+	definition VARCHAR(255), resource VARCHAR(255));
+CREATE TABLE AQ.UNIT (pk_Unit INT PRIMARY KEY, id VARCHAR(255), label VARCHAR(255), notation VARCHAR(255),
+	definition VARCHAR(255), RESOURCE VARCHAR(255));
+CREATE TABLE AQ.AGGREGATIONTYPE (pk_Aggregationtype INT PRIMARY KEY, id VARCHAR(255), notation VARCHAR(255),
+	definition VARCHAR(255), RESOURCE VARCHAR(255));
+CREATE TABLE AQ.VALIDITY (pk_Validity INT PRIMARY KEY, id VARCHAR(255), notation VARCHAR(255), definition VARCHAR(255),
+	RESOURCE VARCHAR(255));
+CREATE TABLE AQ.VERIFICATION (pk_Verification INT PRIMARY KEY, id VARCHAR(255), notation VARCHAR(255),
+	definition VARCHAR(255), RESOURCE VARCHAR(255));
+CREATE TABLE AQ.Observation (pk_observation INT PRIMARY KEY, id VARCHAR(255), fk_featureofinterest INT,
+	fk_samplingpoint INT, fk_procedure INT, fk_property INT);
+CREATE TABLE AQ.Value (pk_value INT PRIMARY KEY, fk_observation INT, datetime_begin TIMESTAMP, datetime_end TIMESTAMP,
+	value_text VARCHAR(255), value_numeric DOUBLE, fk_validity INT, fk_verification INT, datetime_inserted TIMESTAMP,
+	datetime_updated TIMESTAMP, resulttime TIMESTAMP, fk_AggregationType INT, fk_unit INT);
+
+INSERT INTO AQ.NETWORK VALUES (1, 'NET_1');
+INSERT INTO AQ.NETWORK VALUES (2, 'NET_2');
+INSERT INTO AQ.STATION VALUES (1, NULL, 1, 'STA_1', 'http://example.org/station/1', 1, '2010-01-01 00:00:00', NULL, 1);
+INSERT INTO AQ.STATION VALUES (2, NULL, 2, 'STA_2', 'http://example.org/station/2', 2, '2010-01-01 00:00:00', NULL, 1);
+INSERT INTO AQ.SamplingPoint VALUES (1, NULL, 1, 'SPO_1', 'http://example.org/samplingpoint/1', 1);
+INSERT INTO AQ.SamplingPoint VALUES (2, NULL, 2, 'SPO_2', 'http://example.org/samplingpoint/2', 2);
+INSERT INTO AQ.FEATUREOFINTEREST VALUES (1, NULL, 1, 'SAM_1', 'http://example.org/sample/1', 3.5, 10.0, 2.0);
+INSERT INTO AQ.FEATUREOFINTEREST VALUES (2, NULL, 2, 'SAM_2', 'http://example.org/sample/2', 3.5, 10.0, 2.0);
+INSERT INTO AQ.Procedures VALUES (1, 'SPP_1', 'http://example.org/process/1');
+INSERT INTO AQ.Procedures VALUES (2, 'SPP_2', 'http://example.org/process/2');
+INSERT INTO AQ.Property VALUES (1, 'http://dd.eionet.europa.eu/vocabulary/aq/pollutant/8', 'NO2', 'NO2', 'Nitrogen dioxide', NULL);
+INSERT INTO AQ.UNIT VALUES (1, 'http://dd.eionet.europa.eu/vocabulary/aq/observationunit/ug.m-3', 'microgram per cubic meter', 'ug.m-3', NULL, NULL);
+INSERT INTO AQ.AGGREGATIONTYPE VALUES (1, 'http://dd.eionet.europa.eu/vocabulary/aq/averagingperiod/1h', 'hour', 'http://dd.eionet.europa.eu/vocabulary/aq/averagingperiod/1h', NULL);
+INSERT INTO AQ.AGGREGATIONTYPE VALUES (2, 'http://dd.eionet.europa.eu/vocabulary/aq/averagingperiod/1d', 'day', 'http://dd.eionet.europa.eu/vocabulary/aq/averagingperiod/1d', NULL);
+INSERT INTO AQ.VALIDITY VALUES (1, '1', '1', 'valid', NULL);
+INSERT INTO AQ.VERIFICATION VALUES (1, '3', '3', 'not verified', NULL);
+
+INSERT INTO AQ.Observation VALUES (1, 'OBS_1', 1, 1, 1, 1);
+INSERT INTO AQ.Observation VALUES (2, 'OBS_2', 1, 1, 1, 1);
+INSERT INTO AQ.Observation VALUES (3, 'OBS_3', 2, 2, 2, 1);
+
+INSERT INTO AQ.Value VALUES (1, 1, '2014-01-01 00:00:00', '2014-01-01 01:00:00', NULL, 21.0, 1, 1, NULL, NULL, '2014-01-01 01:00:00', 1, 1);
+INSERT INTO AQ.Value VALUES (2, 1, '2014-01-01 01:00:00', '2014-01-01 02:00:00', NULL, 22.0, 1, 1, NULL, NULL, '2014-01-01 02:00:00', 1, 1);
+INSERT INTO AQ.Value VALUES (3, 1, '2014-01-01 02:00:00', '2014-01-01 03:00:00', NULL, 23.0, 1, 1, NULL, NULL, '2014-01-01 03:00:00', 1, 1);
+INSERT INTO AQ.Value VALUES (4, 2, '2014-01-01 00:00:00', '2014-01-02 00:00:00', NULL, 20.0, 1, 1, NULL, NULL, '2014-01-02 00:00:00', 2, 1);
+INSERT INTO AQ.Value VALUES (5, 2, '2014-01-02 00:00:00', '2014-01-03 00:00:00', NULL, 19.0, 1, 1, NULL, NULL, '2014-01-03 00:00:00', 2, 1);
+INSERT INTO AQ.Value VALUES (6, 3, '2014-01-01 00:00:00', '2014-01-01 01:00:00', NULL, 31.0, 1, 1, NULL, NULL, '2014-01-01 01:00:00', 1, 1);
+INSERT INTO AQ.Value VALUES (7, 3, '2014-01-01 01:00:00', '2014-01-01 02:00:00', NULL, 32.0, 1, 1, NULL, NULL, '2014-01-01 02:00:00', 1, 1);